@@ -0,0 +1,112 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.util.concurrent.AtomicDoubleArray;
+
+import lombok.Getter;
+
+/**
+ * Heap storage holding the regret sums and the strategy sums in {@link AtomicDoubleArray}s. Sums,
+ * CFR+ floors and discounts are updated with CAS so that concurrent updates on the same infoset are
+ * never lost. Sets are relaxed ({@link AtomicDoubleArray#lazySet(int, double)}) and overwrite
+ * concurrent updates : they are only used to load values. Meant for the
+ * {@link CSCFRMHogwildChancesSynchronizer} that doesn't prevent collisions.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMAtomicDoubleArrayStorage implements CSCFRMStorage {
+
+  @Getter
+  private final CSCFRMLayout layout;
+  private final AtomicDoubleArray regretSum;
+  private final AtomicDoubleArray strategySum;
+
+  /**
+   * Constructor
+   *
+   * @param layout the layout of the values
+   */
+  public CSCFRMAtomicDoubleArrayStorage(final CSCFRMLayout layout) {
+    final long size = layout.getSize();
+    checkArgument(size <= Integer.MAX_VALUE - 8,
+        "Layout size %s is too large for an array storage", size);
+    this.layout = layout;
+    this.regretSum = new AtomicDoubleArray((int) size);
+    this.strategySum = new AtomicDoubleArray((int) size);
+  }
+
+  @Override
+  public final double getRegret(final long offset) {
+    return regretSum.get((int) offset);
+  }
+
+  @Override
+  public final void setRegret(final long offset, final double value) {
+    regretSum.lazySet((int) offset, value);
+  }
+
+  @Override
+  public final void addRegret(final long offset, final double value) {
+    regretSum.addAndGet((int) offset, value);
+  }
+
+  @Override
+  public final double getStrategySum(final long offset) {
+    return strategySum.get((int) offset);
+  }
+
+  @Override
+  public final void setStrategySum(final long offset, final double value) {
+    strategySum.lazySet((int) offset, value);
+  }
+
+  @Override
+  public final void addStrategySum(final long offset, final double value) {
+    strategySum.addAndGet((int) offset, value);
+  }
+
+  @Override
+  public final double floorRegret(final long offset) {
+    final AtomicDoubleArray regretSum = this.regretSum;
+    final int index = (int) offset;
+    while (true) {
+      final double regret = regretSum.get(index);
+      if (regret >= 0) {
+        return regret;
+      }
+      if (regretSum.compareAndSet(index, regret, 0)) {
+        return 0;
+      }
+    }
+  }
+
+  @Override
+  public final void scaleRegret(final long offset, final double positive,
+      final double negative) {
+    final AtomicDoubleArray regretSum = this.regretSum;
+    final int index = (int) offset;
+    while (true) {
+      final double regret = regretSum.get(index);
+      final double factor = regret > 0 ? positive : negative;
+      if (regret == 0 || factor == 1
+          || regretSum.compareAndSet(index, regret, regret * factor)) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public final void scaleStrategySum(final long offset, final double factor) {
+    final AtomicDoubleArray strategySum = this.strategySum;
+    final int index = (int) offset;
+    while (factor != 1) {
+      final double sum = strategySum.get(index);
+      if (strategySum.compareAndSet(index, sum, sum * factor)) {
+        return;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Enumeration of all the chances of a game with their probabilities, for trainers that don't
+ * sample. The chances are split in parts that can be enumerated concurrently, typically one part
+ * per private state of a player.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances class
+ */
+public interface CSCFRMChancesEnumeration<Chances extends CSCFRMChances> {
+
+  /**
+   * Get the number of parts of the enumeration
+   *
+   * @return the number of parts
+   */
+  int getNbParts();
+
+  /**
+   * Enumerate the chances of a part with their probability. The probabilities of all parts must sum
+   * to one. The chances are only valid during the consumer's call and may be reused for the next
+   * ones. Different parts may be enumerated concurrently by different threads.
+   *
+   * @param part the part index
+   * @param consumer the consumer of each chances and its probability
+   */
+  void enumerate(final int part, final ObjDoubleConsumer<Chances> consumer);
+}
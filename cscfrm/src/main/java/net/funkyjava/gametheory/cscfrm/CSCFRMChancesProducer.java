@@ -23,4 +23,30 @@ public interface CSCFRMChancesProducer<Chances extends CSCFRMChances> {
    * @param chances
    */
   void endedUsing(Chances chances);
+
+  /**
+   * Draw random chances for each element of a batch. The drawn chances may collide with each other.
+   * 
+   * @param batch the destination array
+   * @param from index of the first chances to draw
+   * @param to index after the last chances to draw
+   */
+  default void produceChances(final Chances[] batch, final int from, final int to) {
+    for (int i = from; i < to; i++) {
+      batch[i] = produceChances();
+    }
+  }
+
+  /**
+   * CSCFRM algorithm stopped using a batch of chances. They can be recycled
+   * 
+   * @param batch the batch
+   * @param from index of the first chances to recycle
+   * @param to index after the last chances to recycle
+   */
+  default void endedUsing(final Chances[] batch, final int from, final int to) {
+    for (int i = from; i < to; i++) {
+      endedUsing(batch[i]);
+    }
+  }
 }
@@ -33,6 +33,68 @@ public interface CSCFRMChancesSynchronizer<Chances extends CSCFRMChances> {
    */
   void endUsing(final Chances chances) throws InterruptedException;
 
+  /**
+   * Get a batch of mutually non-colliding chances. Implementations may return less chances than
+   * the batch length rather than waiting for other threads to release colliding chances, but at
+   * least one unless stopped. Implementations that make threads wait for each other may also
+   * return 0 after a while so that callers can check whether they are stopped, and call again. By
+   * default, only one chance is provided via {@link #getChances()}.
+   * 
+   * @param batch the destination array
+   * @return the number of chances written at the beginning of the batch, 0 when stopped or when
+   *         the caller should call again
+   * @throws InterruptedException
+   */
+  default int getChances(final Chances[] batch) throws InterruptedException {
+    final Chances chances = getChances();
+    if (chances == null) {
+      return 0;
+    }
+    batch[0] = chances;
+    return 1;
+  }
+
+  /**
+   * The CSCFRM algorithm ended using a batch of chances previously provided by
+   * {@link #getChances(CSCFRMChances[])}. By default, calls {@link #endUsing(CSCFRMChances)} for
+   * each of them.
+   * 
+   * @param batch the batch
+   * @param nbChances the number of chances at the beginning of the batch
+   * @throws InterruptedException
+   */
+  default void endUsing(final Chances[] batch, final int nbChances) throws InterruptedException {
+    for (int i = 0; i < nbChances; i++) {
+      endUsing(batch[i]);
+    }
+  }
+
+  /**
+   * Called by a trainer thread that stops because of an exception, after releasing its chances, so
+   * that the other trainer threads don't wait for it. Does nothing by default.
+   */
+  default void trainerFailed() {}
+
+  /**
+   * Number of drawn chances that collided with chances in use, for monitoring. Synchronizers that
+   * don't count collisions return 0.
+   * 
+   * @return the number of collisions
+   */
+  default long getNbCollisions() {
+    return 0;
+  }
+
+  /**
+   * Number of chances currently set aside because they collided, waiting for a release, for
+   * monitoring. Synchronizers that don't delay chances return 0.
+   * 
+   * @return the number of delayed chances
+   */
+  default long getNbDelayedChances() {
+    return 0;
+  }
+
   /**
    * CSCFRM algorithm will stop running, stop producing chances, stop runnables provided by
    * {@link #getProducers()}.
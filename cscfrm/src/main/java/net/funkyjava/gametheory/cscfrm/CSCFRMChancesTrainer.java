@@ -0,0 +1,19 @@
+package net.funkyjava.gametheory.cscfrm;
+
+/**
+ * A trainer performs CSCFRM iterations on {@link CSCFRMData} for given chances. Each trainer is used
+ * by only one thread.
+ * 
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances class
+ */
+public interface CSCFRMChancesTrainer<Chances extends CSCFRMChances> {
+
+  /**
+   * Performs one iteration for given chances
+   * 
+   * @param chances the chances
+   */
+  void train(final Chances chances);
+}
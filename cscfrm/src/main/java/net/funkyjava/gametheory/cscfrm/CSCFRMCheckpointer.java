@@ -0,0 +1,341 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.google.common.io.CountingInputStream;
+
+import lombok.Getter;
+
+/**
+ * Incremental checkpoints of a {@link CSCFRMData} taken while its trainers are running.
+ *
+ * Values are tracked by chance block : the values of all nodes of a (round, player, chance). The
+ * {@link CSCFRMRunner} marks the blocks of each trained chances as dirty, and each checkpoint
+ * appends a record with the dirty blocks only, followed by the iterations count and the utility
+ * sums, to an append-only file. Every {@link #getCompactionPeriod()} checkpoints, the file is
+ * replaced by a single record holding all blocks. {@link #restore()} replays all complete records.
+ *
+ * As trainers keep running, a record is not an exact snapshot : a block may be written while it's
+ * updated. A checkpoint taken after {@link CSCFRMRunner#stopAndAwaitTermination()} is exact.
+ * Iteration stamps are saved with the blocks when the data is discounted, so that no pending
+ * discount is lost. Each record starts with its length, written once the record is synced : a
+ * record truncated by a crash is never replayed and only loses its own updates.
+ *
+ * File format : a magic number and the discounting policy, then the records. Each record is its
+ * length in bytes followed by a sequence of blocks, each block being its index followed by its
+ * nodes values in {@link CSCFRMStorage#writeNode(DataOutputStream, long, int)} format and its
+ * infosets stamps when discounted, then -1 and the state in
+ * {@link CSCFRMData#writeState(java.io.OutputStream)} format.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMCheckpointer {
+
+  private static final long MAGIC = 0x4353434652434b50L;
+  private static final int END_OF_RECORD = -1;
+  private static final String tmpSuffix = ".tmp";
+
+  /**
+   * The checkpoints file path
+   */
+  @Getter
+  private final Path path;
+  /**
+   * The checkpointed data
+   */
+  @Getter
+  private final CSCFRMData<?, ?> data;
+  /**
+   * Number of delta records appended before the file is compacted
+   */
+  @Getter
+  private final int compactionPeriod;
+  private final CSCFRMLayout layout;
+  private final boolean discounting;
+  private final int[][] blocksBases;
+  private final int[] blocksRounds;
+  private final int[] blocksPlayers;
+  private final int[] blocksChances;
+  private final AtomicIntegerArray dirty;
+  /**
+   * Number of deltas appended since the last compaction. It starts at the compaction period so that
+   * the first checkpoint rewrites the file unless {@link #restore()} replayed it : deltas are never
+   * appended to a file written by another run.
+   */
+  private int nbDeltas;
+  /**
+   * Number of blocks written by the last checkpoint
+   */
+  @Getter
+  private int lastNbBlocks = 0;
+
+  /**
+   * Constructor
+   *
+   * @param data the data to checkpoint
+   * @param path the checkpoints file path
+   * @param compactionPeriod number of delta records appended before the file is compacted, must
+   *        be > 0
+   */
+  public CSCFRMCheckpointer(final CSCFRMData<?, ?> data, final Path path,
+      final int compactionPeriod) {
+    checkArgument(compactionPeriod > 0, "The compaction period must be > 0");
+    this.data = data;
+    this.path = path;
+    this.compactionPeriod = compactionPeriod;
+    this.nbDeltas = compactionPeriod;
+    final CSCFRMLayout layout = this.layout = data.getLayout();
+    this.discounting = data.getDiscounting().isDiscounting();
+    final int nbRounds = layout.getNbRounds();
+    final int nbPlayers = layout.getNbPlayers();
+    final int[][] chancesSizes = layout.getRoundChancesSizes();
+    final int[][] blocksBases = this.blocksBases = new int[nbRounds][nbPlayers];
+    long nbBlocks = 0;
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        blocksBases[round][player] = (int) nbBlocks;
+        nbBlocks += chancesSizes[round][player];
+        checkArgument(nbBlocks <= Integer.MAX_VALUE - 8, "Too many chance blocks");
+      }
+    }
+    final int[] blocksRounds = this.blocksRounds = new int[(int) nbBlocks];
+    final int[] blocksPlayers = this.blocksPlayers = new int[(int) nbBlocks];
+    final int[] blocksChances = this.blocksChances = new int[(int) nbBlocks];
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final int base = blocksBases[round][player];
+        final int nbChances = chancesSizes[round][player];
+        for (int chance = 0; chance < nbChances; chance++) {
+          blocksRounds[base + chance] = round;
+          blocksPlayers[base + chance] = player;
+          blocksChances[base + chance] = chance;
+        }
+      }
+    }
+    this.dirty = new AtomicIntegerArray((int) nbBlocks);
+  }
+
+  /**
+   * Mark the blocks of trained chances as dirty. Called by the trainer threads after each
+   * iteration.
+   *
+   * @param chances the trained chances
+   */
+  public final void touched(final CSCFRMChances chances) {
+    final AtomicIntegerArray dirty = this.dirty;
+    if (chances instanceof CSCFRMVectorChances) {
+      // Vector iterations update all chances
+      final int nbBlocks = dirty.length();
+      for (int i = 0; i < nbBlocks; i++) {
+        dirty.lazySet(i, 1);
+      }
+      return;
+    }
+    final int[][] blocksBases = this.blocksBases;
+    final int[][] playersChances = chances.getPlayersChances();
+    final int nbRounds = playersChances.length;
+    for (int round = 0; round < nbRounds; round++) {
+      final int[] roundChances = playersChances[round];
+      final int[] roundBases = blocksBases[round];
+      final int nbPlayers = roundChances.length;
+      for (int player = 0; player < nbPlayers; player++) {
+        dirty.lazySet(roundBases[player] + roundChances[player], 1);
+      }
+    }
+  }
+
+  /**
+   * Append the dirty blocks to the checkpoints file, or compact it when it doesn't exist, when
+   * {@link #getCompactionPeriod()} deltas were appended or when it wasn't restored by this
+   * checkpointer
+   *
+   * @throws IOException
+   */
+  public synchronized void checkpoint() throws IOException {
+    if (nbDeltas >= compactionPeriod || !Files.exists(path)) {
+      compact();
+      return;
+    }
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.position(channel.size());
+      appendRecord(channel, false);
+    }
+    nbDeltas++;
+  }
+
+  /**
+   * Replace the checkpoints file by a single record holding all blocks. The new file is written
+   * aside and then moved, so that a crash never leaves an incomplete base.
+   *
+   * @throws IOException
+   */
+  public synchronized void compact() throws IOException {
+    final Path tmpPath = Paths.get(path.toString() + tmpSuffix);
+    try (final FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      final DataOutputStream dos =
+          new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      dos.writeLong(MAGIC);
+      data.getDiscounting().write(dos);
+      dos.flush();
+      appendRecord(channel, true);
+    }
+    Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    nbDeltas = 0;
+  }
+
+  /**
+   * Write a record at the channel's position. Its length is written in place of a zero placeholder
+   * only once the record is synced, so that a crash can't leave an incomplete record that looks
+   * complete.
+   */
+  private final void appendRecord(final FileChannel channel, final boolean allBlocks)
+      throws IOException {
+    final long start = channel.position();
+    final DataOutputStream dos =
+        new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    dos.writeLong(0);
+    writeRecord(dos, allBlocks);
+    dos.flush();
+    channel.force(true);
+    final ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+    length.putLong(0, channel.position() - start - Long.BYTES);
+    while (length.hasRemaining()) {
+      channel.write(length, start + length.position());
+    }
+    channel.force(true);
+  }
+
+  private final void writeRecord(final DataOutputStream dos, final boolean allBlocks)
+      throws IOException {
+    final AtomicIntegerArray dirty = this.dirty;
+    final int nbBlocks = dirty.length();
+    int nbWritten = 0;
+    for (int block = 0; block < nbBlocks; block++) {
+      // Cleared before reading the values : an update made meanwhile marks the block again
+      if (dirty.getAndSet(block, 0) == 0 && !allBlocks) {
+        continue;
+      }
+      dos.writeInt(block);
+      writeBlock(dos, block);
+      nbWritten++;
+    }
+    dos.writeInt(END_OF_RECORD);
+    data.writeStateValues(dos);
+    lastNbBlocks = nbWritten;
+  }
+
+  private final void writeBlock(final DataOutputStream dos, final int block) throws IOException {
+    final CSCFRMLayout layout = this.layout;
+    final CSCFRMStorage storage = data.getStorage();
+    final int round = blocksRounds[block];
+    final int player = blocksPlayers[block];
+    final int chance = blocksChances[block];
+    final int[] offsets = layout.getNodesOffsets()[round][player];
+    final int[] nbActions = layout.getNodesNbActions()[round][player];
+    final int nbNodes = offsets.length;
+    final long chanceOffset = layout.chanceOffset(round, player, chance);
+    for (int node = 0; node < nbNodes; node++) {
+      storage.writeNode(dos, chanceOffset + offsets[node], nbActions[node]);
+    }
+    if (discounting) {
+      final long chanceIndex = layout.chanceInfosetIndex(round, player, chance);
+      for (int node = 0; node < nbNodes; node++) {
+        dos.writeLong(data.getStamp(chanceIndex + node));
+      }
+    }
+  }
+
+  /**
+   * Restore the data by replaying all complete records of the checkpoints file. A truncated last
+   * record is ignored. Trainers must not be running.
+   *
+   * @return false when there is no checkpoints file
+   * @throws IOException
+   */
+  public synchronized boolean restore() throws IOException {
+    if (!Files.exists(path)) {
+      return false;
+    }
+    final long size = Files.size(path);
+    try (final CountingInputStream cis =
+        new CountingInputStream(new BufferedInputStream(new FileInputStream(path.toFile())))) {
+      final DataInputStream dis = new DataInputStream(cis);
+      checkArgument(dis.readLong() == MAGIC, "%s is not a CSCFRM checkpoints file", path);
+      final CSCFRMDiscounting discounting = CSCFRMDiscounting.read(dis);
+      checkArgument(discounting.equals(data.getDiscounting()),
+          "Checkpoints were trained with %s, expected %s", discounting, data.getDiscounting());
+      int nbRecords = 0;
+      boolean truncated = false;
+      while (cis.getCount() < size) {
+        if (size - cis.getCount() < Long.BYTES) {
+          truncated = true;
+          break;
+        }
+        final long length = dis.readLong();
+        final long end = cis.getCount() + length;
+        if (length <= 0 || end > size) {
+          // Record not synced before a crash
+          truncated = true;
+          break;
+        }
+        int block;
+        while ((block = dis.readInt()) != END_OF_RECORD) {
+          fillBlock(dis, block);
+        }
+        // The blocks hold the stamps
+        data.fillStateValues(dis);
+        checkArgument(cis.getCount() == end, "Corrupted record in %s", path);
+        nbRecords++;
+      }
+      // Don't append after a truncated record : compact at the next checkpoint
+      nbDeltas = truncated ? compactionPeriod : Math.max(nbRecords - 1, 0);
+    }
+    return true;
+  }
+
+  private final void fillBlock(final DataInputStream dis, final int block) throws IOException {
+    checkArgument(block >= 0 && block < dirty.length(), "Invalid block index %s", block);
+    final CSCFRMLayout layout = this.layout;
+    final CSCFRMStorage storage = data.getStorage();
+    final int round = blocksRounds[block];
+    final int player = blocksPlayers[block];
+    final int chance = blocksChances[block];
+    final int[] offsets = layout.getNodesOffsets()[round][player];
+    final int[] nbActions = layout.getNodesNbActions()[round][player];
+    final int nbNodes = offsets.length;
+    final long chanceOffset = layout.chanceOffset(round, player, chance);
+    for (int node = 0; node < nbNodes; node++) {
+      storage.fillNode(dis, chanceOffset + offsets[node], nbActions[node]);
+    }
+    if (discounting) {
+      final CSCFRMData<?, ?> data = this.data;
+      final long chanceIndex = layout.chanceInfosetIndex(round, player, chance);
+      for (int node = 0; node < nbNodes; node++) {
+        final long stamp = dis.readLong();
+        // Only allocate the stamps chunks of the reached infosets
+        if (stamp != data.getStamp(chanceIndex + node)) {
+          data.setStamp(chanceIndex + node, stamp);
+        }
+      }
+    }
+  }
+}
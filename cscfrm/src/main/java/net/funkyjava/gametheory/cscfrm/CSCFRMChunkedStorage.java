@@ -0,0 +1,221 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import lombok.Getter;
+
+/**
+ * Heap storage allocating its values lazily, by chunks of consecutive offsets, when a value of the
+ * chunk is first written with a non-zero value. Unallocated values read as zero. Training can then
+ * start as soon as the layout is built, and the memory only grows with the infosets actually
+ * reached, which is useful for large imperfect-recall abstractions where many (chance, node) pairs
+ * are rarely or never visited.
+ *
+ * Each chunk holds the regret sums followed by the strategy sums of its
+ * {@link #getChunkValues()} offsets. Chunks are published with a CAS so that trainer threads
+ * touching different offsets of the same chunk concurrently end up writing into the same arrays.
+ * Like the array storages, concurrent access to the same offsets must be avoided by the chances
+ * synchronizer.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMChunkedStorage implements CSCFRMStorage {
+
+  /**
+   * Default log2 of the number of values per chunk
+   */
+  public static final int DEFAULT_CHUNK_SHIFT = 10;
+
+  @Getter
+  private final CSCFRMLayout layout;
+  private final int chunkShift;
+  private final int chunkValues;
+  private final long chunkMask;
+  private final AtomicReferenceArray<double[]> chunks;
+  private final AtomicLong nbAllocatedChunks = new AtomicLong();
+
+  /**
+   * Constructor with chunks of 2^{@value #DEFAULT_CHUNK_SHIFT} values
+   *
+   * @param layout the layout of the values
+   */
+  public CSCFRMChunkedStorage(final CSCFRMLayout layout) {
+    this(layout, DEFAULT_CHUNK_SHIFT);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param layout the layout of the values
+   * @param chunkShift log2 of the number of values per chunk
+   */
+  public CSCFRMChunkedStorage(final CSCFRMLayout layout, final int chunkShift) {
+    checkArgument(chunkShift >= 0 && chunkShift <= 26, "Chunk shift %s out of [0, 26]",
+        chunkShift);
+    final long size = layout.getSize();
+    final long nbChunks = (size + (1L << chunkShift) - 1) >>> chunkShift;
+    checkArgument(nbChunks <= Integer.MAX_VALUE - 8,
+        "Layout size %s is too large for chunks of 2^%s values", size, chunkShift);
+    this.layout = layout;
+    this.chunkShift = chunkShift;
+    this.chunkValues = 1 << chunkShift;
+    this.chunkMask = chunkValues - 1;
+    this.chunks = new AtomicReferenceArray<>((int) nbChunks);
+  }
+
+  /**
+   * Get a storage provider creating chunked storages
+   *
+   * @param chunkShift log2 of the number of values per chunk
+   * @return the storage provider
+   */
+  public static CSCFRMStorageProvider provider(final int chunkShift) {
+    return layout -> new CSCFRMChunkedStorage(layout, chunkShift);
+  }
+
+  /**
+   * The chunk of an offset, allocated when missing
+   */
+  private final double[] chunk(final int index) {
+    final double[] chunk = chunks.get(index);
+    if (chunk != null) {
+      return chunk;
+    }
+    final double[] allocated = new double[2 * chunkValues];
+    if (chunks.compareAndSet(index, null, allocated)) {
+      nbAllocatedChunks.incrementAndGet();
+      return allocated;
+    }
+    return chunks.get(index);
+  }
+
+  @Override
+  public final double getRegret(final long offset) {
+    final double[] chunk = chunks.get((int) (offset >>> chunkShift));
+    return chunk == null ? 0 : chunk[(int) (offset & chunkMask)];
+  }
+
+  @Override
+  public final void setRegret(final long offset, final double value) {
+    final int index = (int) (offset >>> chunkShift);
+    if (value == 0) {
+      final double[] chunk = chunks.get(index);
+      if (chunk != null) {
+        chunk[(int) (offset & chunkMask)] = 0;
+      }
+      return;
+    }
+    chunk(index)[(int) (offset & chunkMask)] = value;
+  }
+
+  @Override
+  public final void addRegret(final long offset, final double value) {
+    if (value != 0) {
+      chunk((int) (offset >>> chunkShift))[(int) (offset & chunkMask)] += value;
+    }
+  }
+
+  @Override
+  public final double getStrategySum(final long offset) {
+    final double[] chunk = chunks.get((int) (offset >>> chunkShift));
+    return chunk == null ? 0 : chunk[chunkValues + (int) (offset & chunkMask)];
+  }
+
+  @Override
+  public final void setStrategySum(final long offset, final double value) {
+    final int index = (int) (offset >>> chunkShift);
+    if (value == 0) {
+      final double[] chunk = chunks.get(index);
+      if (chunk != null) {
+        chunk[chunkValues + (int) (offset & chunkMask)] = 0;
+      }
+      return;
+    }
+    chunk(index)[chunkValues + (int) (offset & chunkMask)] = value;
+  }
+
+  @Override
+  public final void addStrategySum(final long offset, final double value) {
+    if (value != 0) {
+      chunk((int) (offset >>> chunkShift))[chunkValues + (int) (offset & chunkMask)] += value;
+    }
+  }
+
+  /**
+   * Number of values per chunk
+   *
+   * @return the number of values per chunk
+   */
+  public int getChunkValues() {
+    return chunkValues;
+  }
+
+  /**
+   * Number of chunks allocated so far
+   *
+   * @return the number of allocated chunks
+   */
+  public long getNbAllocatedChunks() {
+    return nbAllocatedChunks.get();
+  }
+
+  /**
+   * Number of values allocated so far, including the padding of the last chunk
+   *
+   * @return the number of allocated values
+   */
+  public long getNbAllocatedValues() {
+    return nbAllocatedChunks.get() << chunkShift;
+  }
+
+  /**
+   * Ratio of the layout's values that are allocated
+   *
+   * @return the allocated ratio
+   */
+  public double getAllocatedRatio() {
+    final long size = layout.getSize();
+    return size == 0 ? 0 : Math.min(1, (double) getNbAllocatedValues() / size);
+  }
+
+  /**
+   * Count the allocated values whose regret sum or strategy sum is not zero by scanning all
+   * allocated chunks. Meant for monitoring : values being trained may be read racily.
+   *
+   * @return the number of reached values
+   */
+  public long getNbReachedValues() {
+    final AtomicReferenceArray<double[]> chunks = this.chunks;
+    final int chunkValues = this.chunkValues;
+    final int nbChunks = chunks.length();
+    long res = 0;
+    for (int i = 0; i < nbChunks; i++) {
+      final double[] chunk = chunks.get(i);
+      if (chunk == null) {
+        continue;
+      }
+      for (int j = 0; j < chunkValues; j++) {
+        if (chunk[j] != 0 || chunk[chunkValues + j] != 0) {
+          res++;
+        }
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Ratio of the allocated values that were reached, see {@link #getNbReachedValues()}. A low ratio
+   * means that the chunks are too large for the reached infosets distribution.
+   *
+   * @return the reached / allocated ratio
+   */
+  public double getReachedRatio() {
+    final long allocated = getNbAllocatedValues();
+    return allocated == 0 ? 0 : (double) getNbReachedValues() / allocated;
+  }
+
+}
@@ -0,0 +1,255 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.CHANCES_PAYOUTS;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.INDEX;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.NB_ACTIONS;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PAYOUTS_NO_CHANCE;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PLAYER_INDEX;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.ROUND;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.AtomicDoubleArray;
+
+import net.funkyjava.gametheory.extensiveformgame.CompiledActionTree;
+import net.funkyjava.gametheory.extensiveformgame.MappedActionTree;
+import net.funkyjava.gametheory.extensiveformgame.PackedActionTree;
+
+/**
+ * Same CSCFRM iterations as {@link CSCFRMTrainer}, but the tree is walked on a
+ * {@link PackedActionTree} with an explicit stack instead of recursive calls on linked nodes : a
+ * {@link CompiledActionTree} in the heap, whose iterations only read primitive arrays apart from
+ * the storage and the chances dependent payouts, or a {@link MappedActionTree} whose chances
+ * payouts are decoded at each visit.
+ *
+ * Regrets and strategy sums are updated following the data's {@link CSCFRMDiscounting} policy.
+ * Pruning is not supported.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances class
+ */
+public class CSCFRMCompiledTrainer<Chances extends CSCFRMChances>
+    implements CSCFRMChancesTrainer<Chances> {
+
+  private final int nbRounds;
+  private final int nbPlayers;
+  private final CSCFRMData<?, Chances> data;
+  private final CSCFRMStorage storage;
+  private final CSCFRMLayout layout;
+  private final PackedActionTree<Chances> tree;
+  private final int[][][] nodesOffsets;
+  private final long[] chancesOffsets;
+  private final long[] chancesInfosetIndexes;
+  private final boolean regretsFloored;
+  private final boolean discounting;
+  private final AtomicDoubleArray utilitySum;
+  private final AtomicLong iterations;
+  private final int[] stackNode;
+  private final int[] stackAction;
+  private final long[] stackOffset;
+  private final double[] stackWeight;
+  private final double[][] stackReach;
+  private final double[][] stackUtil;
+  private final double[][] stackActionUtil;
+  private final double[][] stackStrategy;
+
+  /**
+   * Constructor
+   *
+   * @param data the CSCFRM data
+   */
+  public CSCFRMCompiledTrainer(final CSCFRMData<?, Chances> data) {
+    this(data, new CompiledActionTree<>(data.getGameActionTree()));
+  }
+
+  /**
+   * Constructor with an already compiled or mapped tree, that can be shared by the trainers of a
+   * runner
+   *
+   * @param data the CSCFRM data
+   * @param tree the packed action tree of the data's game, with the same nodes indexes
+   */
+  public CSCFRMCompiledTrainer(final CSCFRMData<?, Chances> data,
+      final PackedActionTree<Chances> tree) {
+    final int maxDepth = tree.getMaxDepth();
+    final int maxNbActions = tree.getMaxNbActions();
+    final int nbRounds = this.nbRounds = data.getRoundChancesSizes().length;
+    final int nbPlayers = this.nbPlayers = data.getNbPlayers();
+    this.utilitySum = data.getUtilitySum();
+    this.iterations = data.getIterations();
+    this.data = data;
+    storage = data.getStorage();
+    final CSCFRMLayout layout = this.layout = data.getLayout();
+    this.tree = tree;
+    final int[][][] nodesOffsets = this.nodesOffsets = layout.getNodesOffsets();
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        checkArgument(tree.getNbPlayerNodes(round, player) == nodesOffsets[round][player].length,
+            "The tree doesn't match the data's layout for round %s player %s", round, player);
+      }
+    }
+    chancesOffsets = new long[nbRounds * nbPlayers];
+    chancesInfosetIndexes = new long[nbRounds * nbPlayers];
+    regretsFloored = data.getDiscounting().isRegretsFloored();
+    discounting = data.getDiscounting().isDiscounting();
+    stackNode = new int[maxDepth];
+    stackAction = new int[maxDepth];
+    stackOffset = new long[maxDepth];
+    stackWeight = new double[maxDepth];
+    stackReach = new double[maxDepth][nbPlayers];
+    stackUtil = new double[maxDepth][nbPlayers];
+    stackActionUtil = new double[maxDepth][maxNbActions];
+    stackStrategy = new double[maxDepth][maxNbActions];
+  }
+
+  /**
+   * Iterates CSCFRM for given chances
+   *
+   * @param chances the chances
+   */
+  @Override
+  public final void train(final Chances chances) {
+    final int nbRounds = this.nbRounds;
+    final int nbPlayers = this.nbPlayers;
+    final CSCFRMLayout layout = this.layout;
+    final long[] chancesOffsets = this.chancesOffsets;
+    final long[] chancesInfosetIndexes = this.chancesInfosetIndexes;
+    final int[][] playersChances = chances.getPlayersChances();
+    for (int round = 0; round < nbRounds; round++) {
+      final int[] roundChances = playersChances[round];
+      for (int player = 0; player < nbPlayers; player++) {
+        final int i = round * nbPlayers + player;
+        chancesOffsets[i] = layout.chanceOffset(round, player, roundChances[player]);
+        chancesInfosetIndexes[i] = layout.chanceInfosetIndex(round, player, roundChances[player]);
+      }
+    }
+    final double[] utility = traverse(chances, iterations.get() + 1);
+    final AtomicDoubleArray utilitySum = this.utilitySum;
+    for (int i = 0; i < nbPlayers; i++) {
+      utilitySum.addAndGet(i, utility[i]);
+    }
+    iterations.incrementAndGet();
+  }
+
+  private final double[] traverse(final Chances chances, final long iteration) {
+    final int nbPlayers = this.nbPlayers;
+    final PackedActionTree<Chances> tree = this.tree;
+    final int[][][] nodesOffsets = this.nodesOffsets;
+    final CSCFRMStorage storage = this.storage;
+    final boolean regretsFloored = this.regretsFloored;
+    final int[] stackNode = this.stackNode;
+    final int[] stackAction = this.stackAction;
+    final long[] stackOffset = this.stackOffset;
+    final double[] stackWeight = this.stackWeight;
+    final double[][] stackReach = this.stackReach;
+    final double[][] stackUtil = this.stackUtil;
+    final double[][] stackActionUtil = this.stackActionUtil;
+    final double[][] stackStrategy = this.stackStrategy;
+    final double[] rootReach = stackReach[0];
+    for (int p = 0; p < nbPlayers; p++) {
+      rootReach[p] = 1;
+    }
+    int depth = 0;
+    int node = 0;
+    double[] ret;
+    for (;;) {
+      // Descend to the first terminal node
+      final int type = tree.getType(node);
+      if (type == PAYOUTS_NO_CHANCE) {
+        tree.getPayoutsNoChance(tree.getField(node, INDEX), ret = stackUtil[depth]);
+      } else if (type == CHANCES_PAYOUTS) {
+        tree.getChancesPayouts(tree.getField(node, INDEX)).getPayouts(chances,
+            ret = stackUtil[depth]);
+      } else {
+        final int player = tree.getField(node, PLAYER_INDEX);
+        final int round = tree.getField(node, ROUND);
+        final int index = tree.getField(node, INDEX);
+        final int chancesIndex = round * nbPlayers + player;
+        final int nbChildren = tree.getField(node, NB_ACTIONS);
+        final long offset = chancesOffsets[chancesIndex] + nodesOffsets[round][player][index];
+        if (discounting) {
+          data.discount(chancesInfosetIndexes[chancesIndex] + index, offset, nbChildren,
+              iteration);
+        }
+        final double[] strategy = stackStrategy[depth];
+        double totalRegret = 0;
+        for (int action = 0; action < nbChildren; action++) {
+          // CFR+ floor
+          final double actionRegret = regretsFloored ? storage.floorRegret(offset + action)
+              : storage.getRegret(offset + action);
+          totalRegret += strategy[action] = (actionRegret > 0 ? actionRegret : 0);
+        }
+        final double[] reach = stackReach[depth];
+        final double playerReach = reach[player];
+        if (totalRegret > 0) {
+          for (int action = 0; action < nbChildren; action++) {
+            storage.addStrategySum(offset + action,
+                playerReach * (strategy[action] /= totalRegret));
+          }
+        } else {
+          for (int action = 0; action < nbChildren; action++) {
+            storage.addStrategySum(offset + action,
+                playerReach * (strategy[action] = (1.0d / nbChildren)));
+          }
+        }
+        double weight = 1;
+        for (int p = 0; p < nbPlayers; p++) {
+          if (p != player) {
+            weight *= reach[p];
+          }
+        }
+        final double[] util = stackUtil[depth];
+        for (int p = 0; p < nbPlayers; p++) {
+          util[p] = 0;
+        }
+        stackNode[depth] = node;
+        stackAction[depth] = 0;
+        stackOffset[depth] = offset;
+        stackWeight[depth] = weight;
+        final double[] childReach = stackReach[depth + 1];
+        System.arraycopy(reach, 0, childReach, 0, nbPlayers);
+        childReach[player] *= strategy[0];
+        node = tree.getChild(node, 0);
+        depth++;
+        continue;
+      }
+      // Ascend until a player node has actions left to explore
+      for (;;) {
+        if (depth == 0) {
+          return ret;
+        }
+        final int parentDepth = --depth;
+        final int parent = stackNode[parentDepth];
+        final int player = tree.getField(parent, PLAYER_INDEX);
+        final int nbChildren = tree.getField(parent, NB_ACTIONS);
+        final double[] strategy = stackStrategy[parentDepth];
+        final double[] util = stackUtil[parentDepth];
+        final double[] actionsUtil = stackActionUtil[parentDepth];
+        int action = stackAction[parentDepth];
+        final double actionProba = strategy[action];
+        for (int p = 0; p < nbPlayers; p++) {
+          util[p] += actionProba * ret[p];
+        }
+        actionsUtil[action] = ret[player];
+        if (++action < nbChildren) {
+          stackAction[parentDepth] = action;
+          final double[] reach = stackReach[parentDepth];
+          final double[] childReach = stackReach[depth = parentDepth + 1];
+          childReach[player] = reach[player] * strategy[action];
+          node = tree.getChild(parent, action);
+          break;
+        }
+        final long offset = stackOffset[parentDepth];
+        final double weight = stackWeight[parentDepth];
+        final double playerUtil = util[player];
+        for (action = 0; action < nbChildren; action++) {
+          storage.addRegret(offset + action, weight * (actionsUtil[action] - playerUtil));
+        }
+        ret = util;
+      }
+    }
+  }
+
+}
@@ -10,18 +10,21 @@ import java.io.OutputStream;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.google.common.util.concurrent.AtomicDoubleArray;
 
 import lombok.Getter;
-import net.funkyjava.gametheory.extensiveformgame.ActionChancesData;
 import net.funkyjava.gametheory.extensiveformgame.ActionTree;
 import net.funkyjava.gametheory.extensiveformgame.ActionTreeNodeState.NodeType;
+import net.funkyjava.gametheory.extensiveformgame.ActionTreeStrategy;
 import net.funkyjava.gametheory.extensiveformgame.Game;
 import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
 import net.funkyjava.gametheory.extensiveformgame.PlayerNode;
-import net.funkyjava.gametheory.io.Fillable;
-import net.funkyjava.gametheory.io.IOUtils;
+import net.funkyjava.gametheory.io.BulkFillable;
+import net.funkyjava.gametheory.io.ChannelReader;
+import net.funkyjava.gametheory.io.ChannelWriter;
 
 /**
  * 
@@ -30,7 +33,20 @@ import net.funkyjava.gametheory.io.IOUtils;
  * @param <Id> the player nodes id class
  * @param <Chances> the chances class
  */
-public class CSCFRMData<Id, Chances> implements Fillable {
+public class CSCFRMData<Id, Chances> implements BulkFillable {
+
+  /**
+   * Marks the state written since the discounting policy is saved
+   */
+  private static final long STATE_MAGIC = 0x4353434652535441L;
+  private static final int STATE_VERSION = 1;
+  /**
+   * Log2 of the number of iteration stamps per lazily allocated chunk
+   */
+  private static final int STAMPS_CHUNK_SHIFT = 10;
+  private static final int STAMPS_CHUNK_SIZE = 1 << STAMPS_CHUNK_SHIFT;
+  private static final long STAMPS_CHUNK_MASK = STAMPS_CHUNK_SIZE - 1;
+
   /**
    * Number of CSCFRM iterations performed so long
    */
@@ -42,10 +58,15 @@ public class CSCFRMData<Id, Chances> implements Fillable {
   @Getter
   private final AtomicDoubleArray utilitySum;
   /**
-   * The CSCFRM nodes of the game indexed by round, player, chance, actions state
+   * Layout of the CSCFRM values indexed by round, player, chance, actions state
+   */
+  @Getter
+  private final CSCFRMLayout layout;
+  /**
+   * Storage of the regret sums and strategy sums of the game
    */
   @Getter
-  private final CSCFRMNode[][][][] nodes;
+  private final CSCFRMStorage storage;
   /**
    * Chances sizes indexed by round, player
    */
@@ -62,50 +83,320 @@ public class CSCFRMData<Id, Chances> implements Fillable {
   @Getter
   private final ActionTree<Id, Chances> gameActionTree;
 
+  /**
+   * Regret update and averaging policy
+   */
   @Getter
-  private final Map<LinkedActionTreeNode<Id, ?>, CSCFRMNode[]> nodesForEachActionNode;
+  private final CSCFRMDiscounting discounting;
+  /**
+   * Last iteration that updated each infoset, indexed by {@link CSCFRMLayout} infoset index, by
+   * chunks allocated on the first visit of one of their infosets : like with a
+   * {@link CSCFRMChunkedStorage}, memory only grows with the reached infosets. Null when the policy
+   * doesn't discount. Trainers claim the discount of an infoset with CAS, so that it is applied
+   * once even when they visit the same infoset concurrently.
+   */
+  private final AtomicReferenceArray<AtomicLongArray> stamps;
+  /**
+   * Stamp of the infosets of unallocated chunks
+   */
+  private volatile long stampsBase = 0;
 
   /**
-   * Constructor. Builds the action tree from the game and generates the CSCFRM nodes.
+   * Constructor. Builds the action tree from the game and allocates the CSCFRM values in a flat
+   * {@link CSCFRMDoubleArrayStorage}.
    * 
    * @param game
    */
   public CSCFRMData(final Game<Id, Chances> game) {
+    this(game, CSCFRMDoubleArrayStorage::new);
+  }
+
+  /**
+   * Constructor. Builds the action tree from the game and allocates the CSCFRM values in the
+   * storage created by the provider.
+   * 
+   * @param game the game
+   * @param storageProvider the storage provider, e.g. {@code CSCFRMFloatArrayStorage::new} to
+   *        halve the memory footprint
+   */
+  public CSCFRMData(final Game<Id, Chances> game, final CSCFRMStorageProvider storageProvider) {
+    this(game, storageProvider, CSCFRMDiscounting.cfrPlus());
+  }
+
+  /**
+   * Constructor. Builds the action tree from the game and allocates the CSCFRM values in the
+   * storage created by the provider.
+   * 
+   * @param game the game
+   * @param storageProvider the storage provider
+   * @param discounting the regret update and averaging policy of the trainers
+   */
+  public CSCFRMData(final Game<Id, Chances> game, final CSCFRMStorageProvider storageProvider,
+      final CSCFRMDiscounting discounting) {
+    this.discounting = discounting;
     this.nbPlayers = game.getNbPlayers();
     this.roundChancesSizes = game.roundChancesSizes();
     final ActionTree<Id, Chances> actionTree = this.gameActionTree = new ActionTree<>(game);
-    this.nodes = ActionChancesData.createRoundPlayerChanceNodeData(actionTree, game,
-        new CSCFRMNodeProvider<Id>());
+    final CSCFRMLayout layout = this.layout = new CSCFRMLayout(actionTree, roundChancesSizes);
+    this.storage = storageProvider.getStorage(layout);
     final int nbPlayers = game.getNbPlayers();
     this.utilitySum = new AtomicDoubleArray(nbPlayers);
-    this.nodesForEachActionNode = nodesForEachActionNode();
+    if (discounting.isDiscounting()) {
+      final long nbChunks = (layout.getNbInfosets() + STAMPS_CHUNK_MASK) >>> STAMPS_CHUNK_SHIFT;
+      checkArgument(nbChunks <= Integer.MAX_VALUE - 8,
+          "Too many infosets (%s) for discounting iteration stamps", layout.getNbInfosets());
+      this.stamps = new AtomicReferenceArray<>((int) nbChunks);
+    } else {
+      this.stamps = null;
+    }
   }
 
   @Override
   public void fill(InputStream is) throws IOException {
+    fillState(is);
+    storage.fill(is);
+  }
+
+  @Override
+  public void write(OutputStream os) throws IOException {
+    writeState(os);
+    storage.write(os);
+  }
+
+  @Override
+  public void fill(ChannelReader reader) throws IOException {
+    fillState(reader.getDataInputStream());
+    storage.fill(reader);
+  }
+
+  @Override
+  public void write(ChannelWriter writer) throws IOException {
+    writeState(writer.getDataOutputStream());
+    storage.write(writer);
+  }
+
+  /**
+   * Read the iterations count, the utility sums and the discounting policy, without the storage
+   * values. Used with storages that persist their values by themselves like
+   * {@link CSCFRMMappedStorage}. The policy must be the one of this data. States saved before the
+   * policy was written start with the iterations count and were trained with CFR+.
+   * 
+   * @param is the input stream
+   * @throws IOException
+   */
+  public void fillState(InputStream is) throws IOException {
+    fillStateValues(is);
+    if (stamps != null) {
+      // Saved values have no pending discount
+      resetStamps(iterations.get());
+    }
+  }
+
+  /**
+   * Read the iterations count, the utility sums and the discounting policy in the
+   * {@link #fillState(InputStream)} format, without resetting the iteration stamps. Used by
+   * {@link CSCFRMCheckpointer} whose records hold the stamps.
+   * 
+   * @param is the input stream
+   * @throws IOException
+   */
+  void fillStateValues(InputStream is) throws IOException {
     final DataInputStream dis = new DataInputStream(is);
-    iterations.set(dis.readLong());
+    final long first = dis.readLong();
+    final boolean hasPolicy = first == STATE_MAGIC;
+    if (hasPolicy) {
+      final int version = dis.readInt();
+      checkArgument(version == STATE_VERSION, "Unknown CSCFRM state version %s", version);
+    }
+    final long iterations = hasPolicy ? dis.readLong() : first;
+    this.iterations.set(iterations);
     final int nbPlayers = this.nbPlayers;
     final AtomicDoubleArray utilitySum = this.utilitySum;
     for (int i = 0; i < nbPlayers; i++) {
       utilitySum.set(i, dis.readDouble());
     }
-    IOUtils.fill(is, nodes);
+    final CSCFRMDiscounting discounting =
+        hasPolicy ? CSCFRMDiscounting.read(dis) : CSCFRMDiscounting.cfrPlus();
+    checkArgument(discounting.equals(this.discounting),
+        "Saved data was trained with %s, expected %s", discounting, this.discounting);
   }
 
-  @Override
-  public void write(OutputStream os) throws IOException {
+  /**
+   * Write the iterations count, the utility sums and the discounting policy, without the storage
+   * values. Pending discounts are applied to the storage first so that the iteration stamps don't
+   * need to be saved : trainers must not be running.
+   * 
+   * @param os the output stream
+   * @throws IOException
+   */
+  public void writeState(OutputStream os) throws IOException {
+    applyPendingDiscounts();
+    writeStateValues(os);
+  }
+
+  /**
+   * Write the iterations count, the utility sums and the discounting policy in the
+   * {@link #writeState(OutputStream)} format, without applying the pending discounts. Used by
+   * {@link CSCFRMCheckpointer} while trainers are running.
+   * 
+   * @param os the output stream
+   * @throws IOException
+   */
+  void writeStateValues(OutputStream os) throws IOException {
     final DataOutputStream dos = new DataOutputStream(os);
+    dos.writeLong(STATE_MAGIC);
+    dos.writeInt(STATE_VERSION);
     dos.writeLong(iterations.longValue());
     final AtomicDoubleArray utilitySum = this.utilitySum;
     for (int i = 0; i < nbPlayers; i++) {
       dos.writeDouble(utilitySum.get(i));
     }
-    IOUtils.write(os, nodes);
+    discounting.write(dos);
   }
 
   /**
-   * Builds the map between each action node and the array of CSCFRM nodes for all chances
+   * Apply the pending discounts of an infoset before updating it at an iteration. Does nothing when
+   * the policy doesn't discount.
+   * 
+   * @param infosetIndex the infoset index in the layout
+   * @param offset the offset of the infoset's values
+   * @param nbActions the infoset's number of actions
+   * @param iteration the current iteration, starting at 1
+   */
+  public final void discount(final long infosetIndex, final long offset, final int nbActions,
+      final long iteration) {
+    if (stamps == null) {
+      return;
+    }
+    final AtomicLongArray chunk = stampsChunk(infosetIndex);
+    final int index = (int) (infosetIndex & STAMPS_CHUNK_MASK);
+    long stamp;
+    do {
+      stamp = chunk.get(index);
+      if (stamp >= iteration) {
+        return;
+      }
+      // Claim the discount from the stamp to this iteration
+    } while (!chunk.compareAndSet(index, stamp, iteration));
+    if (stamp == 0) {
+      // Never updated : all values are zero
+      return;
+    }
+    discountValues(offset, nbActions, stamp, iteration);
+  }
+
+  private final void discountValues(final long offset, final int nbActions, final long stamp,
+      final long iteration) {
+    final CSCFRMDiscounting discounting = this.discounting;
+    final CSCFRMStorage storage = this.storage;
+    final double positive = discounting.positiveRegretsDiscount(stamp, iteration);
+    final double negative = discounting.negativeRegretsDiscount(stamp, iteration);
+    final double strategy = discounting.strategyDiscount(stamp, iteration);
+    for (int action = 0; action < nbActions; action++) {
+      final long actionOffset = offset + action;
+      storage.scaleRegret(actionOffset, positive, negative);
+      storage.scaleStrategySum(actionOffset, strategy);
+    }
+  }
+
+  /**
+   * Iteration stamp of an infoset
+   * 
+   * @param infosetIndex the infoset index in the layout
+   * @return the last iteration that updated the infoset, or 0 when the policy doesn't discount
+   */
+  final long getStamp(final long infosetIndex) {
+    final AtomicReferenceArray<AtomicLongArray> stamps = this.stamps;
+    if (stamps == null) {
+      return 0;
+    }
+    final AtomicLongArray chunk = stamps.get((int) (infosetIndex >>> STAMPS_CHUNK_SHIFT));
+    return chunk == null ? stampsBase : chunk.get((int) (infosetIndex & STAMPS_CHUNK_MASK));
+  }
+
+  /**
+   * Set the iteration stamp of an infoset. Does nothing when the policy doesn't discount.
+   * 
+   * @param infosetIndex the infoset index in the layout
+   * @param stamp the last iteration that updated the infoset
+   */
+  final void setStamp(final long infosetIndex, final long stamp) {
+    if (stamps != null) {
+      stampsChunk(infosetIndex).set((int) (infosetIndex & STAMPS_CHUNK_MASK), stamp);
+    }
+  }
+
+  /**
+   * Get the stamps chunk of an infoset, allocating it when required
+   */
+  private final AtomicLongArray stampsChunk(final long infosetIndex) {
+    final AtomicReferenceArray<AtomicLongArray> stamps = this.stamps;
+    final int chunkIndex = (int) (infosetIndex >>> STAMPS_CHUNK_SHIFT);
+    final AtomicLongArray chunk = stamps.get(chunkIndex);
+    if (chunk != null) {
+      return chunk;
+    }
+    final AtomicLongArray created = new AtomicLongArray(STAMPS_CHUNK_SIZE);
+    final long base = stampsBase;
+    if (base != 0) {
+      for (int i = 0; i < STAMPS_CHUNK_SIZE; i++) {
+        created.set(i, base);
+      }
+    }
+    return stamps.compareAndSet(chunkIndex, null, created) ? created : stamps.get(chunkIndex);
+  }
+
+  /**
+   * Release all stamps chunks, the infosets stamps being all set to the same iteration
+   */
+  private final void resetStamps(final long stamp) {
+    final AtomicReferenceArray<AtomicLongArray> stamps = this.stamps;
+    final int nbChunks = stamps.length();
+    for (int i = 0; i < nbChunks; i++) {
+      stamps.set(i, null);
+    }
+    stampsBase = stamp;
+  }
+
+  /**
+   * Apply the pending discounts of all infosets up to the current iterations count and release the
+   * iteration stamps chunks. Trainers must not be running.
+   */
+  public void applyPendingDiscounts() {
+    if (stamps == null) {
+      return;
+    }
+    final long iteration = iterations.get();
+    final CSCFRMLayout layout = this.layout;
+    final int[][] roundChancesSizes = this.roundChancesSizes;
+    final int nbRounds = roundChancesSizes.length;
+    final int nbPlayers = this.nbPlayers;
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final int nbChances = roundChancesSizes[round][player];
+        final int[] offsets = layout.getNodesOffsets()[round][player];
+        final int[] nbActions = layout.getNodesNbActions()[round][player];
+        final int nbNodes = offsets.length;
+        for (int chance = 0; chance < nbChances; chance++) {
+          final long chanceOffset = layout.chanceOffset(round, player, chance);
+          final long chanceIndex = layout.chanceInfosetIndex(round, player, chance);
+          for (int node = 0; node < nbNodes; node++) {
+            // Read without allocating the chunks of the unreached infosets
+            final long stamp = getStamp(chanceIndex + node);
+            if (stamp != 0 && stamp < iteration) {
+              discountValues(chanceOffset + offsets[node], nbActions[node], stamp, iteration);
+            }
+          }
+        }
+      }
+    }
+    resetStamps(iteration);
+  }
+
+  /**
+   * Builds the map between each action node and the array of CSCFRM node views for all chances.
+   * The views are created on each call : use {@link #nodesFor(LinkedActionTreeNode)} to only view
+   * some nodes.
    * 
    * @return the CSCFRM nodes associated with each action node
    */
@@ -122,10 +413,10 @@ public class CSCFRMData<Id, Chances> implements Fillable {
   }
 
   /**
-   * Get all CSCFRM nodes for a specified action node
+   * Get views on all CSCFRM nodes for a specified action node
    * 
    * @param node the action node
-   * @return array of CSCFRM nodes for all chances
+   * @return array of CSCFRM node views for all chances
    */
   public CSCFRMNode[] nodesFor(final LinkedActionTreeNode<Id, ?> node) {
     checkArgument(node.getNodeType() == NodeType.PLAYER, "CSCFRM data only for player nodes");
@@ -133,15 +424,45 @@ public class CSCFRMData<Id, Chances> implements Fillable {
     final int round = pNode.getRound();
     final int player = pNode.getPlayer();
     final int index = node.getPlayerRoundActionIndex();
+    final int nbActions = pNode.getNbActions();
     final int nbChances = roundChancesSizes[round][player];
+    final CSCFRMLayout layout = this.layout;
+    final CSCFRMStorage storage = this.storage;
     final CSCFRMNode[] res = new CSCFRMNode[nbChances];
-    final CSCFRMNode[][] playerNodes = nodes[round][player];
     for (int i = 0; i < nbChances; i++) {
-      res[i] = playerNodes[i][index];
+      res[i] = new CSCFRMNode(storage, layout.nodeOffset(round, player, i, index), nbActions);
     }
     return res;
   }
 
+  /**
+   * View of the average strategy of the action tree's nodes, for example to fix the trunk of a
+   * {@link net.funkyjava.gametheory.extensiveformgame.SubgameDecomposition} or to provide a
+   * {@link net.funkyjava.gametheory.extensiveformgame.SubgameSolution}. Nodes that were never
+   * reached play uniformly.
+   *
+   * @return the average strategy view
+   */
+  public ActionTreeStrategy<Id> averageStrategy() {
+    final CSCFRMLayout layout = this.layout;
+    final CSCFRMStorage storage = this.storage;
+    return (node, chance) -> {
+      final PlayerNode<Id> pNode = node.getPlayerNode();
+      final int nbActions = pNode.getNbActions();
+      final long offset = layout.nodeOffset(pNode.getRound(), pNode.getPlayer(), chance,
+          node.getPlayerRoundActionIndex());
+      final double[] res = new double[nbActions];
+      double tot = 0;
+      for (int i = 0; i < nbActions; i++) {
+        tot += res[i] = storage.getStrategySum(offset + i);
+      }
+      for (int i = 0; i < nbActions; i++) {
+        res[i] = tot > 0 ? res[i] / tot : 1.0d / nbActions;
+      }
+      return res;
+    };
+  }
+
   /**
    * Compute the utility average of the game in the current state
    * 
@@ -157,4 +478,47 @@ public class CSCFRMData<Id, Chances> implements Fillable {
     }
     return res;
   }
+
+  /**
+   * Convergence metric : for each player, sum over all its infosets of the positive part of the
+   * maximum regret sum, divided by the number of iterations. It bounds the players' average regret
+   * and decreases toward zero as the average strategies converge.
+   * 
+   * @return the average regrets indexed by player
+   */
+  public double[] getAverageRegrets() {
+    final int nbPlayers = this.nbPlayers;
+    final double[] res = new double[nbPlayers];
+    final long iterations = this.iterations.get();
+    if (iterations == 0) {
+      return res;
+    }
+    final CSCFRMLayout layout = this.layout;
+    final CSCFRMStorage storage = this.storage;
+    final int[][] roundChancesSizes = this.roundChancesSizes;
+    final int nbRounds = roundChancesSizes.length;
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final int nbChances = roundChancesSizes[round][player];
+        final int[] offsets = layout.getNodesOffsets()[round][player];
+        final int[] nbActions = layout.getNodesNbActions()[round][player];
+        final int nbNodes = offsets.length;
+        double sum = 0;
+        for (int chance = 0; chance < nbChances; chance++) {
+          final long chanceOffset = layout.chanceOffset(round, player, chance);
+          for (int node = 0; node < nbNodes; node++) {
+            final long offset = chanceOffset + offsets[node];
+            final int nodeNbActions = nbActions[node];
+            double max = 0;
+            for (int action = 0; action < nodeNbActions; action++) {
+              max = Math.max(max, storage.getRegret(offset + action));
+            }
+            sum += max;
+          }
+        }
+        res[player] += sum / iterations;
+      }
+    }
+    return res;
+  }
 }
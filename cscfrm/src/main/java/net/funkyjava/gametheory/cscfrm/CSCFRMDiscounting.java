@@ -0,0 +1,253 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Regret update and averaging policy of the CSCFRM trainers, following the discounted CFR family :
+ * after iteration t, positive regret sums are multiplied by t^α / (t^α + 1), negative regret sums
+ * by t^β / (t^β + 1) and strategy sums by (t / (t + 1))^γ. An infinite exponent disables the
+ * discounting, and CFR+ floors the regret sums to zero.
+ *
+ * Discounts are not applied to the whole tables after each iteration : each infoset has an
+ * iteration stamp in {@link CSCFRMData} and trainers apply the product of the pending discounts
+ * when they update it. The products are computed in closed form or with a precomputed table and
+ * an asymptotic expansion, so that catching up is O(1) whatever the number of skipped iterations.
+ *
+ * @author Pierre Mardon
+ *
+ */
+@EqualsAndHashCode(exclude = {"alphaLogSums", "betaLogSums"})
+@ToString(exclude = {"alphaLogSums", "betaLogSums"})
+public final class CSCFRMDiscounting {
+
+  /**
+   * Number of exactly computed logarithm sums of the regrets discount products
+   */
+  private static final int TABLE_SIZE = 4096;
+  private static final int MAX_SERIES_TERMS = 1000;
+
+  /**
+   * When true, regret sums are floored to zero after each update like in CFR+
+   */
+  @Getter
+  private final boolean regretsFloored;
+  /**
+   * Positive regret sums discounting exponent α
+   */
+  @Getter
+  private final double alpha;
+  /**
+   * Negative regret sums discounting exponent β
+   */
+  @Getter
+  private final double beta;
+  /**
+   * Strategy sums discounting exponent γ
+   */
+  @Getter
+  private final double gamma;
+  private final double[] alphaLogSums;
+  private final double[] betaLogSums;
+
+  /**
+   * Constructor
+   *
+   * @param regretsFloored when true, regret sums are floored to zero like in CFR+
+   * @param alpha the positive regret sums exponent, >= 0 or infinite
+   * @param beta the negative regret sums exponent, >= 0 or infinite
+   * @param gamma the strategy sums exponent, >= 0
+   */
+  public CSCFRMDiscounting(final boolean regretsFloored, final double alpha, final double beta,
+      final double gamma) {
+    checkArgument(alpha >= 0, "Alpha must be >= 0");
+    checkArgument(beta >= 0, "Beta must be >= 0");
+    checkArgument(gamma >= 0 && gamma < Double.POSITIVE_INFINITY,
+        "Gamma must be >= 0 and finite");
+    this.regretsFloored = regretsFloored;
+    this.alpha = alpha;
+    this.beta = beta;
+    this.gamma = gamma;
+    this.alphaLogSums = logSumsTable(alpha);
+    this.betaLogSums = logSumsTable(beta);
+  }
+
+  /**
+   * CFR+ as historically implemented by {@link CSCFRMTrainer} : regrets are floored, nothing is
+   * discounted and the strategy sums are uniformly weighted
+   *
+   * @return the CFR+ policy
+   */
+  public static CSCFRMDiscounting cfrPlus() {
+    return new CSCFRMDiscounting(true, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, 0);
+  }
+
+  /**
+   * Linear CFR : iteration t's regrets and strategy are weighted by t
+   *
+   * @return the linear CFR policy
+   */
+  public static CSCFRMDiscounting linear() {
+    return new CSCFRMDiscounting(false, 1, 1, 1);
+  }
+
+  /**
+   * Discounted CFR. α = 1.5, β = 0, γ = 2 is a good default for poker games.
+   *
+   * @param alpha the positive regret sums exponent
+   * @param beta the negative regret sums exponent
+   * @param gamma the strategy sums exponent
+   * @return the DCFR policy
+   */
+  public static CSCFRMDiscounting discounted(final double alpha, final double beta,
+      final double gamma) {
+    return new CSCFRMDiscounting(false, alpha, beta, gamma);
+  }
+
+  /**
+   * Does this policy discount anything. When false, trainers don't need iteration stamps.
+   *
+   * @return true when regret sums or strategy sums are discounted
+   */
+  public boolean isDiscounting() {
+    return alpha < Double.POSITIVE_INFINITY || beta < Double.POSITIVE_INFINITY || gamma > 0;
+  }
+
+  /**
+   * Product of the positive regret sums discounts of iterations from to to - 1
+   *
+   * @param from the infoset's stamp : last iteration that updated it
+   * @param to the current iteration
+   * @return the factor to apply to positive regret sums
+   */
+  public double positiveRegretsDiscount(final long from, final long to) {
+    return regretsDiscount(alpha, alphaLogSums, from, to);
+  }
+
+  /**
+   * Product of the negative regret sums discounts of iterations from to to - 1
+   *
+   * @param from the infoset's stamp : last iteration that updated it
+   * @param to the current iteration
+   * @return the factor to apply to negative regret sums
+   */
+  public double negativeRegretsDiscount(final long from, final long to) {
+    return regretsDiscount(beta, betaLogSums, from, to);
+  }
+
+  /**
+   * Product of the strategy sums discounts of iterations from to to - 1 : (from / to)^γ
+   *
+   * @param from the infoset's stamp : last iteration that updated it
+   * @param to the current iteration
+   * @return the factor to apply to strategy sums
+   */
+  public double strategyDiscount(final long from, final long to) {
+    final double gamma = this.gamma;
+    if (gamma == 0 || from >= to) {
+      return 1;
+    }
+    if (from <= 0) {
+      return 0;
+    }
+    final double ratio = (double) from / to;
+    return gamma == 1 ? ratio : gamma == 2 ? ratio * ratio : Math.pow(ratio, gamma);
+  }
+
+  private static double regretsDiscount(final double exponent, final double[] logSums,
+      final long from, final long to) {
+    if (exponent == Double.POSITIVE_INFINITY || from >= to) {
+      return 1;
+    }
+    final long first = Math.max(from, 1);
+    if (exponent == 0) {
+      // Each iteration halves the sums
+      final long nbHalvings = to - first;
+      return nbHalvings > 1100 ? 0 : Math.scalb(1.0d, (int) -nbHalvings);
+    }
+    if (exponent == 1) {
+      return (double) first / to;
+    }
+    return Math.exp(logSum(exponent, logSums, first - 1) - logSum(exponent, logSums, to - 1));
+  }
+
+  /**
+   * Sum of log(1 + k^-e) for k from 1 to n. The last table entry holds the sum up to
+   * {@link #TABLE_SIZE} minus the primitive of the remaining terms at {@link #TABLE_SIZE} + 1/2.
+   */
+  private static double logSum(final double exponent, final double[] logSums, final long n) {
+    if (n <= TABLE_SIZE) {
+      return logSums[(int) n];
+    }
+    // Midpoint approximation of the remaining sum
+    return logSums[TABLE_SIZE + 1] + logPrimitive(exponent, n + 0.5);
+  }
+
+  /**
+   * Primitive of log(1 + x^-e) for x > 1, expanded as the alternating series of the primitives of
+   * (-1)^(m+1) x^-me / m. Only one power is computed, the terms are obtained by multiplications.
+   */
+  private static double logPrimitive(final double exponent, final double x) {
+    final double y = Math.pow(x, -exponent);
+    double res = 0;
+    double xPow = x;
+    for (int m = 1; m <= MAX_SERIES_TERMS; m++) {
+      xPow *= y;
+      final double c = m * exponent;
+      final double primitive = c == 1 ? Math.log(x) : xPow / (1 - c);
+      final double term = (m % 2 == 1 ? primitive : -primitive) / m;
+      res += term;
+      if (Math.abs(term) <= 1e-17 * Math.abs(res)) {
+        break;
+      }
+    }
+    return res;
+  }
+
+  private static double[] logSumsTable(final double exponent) {
+    if (exponent == 0 || exponent == 1 || exponent == Double.POSITIVE_INFINITY) {
+      return null;
+    }
+    final double[] res = new double[TABLE_SIZE + 2];
+    for (int k = 1; k <= TABLE_SIZE; k++) {
+      res[k] = res[k - 1] + Math.log1p(Math.pow(k, -exponent));
+    }
+    res[TABLE_SIZE + 1] = res[TABLE_SIZE] - logPrimitive(exponent, TABLE_SIZE + 0.5);
+    return res;
+  }
+
+  /**
+   * Write the policy parameters
+   *
+   * @param dos the output
+   * @throws IOException
+   */
+  public void write(final DataOutputStream dos) throws IOException {
+    dos.writeBoolean(regretsFloored);
+    dos.writeDouble(alpha);
+    dos.writeDouble(beta);
+    dos.writeDouble(gamma);
+  }
+
+  /**
+   * Read policy parameters written by {@link #write(DataOutputStream)}
+   *
+   * @param dis the input
+   * @return the policy
+   * @throws IOException
+   */
+  public static CSCFRMDiscounting read(final DataInputStream dis) throws IOException {
+    final boolean regretsFloored = dis.readBoolean();
+    final double alpha = dis.readDouble();
+    final double beta = dis.readDouble();
+    final double gamma = dis.readDouble();
+    return new CSCFRMDiscounting(regretsFloored, alpha, beta, gamma);
+  }
+}
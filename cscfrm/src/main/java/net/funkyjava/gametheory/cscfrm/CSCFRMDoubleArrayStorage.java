@@ -0,0 +1,126 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+
+import lombok.Getter;
+import net.funkyjava.gametheory.io.ChannelReader;
+import net.funkyjava.gametheory.io.ChannelWriter;
+
+/**
+ * Heap storage holding all regret sums in one double array and all strategy sums in another one
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMDoubleArrayStorage implements CSCFRMStorage {
+
+  @Getter
+  private final CSCFRMLayout layout;
+  private final double[] regretSum;
+  private final double[] strategySum;
+
+  /**
+   * Constructor
+   *
+   * @param layout the layout of the values
+   */
+  public CSCFRMDoubleArrayStorage(final CSCFRMLayout layout) {
+    final long size = layout.getSize();
+    checkArgument(size <= Integer.MAX_VALUE - 8,
+        "Layout size %s is too large for an array storage", size);
+    this.layout = layout;
+    this.regretSum = new double[(int) size];
+    this.strategySum = new double[(int) size];
+  }
+
+  @Override
+  public final double getRegret(final long offset) {
+    return regretSum[(int) offset];
+  }
+
+  @Override
+  public final void setRegret(final long offset, final double value) {
+    regretSum[(int) offset] = value;
+  }
+
+  @Override
+  public final void addRegret(final long offset, final double value) {
+    regretSum[(int) offset] += value;
+  }
+
+  @Override
+  public final double getStrategySum(final long offset) {
+    return strategySum[(int) offset];
+  }
+
+  @Override
+  public final void setStrategySum(final long offset, final double value) {
+    strategySum[(int) offset] = value;
+  }
+
+  @Override
+  public final void addStrategySum(final long offset, final double value) {
+    strategySum[(int) offset] += value;
+  }
+
+  @Override
+  public void fillNode(final ChannelReader reader, final long offset, final int nbActions)
+      throws IOException {
+    reader.readDoubles(regretSum, (int) offset, nbActions);
+    reader.readDoubles(strategySum, (int) offset, nbActions);
+  }
+
+  @Override
+  public void writeNode(final ChannelWriter writer, final long offset, final int nbActions)
+      throws IOException {
+    writer.writeDoubles(regretSum, (int) offset, nbActions);
+    writer.writeDoubles(strategySum, (int) offset, nbActions);
+  }
+
+  @Override
+  public void fillChance(final ChannelReader reader, final long chanceOffset, final int[] offsets,
+      final int[] nbActions) throws IOException {
+    final double[] regretSum = this.regretSum;
+    final double[] strategySum = this.strategySum;
+    final int nbNodes = offsets.length;
+    int nbValues = 0;
+    for (int node = 0; node < nbNodes; node++) {
+      nbValues += 2 * nbActions[node];
+    }
+    final double[] values = new double[nbValues];
+    reader.readDoubles(values);
+    int index = 0;
+    for (int node = 0; node < nbNodes; node++) {
+      final int start = (int) chanceOffset + offsets[node];
+      final int nb = nbActions[node];
+      System.arraycopy(values, index, regretSum, start, nb);
+      System.arraycopy(values, index + nb, strategySum, start, nb);
+      index += 2 * nb;
+    }
+  }
+
+  @Override
+  public void writeChance(final ChannelWriter writer, final long chanceOffset, final int[] offsets,
+      final int[] nbActions) throws IOException {
+    final double[] regretSum = this.regretSum;
+    final double[] strategySum = this.strategySum;
+    final int nbNodes = offsets.length;
+    int nbValues = 0;
+    for (int node = 0; node < nbNodes; node++) {
+      nbValues += 2 * nbActions[node];
+    }
+    final double[] values = new double[nbValues];
+    int index = 0;
+    for (int node = 0; node < nbNodes; node++) {
+      final int start = (int) chanceOffset + offsets[node];
+      final int nb = nbActions[node];
+      System.arraycopy(regretSum, start, values, index, nb);
+      System.arraycopy(strategySum, start, values, index + nb, nb);
+      index += 2 * nb;
+    }
+    writer.writeDoubles(values);
+  }
+
+}
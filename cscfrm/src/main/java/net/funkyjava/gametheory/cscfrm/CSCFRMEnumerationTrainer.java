@@ -0,0 +1,304 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.AtomicDoubleArray;
+
+import lombok.Getter;
+import net.funkyjava.gametheory.extensiveformgame.ActionTree;
+import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
+import net.funkyjava.gametheory.extensiveformgame.PlayerNode;
+
+/**
+ * Full CFR trainer : each iteration walks the tree for all the chances of a
+ * {@link CSCFRMChancesEnumeration} weighted by their probability instead of sampling them, so it
+ * only suits games with few chances like preflop push/fold.
+ *
+ * The strategies of all infosets are computed first, then the enumeration parts are split in
+ * contiguous ranges walked in parallel by workers that accumulate their regrets and strategy sums
+ * updates in their own arrays. The workers updates are finally added to the storage in a fixed
+ * order, so that the results don't depend on the threads scheduling. Like
+ * {@link CSCFRMVectorTrainer}, regret sums are expectations : data should not be trained
+ * alternately by this trainer and a sampling one. Updates follow the data's
+ * {@link CSCFRMDiscounting} policy.
+ *
+ * The chances provided to {@link #train(CSCFRMChances)} are ignored, so this trainer should be run
+ * on a single thread.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances class
+ */
+public class CSCFRMEnumerationTrainer<Chances extends CSCFRMChances>
+    implements CSCFRMChancesTrainer<Chances> {
+
+  private final class Worker {
+
+    private final double[] regretDeltas = new double[size];
+    private final double[] strategyDeltas = new double[size];
+    private final double[] utility = new double[nbPlayers];
+    private final long[][] chancesOffsets = new long[nbRounds][nbPlayers];
+    private final double[][] depthReach = new double[maxDepth][nbPlayers];
+    private final double[][] depthUtil = new double[maxDepth][nbPlayers];
+    private final double[][] depthActionUtil = new double[maxDepth][maxNbActions];
+    private final int firstPart;
+    private final int lastPart;
+    private double weight;
+
+    private Worker(final int firstPart, final int lastPart) {
+      this.firstPart = firstPart;
+      this.lastPart = lastPart;
+    }
+
+    private final void run() {
+      Arrays.fill(regretDeltas, 0);
+      Arrays.fill(strategyDeltas, 0);
+      Arrays.fill(utility, 0);
+      for (int part = firstPart; part < lastPart; part++) {
+        enumeration.enumerate(part, this::train);
+      }
+    }
+
+    private final void train(final Chances chances, final double weight) {
+      final int nbPlayers = CSCFRMEnumerationTrainer.this.nbPlayers;
+      final CSCFRMLayout layout = CSCFRMEnumerationTrainer.this.layout;
+      final long[][] chancesOffsets = this.chancesOffsets;
+      final int[][] playersChances = chances.getPlayersChances();
+      for (int round = 0; round < nbRounds; round++) {
+        final int[] roundChances = playersChances[round];
+        final long[] roundChancesOffsets = chancesOffsets[round];
+        for (int player = 0; player < nbPlayers; player++) {
+          roundChancesOffsets[player] = layout.chanceOffset(round, player, roundChances[player]);
+        }
+      }
+      this.weight = weight;
+      final double[] rootReach = depthReach[0];
+      for (int p = 0; p < nbPlayers; p++) {
+        rootReach[p] = 1;
+      }
+      final double[] util = rec(0, rootNode, chances);
+      final double[] utility = this.utility;
+      for (int p = 0; p < nbPlayers; p++) {
+        utility[p] += weight * util[p];
+      }
+    }
+
+    private final double[] rec(final int depth, final LinkedActionTreeNode<?, Chances> node,
+        final Chances chances) {
+      switch (node.getNodeType()) {
+
+        case PAYOUTS_NO_CHANCE:
+          return node.getPayoutsNoChance();
+
+        case CHANCES_PAYOUTS:
+          final double[] payouts = depthUtil[depth];
+          node.getChancesPayouts().getPayouts(chances, payouts);
+          return payouts;
+
+        case PLAYER:
+          final int nbPlayers = CSCFRMEnumerationTrainer.this.nbPlayers;
+          final PlayerNode<?> pNode = node.getPlayerNode();
+          final int index = node.getPlayerRoundActionIndex();
+          final int round = pNode.getRound();
+          final int player = pNode.getPlayer();
+          final int offset =
+              (int) (chancesOffsets[round][player] + nodesOffsets[round][player][index]);
+          final int nbChildren = pNode.getNbActions();
+          final LinkedActionTreeNode<?, Chances>[] children = node.getChildren();
+          final double[] strategy = CSCFRMEnumerationTrainer.this.strategy;
+          final double[] reach = depthReach[depth];
+          final double[] util = depthUtil[depth];
+          final double[] actionsUtil = depthActionUtil[depth];
+          final int nextDepth = depth + 1;
+          final double[] nextReach = depthReach[nextDepth];
+          final double playerReach = reach[player];
+          double opponentsReach = weight;
+          for (int p = 0; p < nbPlayers; p++) {
+            util[p] = 0;
+            if (p != player) {
+              opponentsReach *= reach[p];
+            }
+            nextReach[p] = reach[p];
+          }
+          for (int action = 0; action < nbChildren; action++) {
+            final double actionProba = strategy[offset + action];
+            nextReach[player] = playerReach * actionProba;
+            final double[] childUtil = rec(nextDepth, children[action], chances);
+            actionsUtil[action] = childUtil[player];
+            for (int p = 0; p < nbPlayers; p++) {
+              util[p] += actionProba * childUtil[p];
+            }
+          }
+          final double[] regretDeltas = this.regretDeltas;
+          final double[] strategyDeltas = this.strategyDeltas;
+          final double playerUtil = util[player];
+          final double strategyWeight = weight * playerReach;
+          for (int action = 0; action < nbChildren; action++) {
+            regretDeltas[offset + action] += opponentsReach * (actionsUtil[action] - playerUtil);
+            strategyDeltas[offset + action] += strategyWeight * strategy[offset + action];
+          }
+          return util;
+      }
+      return null;
+    }
+  }
+
+  private final int nbRounds;
+  private final int nbPlayers;
+  private final int size;
+  private final int maxDepth;
+  private final int maxNbActions;
+  private final LinkedActionTreeNode<?, Chances> rootNode;
+  private final CSCFRMChancesEnumeration<Chances> enumeration;
+  private final CSCFRMData<?, Chances> data;
+  private final CSCFRMStorage storage;
+  private final CSCFRMLayout layout;
+  private final int[][][] nodesOffsets;
+  private final boolean regretsFloored;
+  private final boolean discounting;
+  private final AtomicDoubleArray utilitySum;
+  private final AtomicLong iterations;
+  /**
+   * Current strategy of each infoset, indexed by storage offset
+   */
+  private final double[] strategy;
+  private final List<Worker> workers;
+  /**
+   * Number of workers walking the enumeration parts in parallel
+   */
+  @Getter
+  private final int nbWorkers;
+
+  /**
+   * Constructor with one worker per available processor
+   *
+   * @param data the CSCFRM data
+   * @param enumeration the chances enumeration
+   */
+  public CSCFRMEnumerationTrainer(final CSCFRMData<?, Chances> data,
+      final CSCFRMChancesEnumeration<Chances> enumeration) {
+    this(data, enumeration, Math.max(Runtime.getRuntime().availableProcessors(), 1));
+  }
+
+  /**
+   * Constructor
+   *
+   * @param data the CSCFRM data
+   * @param enumeration the chances enumeration
+   * @param nbWorkers the maximum number of workers walking the enumeration parts in parallel. Each
+   *        of them holds two arrays of the storage's size.
+   */
+  public CSCFRMEnumerationTrainer(final CSCFRMData<?, Chances> data,
+      final CSCFRMChancesEnumeration<Chances> enumeration, final int nbWorkers) {
+    checkArgument(nbWorkers > 0, "The number of workers must be positive");
+    final CSCFRMLayout layout = this.layout = data.getLayout();
+    checkArgument(layout.getSize() <= Integer.MAX_VALUE - 8,
+        "Layout size %s is too large for the enumeration trainer", layout.getSize());
+    final ActionTree<?, Chances> actionTree = data.getGameActionTree();
+    this.size = (int) layout.getSize();
+    this.nbRounds = data.getRoundChancesSizes().length;
+    this.nbPlayers = data.getNbPlayers();
+    this.maxDepth = actionTree.getMaxDepth();
+    this.maxNbActions = actionTree.getMaxNbActions();
+    this.rootNode = actionTree.getRoot();
+    this.enumeration = enumeration;
+    this.data = data;
+    this.storage = data.getStorage();
+    this.nodesOffsets = layout.getNodesOffsets();
+    this.regretsFloored = data.getDiscounting().isRegretsFloored();
+    this.discounting = data.getDiscounting().isDiscounting();
+    this.utilitySum = data.getUtilitySum();
+    this.iterations = data.getIterations();
+    this.strategy = new double[size];
+    final int nbParts = enumeration.getNbParts();
+    final int nbRanges = this.nbWorkers = Math.max(Math.min(nbWorkers, nbParts), 1);
+    final List<Worker> workers = this.workers = new ArrayList<>(nbRanges);
+    for (int i = 0; i < nbRanges; i++) {
+      workers.add(new Worker((int) ((long) nbParts * i / nbRanges),
+          (int) ((long) nbParts * (i + 1) / nbRanges)));
+    }
+  }
+
+  /**
+   * Performs one iteration on all the enumerated chances
+   *
+   * @param chances ignored
+   */
+  @Override
+  public final void train(final Chances chances) {
+    final long iteration = iterations.get() + 1;
+    computeStrategies(iteration);
+    final List<Worker> workers = this.workers;
+    workers.parallelStream().forEach(Worker::run);
+    final CSCFRMStorage storage = this.storage;
+    final int size = this.size;
+    final AtomicDoubleArray utilitySum = this.utilitySum;
+    for (Worker worker : workers) {
+      final double[] regretDeltas = worker.regretDeltas;
+      final double[] strategyDeltas = worker.strategyDeltas;
+      for (int i = 0; i < size; i++) {
+        storage.addRegret(i, regretDeltas[i]);
+        storage.addStrategySum(i, strategyDeltas[i]);
+      }
+      final double[] utility = worker.utility;
+      for (int p = 0; p < nbPlayers; p++) {
+        utilitySum.addAndGet(p, utility[p]);
+      }
+    }
+    iterations.incrementAndGet();
+  }
+
+  /**
+   * Regret matching for all infosets, after applying their pending discounts
+   */
+  private final void computeStrategies(final long iteration) {
+    final CSCFRMData<?, Chances> data = this.data;
+    final CSCFRMStorage storage = this.storage;
+    final CSCFRMLayout layout = this.layout;
+    final double[] strategy = this.strategy;
+    final boolean regretsFloored = this.regretsFloored;
+    final boolean discounting = this.discounting;
+    final int[][] roundChancesSizes = data.getRoundChancesSizes();
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final int nbChances = roundChancesSizes[round][player];
+        final int[] offsets = nodesOffsets[round][player];
+        final int[] nbActions = layout.getNodesNbActions()[round][player];
+        final int nbNodes = offsets.length;
+        for (int chance = 0; chance < nbChances; chance++) {
+          final long chanceOffset = layout.chanceOffset(round, player, chance);
+          final long chanceIndex = layout.chanceInfosetIndex(round, player, chance);
+          for (int node = 0; node < nbNodes; node++) {
+            final int offset = (int) (chanceOffset + offsets[node]);
+            final int nbChildren = nbActions[node];
+            if (discounting) {
+              data.discount(chanceIndex + node, offset, nbChildren, iteration);
+            }
+            double totalRegret = 0;
+            for (int action = 0; action < nbChildren; action++) {
+              // CFR+ floor
+              final double actionRegret = regretsFloored ? storage.floorRegret(offset + action)
+                  : storage.getRegret(offset + action);
+              totalRegret += strategy[offset + action] = (actionRegret > 0 ? actionRegret : 0);
+            }
+            if (totalRegret > 0) {
+              for (int action = 0; action < nbChildren; action++) {
+                strategy[offset + action] /= totalRegret;
+              }
+            } else {
+              for (int action = 0; action < nbChildren; action++) {
+                strategy[offset + action] = 1.0d / nbChildren;
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+}
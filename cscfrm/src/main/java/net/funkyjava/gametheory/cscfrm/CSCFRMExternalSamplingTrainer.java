@@ -0,0 +1,190 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.AtomicDoubleArray;
+
+import net.funkyjava.gametheory.extensiveformgame.ActionTree;
+import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
+import net.funkyjava.gametheory.extensiveformgame.PlayerNode;
+
+/**
+ * External sampling MCCFR trainer. Chances are sampled by the synchronizer like for
+ * {@link CSCFRMTrainer}, then the tree is traversed once for each player : the traverser's actions
+ * are all explored while the other players' actions are sampled from their current strategy. Only
+ * one path is followed below each opponent node, which lowers the cost of an iteration on deep
+ * trees.
+ *
+ * Regrets are updated with the sampled counterfactual values and regret matching, strategy sums
+ * are updated at the sampled opponents nodes. The data's {@link CSCFRMDiscounting} policy is
+ * followed like by {@link CSCFRMTrainer} : regrets are floored with CFR+ and pending discounts are
+ * applied. It works on the same {@link CSCFRMData} as {@link CSCFRMTrainer}, but both trainers
+ * should not be run on the same data at the same time.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances class
+ */
+public class CSCFRMExternalSamplingTrainer<Chances extends CSCFRMChances>
+    implements CSCFRMChancesTrainer<Chances> {
+
+  private final int nbRounds;
+  private final int nbPlayers;
+  private final LinkedActionTreeNode<?, Chances> rootNode;
+  private final CSCFRMData<?, Chances> data;
+  private final CSCFRMStorage storage;
+  private final CSCFRMLayout layout;
+  private final int[][][] nodesOffsets;
+  private final long[][] chancesOffsets;
+  private final long[][] chancesInfosetIndexes;
+  private final boolean discounting;
+  private final boolean regretsFloored;
+  private long iteration;
+  private final AtomicDoubleArray utilitySum;
+  private final AtomicLong iterations;
+  private final double[][] depthActionUtil;
+  private final double[][] depthStrategy;
+  private final double[] payouts;
+
+  /**
+   * Constructor
+   *
+   * @param data the CSCFRM data
+   */
+  public CSCFRMExternalSamplingTrainer(final CSCFRMData<?, Chances> data) {
+    final ActionTree<?, Chances> actionTree = data.getGameActionTree();
+    final int maxDepth = actionTree.getMaxDepth();
+    final int maxNbActions = actionTree.getMaxNbActions();
+    final int nbRounds = this.nbRounds = data.getRoundChancesSizes().length;
+    final int nbPlayers = this.nbPlayers = data.getNbPlayers();
+    this.utilitySum = data.getUtilitySum();
+    this.iterations = data.getIterations();
+    rootNode = actionTree.getRoot();
+    storage = data.getStorage();
+    final CSCFRMLayout layout = this.layout = data.getLayout();
+    nodesOffsets = layout.getNodesOffsets();
+    chancesOffsets = new long[nbRounds][nbPlayers];
+    chancesInfosetIndexes = new long[nbRounds][nbPlayers];
+    this.data = data;
+    discounting = data.getDiscounting().isDiscounting();
+    regretsFloored = data.getDiscounting().isRegretsFloored();
+    depthActionUtil = new double[maxDepth][maxNbActions];
+    depthStrategy = new double[maxDepth][maxNbActions];
+    payouts = new double[nbPlayers];
+  }
+
+  /**
+   * Traverses the tree once for each player with given chances
+   *
+   * @param chances the chances
+   */
+  @Override
+  public final void train(final Chances chances) {
+    final int nbRounds = this.nbRounds;
+    final int nbPlayers = this.nbPlayers;
+    final CSCFRMLayout layout = this.layout;
+    final long[][] chancesOffsets = this.chancesOffsets;
+    final long[][] chancesInfosetIndexes = this.chancesInfosetIndexes;
+    final int[][] playersChances = chances.getPlayersChances();
+    for (int round = 0; round < nbRounds; round++) {
+      final int[] roundChances = playersChances[round];
+      final long[] roundChancesOffsets = chancesOffsets[round];
+      final long[] roundInfosetIndexes = chancesInfosetIndexes[round];
+      for (int player = 0; player < nbPlayers; player++) {
+        roundChancesOffsets[player] = layout.chanceOffset(round, player, roundChances[player]);
+        roundInfosetIndexes[player] =
+            layout.chanceInfosetIndex(round, player, roundChances[player]);
+      }
+    }
+    iteration = iterations.get() + 1;
+    // The trainer is created by one thread and run by another : get the random here
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final AtomicDoubleArray utilitySum = this.utilitySum;
+    for (int traverser = 0; traverser < nbPlayers; traverser++) {
+      utilitySum.addAndGet(traverser, rec(0, rootNode, chances, traverser, random));
+    }
+    iterations.incrementAndGet();
+  }
+
+  private final double rec(final int depth, final LinkedActionTreeNode<?, Chances> node,
+      final Chances chances, final int traverser, final ThreadLocalRandom random) {
+    switch (node.getNodeType()) {
+
+      case PAYOUTS_NO_CHANCE:
+        return node.getPayoutsNoChance()[traverser];
+
+      case CHANCES_PAYOUTS:
+        final double[] payouts = this.payouts;
+        node.getChancesPayouts().getPayouts(chances, payouts);
+        return payouts[traverser];
+
+      case PLAYER:
+        final PlayerNode<?> pNode = node.getPlayerNode();
+        final int index = node.getPlayerRoundActionIndex();
+        final int round = pNode.getRound();
+        final int player = pNode.getPlayer();
+        final long offset = chancesOffsets[round][player] + nodesOffsets[round][player][index];
+        final CSCFRMStorage storage = this.storage;
+        final int nbChildren = pNode.getNbActions();
+        final LinkedActionTreeNode<?, Chances>[] children = node.getChildren();
+        final double[] strategy = depthStrategy[depth];
+        if (discounting) {
+          data.discount(chancesInfosetIndexes[round][player] + index, offset, nbChildren,
+              iteration);
+        }
+
+        // Regret matching
+        final boolean regretsFloored = this.regretsFloored;
+        double totalRegret = 0;
+        for (int action = 0; action < nbChildren; action++) {
+          // CFR+ floor
+          final double actionRegret = regretsFloored ? storage.floorRegret(offset + action)
+              : storage.getRegret(offset + action);
+          totalRegret += strategy[action] = (actionRegret > 0 ? actionRegret : 0);
+        }
+        if (totalRegret > 0) {
+          for (int action = 0; action < nbChildren; action++) {
+            strategy[action] /= totalRegret;
+          }
+        } else {
+          for (int action = 0; action < nbChildren; action++) {
+            strategy[action] = 1.0d / nbChildren;
+          }
+        }
+        final int nextDepth = depth + 1;
+
+        if (player != traverser) {
+          // Sample one action of the opponent and update its strategy sum
+          double draw = random.nextDouble();
+          int sampled = -1;
+          for (int action = 0; action < nbChildren; action++) {
+            final double actionProba = strategy[action];
+            storage.addStrategySum(offset + action, actionProba);
+            if (sampled < 0 && (draw -= actionProba) < 0) {
+              sampled = action;
+            }
+          }
+          if (sampled < 0) {
+            // Rounding errors
+            sampled = nbChildren - 1;
+          }
+          return rec(nextDepth, children[sampled], chances, traverser, random);
+        }
+
+        final double[] actionsUtil = depthActionUtil[depth];
+        double util = 0;
+        for (int action = 0; action < nbChildren; action++) {
+          final double actionUtil =
+              actionsUtil[action] = rec(nextDepth, children[action], chances, traverser, random);
+          util += strategy[action] * actionUtil;
+        }
+        for (int action = 0; action < nbChildren; action++) {
+          storage.addRegret(offset + action, actionsUtil[action] - util);
+        }
+        return util;
+    }
+    return 0;
+  }
+
+}
@@ -0,0 +1,165 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import lombok.Getter;
+import net.funkyjava.gametheory.io.ChannelReader;
+import net.funkyjava.gametheory.io.ChannelWriter;
+
+/**
+ * Single precision heap storage : regret sums and strategy sums are held in float arrays, which
+ * halves the memory and the save file size compared to {@link CSCFRMDoubleArrayStorage}.
+ *
+ * The trainer still computes strategies and utilities in double, values are only rounded when they
+ * are stored. Values are serialized as floats so files are not interchangeable with the double
+ * storages' ones.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMFloatArrayStorage implements CSCFRMStorage {
+
+  @Getter
+  private final CSCFRMLayout layout;
+  private final float[] regretSum;
+  private final float[] strategySum;
+
+  /**
+   * Constructor
+   *
+   * @param layout the layout of the values
+   */
+  public CSCFRMFloatArrayStorage(final CSCFRMLayout layout) {
+    final long size = layout.getSize();
+    checkArgument(size <= Integer.MAX_VALUE - 8,
+        "Layout size %s is too large for an array storage", size);
+    this.layout = layout;
+    this.regretSum = new float[(int) size];
+    this.strategySum = new float[(int) size];
+  }
+
+  @Override
+  public final double getRegret(final long offset) {
+    return regretSum[(int) offset];
+  }
+
+  @Override
+  public final void setRegret(final long offset, final double value) {
+    regretSum[(int) offset] = (float) value;
+  }
+
+  @Override
+  public final void addRegret(final long offset, final double value) {
+    final int index = (int) offset;
+    regretSum[index] = (float) (regretSum[index] + value);
+  }
+
+  @Override
+  public final double getStrategySum(final long offset) {
+    return strategySum[(int) offset];
+  }
+
+  @Override
+  public final void setStrategySum(final long offset, final double value) {
+    strategySum[(int) offset] = (float) value;
+  }
+
+  @Override
+  public final void addStrategySum(final long offset, final double value) {
+    final int index = (int) offset;
+    strategySum[index] = (float) (strategySum[index] + value);
+  }
+
+  @Override
+  public void fillNode(final DataInputStream dis, final long offset, final int nbActions)
+      throws IOException {
+    final float[] regretSum = this.regretSum;
+    final float[] strategySum = this.strategySum;
+    final int start = (int) offset;
+    final int end = start + nbActions;
+    for (int i = start; i < end; i++) {
+      regretSum[i] = dis.readFloat();
+    }
+    for (int i = start; i < end; i++) {
+      strategySum[i] = dis.readFloat();
+    }
+  }
+
+  @Override
+  public void writeNode(final DataOutputStream dos, final long offset, final int nbActions)
+      throws IOException {
+    final float[] regretSum = this.regretSum;
+    final float[] strategySum = this.strategySum;
+    final int start = (int) offset;
+    final int end = start + nbActions;
+    for (int i = start; i < end; i++) {
+      dos.writeFloat(regretSum[i]);
+    }
+    for (int i = start; i < end; i++) {
+      dos.writeFloat(strategySum[i]);
+    }
+  }
+
+  @Override
+  public void fillNode(final ChannelReader reader, final long offset, final int nbActions)
+      throws IOException {
+    reader.readFloats(regretSum, (int) offset, nbActions);
+    reader.readFloats(strategySum, (int) offset, nbActions);
+  }
+
+  @Override
+  public void writeNode(final ChannelWriter writer, final long offset, final int nbActions)
+      throws IOException {
+    writer.writeFloats(regretSum, (int) offset, nbActions);
+    writer.writeFloats(strategySum, (int) offset, nbActions);
+  }
+
+  @Override
+  public void fillChance(final ChannelReader reader, final long chanceOffset, final int[] offsets,
+      final int[] nbActions) throws IOException {
+    final float[] regretSum = this.regretSum;
+    final float[] strategySum = this.strategySum;
+    final int nbNodes = offsets.length;
+    int nbValues = 0;
+    for (int node = 0; node < nbNodes; node++) {
+      nbValues += 2 * nbActions[node];
+    }
+    final float[] values = new float[nbValues];
+    reader.readFloats(values);
+    int index = 0;
+    for (int node = 0; node < nbNodes; node++) {
+      final int start = (int) chanceOffset + offsets[node];
+      final int nb = nbActions[node];
+      System.arraycopy(values, index, regretSum, start, nb);
+      System.arraycopy(values, index + nb, strategySum, start, nb);
+      index += 2 * nb;
+    }
+  }
+
+  @Override
+  public void writeChance(final ChannelWriter writer, final long chanceOffset, final int[] offsets,
+      final int[] nbActions) throws IOException {
+    final float[] regretSum = this.regretSum;
+    final float[] strategySum = this.strategySum;
+    final int nbNodes = offsets.length;
+    int nbValues = 0;
+    for (int node = 0; node < nbNodes; node++) {
+      nbValues += 2 * nbActions[node];
+    }
+    final float[] values = new float[nbValues];
+    int index = 0;
+    for (int node = 0; node < nbNodes; node++) {
+      final int start = (int) chanceOffset + offsets[node];
+      final int nb = nbActions[node];
+      System.arraycopy(regretSum, start, values, index, nb);
+      System.arraycopy(strategySum, start, values, index + nb, nb);
+      index += 2 * nb;
+    }
+    writer.writeFloats(values);
+  }
+
+}
@@ -0,0 +1,178 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import lombok.Getter;
+import net.funkyjava.gametheory.io.ChannelReader;
+import net.funkyjava.gametheory.io.ChannelWriter;
+
+/**
+ * Mixed precision heap storage : regret sums are held in a float array while strategy sums keep
+ * double precision. Strategy sums only grow during the whole training so small contributions are
+ * the first to be absorbed by float rounding, regret sums are floored by CFR+ and stay small.
+ *
+ * Values are serialized with their storage precision : regret sums as floats, strategy sums as
+ * doubles.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMFloatRegretArrayStorage implements CSCFRMStorage {
+
+  @Getter
+  private final CSCFRMLayout layout;
+  private final float[] regretSum;
+  private final double[] strategySum;
+
+  /**
+   * Constructor
+   *
+   * @param layout the layout of the values
+   */
+  public CSCFRMFloatRegretArrayStorage(final CSCFRMLayout layout) {
+    final long size = layout.getSize();
+    checkArgument(size <= Integer.MAX_VALUE - 8,
+        "Layout size %s is too large for an array storage", size);
+    this.layout = layout;
+    this.regretSum = new float[(int) size];
+    this.strategySum = new double[(int) size];
+  }
+
+  @Override
+  public final double getRegret(final long offset) {
+    return regretSum[(int) offset];
+  }
+
+  @Override
+  public final void setRegret(final long offset, final double value) {
+    regretSum[(int) offset] = (float) value;
+  }
+
+  @Override
+  public final void addRegret(final long offset, final double value) {
+    final int index = (int) offset;
+    regretSum[index] = (float) (regretSum[index] + value);
+  }
+
+  @Override
+  public final double getStrategySum(final long offset) {
+    return strategySum[(int) offset];
+  }
+
+  @Override
+  public final void setStrategySum(final long offset, final double value) {
+    strategySum[(int) offset] = value;
+  }
+
+  @Override
+  public final void addStrategySum(final long offset, final double value) {
+    strategySum[(int) offset] += value;
+  }
+
+  @Override
+  public void fillNode(final DataInputStream dis, final long offset, final int nbActions)
+      throws IOException {
+    final float[] regretSum = this.regretSum;
+    final double[] strategySum = this.strategySum;
+    final int start = (int) offset;
+    final int end = start + nbActions;
+    for (int i = start; i < end; i++) {
+      regretSum[i] = dis.readFloat();
+    }
+    for (int i = start; i < end; i++) {
+      strategySum[i] = dis.readDouble();
+    }
+  }
+
+  @Override
+  public void writeNode(final DataOutputStream dos, final long offset, final int nbActions)
+      throws IOException {
+    final float[] regretSum = this.regretSum;
+    final double[] strategySum = this.strategySum;
+    final int start = (int) offset;
+    final int end = start + nbActions;
+    for (int i = start; i < end; i++) {
+      dos.writeFloat(regretSum[i]);
+    }
+    for (int i = start; i < end; i++) {
+      dos.writeDouble(strategySum[i]);
+    }
+  }
+
+  @Override
+  public void fillNode(final ChannelReader reader, final long offset, final int nbActions)
+      throws IOException {
+    reader.readFloats(regretSum, (int) offset, nbActions);
+    reader.readDoubles(strategySum, (int) offset, nbActions);
+  }
+
+  @Override
+  public void writeNode(final ChannelWriter writer, final long offset, final int nbActions)
+      throws IOException {
+    writer.writeFloats(regretSum, (int) offset, nbActions);
+    writer.writeDoubles(strategySum, (int) offset, nbActions);
+  }
+
+  /**
+   * The chance block mixes floats and doubles : its bytes are read at once and decoded from a heap
+   * buffer
+   */
+  @Override
+  public void fillChance(final ChannelReader reader, final long chanceOffset, final int[] offsets,
+      final int[] nbActions) throws IOException {
+    final float[] regretSum = this.regretSum;
+    final double[] strategySum = this.strategySum;
+    final int nbNodes = offsets.length;
+    int nbBytes = 0;
+    for (int node = 0; node < nbNodes; node++) {
+      nbBytes += nbActions[node] * (Float.BYTES + Double.BYTES);
+    }
+    final byte[] bytes = new byte[nbBytes];
+    reader.getDataInputStream().readFully(bytes);
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    for (int node = 0; node < nbNodes; node++) {
+      final int start = (int) chanceOffset + offsets[node];
+      final int end = start + nbActions[node];
+      for (int i = start; i < end; i++) {
+        regretSum[i] = buffer.getFloat();
+      }
+      for (int i = start; i < end; i++) {
+        strategySum[i] = buffer.getDouble();
+      }
+    }
+  }
+
+  /**
+   * The chance block mixes floats and doubles : it's encoded in a heap buffer whose bytes are
+   * written at once
+   */
+  @Override
+  public void writeChance(final ChannelWriter writer, final long chanceOffset, final int[] offsets,
+      final int[] nbActions) throws IOException {
+    final float[] regretSum = this.regretSum;
+    final double[] strategySum = this.strategySum;
+    final int nbNodes = offsets.length;
+    int nbBytes = 0;
+    for (int node = 0; node < nbNodes; node++) {
+      nbBytes += nbActions[node] * (Float.BYTES + Double.BYTES);
+    }
+    final ByteBuffer buffer = ByteBuffer.allocate(nbBytes);
+    for (int node = 0; node < nbNodes; node++) {
+      final int start = (int) chanceOffset + offsets[node];
+      final int end = start + nbActions[node];
+      for (int i = start; i < end; i++) {
+        buffer.putFloat(regretSum[i]);
+      }
+      for (int i = start; i < end; i++) {
+        buffer.putDouble(strategySum[i]);
+      }
+    }
+    writer.getDataOutputStream().write(buffer.array());
+  }
+
+}
@@ -0,0 +1,237 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * "Hogwild" chances synchronizer : chances are not reserved at all, each trainer thread draws its
+ * chances with its own producer and trains on them even when another thread is updating the same
+ * infosets. Regret and strategy sums updates may then be lost or interleaved, depending on the
+ * storage : plain array storages are racy, {@link CSCFRMAtomicDoubleArrayStorage} never loses an
+ * update. This removes all synchronization overhead at the cost of a small convergence penalty
+ * that can be followed with {@link CSCFRMData#getAverageRegrets()}.
+ *
+ * When collisions measurement is enabled, each chance in use is counted in an atomic counter so
+ * that {@link #getCollisionRate()} reports the proportion of chances that would have been delayed
+ * by a reserving synchronizer. Chances of the same batch are not colliding with each other : each
+ * thread also counts the chances of its current batch and only the remaining uses, held by other
+ * threads, are collisions.
+ *
+ * {@link #endUsing(CSCFRMChances)} must be called by the thread that got the chances.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances class
+ */
+public class CSCFRMHogwildChancesSynchronizer<Chances extends CSCFRMChances>
+    implements CSCFRMChancesSynchronizer<Chances> {
+
+  private final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier;
+  private final ThreadLocal<CSCFRMChancesProducer<Chances>> producers;
+  private final int nbRounds;
+  private final AtomicIntegerArray[][] inUseCounts;
+  private final ThreadLocal<int[][][]> batchCounts;
+  private final LongAdder nbDrawn = new LongAdder();
+  private final LongAdder nbCollisions = new LongAdder();
+  private volatile boolean stop = false;
+
+  /**
+   * Constructor
+   *
+   * @param producerSupplier supplier called once per trainer thread to create its own producer
+   * @param chancesSizes the size of the chances for each round and player
+   * @param measureCollisions when true, count the chances used concurrently by several threads
+   */
+  public CSCFRMHogwildChancesSynchronizer(
+      final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier,
+      final int[][] chancesSizes, final boolean measureCollisions) {
+    this.producerSupplier = producerSupplier;
+    this.producers = ThreadLocal.withInitial(() -> this.producerSupplier.get());
+    final int nbRounds = this.nbRounds = chancesSizes.length;
+    if (!measureCollisions) {
+      this.inUseCounts = null;
+      this.batchCounts = null;
+      return;
+    }
+    this.inUseCounts = new AtomicIntegerArray[nbRounds][];
+    this.batchCounts = ThreadLocal.withInitial(() -> {
+      final int[][][] counts = new int[nbRounds][][];
+      for (int i = 0; i < nbRounds; i++) {
+        final int[] playersChances = chancesSizes[i];
+        final int nbPlayers = playersChances.length;
+        counts[i] = new int[nbPlayers][];
+        for (int j = 0; j < nbPlayers; j++) {
+          counts[i][j] = new int[playersChances[j]];
+        }
+      }
+      return counts;
+    });
+    for (int i = 0; i < nbRounds; i++) {
+      final int[] playersChances = chancesSizes[i];
+      final int nbPlayers = playersChances.length;
+      final AtomicIntegerArray[] roundCounts = inUseCounts[i] = new AtomicIntegerArray[nbPlayers];
+      for (int j = 0; j < nbPlayers; j++) {
+        roundCounts[j] = new AtomicIntegerArray(playersChances[j]);
+      }
+    }
+  }
+
+  @Override
+  public Chances getChances() throws InterruptedException {
+    if (stop) {
+      return null;
+    }
+    final Chances chances = producers.get().produceChances();
+    nbDrawn.increment();
+    if (inUseCounts != null) {
+      startCounting(chances, null);
+    }
+    return chances;
+  }
+
+  @Override
+  public void endUsing(final Chances chances) throws InterruptedException {
+    endCounting(chances);
+    producers.get().endedUsing(chances);
+  }
+
+  /**
+   * Draw a full batch at once with the thread's producer. Chances of the same batch may share
+   * infosets, but only chances in use by other threads are counted as collisions.
+   */
+  @Override
+  public int getChances(final Chances[] batch) throws InterruptedException {
+    if (stop) {
+      return 0;
+    }
+    final int batchSize = batch.length;
+    producers.get().produceChances(batch, 0, batchSize);
+    nbDrawn.add(batchSize);
+    if (inUseCounts != null) {
+      final int[][][] ownCounts = batchCounts.get();
+      for (int i = 0; i < batchSize; i++) {
+        startCounting(batch[i], ownCounts);
+      }
+      for (int i = 0; i < batchSize; i++) {
+        clearOwnCounts(batch[i], ownCounts);
+      }
+    }
+    return batchSize;
+  }
+
+  @Override
+  public void endUsing(final Chances[] batch, final int nbChances) throws InterruptedException {
+    for (int i = 0; i < nbChances; i++) {
+      endCounting(batch[i]);
+    }
+    producers.get().endedUsing(batch, 0, nbChances);
+  }
+
+  /**
+   * Count the chances as in use. They collide when other uses of one of their chances are not uses
+   * by the current batch of this thread.
+   *
+   * @param chances the chances
+   * @param ownCounts the uses of each chance by the previous chances of the batch, incremented for
+   *        these chances, or null when the chances are not part of a batch
+   */
+  private final void startCounting(final Chances chances, final int[][][] ownCounts) {
+    final AtomicIntegerArray[][] inUseCounts = this.inUseCounts;
+    final int nbRounds = this.nbRounds;
+    final int[][] playersChances = chances.getPlayersChances();
+    boolean collision = false;
+    for (int i = 0; i < nbRounds; i++) {
+      final AtomicIntegerArray[] roundCounts = inUseCounts[i];
+      final int[] roundChances = playersChances[i];
+      final int nbPlayers = roundChances.length;
+      for (int j = 0; j < nbPlayers; j++) {
+        final int chance = roundChances[j];
+        final int own = ownCounts == null ? 0 : ownCounts[i][j][chance]++;
+        if (roundCounts[j].getAndIncrement(chance) > own) {
+          collision = true;
+        }
+      }
+    }
+    if (collision) {
+      nbCollisions.increment();
+    }
+  }
+
+  private final void clearOwnCounts(final Chances chances, final int[][][] ownCounts) {
+    final int nbRounds = this.nbRounds;
+    final int[][] playersChances = chances.getPlayersChances();
+    for (int i = 0; i < nbRounds; i++) {
+      final int[] roundChances = playersChances[i];
+      final int nbPlayers = roundChances.length;
+      for (int j = 0; j < nbPlayers; j++) {
+        ownCounts[i][j][roundChances[j]] = 0;
+      }
+    }
+  }
+
+  private final void endCounting(final Chances chances) {
+    final AtomicIntegerArray[][] inUseCounts = this.inUseCounts;
+    if (inUseCounts == null) {
+      return;
+    }
+    final int nbRounds = this.nbRounds;
+    final int[][] playersChances = chances.getPlayersChances();
+    for (int i = 0; i < nbRounds; i++) {
+      final AtomicIntegerArray[] roundCounts = inUseCounts[i];
+      final int[] roundChances = playersChances[i];
+      final int nbPlayers = roundChances.length;
+      for (int j = 0; j < nbPlayers; j++) {
+        roundCounts[j].decrementAndGet(roundChances[j]);
+      }
+    }
+  }
+
+  /**
+   * Number of chances drawn since the creation of the synchronizer
+   *
+   * @return the number of chances drawn
+   */
+  public long getNbDrawn() {
+    return nbDrawn.sum();
+  }
+
+  /**
+   * Number of drawn chances that were colliding with chances in use by another thread. Always 0
+   * when collisions are not measured.
+   *
+   * @return the number of collisions
+   */
+  @Override
+  public long getNbCollisions() {
+    return nbCollisions.sum();
+  }
+
+  /**
+   * Proportion of drawn chances that were colliding with chances in use by another thread
+   *
+   * @return the collision rate
+   */
+  public double getCollisionRate() {
+    final long drawn = nbDrawn.sum();
+    return drawn == 0 ? 0 : (double) nbCollisions.sum() / drawn;
+  }
+
+  @Override
+  public void stop() {
+    stop = true;
+  }
+
+  @Override
+  public void reset() {
+    stop = false;
+  }
+
+  @Override
+  public List<Runnable> getProducers() {
+    return Collections.emptyList();
+  }
+
+}
@@ -1,16 +1,45 @@
 package net.funkyjava.gametheory.cscfrm;
 
+/**
+ * Action performed by a {@link CSCFRMRunner} while it trains. Quiescent hooks are run when all
+ * trainer threads are parked between two batches, other hooks run concurrently with the training
+ * and should only read the data.
+ *
+ * @author Pierre Mardon
+ *
+ */
 public abstract class CSCFRMHook {
 
   private final boolean oneTime;
+  private final boolean quiescent;
 
+  /**
+   * Constructor for a quiescent hook
+   *
+   * @param oneTime when true the hook is removed after it ran once
+   */
   public CSCFRMHook(final boolean oneTime) {
+    this(oneTime, true);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param oneTime when true the hook is removed after it ran once
+   * @param quiescent when true the trainer threads are parked while the hook runs
+   */
+  public CSCFRMHook(final boolean oneTime, final boolean quiescent) {
     this.oneTime = oneTime;
+    this.quiescent = quiescent;
   }
 
   public boolean isOneTime() {
     return oneTime;
   }
 
+  public boolean isQuiescent() {
+    return quiescent;
+  }
+
   public abstract void action();
 }
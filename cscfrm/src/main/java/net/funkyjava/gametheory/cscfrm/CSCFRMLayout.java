@@ -0,0 +1,206 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.INDEX;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.NB_ACTIONS;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PLAYER;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PLAYER_INDEX;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.ROUND;
+
+import lombok.Getter;
+import net.funkyjava.gametheory.extensiveformgame.ActionTree;
+import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
+import net.funkyjava.gametheory.extensiveformgame.PackedActionTree;
+
+/**
+ * Flat layout of the CSCFRM values of a game. Each (round, player, chance, node) infoset owns a
+ * contiguous range of values, one per action. Ranges are ordered by round, player, chance and then
+ * node index so that a storage walked from offset 0 to {@link #getSize()} follows the same order as
+ * the historical nested nodes arrays.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMLayout {
+
+  /**
+   * Number of rounds
+   */
+  @Getter
+  private final int nbRounds;
+  /**
+   * Number of players
+   */
+  @Getter
+  private final int nbPlayers;
+  /**
+   * Chances sizes indexed by round, player
+   */
+  @Getter
+  private final int[][] roundChancesSizes;
+  /**
+   * Offset of the first value of each (round, player) block
+   */
+  private final long[][] baseOffsets;
+  /**
+   * Number of values for one chance indexed by round, player
+   */
+  @Getter
+  private final int[][] chancesStrides;
+  /**
+   * Offset of each node inside a chance block indexed by round, player, node index
+   */
+  @Getter
+  private final int[][][] nodesOffsets;
+  /**
+   * Number of actions of each node indexed by round, player, node index
+   */
+  @Getter
+  private final int[][][] nodesNbActions;
+  /**
+   * Index of the first infoset of each (round, player) block
+   */
+  private final long[][] baseNodesIndexes;
+  /**
+   * Total number of values
+   */
+  @Getter
+  private final long size;
+  /**
+   * Total number of (round, player, chance, node) infosets
+   */
+  @Getter
+  private final long nbInfosets;
+
+  /**
+   * Constructor
+   *
+   * @param actionTree the game's action tree
+   * @param roundChancesSizes the chances sizes indexed by round, player
+   */
+  public CSCFRMLayout(final ActionTree<?, ?> actionTree, final int[][] roundChancesSizes) {
+    this(nodesNbActions(actionTree, roundChancesSizes), roundChancesSizes);
+  }
+
+  /**
+   * Constructor from a compiled or mapped tree, whose nodes have the same indexes as in the
+   * {@link ActionTree} of the same game. The tree's nodes are read once.
+   *
+   * @param tree the game's packed action tree
+   * @param roundChancesSizes the chances sizes indexed by round, player
+   */
+  public CSCFRMLayout(final PackedActionTree<?> tree, final int[][] roundChancesSizes) {
+    this(nodesNbActions(tree, roundChancesSizes), roundChancesSizes);
+  }
+
+  private CSCFRMLayout(final int[][][] nodesNbActions, final int[][] roundChancesSizes) {
+    final int nbRounds = this.nbRounds = roundChancesSizes.length;
+    final int nbPlayers = this.nbPlayers = nbRounds == 0 ? 0 : roundChancesSizes[0].length;
+    this.roundChancesSizes = roundChancesSizes;
+    this.nodesNbActions = nodesNbActions;
+    final long[][] baseOffsets = this.baseOffsets = new long[nbRounds][nbPlayers];
+    final int[][] chancesStrides = this.chancesStrides = new int[nbRounds][nbPlayers];
+    final int[][][] nodesOffsets = this.nodesOffsets = new int[nbRounds][nbPlayers][];
+    final long[][] baseNodesIndexes = this.baseNodesIndexes = new long[nbRounds][nbPlayers];
+    long offset = 0;
+    long nodeIndex = 0;
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final int[] nbActions = nodesNbActions[round][player];
+        final int nbNodes = nbActions.length;
+        final int[] offsets = nodesOffsets[round][player] = new int[nbNodes];
+        int stride = 0;
+        for (int i = 0; i < nbNodes; i++) {
+          offsets[i] = stride;
+          stride += nbActions[i];
+        }
+        chancesStrides[round][player] = stride;
+        baseOffsets[round][player] = offset;
+        offset += (long) stride * roundChancesSizes[round][player];
+        baseNodesIndexes[round][player] = nodeIndex;
+        nodeIndex += (long) nbNodes * roundChancesSizes[round][player];
+      }
+    }
+    this.size = offset;
+    this.nbInfosets = nodeIndex;
+  }
+
+  private static int[][][] nodesNbActions(final ActionTree<?, ?> actionTree,
+      final int[][] roundChancesSizes) {
+    final LinkedActionTreeNode<?, ?>[][][] actionNodes = actionTree.getActionNodes();
+    final int nbRounds = roundChancesSizes.length;
+    final int nbPlayers = nbRounds == 0 ? 0 : roundChancesSizes[0].length;
+    final int[][][] nodesNbActions = new int[nbRounds][nbPlayers][];
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final LinkedActionTreeNode<?, ?>[] nodes = actionNodes[round][player];
+        final int nbNodes = nodes.length;
+        final int[] nbActions = nodesNbActions[round][player] = new int[nbNodes];
+        for (int i = 0; i < nbNodes; i++) {
+          nbActions[i] = nodes[i].getPlayerNode().getNbActions();
+        }
+      }
+    }
+    return nodesNbActions;
+  }
+
+  private static int[][][] nodesNbActions(final PackedActionTree<?> tree,
+      final int[][] roundChancesSizes) {
+    final int nbRounds = roundChancesSizes.length;
+    final int nbPlayers = nbRounds == 0 ? 0 : roundChancesSizes[0].length;
+    final int[][][] nodesNbActions = new int[nbRounds][nbPlayers][];
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        nodesNbActions[round][player] = new int[tree.getNbPlayerNodes(round, player)];
+      }
+    }
+    final int nbNodes = tree.getNbNodes();
+    for (int node = 0; node < nbNodes; node++) {
+      if (tree.getType(node) == PLAYER) {
+        nodesNbActions[tree.getField(node, ROUND)][tree.getField(node, PLAYER_INDEX)][tree
+            .getField(node, INDEX)] = tree.getField(node, NB_ACTIONS);
+      }
+    }
+    return nodesNbActions;
+  }
+
+  /**
+   * Offset of the first value of a chance block
+   *
+   * @param round the round
+   * @param player the player
+   * @param chance the player's chance for this round
+   * @return the offset of the chance block
+   */
+  public final long chanceOffset(final int round, final int player, final int chance) {
+    return baseOffsets[round][player] + (long) chance * chancesStrides[round][player];
+  }
+
+  /**
+   * Offset of the first value of a node
+   *
+   * @param round the round
+   * @param player the player
+   * @param chance the player's chance for this round
+   * @param index the node index for this round and player
+   * @return the offset of the node's first action value
+   */
+  public final long nodeOffset(final int round, final int player, final int chance,
+      final int index) {
+    return chanceOffset(round, player, chance) + nodesOffsets[round][player][index];
+  }
+
+  /**
+   * Index of the first infoset of a chance block. Infosets are indexed in the same order as the
+   * values, from 0 to {@link #getNbInfosets()}.
+   *
+   * @param round the round
+   * @param player the player
+   * @param chance the player's chance for this round
+   * @return the index of the chance block's first infoset
+   */
+  public final long chanceInfosetIndex(final int round, final int player, final int chance) {
+    return baseNodesIndexes[round][player]
+        + (long) chance * nodesOffsets[round][player].length;
+  }
+
+}
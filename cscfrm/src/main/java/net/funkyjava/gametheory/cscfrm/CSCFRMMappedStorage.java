@@ -0,0 +1,183 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lombok.Getter;
+
+/**
+ * Off-heap storage holding the regret sums and the strategy sums in a memory-mapped file. Training
+ * updates the file's pages in place, so a checkpoint is a {@link #force()} and a restart only needs
+ * to map the file again.
+ *
+ * The file starts with a header (magic number and number of values per table), followed by all
+ * regret sums then all strategy sums, as doubles in native byte order. Each table is mapped in
+ * chunks of {@value #CHUNK_VALUES} values so that tables larger than 2GB can be addressed.
+ *
+ * This file is not the {@link #write(java.io.OutputStream)} format, which is still available to
+ * export values to any other storage.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMMappedStorage implements CSCFRMStorage, Closeable {
+
+  private static final long MAGIC = 0x435343464D4D4150L;
+  private static final int HEADER_BYTES = 16;
+  private static final int CHUNK_SHIFT = 27;
+  /**
+   * Number of values per mapped chunk
+   */
+  public static final int CHUNK_VALUES = 1 << CHUNK_SHIFT;
+  private static final long CHUNK_MASK = CHUNK_VALUES - 1;
+
+  @Getter
+  private final CSCFRMLayout layout;
+  /**
+   * Path of the mapped file
+   */
+  @Getter
+  private final Path path;
+  private final FileChannel channel;
+  private final MappedByteBuffer header;
+  private final MappedByteBuffer[] mappedChunks;
+  private final DoubleBuffer[] regretChunks;
+  private final DoubleBuffer[] strategyChunks;
+
+  /**
+   * Constructor. Maps the file at the provided path, creating it when it doesn't exist. An existing
+   * file must have been created for a layout of the same size.
+   *
+   * @param layout the layout of the values
+   * @param path the path of the mapped file
+   * @throws IOException when the file cannot be opened or mapped
+   */
+  public CSCFRMMappedStorage(final CSCFRMLayout layout, final Path path) throws IOException {
+    this.layout = layout;
+    this.path = path;
+    final long size = layout.getSize();
+    final FileChannel channel = this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      final long expectedLength = HEADER_BYTES + 2 * size * Double.BYTES;
+      final long length = channel.size();
+      checkArgument(length == 0 || length == expectedLength,
+          "File %s has length %s, expected %s for this layout", path, length, expectedLength);
+      final MappedByteBuffer header =
+          this.header = channel.map(MapMode.READ_WRITE, 0, HEADER_BYTES);
+      if (length == 0) {
+        header.putLong(0, MAGIC);
+        header.putLong(8, size);
+      } else {
+        checkArgument(header.getLong(0) == MAGIC && header.getLong(8) == size,
+            "File %s is not a CSCFRM mapped storage for this layout", path);
+      }
+      final int nbChunks = (int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT);
+      final MappedByteBuffer[] mappedChunks = this.mappedChunks = new MappedByteBuffer[2 * nbChunks];
+      final DoubleBuffer[] regretChunks = this.regretChunks = new DoubleBuffer[nbChunks];
+      final DoubleBuffer[] strategyChunks = this.strategyChunks = new DoubleBuffer[nbChunks];
+      final long strategyStart = HEADER_BYTES + size * Double.BYTES;
+      for (int i = 0; i < nbChunks; i++) {
+        final long first = (long) i << CHUNK_SHIFT;
+        final long chunkBytes = Math.min(CHUNK_VALUES, size - first) * Double.BYTES;
+        final MappedByteBuffer regretChunk = mappedChunks[2 * i] = channel
+            .map(MapMode.READ_WRITE, HEADER_BYTES + first * Double.BYTES, chunkBytes);
+        final MappedByteBuffer strategyChunk = mappedChunks[2 * i + 1] = channel
+            .map(MapMode.READ_WRITE, strategyStart + first * Double.BYTES, chunkBytes);
+        regretChunks[i] = doubleView(regretChunk);
+        strategyChunks[i] = doubleView(strategyChunk);
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static DoubleBuffer doubleView(final ByteBuffer buffer) {
+    return buffer.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+  }
+
+  /**
+   * Get a storage provider mapping the file at the provided path. I/O failures are rethrown as
+   * {@link UncheckedIOException}.
+   *
+   * @param path the path of the mapped file
+   * @return the storage provider
+   */
+  public static CSCFRMStorageProvider provider(final Path path) {
+    return layout -> {
+      try {
+        return new CSCFRMMappedStorage(layout, path);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
+  }
+
+  @Override
+  public final double getRegret(final long offset) {
+    return regretChunks[(int) (offset >>> CHUNK_SHIFT)].get((int) (offset & CHUNK_MASK));
+  }
+
+  @Override
+  public final void setRegret(final long offset, final double value) {
+    regretChunks[(int) (offset >>> CHUNK_SHIFT)].put((int) (offset & CHUNK_MASK), value);
+  }
+
+  @Override
+  public final void addRegret(final long offset, final double value) {
+    final DoubleBuffer chunk = regretChunks[(int) (offset >>> CHUNK_SHIFT)];
+    final int index = (int) (offset & CHUNK_MASK);
+    chunk.put(index, chunk.get(index) + value);
+  }
+
+  @Override
+  public final double getStrategySum(final long offset) {
+    return strategyChunks[(int) (offset >>> CHUNK_SHIFT)].get((int) (offset & CHUNK_MASK));
+  }
+
+  @Override
+  public final void setStrategySum(final long offset, final double value) {
+    strategyChunks[(int) (offset >>> CHUNK_SHIFT)].put((int) (offset & CHUNK_MASK), value);
+  }
+
+  @Override
+  public final void addStrategySum(final long offset, final double value) {
+    final DoubleBuffer chunk = strategyChunks[(int) (offset >>> CHUNK_SHIFT)];
+    final int index = (int) (offset & CHUNK_MASK);
+    chunk.put(index, chunk.get(index) + value);
+  }
+
+  /**
+   * Flush all modified pages to the file. Trainers should not be running to get a consistent
+   * checkpoint.
+   */
+  public void force() {
+    header.force();
+    for (MappedByteBuffer chunk : mappedChunks) {
+      chunk.force();
+    }
+  }
+
+  /**
+   * Force the values to the file and close its channel. Mapped pages are released when the storage
+   * is garbage collected.
+   */
+  @Override
+  public void close() throws IOException {
+    force();
+    channel.close();
+  }
+
+}
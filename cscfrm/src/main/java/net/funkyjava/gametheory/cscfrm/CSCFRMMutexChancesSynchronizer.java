@@ -1,15 +1,22 @@
 package net.funkyjava.gametheory.cscfrm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Chances synchronizer with no additional thread required. Each consumer produces the requested
  * chances.
  * 
+ * With a single producer, chances are drawn under the synchronizer's lock. With a producer per
+ * thread, chances are drawn before taking the lock, which then only protects the reservation bits
+ * and the collision list. Chances may then be recycled by another thread's producer than the one
+ * that drew them.
+ * 
  * @author Pierre Mardon
  *
  * @param <Chances>
@@ -17,12 +24,29 @@ import java.util.List;
 public class CSCFRMMutexChancesSynchronizer<Chances extends CSCFRMChances>
     implements CSCFRMChancesSynchronizer<Chances> {
 
+  private final class ThreadState {
+    private final CSCFRMChancesProducer<Chances> producer = producerSupplier.get();
+    @SuppressWarnings("unchecked")
+    private final Chances[] single = (Chances[]) new CSCFRMChances[1];
+    private Chances[] drawn = single;
+
+    private final Chances[] drawn(final int size) {
+      if (drawn.length < size) {
+        drawn = Arrays.copyOf(drawn, size);
+      }
+      return drawn;
+    }
+  }
+
   private final CSCFRMChancesProducer<Chances> producer;
+  private final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier;
+  private final ThreadLocal<ThreadState> threadStates;
   private final int nbRounds;
   private final BitSet[][] inUseBits;
   private final List<Chances> collisionChances = new ArrayList<>();
   private final List<Chances> availableChances = new LinkedList<>();
   private boolean stop = false;
+  private long nbCollisions = 0;
 
   /**
    * Constructor
@@ -32,7 +56,28 @@ public class CSCFRMMutexChancesSynchronizer<Chances extends CSCFRMChances>
    */
   public CSCFRMMutexChancesSynchronizer(final CSCFRMChancesProducer<Chances> producer,
       final int[][] chancesSizes) {
+    this(producer, null, chancesSizes);
+  }
+
+  /**
+   * Constructor for producers drawing outside of the lock
+   * 
+   * @param producerSupplier supplier called once per trainer thread to create its own producer
+   * @param chancesSizes the size of the chances for each round and player
+   */
+  public CSCFRMMutexChancesSynchronizer(
+      final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier,
+      final int[][] chancesSizes) {
+    this(null, producerSupplier, chancesSizes);
+  }
+
+  private CSCFRMMutexChancesSynchronizer(final CSCFRMChancesProducer<Chances> producer,
+      final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier,
+      final int[][] chancesSizes) {
     this.producer = producer;
+    this.producerSupplier = producerSupplier;
+    this.threadStates =
+        producerSupplier == null ? null : ThreadLocal.withInitial(() -> new ThreadState());
     final int nbRounds = this.nbRounds = chancesSizes.length;
     this.inUseBits = new BitSet[nbRounds][];
     for (int i = 0; i < nbRounds; i++) {
@@ -47,6 +92,10 @@ public class CSCFRMMutexChancesSynchronizer<Chances extends CSCFRMChances>
 
   @Override
   public Chances getChances() throws InterruptedException {
+    if (threadStates != null) {
+      final Chances[] single = threadStates.get().single;
+      return getThreadChances(single) == 0 ? null : single[0];
+    }
     final List<Chances> availableChances = this.availableChances;
     final CSCFRMChancesProducer<Chances> producer = this.producer;
     synchronized (this) {
@@ -62,6 +111,7 @@ public class CSCFRMMutexChancesSynchronizer<Chances extends CSCFRMChances>
         final int[][] playersChances = chances.getPlayersChances();
         if (hasCollision(playersChances)) {
           collisionChances.add(chances);
+          nbCollisions++;
           continue;
         }
         reserve(playersChances);
@@ -70,8 +120,100 @@ public class CSCFRMMutexChancesSynchronizer<Chances extends CSCFRMChances>
     }
   }
 
+  @Override
+  public int getChances(final Chances[] batch) throws InterruptedException {
+    if (threadStates != null) {
+      return getThreadChances(batch);
+    }
+    final List<Chances> availableChances = this.availableChances;
+    final CSCFRMChancesProducer<Chances> producer = this.producer;
+    final int batchSize = batch.length;
+    synchronized (this) {
+      if (stop) {
+        return 0;
+      }
+      int nb = 0;
+      while (nb < batchSize && !availableChances.isEmpty()) {
+        batch[nb++] = availableChances.remove(0);
+      }
+      final List<Chances> collisionChances = this.collisionChances;
+      while (nb == 0) {
+        // Draw the whole remaining batch at once, keep the non-colliding chances
+        producer.produceChances(batch, nb, batchSize);
+        for (int i = nb; i < batchSize; i++) {
+          final Chances chances = batch[i];
+          final int[][] playersChances = chances.getPlayersChances();
+          if (hasCollision(playersChances)) {
+            collisionChances.add(chances);
+            nbCollisions++;
+            continue;
+          }
+          reserve(playersChances);
+          batch[nb++] = chances;
+        }
+      }
+      return nb;
+    }
+  }
+
+  /**
+   * Take the available chances, or draw a batch with the thread's producer outside of the lock and
+   * reserve it
+   */
+  private final int getThreadChances(final Chances[] batch) {
+    final List<Chances> availableChances = this.availableChances;
+    final List<Chances> collisionChances = this.collisionChances;
+    final ThreadState state = threadStates.get();
+    final CSCFRMChancesProducer<Chances> producer = state.producer;
+    final int batchSize = batch.length;
+    final Chances[] drawn = state.drawn(batchSize);
+    synchronized (this) {
+      if (stop) {
+        return 0;
+      }
+      int nb = 0;
+      while (nb < batchSize && !availableChances.isEmpty()) {
+        batch[nb++] = availableChances.remove(0);
+      }
+      if (nb > 0) {
+        return nb;
+      }
+    }
+    while (true) {
+      producer.produceChances(drawn, 0, batchSize);
+      synchronized (this) {
+        if (stop) {
+          break;
+        }
+        int nb = 0;
+        for (int i = 0; i < batchSize; i++) {
+          final Chances chances = drawn[i];
+          final int[][] playersChances = chances.getPlayersChances();
+          if (hasCollision(playersChances)) {
+            collisionChances.add(chances);
+            nbCollisions++;
+            continue;
+          }
+          reserve(playersChances);
+          batch[nb++] = chances;
+        }
+        if (nb > 0) {
+          return nb;
+        }
+      }
+    }
+    producer.endedUsing(drawn, 0, batchSize);
+    return 0;
+  }
+
   @Override
   public void endUsing(final Chances used) throws InterruptedException {
+    if (threadStates != null) {
+      final Chances[] single = threadStates.get().single;
+      single[0] = used;
+      endUsing(single, 1);
+      return;
+    }
     final int[][] playersChances = used.getPlayersChances();
     final CSCFRMChancesProducer<Chances> producer = this.producer;
     synchronized (this) {
@@ -81,21 +223,52 @@ public class CSCFRMMutexChancesSynchronizer<Chances extends CSCFRMChances>
       if (stop) {
         return;
       }
-      final List<Chances> collisionChances = this.collisionChances;
-      final List<Chances> availableChances = this.availableChances;
-      int nbCollision = collisionChances.size();
-      for (int i = 0; i < nbCollision;) {
-        final Chances chances = collisionChances.get(i);
-        final int[][] pChances = chances.getPlayersChances();
-        if (!hasCollision(pChances)) {
-          availableChances.add(chances);
-          reserve(pChances);
-          collisionChances.remove(i);
-          nbCollision--;
-        } else {
-          i++;
+      makeAvailable();
+    }
+  }
+
+  @Override
+  public void endUsing(final Chances[] batch, final int nbChances) throws InterruptedException {
+    if (threadStates != null) {
+      synchronized (this) {
+        for (int i = 0; i < nbChances; i++) {
+          endReserving(batch[i].getPlayersChances());
+        }
+        if (!stop) {
+          makeAvailable();
         }
       }
+      threadStates.get().producer.endedUsing(batch, 0, nbChances);
+      return;
+    }
+    final CSCFRMChancesProducer<Chances> producer = this.producer;
+    synchronized (this) {
+      for (int i = 0; i < nbChances; i++) {
+        endReserving(batch[i].getPlayersChances());
+      }
+      producer.endedUsing(batch, 0, nbChances);
+      if (stop) {
+        return;
+      }
+      makeAvailable();
+    }
+  }
+
+  private final void makeAvailable() {
+    final List<Chances> collisionChances = this.collisionChances;
+    final List<Chances> availableChances = this.availableChances;
+    int nbCollision = collisionChances.size();
+    for (int i = 0; i < nbCollision;) {
+      final Chances chances = collisionChances.get(i);
+      final int[][] pChances = chances.getPlayersChances();
+      if (!hasCollision(pChances)) {
+        availableChances.add(chances);
+        reserve(pChances);
+        collisionChances.remove(i);
+        nbCollision--;
+      } else {
+        i++;
+      }
     }
   }
 
@@ -141,6 +314,19 @@ public class CSCFRMMutexChancesSynchronizer<Chances extends CSCFRMChances>
     return false;
   }
 
+  @Override
+  public synchronized long getNbCollisions() {
+    return nbCollisions;
+  }
+
+  /**
+   * The length of the collision list
+   */
+  @Override
+  public synchronized long getNbDelayedChances() {
+    return collisionChances.size();
+  }
+
   @Override
   public void stop() {
     final List<Chances> collisionChances = this.collisionChances;
@@ -148,13 +334,18 @@ public class CSCFRMMutexChancesSynchronizer<Chances extends CSCFRMChances>
     final CSCFRMChancesProducer<Chances> producer = this.producer;
     synchronized (this) {
       this.stop = true;
-      for (Chances chances : collisionChances) {
-        producer.endedUsing(chances);
+      // With a producer per thread, pending chances are dropped
+      if (producer != null) {
+        for (Chances chances : collisionChances) {
+          producer.endedUsing(chances);
+        }
       }
       collisionChances.clear();
       for (Chances chances : availableChances) {
         endReserving(chances.getPlayersChances());
-        producer.endedUsing(chances);
+        if (producer != null) {
+          producer.endedUsing(chances);
+        }
       }
       availableChances.clear();
     }
@@ -7,81 +7,115 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import lombok.Getter;
-import net.funkyjava.gametheory.io.Fillable;
+import net.funkyjava.gametheory.io.BulkFillable;
+import net.funkyjava.gametheory.io.ChannelReader;
+import net.funkyjava.gametheory.io.ChannelWriter;
 
 /**
- * CSCFRM node : holds the regret sum and the strategy sum of a player infoset
- * 
+ * CSCFRM node : view on the regret sum and the strategy sum of a player infoset held by a
+ * {@link CSCFRMStorage}
+ *
  * @author Pierre Mardon
  *
  */
-public class CSCFRMNode implements Fillable {
+public class CSCFRMNode implements BulkFillable {
 
+  private final CSCFRMStorage storage;
   /**
-   * The regret sum
+   * Offset of the node's first action in the storage
    */
   @Getter
-  private final double[] regretSum;
+  private final long offset;
   /**
-   * The strategy sum
+   * Number of actions of the node
    */
   @Getter
-  private final double[] strategySum;
+  private final int nbActions;
+
+  /**
+   * Create a node view
+   *
+   * @param storage the storage holding the node's values
+   * @param offset the offset of the node's first action
+   * @param nbActions the number of actions
+   */
+  public CSCFRMNode(final CSCFRMStorage storage, final long offset, final int nbActions) {
+    this.storage = storage;
+    this.offset = offset;
+    this.nbActions = nbActions;
+  }
+
+  /**
+   * Copy the regret sum of the node
+   *
+   * @return the regret sum
+   */
+  public double[] getRegretSum() {
+    final CSCFRMStorage storage = this.storage;
+    final long offset = this.offset;
+    final int nbActions = this.nbActions;
+    final double[] res = new double[nbActions];
+    for (int i = 0; i < nbActions; i++) {
+      res[i] = storage.getRegret(offset + i);
+    }
+    return res;
+  }
 
   /**
-   * Create a node for a given number of actions
-   * 
-   * @param nbActions
+   * Copy the strategy sum of the node
+   *
+   * @return the strategy sum
    */
-  public CSCFRMNode(final int nbActions) {
-    regretSum = new double[nbActions];
-    strategySum = new double[nbActions];
+  public double[] getStrategySum() {
+    final CSCFRMStorage storage = this.storage;
+    final long offset = this.offset;
+    final int nbActions = this.nbActions;
+    final double[] res = new double[nbActions];
+    for (int i = 0; i < nbActions; i++) {
+      res[i] = storage.getStrategySum(offset + i);
+    }
+    return res;
   }
 
   /**
    * Compute the average strategy of the node
-   * 
+   *
    * @return the average strategy
    */
   public double[] getAvgStrategy() {
-    final double[] strategySum = this.strategySum;
-    final int nbActions = strategySum.length;
+    final double[] res = getStrategySum();
+    final int nbActions = this.nbActions;
     double tot = 0;
     for (int i = 0; i < nbActions; i++) {
-      tot += strategySum[i];
+      tot += res[i];
     }
-    final double[] res = new double[nbActions];
     for (int i = 0; i < nbActions; i++) {
-      res[i] = strategySum[i] / tot;
+      res[i] /= tot;
     }
     return res;
   }
 
   @Override
   public void fill(InputStream is) throws IOException {
-    final double[] regretSum = this.regretSum;
-    final double[] strategySum = this.strategySum;
-    final int nbActions = strategySum.length;
-    final DataInputStream dis = new DataInputStream(is);
-    for (int i = 0; i < nbActions; i++) {
-      regretSum[i] = dis.readDouble();
-    }
-    for (int i = 0; i < nbActions; i++) {
-      strategySum[i] = dis.readDouble();
-    }
+    storage.fillNode(
+        is instanceof DataInputStream ? (DataInputStream) is : new DataInputStream(is), offset,
+        nbActions);
   }
 
   @Override
   public void write(OutputStream os) throws IOException {
-    final DataOutputStream dos = new DataOutputStream(os);
-    final double[] regretSum = this.regretSum;
-    final double[] strategySum = this.strategySum;
-    final int nbActions = strategySum.length;
-    for (int i = 0; i < nbActions; i++) {
-      dos.writeDouble(regretSum[i]);
-    }
-    for (int i = 0; i < nbActions; i++) {
-      dos.writeDouble(strategySum[i]);
-    }
+    storage.writeNode(
+        os instanceof DataOutputStream ? (DataOutputStream) os : new DataOutputStream(os), offset,
+        nbActions);
+  }
+
+  @Override
+  public void fill(ChannelReader reader) throws IOException {
+    storage.fillNode(reader, offset, nbActions);
+  }
+
+  @Override
+  public void write(ChannelWriter writer) throws IOException {
+    storage.writeNode(writer, offset, nbActions);
   }
 }
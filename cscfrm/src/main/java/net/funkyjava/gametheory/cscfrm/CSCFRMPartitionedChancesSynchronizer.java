@@ -0,0 +1,439 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Chances synchronizer that never reserves chances : trainer threads own disjoint partitions of
+ * the chances during epochs, and only synchronize at epoch boundaries.
+ *
+ * With n trainer threads, the chances of each (round, player) slot are split in n partitions by
+ * chance index modulo n. Slots are numbered from 0 to k - 1 and epochs follow a cycle of n^(k-1)
+ * epochs, each epoch being a tuple of offsets (d1, ..., dk-1). During an epoch, thread t owns
+ * partition t of slot 0 and partition t + di modulo n of slot i : the partitions owned by two
+ * threads never intersect, so their chances never collide. Each tuple of partitions is owned by
+ * exactly one thread in exactly one epoch of the cycle.
+ *
+ * Each thread draws chances with its own producer. During an epoch, a thread first trains on the
+ * chances that it and other threads drew for it and for this epoch, then draws a fixed number of
+ * new chances, trains on the ones it owns and defers the others to their owner and epoch. As each
+ * drawn chance is eventually trained once, the sampling stays unbiased but the work of an epoch
+ * varies with the probability of the owned chances. When a thread has no chances left for the
+ * epoch, it waits for the other threads at a {@link Phaser}. Meanwhile
+ * {@link #getChances(CSCFRMChances[])} returns 0 every millisecond so that the thread can reach the
+ * safepoints of a {@link CSCFRMRunner}, while {@link #getChances()} blocks.
+ *
+ * The number of trainer threads must be the one given to the constructor. Chances may be recycled
+ * by another thread's producer than the one that drew them. Chances must be released before
+ * getting more at the end of an epoch. A thread stopped by an exception leaves the epochs barrier
+ * with {@link #trainerFailed()}. {@link CSCFRMVectorChances} are not supported.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances class
+ */
+public class CSCFRMPartitionedChancesSynchronizer<Chances extends CSCFRMChances>
+    implements CSCFRMChancesSynchronizer<Chances> {
+
+  /**
+   * Default number of chances drawn by each thread per epoch
+   */
+  public static final int DEFAULT_EPOCH_DRAWS = 1024;
+  /**
+   * Maximum number of epochs in a cycle
+   */
+  private static final int MAX_CYCLE_LENGTH = 1 << 16;
+  /**
+   * Delay after which {@link #getChances(CSCFRMChances[])} stops waiting for the next epoch
+   */
+  private static final long WAIT_MILLIS = 1;
+
+  private final class PartitionState {
+    private final int index;
+    private final CSCFRMChancesProducer<Chances> producer = producerSupplier.get();
+    /**
+     * Chances drawn by this thread for each epoch and owner thread
+     */
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Chances>[][] buckets = new ArrayDeque[cycleLength][nbThreads];
+    /**
+     * Chances drawn by this thread for other threads during the current epoch. They can only be
+     * added to the buckets after the epoch.
+     */
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Chances>[] pending = new ArrayDeque[nbThreads];
+    private int phase = -1;
+    private int epoch = 0;
+    private int source = 0;
+    private int drawsLeft = 0;
+    private int nbInUse = 0;
+    private boolean arrived = false;
+
+    private PartitionState(final int index) {
+      this.index = index;
+    }
+
+    private final ArrayDeque<Chances> bucket(final int epoch, final int owner) {
+      final ArrayDeque<Chances> bucket = buckets[epoch][owner];
+      if (bucket != null) {
+        return bucket;
+      }
+      return buckets[epoch][owner] = new ArrayDeque<>();
+    }
+
+    private final ArrayDeque<Chances> pending(final int owner) {
+      final ArrayDeque<Chances> pending = this.pending[owner];
+      if (pending != null) {
+        return pending;
+      }
+      return this.pending[owner] = new ArrayDeque<>();
+    }
+
+    /**
+     * Move the pending chances to the buckets of their epoch
+     */
+    private final void flushPending() {
+      final ArrayDeque<Chances>[] pending = this.pending;
+      final int nbThreads = pending.length;
+      for (int owner = 0; owner < nbThreads; owner++) {
+        final ArrayDeque<Chances> ownerPending = pending[owner];
+        if (ownerPending != null && !ownerPending.isEmpty()) {
+          bucket(epoch, owner).addAll(ownerPending);
+          ownerPending.clear();
+        }
+      }
+    }
+  }
+
+  private final class ThreadBinding {
+    private int generation = -1;
+    private PartitionState state;
+  }
+
+  private final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier;
+  private final int nbThreads;
+  private final int epochDraws;
+  private final int cycleLength;
+  private final int[] slotsRounds;
+  private final int[] slotsPlayers;
+  /**
+   * Epoch offset of each slot's partition : n^(slot - 1)
+   */
+  private final int[] slotsFactors;
+  private final PartitionState[] states;
+  private final ThreadLocal<ThreadBinding> bindings =
+      ThreadLocal.withInitial(() -> new ThreadBinding());
+  private final AtomicInteger nextIndex = new AtomicInteger();
+  private final LongAdder nbDelayed = new LongAdder();
+  private volatile int generation = 0;
+  private volatile Phaser phaser;
+  private volatile boolean stop = false;
+
+  /**
+   * Constructor with a default number of draws per epoch
+   *
+   * @param producerSupplier supplier called once per trainer thread to create its own producer
+   * @param chancesSizes the size of the chances for each round and player
+   * @param nbThreads the number of trainer threads
+   */
+  public CSCFRMPartitionedChancesSynchronizer(
+      final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier,
+      final int[][] chancesSizes, final int nbThreads) {
+    this(producerSupplier, chancesSizes, nbThreads, DEFAULT_EPOCH_DRAWS);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param producerSupplier supplier called once per trainer thread to create its own producer
+   * @param chancesSizes the size of the chances for each round and player
+   * @param nbThreads the number of trainer threads
+   * @param epochDraws the number of chances drawn by each thread per epoch
+   */
+  public CSCFRMPartitionedChancesSynchronizer(
+      final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier,
+      final int[][] chancesSizes, final int nbThreads, final int epochDraws) {
+    checkArgument(nbThreads > 0, "The number of threads must be > 0");
+    checkArgument(epochDraws > 0, "The number of draws per epoch must be > 0");
+    this.producerSupplier = producerSupplier;
+    this.nbThreads = nbThreads;
+    this.epochDraws = epochDraws;
+    int nbSlots = 0;
+    for (int[] roundChances : chancesSizes) {
+      nbSlots += roundChances.length;
+    }
+    checkArgument(nbSlots >= 2, "At least two (round, player) chances slots are required");
+    final int[] slotsRounds = this.slotsRounds = new int[nbSlots];
+    final int[] slotsPlayers = this.slotsPlayers = new int[nbSlots];
+    final int[] slotsFactors = this.slotsFactors = new int[nbSlots];
+    long cycleLength = 1;
+    int slot = 0;
+    for (int round = 0; round < chancesSizes.length; round++) {
+      final int nbPlayers = chancesSizes[round].length;
+      for (int player = 0; player < nbPlayers; player++, slot++) {
+        slotsRounds[slot] = round;
+        slotsPlayers[slot] = player;
+        if (slot > 0) {
+          slotsFactors[slot] = (int) cycleLength;
+          cycleLength *= nbThreads;
+          checkArgument(cycleLength <= MAX_CYCLE_LENGTH,
+              "Too many epochs per cycle for %s threads and %s chances slots", nbThreads, nbSlots);
+        }
+      }
+    }
+    this.cycleLength = (int) cycleLength;
+    @SuppressWarnings("unchecked")
+    final PartitionState[] states = this.states =
+        (PartitionState[]) new CSCFRMPartitionedChancesSynchronizer<?>.PartitionState[nbThreads];
+    for (int i = 0; i < nbThreads; i++) {
+      states[i] = new PartitionState(i);
+    }
+    this.phaser = new Phaser(nbThreads);
+  }
+
+  /**
+   * Owner of chances
+   *
+   * @param playersChances the chances
+   * @return the owner epoch times the number of threads plus the owner thread
+   */
+  private final int owner(final int[][] playersChances) {
+    final int nbThreads = this.nbThreads;
+    final int[] slotsRounds = this.slotsRounds;
+    final int[] slotsPlayers = this.slotsPlayers;
+    final int[] slotsFactors = this.slotsFactors;
+    final int nbSlots = slotsRounds.length;
+    final int thread = playersChances[slotsRounds[0]][slotsPlayers[0]] % nbThreads;
+    int epoch = 0;
+    for (int slot = 1; slot < nbSlots; slot++) {
+      final int partition = playersChances[slotsRounds[slot]][slotsPlayers[slot]] % nbThreads;
+      epoch += ((partition - thread + nbThreads) % nbThreads) * slotsFactors[slot];
+    }
+    return epoch * nbThreads + thread;
+  }
+
+  private final PartitionState state() {
+    final ThreadBinding binding = bindings.get();
+    final int generation = this.generation;
+    if (binding.generation != generation) {
+      final int index = nextIndex.getAndIncrement();
+      checkState(index < nbThreads, "More than %s trainer threads", nbThreads);
+      final PartitionState state = binding.state = states[index];
+      binding.generation = generation;
+      startEpoch(state, phaser.getPhase(), false);
+    }
+    return binding.state;
+  }
+
+  private final void startEpoch(final PartitionState state, final int phase,
+      final boolean flushPending) {
+    if (flushPending) {
+      // All threads passed the end of the previous epoch, no one reads its buckets anymore
+      state.flushPending();
+    }
+    state.phase = phase;
+    state.epoch = phase % cycleLength;
+    state.source = 0;
+    state.drawsLeft = epochDraws;
+    state.arrived = false;
+  }
+
+  /**
+   * Next chances of the thread's current epoch
+   *
+   * @return the chances or null when the thread has no chances left for this epoch
+   */
+  private final Chances next(final PartitionState state) {
+    final PartitionState[] states = this.states;
+    final int nbThreads = this.nbThreads;
+    final int epoch = state.epoch;
+    final int index = state.index;
+    while (state.source < nbThreads) {
+      final ArrayDeque<Chances> bucket = states[state.source].buckets[epoch][index];
+      if (bucket != null) {
+        final Chances chances = bucket.poll();
+        if (chances != null) {
+          nbDelayed.decrement();
+          return chances;
+        }
+      }
+      state.source++;
+    }
+    final CSCFRMChancesProducer<Chances> producer = state.producer;
+    final int self = epoch * nbThreads + index;
+    while (state.drawsLeft > 0) {
+      state.drawsLeft--;
+      final Chances chances = producer.produceChances();
+      final int owner = owner(chances.getPlayersChances());
+      if (owner == self) {
+        return chances;
+      }
+      nbDelayed.increment();
+      final int ownerEpoch = owner / nbThreads;
+      final int ownerThread = owner % nbThreads;
+      if (ownerEpoch == epoch) {
+        state.pending(ownerThread).add(chances);
+      } else {
+        state.bucket(ownerEpoch, ownerThread).add(chances);
+      }
+    }
+    return null;
+  }
+
+  private final void arrive(final PartitionState state) {
+    if (!state.arrived) {
+      state.arrived = true;
+      phaser.arrive();
+    }
+  }
+
+  /**
+   * Wait for the next epoch
+   *
+   * @param state the thread state
+   * @param timeoutMillis maximum time to wait, or a negative value to wait indefinitely
+   * @return false when the wait timed out or when stopped
+   */
+  private final boolean awaitNextEpoch(final PartitionState state, final long timeoutMillis)
+      throws InterruptedException {
+    final int phase;
+    if (timeoutMillis < 0) {
+      phase = phaser.awaitAdvanceInterruptibly(state.phase);
+    } else {
+      try {
+        phase = phaser.awaitAdvanceInterruptibly(state.phase, timeoutMillis,
+            TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        return false;
+      }
+    }
+    if (phase < 0 || stop) {
+      return false;
+    }
+    startEpoch(state, phase, true);
+    return true;
+  }
+
+  /**
+   * Get the next chances, waiting for the next epochs if required
+   */
+  @Override
+  public Chances getChances() throws InterruptedException {
+    final PartitionState state = state();
+    while (!stop) {
+      if (!state.arrived) {
+        final Chances chances = next(state);
+        if (chances != null) {
+          state.nbInUse++;
+          return chances;
+        }
+        checkState(state.nbInUse == 0, "Chances must be released at the end of an epoch");
+        arrive(state);
+      }
+      if (!awaitNextEpoch(state, -1)) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Fill the batch with the thread's chances for the current epoch. Returns 0 when the thread
+   * waited for the next epoch more than a millisecond, callers must then check whether they're
+   * stopped and call again.
+   */
+  @Override
+  public int getChances(final Chances[] batch) throws InterruptedException {
+    final PartitionState state = state();
+    if (stop || (state.arrived && !awaitNextEpoch(state, WAIT_MILLIS))) {
+      return 0;
+    }
+    final int batchSize = batch.length;
+    int nb = 0;
+    while (nb < batchSize) {
+      final Chances chances = next(state);
+      if (chances == null) {
+        break;
+      }
+      batch[nb++] = chances;
+    }
+    if (nb == 0 && state.nbInUse == 0) {
+      arrive(state);
+    }
+    state.nbInUse += nb;
+    return nb;
+  }
+
+  @Override
+  public void endUsing(final Chances chances) throws InterruptedException {
+    final PartitionState state = state();
+    state.producer.endedUsing(chances);
+    state.nbInUse--;
+  }
+
+  @Override
+  public void endUsing(final Chances[] batch, final int nbChances) throws InterruptedException {
+    final PartitionState state = state();
+    state.producer.endedUsing(batch, 0, nbChances);
+    state.nbInUse -= nbChances;
+  }
+
+  /**
+   * Deregister the failed thread from the epochs barrier. When it already arrived, it first waits
+   * for the current epoch's end so that its arrival isn't counted twice. The chances deferred to
+   * the failed thread's partitions are not trained anymore.
+   */
+  @Override
+  public void trainerFailed() {
+    final PartitionState state = state();
+    if (state.arrived && phaser.awaitAdvance(state.phase) < 0) {
+      return;
+    }
+    phaser.arriveAndDeregister();
+  }
+
+  /**
+   * Number of drawn chances waiting for their owner's epoch
+   */
+  @Override
+  public long getNbDelayedChances() {
+    return nbDelayed.sum();
+  }
+
+  @Override
+  public void stop() {
+    stop = true;
+    phaser.forceTermination();
+  }
+
+  /**
+   * Must not be called while trainer threads are running
+   */
+  @Override
+  public void reset() {
+    for (PartitionState state : states) {
+      state.flushPending();
+      state.nbInUse = 0;
+    }
+    nextIndex.set(0);
+    phaser = new Phaser(nbThreads);
+    stop = false;
+    generation++;
+  }
+
+  @Override
+  public List<Runnable> getProducers() {
+    return Collections.emptyList();
+  }
+
+}
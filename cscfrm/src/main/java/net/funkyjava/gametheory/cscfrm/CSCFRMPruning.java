@@ -0,0 +1,161 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+
+/**
+ * Regret-based pruning settings and statistics shared by the {@link CSCFRMTrainer}s of a runner.
+ *
+ * When an infoset's strategy gives a zero probability to an action whose regret sum is lower than
+ * or equal to the threshold, the trainer doesn't recurse into the action's subtree : the action's
+ * utility doesn't contribute to any value and its regret is not updated. Every
+ * {@link #getRevisitPeriod()} iterations, the whole tree is traversed so that pruned actions whose
+ * regret would become positive again are found.
+ *
+ * With CFR+ regrets are floored to zero, so the threshold must be 0 for pruning to happen. With
+ * linear or discounted CFR a negative threshold only prunes the actions that are deeply negative.
+ *
+ * For each action node, counters hold how many subtrees were visited or pruned, for all chances.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMPruning {
+
+  /**
+   * Actions with a regret sum lower than or equal to this threshold can be pruned
+   */
+  @Getter
+  private final double threshold;
+  /**
+   * Period in iterations of the full traversals
+   */
+  @Getter
+  private final int revisitPeriod;
+  private final LongAdder[][][] visitedCounts;
+  private final LongAdder[][][] prunedCounts;
+
+  /**
+   * Constructor
+   *
+   * @param layout the layout of the data that will be trained
+   * @param threshold actions with a regret sum lower than or equal to this threshold can be pruned,
+   *        must be <= 0
+   * @param revisitPeriod period in iterations of the full traversals, must be > 0
+   */
+  public CSCFRMPruning(final CSCFRMLayout layout, final double threshold,
+      final int revisitPeriod) {
+    checkArgument(threshold <= 0, "The pruning threshold must be <= 0");
+    checkArgument(revisitPeriod > 0, "The revisit period must be > 0");
+    this.threshold = threshold;
+    this.revisitPeriod = revisitPeriod;
+    final int nbRounds = layout.getNbRounds();
+    final int nbPlayers = layout.getNbPlayers();
+    final int[][][] nodesOffsets = layout.getNodesOffsets();
+    visitedCounts = new LongAdder[nbRounds][nbPlayers][];
+    prunedCounts = new LongAdder[nbRounds][nbPlayers][];
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final int nbNodes = nodesOffsets[round][player].length;
+        final LongAdder[] visited = visitedCounts[round][player] = new LongAdder[nbNodes];
+        final LongAdder[] pruned = prunedCounts[round][player] = new LongAdder[nbNodes];
+        for (int i = 0; i < nbNodes; i++) {
+          visited[i] = new LongAdder();
+          pruned[i] = new LongAdder();
+        }
+      }
+    }
+  }
+
+  /**
+   * Is an iteration a full traversal
+   *
+   * @param iteration the iteration, starting at 1
+   * @return true when no action should be pruned during this iteration
+   */
+  public final boolean isRevisit(final long iteration) {
+    return iteration % revisitPeriod == 0;
+  }
+
+  /**
+   * Count the visited and pruned subtrees of an action node
+   *
+   * @param round the node's round
+   * @param player the node's player
+   * @param index the node's index for this round and player
+   * @param nbVisited the number of visited subtrees
+   * @param nbPruned the number of pruned subtrees
+   */
+  public final void count(final int round, final int player, final int index, final int nbVisited,
+      final int nbPruned) {
+    visitedCounts[round][player][index].add(nbVisited);
+    if (nbPruned > 0) {
+      prunedCounts[round][player][index].add(nbPruned);
+    }
+  }
+
+  /**
+   * Number of visited subtrees below an action node
+   *
+   * @param round the node's round
+   * @param player the node's player
+   * @param index the node's index for this round and player
+   * @return the number of visited subtrees
+   */
+  public long getVisited(final int round, final int player, final int index) {
+    return visitedCounts[round][player][index].sum();
+  }
+
+  /**
+   * Number of pruned subtrees below an action node
+   *
+   * @param round the node's round
+   * @param player the node's player
+   * @param index the node's index for this round and player
+   * @return the number of pruned subtrees
+   */
+  public long getPruned(final int round, final int player, final int index) {
+    return prunedCounts[round][player][index].sum();
+  }
+
+  /**
+   * Proportion of the subtrees below an action node that were pruned
+   *
+   * @param round the node's round
+   * @param player the node's player
+   * @param index the node's index for this round and player
+   * @return the pruned ratio
+   */
+  public double getPrunedRatio(final int round, final int player, final int index) {
+    final long pruned = getPruned(round, player, index);
+    final long total = pruned + getVisited(round, player, index);
+    return total == 0 ? 0 : (double) pruned / total;
+  }
+
+  /**
+   * Proportion of all subtrees that were pruned
+   *
+   * @return the pruned ratio
+   */
+  public double getPrunedRatio() {
+    long pruned = 0;
+    long total = 0;
+    final int nbRounds = prunedCounts.length;
+    for (int round = 0; round < nbRounds; round++) {
+      final int nbPlayers = prunedCounts[round].length;
+      for (int player = 0; player < nbPlayers; player++) {
+        final int nbNodes = prunedCounts[round][player].length;
+        for (int i = 0; i < nbNodes; i++) {
+          final long nodePruned = prunedCounts[round][player][i].sum();
+          pruned += nodePruned;
+          total += nodePruned + visitedCounts[round][player][i].sum();
+        }
+      }
+    }
+    return total == 0 ? 0 : (double) pruned / total;
+  }
+
+}
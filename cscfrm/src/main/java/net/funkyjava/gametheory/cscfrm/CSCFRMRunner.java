@@ -3,96 +3,242 @@ package net.funkyjava.gametheory.cscfrm;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
 
 /**
- * Runs the CSCFRM algorithm using {@link CSCFRMTrainer} executed in a {@link Executor}
+ * Runs the CSCFRM algorithm using trainers executed in a {@link Executor}. Trainers are
+ * {@link CSCFRMTrainer} by default, {@link CSCFRMExternalSamplingTrainer} or
+ * {@link CSCFRMVectorTrainer} can be selected with a {@link CSCFRMTrainerProvider}.
+ * 
+ * Hooks are scheduled on a dedicated thread. Trainer threads never lock to check for them : after
+ * each batch they compare a volatile safepoint epoch with the last one they saw. A quiescent hook
+ * increments the epoch and waits until all running trainer threads are parked, runs, then releases
+ * them. Other hooks run concurrently with the training.
+ * 
+ * Trainer threads, hooks and the synchronizer are measured by {@link #getMetrics()}, that can be
+ * registered as an MBean and logged periodically with {@link #enableMetricsLog(long)}.
  * 
  * @author Pierre Mardon
  *
  * @param <Chances> the chances class
  */
+@Slf4j
 public class CSCFRMRunner<Chances extends CSCFRMChances> {
 
   @Getter
   private final CSCFRMData<?, Chances> data;
   private final int nbTrainerThreads;
+  private final CSCFRMTrainerProvider<Chances> trainerProvider;
+  /**
+   * Maximum number of chances each trainer thread gets from the synchronizer at once
+   */
+  @Getter
+  private int batchSize = 1;
 
   private ExecutorService executor = null;
   private final CSCFRMChancesSynchronizer<Chances> chancesSynchronizer;
-  private boolean stop = false;
+  private volatile boolean stop = false;
   private Runnable[] trainerRunnables;
   private final List<Exception> exceptions =
       Collections.synchronizedList(new LinkedList<Exception>());
-  private final List<CSCFRMHook> hooks = new LinkedList<>();
-  private final AtomicInteger hookLockCount = new AtomicInteger();
+  private final Map<CSCFRMHook, Long> hooks = new LinkedHashMap<>();
+  private final Map<CSCFRMHook, ScheduledFuture<?>> scheduledHooks = new LinkedHashMap<>();
+  private ScheduledExecutorService hooksExecutor = null;
+  private final Object safepointLock = new Object();
+  private volatile long safepointEpoch = 0;
+  private boolean safepointRequested = false;
+  private int nbParkedTrainers = 0;
+  private int nbRunningTrainers = 0;
+  private CSCFRMCheckpointer checkpointer = null;
+  /**
+   * The training metrics
+   */
+  @Getter
+  private final CSCFRMRunnerMetrics metrics;
+  private CSCFRMHook metricsLogHook = null;
 
   private final class TrainerRunnable implements Runnable {
 
-    private final CSCFRMTrainer<Chances> trainer = new CSCFRMTrainer<>(data);
+    private final CSCFRMChancesTrainer<Chances> trainer = trainerProvider.getTrainer(data);
+    private final int index;
+
+    private TrainerRunnable(final int index) {
+      this.index = index;
+    }
 
     @Override
     public void run() {
-      final CSCFRMTrainer<Chances> trainer = this.trainer;
+      final CSCFRMChancesTrainer<Chances> trainer = this.trainer;
       final CSCFRMChancesSynchronizer<Chances> chancesSynchronizer =
           CSCFRMRunner.this.chancesSynchronizer;
+      @SuppressWarnings("unchecked")
+      final Chances[] batch = (Chances[]) new CSCFRMChances[batchSize];
+      final CSCFRMCheckpointer checkpointer = CSCFRMRunner.this.checkpointer;
+      final CSCFRMRunnerMetrics metrics = CSCFRMRunner.this.metrics;
+      final int index = this.index;
+      long seenEpoch = safepointEpoch;
+      int nbInUse = 0;
+      metrics.threadStarted(index);
       try {
         while (!stop) {
-          final Chances chances = chancesSynchronizer.getChances();
-          if (chances == null) {
-            return;
+          final long start = System.nanoTime();
+          final int nbChances = nbInUse = chancesSynchronizer.getChances(batch);
+          final long got = System.nanoTime();
+          if (nbChances == 0) {
+            if (stop) {
+              return;
+            }
+            // The synchronizer waits for other threads : don't delay safepoints
+            metrics.waited(index, got - start);
+            if (safepointEpoch != seenEpoch) {
+              seenEpoch = park();
+              metrics.parked(index, System.nanoTime() - got);
+            }
+            continue;
+          }
+          for (int i = 0; i < nbChances; i++) {
+            trainer.train(batch[i]);
+            if (checkpointer != null) {
+              checkpointer.touched(batch[i]);
+            }
+          }
+          final long trained = System.nanoTime();
+          nbInUse = 0;
+          chancesSynchronizer.endUsing(batch, nbChances);
+          final long end = System.nanoTime();
+          metrics.batch(index, nbChances, got - start, trained - got, end - trained);
+          if (safepointEpoch != seenEpoch) {
+            seenEpoch = park();
+            metrics.parked(index, System.nanoTime() - end);
           }
-          trainer.train(chances);
-          chancesSynchronizer.endUsing(chances);
-          lockAndPerformHooks();
         }
       } catch (
 
       Exception e) {
         e.printStackTrace();
         exceptions.add(e);
+        failed(batch, nbInUse);
+      } finally {
+        metrics.threadEnded(index);
+        synchronized (safepointLock) {
+          nbRunningTrainers--;
+          safepointLock.notifyAll();
+        }
+      }
+    }
+
+    /**
+     * Release the chances of a failed trainer and let the other ones go on without it
+     */
+    private final void failed(final Chances[] batch, final int nbInUse) {
+      try {
+        if (nbInUse > 0) {
+          chancesSynchronizer.endUsing(batch, nbInUse);
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+        exceptions.add(e);
+      } finally {
+        chancesSynchronizer.trainerFailed();
       }
     }
 
   }
 
-  private final void lockAndPerformHooks() throws InterruptedException {
-    synchronized (hooks) {
-      if (hooks.isEmpty()) {
-        return;
-      }
-      if (hookLockCount.incrementAndGet() == nbTrainerThreads) {
-        final List<CSCFRMHook> toRemove = new LinkedList<>();
-        for (CSCFRMHook hook : hooks) {
-          hook.action();
-          if (hook.isOneTime()) {
-            toRemove.add(hook);
-          }
+  /**
+   * Park a trainer thread until the requested safepoint is over
+   * 
+   * @return the epoch of the safepoint
+   */
+  private final long park() throws InterruptedException {
+    synchronized (safepointLock) {
+      final long epoch = safepointEpoch;
+      if (safepointRequested) {
+        nbParkedTrainers++;
+        safepointLock.notifyAll();
+        while (safepointRequested && safepointEpoch == epoch) {
+          safepointLock.wait();
         }
-        for (CSCFRMHook hook : toRemove) {
-          hooks.remove(hook);
+      }
+      return epoch;
+    }
+  }
+
+  /**
+   * Run a hook once all running trainer threads are parked
+   * 
+   * @param hook the quiescent hook
+   */
+  private final void runAtSafepoint(final CSCFRMHook hook) throws InterruptedException {
+    synchronized (safepointLock) {
+      safepointRequested = true;
+      nbParkedTrainers = 0;
+      safepointEpoch++;
+      final long start = System.nanoTime();
+      try {
+        while (nbParkedTrainers < nbRunningTrainers) {
+          safepointLock.wait();
         }
-        hookLockCount.set(0);
-        hooks.notifyAll();
+        metrics.safepoint(System.nanoTime() - start);
+        hook.action();
+      } finally {
+        safepointRequested = false;
+        safepointLock.notifyAll();
+      }
+    }
+  }
+
+  private final void runHook(final CSCFRMHook hook) {
+    final long start = System.nanoTime();
+    try {
+      if (hook.isQuiescent()) {
+        runAtSafepoint(hook);
       } else {
-        hooks.wait();
-        hooks.notifyAll();
+        hook.action();
       }
+    } catch (Exception e) {
+      e.printStackTrace();
+      exceptions.add(e);
     }
+    metrics.hook(System.nanoTime() - start);
+    if (hook.isOneTime()) {
+      synchronized (hooks) {
+        hooks.remove(hook);
+        scheduledHooks.remove(hook);
+      }
+    }
+  }
+
+  private final void schedule(final CSCFRMHook hook, final long periodMillis) {
+    final Runnable task = () -> runHook(hook);
+    final ScheduledFuture<?> future;
+    if (hook.isOneTime()) {
+      future = hooksExecutor.schedule(task, periodMillis, TimeUnit.MILLISECONDS);
+    } else {
+      future = hooksExecutor.scheduleWithFixedDelay(task, periodMillis, periodMillis,
+          TimeUnit.MILLISECONDS);
+    }
+    scheduledHooks.put(hook, future);
   }
 
   /**
-   * Constructor
+   * Constructor. Trainer threads will use {@link CSCFRMTrainer}.
    * 
    * @param data the data containing the game action tree and CSCFRM nodes
    * @param chancesSynchronizer the chances synchronizer that avoids collisions
@@ -101,13 +247,98 @@ public class CSCFRMRunner<Chances extends CSCFRMChances> {
   public CSCFRMRunner(@NonNull final CSCFRMData<?, Chances> data,
       @NonNull final CSCFRMChancesSynchronizer<Chances> chancesSynchronizer,
       final int nbTrainerThreads) {
+    this(data, chancesSynchronizer, nbTrainerThreads, CSCFRMTrainer::new);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param data the data containing the game action tree and CSCFRM nodes
+   * @param chancesSynchronizer the chances synchronizer that avoids collisions
+   * @param nbTrainerThreads the number of threads to use for training
+   * @param trainerProvider provider of the trainer used by each trainer thread
+   */
+  public CSCFRMRunner(@NonNull final CSCFRMData<?, Chances> data,
+      @NonNull final CSCFRMChancesSynchronizer<Chances> chancesSynchronizer,
+      final int nbTrainerThreads, @NonNull final CSCFRMTrainerProvider<Chances> trainerProvider) {
     checkArgument(nbTrainerThreads > 0, "The number of trainer threads must be > 0");
     this.data = data;
+    this.trainerProvider = trainerProvider;
     this.nbTrainerThreads = nbTrainerThreads;
     this.chancesSynchronizer = chancesSynchronizer;
+    this.metrics = new CSCFRMRunnerMetrics(nbTrainerThreads, chancesSynchronizer);
     final Runnable[] trainerRunnables = this.trainerRunnables = new Runnable[nbTrainerThreads];
     for (int i = 0; i < nbTrainerThreads; i++) {
-      trainerRunnables[i] = new TrainerRunnable();
+      trainerRunnables[i] = new TrainerRunnable(i);
+    }
+  }
+
+  /**
+   * Set the maximum number of chances each trainer thread gets from the synchronizer at once.
+   * Larger batches amortize the synchronization cost when training on one chances is fast.
+   * 
+   * @param batchSize the batch size
+   */
+  public synchronized final void setBatchSize(final int batchSize) {
+    checkArgument(batchSize > 0, "The batch size must be > 0");
+    checkState(executor == null, "Cannot change the batch size while running");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Take incremental checkpoints periodically while training. The checkpoints are written by a
+   * hook running concurrently with the trainers.
+   * 
+   * @param checkpointer the checkpointer of this runner's data
+   * @param periodMillis the delay between two checkpoints, in milliseconds
+   */
+  public synchronized final void enableCheckpoints(@NonNull final CSCFRMCheckpointer checkpointer,
+      final long periodMillis) {
+    checkArgument(checkpointer.getData() == data, "The checkpointer must be for the runner's data");
+    checkState(executor == null, "Cannot enable checkpoints while running");
+    checkState(this.checkpointer == null, "Checkpoints are already enabled");
+    this.checkpointer = checkpointer;
+    addHook(new CSCFRMHook(false, false) {
+
+      @Override
+      public void action() {
+        try {
+          checkpointer.checkpoint();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }, periodMillis);
+  }
+
+  /**
+   * Log a summary of the metrics periodically while training, see
+   * {@link CSCFRMRunnerMetrics#logLine()}. The line is built by a hook running concurrently with
+   * the trainers.
+   * 
+   * @param periodMillis the delay between two lines, in milliseconds
+   */
+  public synchronized final void enableMetricsLog(final long periodMillis) {
+    checkState(metricsLogHook == null, "The metrics log is already enabled");
+    final CSCFRMRunnerMetrics metrics = this.metrics;
+    final CSCFRMHook hook = this.metricsLogHook = new CSCFRMHook(false, false) {
+
+      @Override
+      public void action() {
+        log.info(metrics.logLine());
+      }
+    };
+    addHook(hook, periodMillis);
+  }
+
+  /**
+   * Stop logging the metrics
+   */
+  public synchronized final void disableMetricsLog() {
+    final CSCFRMHook hook = this.metricsLogHook;
+    if (hook != null) {
+      removeHook(hook);
+      metricsLogHook = null;
     }
   }
 
@@ -121,6 +352,10 @@ public class CSCFRMRunner<Chances extends CSCFRMChances> {
     final int nbTrainerThreads = this.nbTrainerThreads;
     final Runnable[] trainerRunnables = this.trainerRunnables;
     chancesSynchronizer.reset();
+    synchronized (safepointLock) {
+      nbRunningTrainers = nbTrainerThreads;
+    }
+    metrics.started();
     final ExecutorService executor =
         this.executor = Executors.newFixedThreadPool(nbTrainerThreads + 1);
     for (Runnable producer : chancesSynchronizer.getProducers()) {
@@ -129,6 +364,12 @@ public class CSCFRMRunner<Chances extends CSCFRMChances> {
     for (int i = 0; i < nbTrainerThreads; i++) {
       executor.execute(trainerRunnables[i]);
     }
+    synchronized (hooks) {
+      hooksExecutor = Executors.newSingleThreadScheduledExecutor();
+      for (Map.Entry<CSCFRMHook, Long> entry : hooks.entrySet()) {
+        schedule(entry.getKey(), entry.getValue());
+      }
+    }
   }
 
   /**
@@ -138,8 +379,10 @@ public class CSCFRMRunner<Chances extends CSCFRMChances> {
    * @throws InterruptedException
    */
   public synchronized final List<Exception> stopAndAwaitTermination() throws InterruptedException {
+    final ScheduledExecutorService hooksExecutor = this.hooksExecutor;
     stop();
     executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    hooksExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
     executor = null;
     return exceptions;
   }
@@ -150,8 +393,17 @@ public class CSCFRMRunner<Chances extends CSCFRMChances> {
   public synchronized final void stop() {
     checkState(executor != null, "No executor is running");
     stop = true;
+    metrics.stopped();
     chancesSynchronizer.stop();
     executor.shutdown();
+    synchronized (hooks) {
+      // Pending one-time hooks are kept for the next start
+      for (ScheduledFuture<?> future : scheduledHooks.values()) {
+        future.cancel(false);
+      }
+      scheduledHooks.clear();
+      hooksExecutor.shutdown();
+    }
   }
 
   /**
@@ -163,15 +415,47 @@ public class CSCFRMRunner<Chances extends CSCFRMChances> {
     return executor != null;
   }
 
+  /**
+   * Add a one-time hook that will run as soon as possible while the runner is running
+   * 
+   * @param hook the one-time hook
+   */
   public void addHook(final CSCFRMHook hook) {
+    checkArgument(hook.isOneTime(), "Hooks that are not one-time need a period");
+    addHook(hook, 0);
+  }
+
+  /**
+   * Add a hook that will run periodically while the runner is running, or once after the period
+   * for a one-time hook. Hooks must not wait for the runner's termination.
+   * 
+   * @param hook the hook
+   * @param periodMillis the delay between two runs of the hook, in milliseconds
+   */
+  public void addHook(final CSCFRMHook hook, final long periodMillis) {
+    checkArgument(periodMillis > 0 || (hook.isOneTime() && periodMillis == 0),
+        "The period must be > 0");
     synchronized (hooks) {
-      hooks.add(hook);
+      checkArgument(!hooks.containsKey(hook), "This hook was already added");
+      hooks.put(hook, periodMillis);
+      if (hooksExecutor != null && !hooksExecutor.isShutdown()) {
+        schedule(hook, periodMillis);
+      }
     }
   }
 
+  /**
+   * Remove a hook. It may still be running when this method returns.
+   * 
+   * @param hook the hook
+   */
   public void removeHook(final CSCFRMHook hook) {
     synchronized (hooks) {
       hooks.remove(hook);
+      final ScheduledFuture<?> future = scheduledHooks.remove(hook);
+      if (future != null) {
+        future.cancel(false);
+      }
     }
   }
 }
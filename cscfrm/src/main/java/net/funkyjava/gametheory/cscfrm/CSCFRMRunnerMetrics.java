@@ -0,0 +1,415 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Training metrics of a {@link CSCFRMRunner}, its trainer threads and its chances synchronizer.
+ *
+ * Each trainer thread owns a cache line padded slot of an {@link AtomicLongArray} that only it
+ * writes, with lazy sets : a lazy set is an ordered release store, so counting a batch costs no
+ * CAS and no full store-load fence like a volatile write would. Hooks durations are counted in
+ * {@link LongAdder}s. Readers sum the slots, so the values are not an exact snapshot.
+ *
+ * Allocated bytes are measured with {@code com.sun.management.ThreadMXBean} when the JVM supports
+ * it.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMRunnerMetrics implements CSCFRMRunnerMetricsMXBean {
+
+  /**
+   * Number of longs in a cache line
+   */
+  private static final int LINE_LONGS = 8;
+  private static final int ITERATIONS = 0;
+  private static final int BATCHES = 1;
+  private static final int GET_CHANCES_NANOS = 2;
+  private static final int TRAIN_NANOS = 3;
+  private static final int END_USING_NANOS = 4;
+  private static final int PARKED_NANOS = 5;
+  private static final int THREAD_ID = 6;
+  private static final int ALLOCATED_START = 7;
+
+  private final int nbTrainerThreads;
+  private final CSCFRMChancesSynchronizer<?> chancesSynchronizer;
+  private final AtomicLongArray slots;
+  private final com.sun.management.ThreadMXBean allocationBean;
+  private final LongAdder allocatedBytes = new LongAdder();
+  private final LongAdder nbSafepoints = new LongAdder();
+  private final LongAdder safepointWaitNanos = new LongAdder();
+  private final LongAdder hooksNanos = new LongAdder();
+  private volatile long startNanos = -1;
+  private volatile long runningNanos = 0;
+  private ObjectName objectName = null;
+
+  // Last values written in the log line
+  private long lastLogNanos = System.nanoTime();
+  private final long[] lastThreadsIterations;
+  private long lastIterations, lastGetChancesNanos, lastTrainNanos, lastEndUsingNanos,
+      lastParkedNanos, lastNbSafepoints, lastSafepointWaitNanos, lastHooksNanos, lastAllocatedBytes,
+      lastNbCollisions;
+
+  /**
+   * Constructor
+   *
+   * @param nbTrainerThreads the number of trainer threads
+   * @param chancesSynchronizer the runner's chances synchronizer
+   */
+  CSCFRMRunnerMetrics(final int nbTrainerThreads,
+      final CSCFRMChancesSynchronizer<?> chancesSynchronizer) {
+    this.nbTrainerThreads = nbTrainerThreads;
+    this.chancesSynchronizer = chancesSynchronizer;
+    this.lastThreadsIterations = new long[nbTrainerThreads];
+    final AtomicLongArray slots =
+        this.slots = new AtomicLongArray((nbTrainerThreads + 1) * LINE_LONGS);
+    for (int i = 0; i < nbTrainerThreads; i++) {
+      slots.set(slot(i) + THREAD_ID, -1);
+    }
+    final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    if (threadBean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+      final com.sun.management.ThreadMXBean allocationBean =
+          this.allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+      if (!allocationBean.isThreadAllocatedMemoryEnabled()) {
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+      }
+    } else {
+      this.allocationBean = null;
+    }
+  }
+
+  /**
+   * Index of the first long of a trainer thread's slot. The first cache line is left empty so that
+   * no slot shares a line with the array's header.
+   */
+  private static final int slot(final int thread) {
+    return (thread + 1) * LINE_LONGS;
+  }
+
+  /**
+   * Single writer increment
+   */
+  private final void add(final int index, final long value) {
+    final AtomicLongArray slots = this.slots;
+    slots.lazySet(index, slots.get(index) + value);
+  }
+
+  private final long sum(final int field) {
+    final AtomicLongArray slots = this.slots;
+    final int nbTrainerThreads = this.nbTrainerThreads;
+    long sum = 0;
+    for (int i = 0; i < nbTrainerThreads; i++) {
+      sum += slots.get(slot(i) + field);
+    }
+    return sum;
+  }
+
+  final void started() {
+    startNanos = System.nanoTime();
+  }
+
+  final void stopped() {
+    final long startNanos = this.startNanos;
+    if (startNanos >= 0) {
+      runningNanos += System.nanoTime() - startNanos;
+      this.startNanos = -1;
+    }
+  }
+
+  /**
+   * Called by a trainer thread when it starts
+   *
+   * @param thread the trainer thread index
+   */
+  final void threadStarted(final int thread) {
+    final int slot = slot(thread);
+    final long id = Thread.currentThread().getId();
+    if (allocationBean != null) {
+      slots.lazySet(slot + ALLOCATED_START, allocationBean.getThreadAllocatedBytes(id));
+    }
+    slots.set(slot + THREAD_ID, id);
+  }
+
+  /**
+   * Called by a trainer thread when it ends
+   *
+   * @param thread the trainer thread index
+   */
+  final void threadEnded(final int thread) {
+    final int slot = slot(thread);
+    if (allocationBean != null) {
+      final long id = Thread.currentThread().getId();
+      allocatedBytes
+          .add(allocationBean.getThreadAllocatedBytes(id) - slots.get(slot + ALLOCATED_START));
+    }
+    slots.set(slot + THREAD_ID, -1);
+  }
+
+  /**
+   * Called by a trainer thread after each batch
+   *
+   * @param thread the trainer thread index
+   * @param nbChances the number of trained chances
+   * @param getChancesNanos the time spent getting the chances
+   * @param trainNanos the time spent training
+   * @param endUsingNanos the time spent releasing the chances
+   */
+  final void batch(final int thread, final int nbChances, final long getChancesNanos,
+      final long trainNanos, final long endUsingNanos) {
+    final int slot = slot(thread);
+    add(slot + ITERATIONS, nbChances);
+    add(slot + BATCHES, 1);
+    add(slot + GET_CHANCES_NANOS, getChancesNanos);
+    add(slot + TRAIN_NANOS, trainNanos);
+    add(slot + END_USING_NANOS, endUsingNanos);
+  }
+
+  /**
+   * Called by a trainer thread after the synchronizer returned no chances while not stopped
+   *
+   * @param thread the trainer thread index
+   * @param getChancesNanos the time spent in the synchronizer
+   */
+  final void waited(final int thread, final long getChancesNanos) {
+    add(slot(thread) + GET_CHANCES_NANOS, getChancesNanos);
+  }
+
+  /**
+   * Called by a trainer thread after it was parked at a safepoint
+   *
+   * @param thread the trainer thread index
+   * @param parkedNanos the time spent parked
+   */
+  final void parked(final int thread, final long parkedNanos) {
+    add(slot(thread) + PARKED_NANOS, parkedNanos);
+  }
+
+  /**
+   * Called when all trainer threads are parked for a quiescent hook
+   *
+   * @param waitNanos the time spent waiting for them
+   */
+  final void safepoint(final long waitNanos) {
+    nbSafepoints.increment();
+    safepointWaitNanos.add(waitNanos);
+  }
+
+  /**
+   * Called after a hook ran
+   *
+   * @param nanos the hook's duration, including the safepoint wait
+   */
+  final void hook(final long nanos) {
+    hooksNanos.add(nanos);
+  }
+
+  @Override
+  public int getNbTrainerThreads() {
+    return nbTrainerThreads;
+  }
+
+  @Override
+  public long getRunningMillis() {
+    final long startNanos = this.startNanos;
+    final long running = runningNanos + (startNanos >= 0 ? System.nanoTime() - startNanos : 0);
+    return running / 1000000;
+  }
+
+  @Override
+  public long getIterations() {
+    return sum(ITERATIONS);
+  }
+
+  @Override
+  public long[] getThreadsIterations() {
+    final int nbTrainerThreads = this.nbTrainerThreads;
+    final long[] iterations = new long[nbTrainerThreads];
+    for (int i = 0; i < nbTrainerThreads; i++) {
+      iterations[i] = slots.get(slot(i) + ITERATIONS);
+    }
+    return iterations;
+  }
+
+  @Override
+  public double getIterationsPerSecond() {
+    final long millis = getRunningMillis();
+    return millis == 0 ? 0 : getIterations() * 1000d / millis;
+  }
+
+  @Override
+  public long getBatches() {
+    return sum(BATCHES);
+  }
+
+  @Override
+  public long getGetChancesNanos() {
+    return sum(GET_CHANCES_NANOS);
+  }
+
+  @Override
+  public long getTrainNanos() {
+    return sum(TRAIN_NANOS);
+  }
+
+  @Override
+  public long getEndUsingNanos() {
+    return sum(END_USING_NANOS);
+  }
+
+  @Override
+  public long getParkedNanos() {
+    return sum(PARKED_NANOS);
+  }
+
+  @Override
+  public long getNbSafepoints() {
+    return nbSafepoints.sum();
+  }
+
+  @Override
+  public long getSafepointWaitNanos() {
+    return safepointWaitNanos.sum();
+  }
+
+  @Override
+  public long getHooksNanos() {
+    return hooksNanos.sum();
+  }
+
+  @Override
+  public long getAllocatedBytes() {
+    final com.sun.management.ThreadMXBean allocationBean = this.allocationBean;
+    if (allocationBean == null) {
+      return -1;
+    }
+    final AtomicLongArray slots = this.slots;
+    final int nbTrainerThreads = this.nbTrainerThreads;
+    long allocated = allocatedBytes.sum();
+    for (int i = 0; i < nbTrainerThreads; i++) {
+      final int slot = slot(i);
+      final long id = slots.get(slot + THREAD_ID);
+      if (id < 0) {
+        continue;
+      }
+      final long threadAllocated = allocationBean.getThreadAllocatedBytes(id);
+      if (threadAllocated >= 0) {
+        allocated += threadAllocated - slots.get(slot + ALLOCATED_START);
+      }
+    }
+    return allocated;
+  }
+
+  @Override
+  public long getNbCollisions() {
+    return chancesSynchronizer.getNbCollisions();
+  }
+
+  @Override
+  public long getNbDelayedChances() {
+    return chancesSynchronizer.getNbDelayedChances();
+  }
+
+  /**
+   * Build a one line summary of the training since the previous call : iterations per second in
+   * total and per thread, proportion of the trainer threads time spent getting chances, training,
+   * releasing chances and parked, safepoints and hooks durations, allocation rate and collisions.
+   *
+   * @return the log line
+   */
+  public synchronized String logLine() {
+    final long now = System.nanoTime();
+    final long iterations = getIterations();
+    final long getChancesNanos = getGetChancesNanos();
+    final long trainNanos = getTrainNanos();
+    final long endUsingNanos = getEndUsingNanos();
+    final long parkedNanos = getParkedNanos();
+    final long nbSafepoints = getNbSafepoints();
+    final long safepointWaitNanos = getSafepointWaitNanos();
+    final long hooksNanos = getHooksNanos();
+    final long allocatedBytes = getAllocatedBytes();
+    final long nbCollisions = getNbCollisions();
+    final long[] threadsIterations = getThreadsIterations();
+    final long[] lastThreadsIterations = this.lastThreadsIterations;
+    final double seconds = (now - lastLogNanos) / 1e9;
+    final double threadsNanos = (now - lastLogNanos) * (double) nbTrainerThreads / 100;
+    final StringBuilder builder = new StringBuilder();
+    builder.append(String.format("%.0f it/s [", (iterations - lastIterations) / seconds));
+    for (int i = 0; i < nbTrainerThreads; i++) {
+      if (i > 0) {
+        builder.append(' ');
+      }
+      builder.append(
+          String.format("%.0f", (threadsIterations[i] - lastThreadsIterations[i]) / seconds));
+      lastThreadsIterations[i] = threadsIterations[i];
+    }
+    builder.append(String.format(
+        "], getChances %.1f%%, train %.1f%%, endUsing %.1f%%, parked %.1f%%, "
+            + "%d safepoints waited %.1f ms, hooks %.1f ms, ",
+        (getChancesNanos - lastGetChancesNanos) / threadsNanos,
+        (trainNanos - lastTrainNanos) / threadsNanos,
+        (endUsingNanos - lastEndUsingNanos) / threadsNanos,
+        (parkedNanos - lastParkedNanos) / threadsNanos, nbSafepoints - lastNbSafepoints,
+        (safepointWaitNanos - lastSafepointWaitNanos) / 1e6, (hooksNanos - lastHooksNanos) / 1e6));
+    if (allocatedBytes >= 0) {
+      builder.append(String.format("alloc %.1f MB/s, ",
+          (allocatedBytes - lastAllocatedBytes) / seconds / (1 << 20)));
+    }
+    builder.append(String.format("collisions %.0f/s, delayed chances %d",
+        (nbCollisions - lastNbCollisions) / seconds, getNbDelayedChances()));
+    lastLogNanos = now;
+    lastIterations = iterations;
+    lastGetChancesNanos = getChancesNanos;
+    lastTrainNanos = trainNanos;
+    lastEndUsingNanos = endUsingNanos;
+    lastParkedNanos = parkedNanos;
+    lastNbSafepoints = nbSafepoints;
+    lastSafepointWaitNanos = safepointWaitNanos;
+    lastHooksNanos = hooksNanos;
+    lastAllocatedBytes = allocatedBytes;
+    lastNbCollisions = nbCollisions;
+    return builder.toString();
+  }
+
+  /**
+   * Register these metrics in the platform MBean server under
+   * {@code net.funkyjava.gametheory.cscfrm:type=CSCFRMRunner,name=<name>}
+   *
+   * @param name the runner's name
+   * @return the object name
+   * @throws JMException
+   */
+  public synchronized ObjectName register(final String name) throws JMException {
+    if (objectName != null) {
+      unregister();
+    }
+    final ObjectName objectName = new ObjectName(
+        "net.funkyjava.gametheory.cscfrm:type=CSCFRMRunner,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return this.objectName = objectName;
+  }
+
+  /**
+   * Unregister these metrics from the platform MBean server if registered
+   *
+   * @throws JMException
+   */
+  public synchronized void unregister() throws JMException {
+    final ObjectName objectName = this.objectName;
+    if (objectName == null) {
+      return;
+    }
+    this.objectName = null;
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+  }
+}
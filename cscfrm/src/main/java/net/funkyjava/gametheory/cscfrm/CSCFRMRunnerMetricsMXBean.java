@@ -0,0 +1,79 @@
+package net.funkyjava.gametheory.cscfrm;
+
+/**
+ * Management interface of {@link CSCFRMRunnerMetrics}. Counters are cumulative since the creation
+ * of the runner, durations are in nanoseconds unless stated otherwise.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public interface CSCFRMRunnerMetricsMXBean {
+
+  int getNbTrainerThreads();
+
+  /**
+   * @return the total time the runner was running, in milliseconds
+   */
+  long getRunningMillis();
+
+  long getIterations();
+
+  /**
+   * @return the number of iterations of each trainer thread
+   */
+  long[] getThreadsIterations();
+
+  /**
+   * @return the average number of iterations per second while running
+   */
+  double getIterationsPerSecond();
+
+  long getBatches();
+
+  /**
+   * @return the time trainer threads spent in the synchronizer's getChances
+   */
+  long getGetChancesNanos();
+
+  /**
+   * @return the time trainer threads spent training
+   */
+  long getTrainNanos();
+
+  /**
+   * @return the time trainer threads spent in the synchronizer's endUsing
+   */
+  long getEndUsingNanos();
+
+  /**
+   * @return the time trainer threads spent parked at safepoints
+   */
+  long getParkedNanos();
+
+  long getNbSafepoints();
+
+  /**
+   * @return the time quiescent hooks waited for the trainer threads to park
+   */
+  long getSafepointWaitNanos();
+
+  /**
+   * @return the time spent running hooks
+   */
+  long getHooksNanos();
+
+  /**
+   * @return the bytes allocated by the trainer threads, -1 when the JVM can't measure it
+   */
+  long getAllocatedBytes();
+
+  /**
+   * @return the synchronizer's number of collisions
+   */
+  long getNbCollisions();
+
+  /**
+   * @return the synchronizer's number of chances delayed by a collision
+   */
+  long getNbDelayedChances();
+}
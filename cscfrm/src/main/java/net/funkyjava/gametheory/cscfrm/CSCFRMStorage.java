@@ -0,0 +1,321 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import net.funkyjava.gametheory.io.BulkFillable;
+import net.funkyjava.gametheory.io.ChannelReader;
+import net.funkyjava.gametheory.io.ChannelWriter;
+
+/**
+ * Storage of the regret sums and strategy sums of all CSCFRM nodes, addressed by the offsets of a
+ * {@link CSCFRMLayout}.
+ *
+ * The default serialization writes, for each node in layout order, its regret sums followed by its
+ * strategy sums as doubles. Implementations storing values with another precision may override
+ * {@link #fillNode(DataInputStream, long, int)} and
+ * {@link #writeNode(DataOutputStream, long, int)}. The channel path reads and writes whole chance
+ * blocks with {@link #fillChance(ChannelReader, long, int[], int[])} and
+ * {@link #writeChance(ChannelWriter, long, int[], int[])}, which fall back on the nodes methods by
+ * default. Array storages override them to transfer the same bytes of a whole chance block in one
+ * bulk call.
+ *
+ * Implementations are not required to be thread safe : the chances synchronizer is responsible for
+ * avoiding concurrent access to the same offsets.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public interface CSCFRMStorage extends BulkFillable {
+
+  /**
+   * The layout this storage is addressed with
+   *
+   * @return the layout
+   */
+  CSCFRMLayout getLayout();
+
+  /**
+   * Get a regret sum
+   *
+   * @param offset the value's offset
+   * @return the regret sum
+   */
+  double getRegret(final long offset);
+
+  /**
+   * Set a regret sum
+   *
+   * @param offset the value's offset
+   * @param value the new regret sum
+   */
+  void setRegret(final long offset, final double value);
+
+  /**
+   * Add to a regret sum
+   *
+   * @param offset the value's offset
+   * @param value the value to add
+   */
+  void addRegret(final long offset, final double value);
+
+  /**
+   * Get a strategy sum
+   *
+   * @param offset the value's offset
+   * @return the strategy sum
+   */
+  double getStrategySum(final long offset);
+
+  /**
+   * Set a strategy sum
+   *
+   * @param offset the value's offset
+   * @param value the new strategy sum
+   */
+  void setStrategySum(final long offset, final double value);
+
+  /**
+   * Add to a strategy sum
+   *
+   * @param offset the value's offset
+   * @param value the value to add
+   */
+  void addStrategySum(final long offset, final double value);
+
+  /**
+   * Set a regret sum to 0 when it is negative, like CFR+ does. Storages updated concurrently
+   * without reservation must override it so that concurrent additions are not overwritten.
+   *
+   * @param offset the value's offset
+   * @return the floored regret sum
+   */
+  public default double floorRegret(final long offset) {
+    final double regret = getRegret(offset);
+    if (regret < 0) {
+      setRegret(offset, 0);
+      return 0;
+    }
+    return regret;
+  }
+
+  /**
+   * Multiply a regret sum by a factor depending on its sign. Storages updated concurrently without
+   * reservation must override it so that concurrent additions are not overwritten.
+   *
+   * @param offset the value's offset
+   * @param positive factor of a positive regret sum
+   * @param negative factor of a negative regret sum
+   */
+  public default void scaleRegret(final long offset, final double positive,
+      final double negative) {
+    final double regret = getRegret(offset);
+    if (regret > 0) {
+      if (positive != 1) {
+        setRegret(offset, regret * positive);
+      }
+    } else if (regret < 0 && negative != 1) {
+      setRegret(offset, regret * negative);
+    }
+  }
+
+  /**
+   * Multiply a strategy sum by a factor. Storages updated concurrently without reservation must
+   * override it so that concurrent additions are not overwritten.
+   *
+   * @param offset the value's offset
+   * @param factor the factor
+   */
+  public default void scaleStrategySum(final long offset, final double factor) {
+    if (factor != 1) {
+      setStrategySum(offset, getStrategySum(offset) * factor);
+    }
+  }
+
+  @Override
+  public default void fill(InputStream is) throws IOException {
+    final DataInputStream dis = new DataInputStream(is);
+    final CSCFRMLayout layout = getLayout();
+    final int nbRounds = layout.getNbRounds();
+    final int nbPlayers = layout.getNbPlayers();
+    final int[][] chancesSizes = layout.getRoundChancesSizes();
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final int nbChances = chancesSizes[round][player];
+        final int[] offsets = layout.getNodesOffsets()[round][player];
+        final int[] nbActions = layout.getNodesNbActions()[round][player];
+        final int nbNodes = offsets.length;
+        for (int chance = 0; chance < nbChances; chance++) {
+          final long chanceOffset = layout.chanceOffset(round, player, chance);
+          for (int node = 0; node < nbNodes; node++) {
+            fillNode(dis, chanceOffset + offsets[node], nbActions[node]);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public default void fill(ChannelReader reader) throws IOException {
+    final CSCFRMLayout layout = getLayout();
+    final int nbRounds = layout.getNbRounds();
+    final int nbPlayers = layout.getNbPlayers();
+    final int[][] chancesSizes = layout.getRoundChancesSizes();
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final int nbChances = chancesSizes[round][player];
+        final int[] offsets = layout.getNodesOffsets()[round][player];
+        final int[] nbActions = layout.getNodesNbActions()[round][player];
+        for (int chance = 0; chance < nbChances; chance++) {
+          final long chanceOffset = layout.chanceOffset(round, player, chance);
+          fillChance(reader, chanceOffset, offsets, nbActions);
+        }
+      }
+    }
+  }
+
+  @Override
+  public default void write(ChannelWriter writer) throws IOException {
+    final CSCFRMLayout layout = getLayout();
+    final int nbRounds = layout.getNbRounds();
+    final int nbPlayers = layout.getNbPlayers();
+    final int[][] chancesSizes = layout.getRoundChancesSizes();
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final int nbChances = chancesSizes[round][player];
+        final int[] offsets = layout.getNodesOffsets()[round][player];
+        final int[] nbActions = layout.getNodesNbActions()[round][player];
+        for (int chance = 0; chance < nbChances; chance++) {
+          final long chanceOffset = layout.chanceOffset(round, player, chance);
+          writeChance(writer, chanceOffset, offsets, nbActions);
+        }
+      }
+    }
+  }
+
+  @Override
+  public default void write(OutputStream os) throws IOException {
+    final DataOutputStream dos = new DataOutputStream(os);
+    final CSCFRMLayout layout = getLayout();
+    final int nbRounds = layout.getNbRounds();
+    final int nbPlayers = layout.getNbPlayers();
+    final int[][] chancesSizes = layout.getRoundChancesSizes();
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        final int nbChances = chancesSizes[round][player];
+        final int[] offsets = layout.getNodesOffsets()[round][player];
+        final int[] nbActions = layout.getNodesNbActions()[round][player];
+        final int nbNodes = offsets.length;
+        for (int chance = 0; chance < nbChances; chance++) {
+          final long chanceOffset = layout.chanceOffset(round, player, chance);
+          for (int node = 0; node < nbNodes; node++) {
+            writeNode(dos, chanceOffset + offsets[node], nbActions[node]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the values of one node : its regret sums then its strategy sums, as doubles by default
+   *
+   * @param dis the input
+   * @param offset the node's offset
+   * @param nbActions the node's number of actions
+   * @throws IOException
+   */
+  public default void fillNode(final DataInputStream dis, final long offset, final int nbActions)
+      throws IOException {
+    for (int i = 0; i < nbActions; i++) {
+      setRegret(offset + i, dis.readDouble());
+    }
+    for (int i = 0; i < nbActions; i++) {
+      setStrategySum(offset + i, dis.readDouble());
+    }
+  }
+
+  /**
+   * Write the values of one node : its regret sums then its strategy sums, as doubles by default
+   *
+   * @param dos the output
+   * @param offset the node's offset
+   * @param nbActions the node's number of actions
+   * @throws IOException
+   */
+  public default void writeNode(final DataOutputStream dos, final long offset,
+      final int nbActions) throws IOException {
+    for (int i = 0; i < nbActions; i++) {
+      dos.writeDouble(getRegret(offset + i));
+    }
+    for (int i = 0; i < nbActions; i++) {
+      dos.writeDouble(getStrategySum(offset + i));
+    }
+  }
+
+  /**
+   * Read the values of one node from a channel reader, in the
+   * {@link #fillNode(DataInputStream, long, int)} format
+   *
+   * @param reader the reader
+   * @param offset the node's offset
+   * @param nbActions the node's number of actions
+   * @throws IOException
+   */
+  public default void fillNode(final ChannelReader reader, final long offset,
+      final int nbActions) throws IOException {
+    fillNode(reader.getDataInputStream(), offset, nbActions);
+  }
+
+  /**
+   * Write the values of one node to a channel writer, in the
+   * {@link #writeNode(DataOutputStream, long, int)} format
+   *
+   * @param writer the writer
+   * @param offset the node's offset
+   * @param nbActions the node's number of actions
+   * @throws IOException
+   */
+  public default void writeNode(final ChannelWriter writer, final long offset,
+      final int nbActions) throws IOException {
+    writeNode(writer.getDataOutputStream(), offset, nbActions);
+  }
+
+  /**
+   * Read the values of all nodes of a chance block from a channel reader, node after node in the
+   * {@link #fillNode(DataInputStream, long, int)} format
+   *
+   * @param reader the reader
+   * @param chanceOffset the chance block's offset
+   * @param offsets the nodes offsets relative to the chance block's offset
+   * @param nbActions the nodes numbers of actions
+   * @throws IOException
+   */
+  public default void fillChance(final ChannelReader reader, final long chanceOffset,
+      final int[] offsets, final int[] nbActions) throws IOException {
+    final int nbNodes = offsets.length;
+    for (int node = 0; node < nbNodes; node++) {
+      fillNode(reader, chanceOffset + offsets[node], nbActions[node]);
+    }
+  }
+
+  /**
+   * Write the values of all nodes of a chance block to a channel writer, node after node in the
+   * {@link #writeNode(DataOutputStream, long, int)} format
+   *
+   * @param writer the writer
+   * @param chanceOffset the chance block's offset
+   * @param offsets the nodes offsets relative to the chance block's offset
+   * @param nbActions the nodes numbers of actions
+   * @throws IOException
+   */
+  public default void writeChance(final ChannelWriter writer, final long chanceOffset,
+      final int[] offsets, final int[] nbActions) throws IOException {
+    final int nbNodes = offsets.length;
+    for (int node = 0; node < nbNodes; node++) {
+      writeNode(writer, chanceOffset + offsets[node], nbActions[node]);
+    }
+  }
+}
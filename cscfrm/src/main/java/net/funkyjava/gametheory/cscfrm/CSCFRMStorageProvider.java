@@ -0,0 +1,19 @@
+package net.funkyjava.gametheory.cscfrm;
+
+/**
+ * Creates the storage of a {@link CSCFRMData} once its layout is known. Implementations can
+ * typically be a storage constructor reference like {@code CSCFRMFloatArrayStorage::new}.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public interface CSCFRMStorageProvider {
+
+  /**
+   * Create a storage for the given layout
+   *
+   * @param layout the layout
+   * @return the storage
+   */
+  CSCFRMStorage getStorage(final CSCFRMLayout layout);
+}
@@ -0,0 +1,42 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import net.funkyjava.gametheory.extensiveformgame.Subgame;
+
+/**
+ * Weights of the players strategy sums for given chances, on top of their realization weights in
+ * the trained game. When training a {@link Subgame}, they are the players reach probabilities of
+ * the subgame's entries with the trunk strategy, so that the average strategies are the ones of
+ * the whole game.
+ * 
+ * @author Pierre Mardon
+ * 
+ * @param <Chances> the chances class
+ */
+public interface CSCFRMStrategyWeights<Chances extends CSCFRMChances> {
+
+  /**
+   * Get the players strategy sums weights
+   * 
+   * @param chances the chances
+   * @param weights destination array indexed by player
+   */
+  void getWeights(final Chances chances, final double[] weights);
+
+  /**
+   * Weights of a subgame : the sum over its entries of each player's reach probability, see
+   * {@link Subgame#getEntryReach(int, int[][])}
+   * 
+   * @param subgame the subgame
+   * @return the weights
+   */
+  static <Chances extends CSCFRMChances> CSCFRMStrategyWeights<Chances> entryReach(
+      final Subgame<?, Chances> subgame) {
+    return (chances, weights) -> {
+      final int[][] playersChances = chances.getPlayersChances();
+      final int nbPlayers = subgame.getNbPlayers();
+      for (int player = 0; player < nbPlayers; player++) {
+        weights[player] = subgame.getEntryReach(player, playersChances);
+      }
+    };
+  }
+}
@@ -0,0 +1,311 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free chances synchronizer. Each chance of each round and player owns one bit in an
+ * {@link AtomicLongArray}, chances are reserved by setting their bits with CAS and released by
+ * clearing them. Consecutive chances are spread over cache line padded stripes so that threads
+ * reserving different chances rarely write to the same cache line.
+ *
+ * Each trainer thread has its own producer and its own queue of chances that collided with another
+ * thread's reservation. Queued chances are retried first so that no chance is discarded and the
+ * sampling stays unbiased. When a thread's queue is full, it retries its queue instead of producing
+ * new chances. When stopped, the queued chances are given back to the producer.
+ *
+ * {@link #endUsing(CSCFRMChances)} must be called by the thread that got the chances.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances class
+ */
+public class CSCFRMStripedChancesSynchronizer<Chances extends CSCFRMChances>
+    implements CSCFRMChancesSynchronizer<Chances> {
+
+  private static final int STRIPE_SHIFT = 4;
+  private static final int NB_STRIPES = 1 << STRIPE_SHIFT;
+  private static final int STRIPE_MASK = NB_STRIPES - 1;
+  /**
+   * Number of longs in a cache line
+   */
+  private static final int LINE_LONGS = 8;
+  /**
+   * Default maximum number of colliding chances queued by each thread
+   */
+  public static final int DEFAULT_MAX_RETRY_QUEUE_SIZE = 64;
+
+  private final class ThreadState {
+    private final CSCFRMChancesProducer<Chances> producer = producerSupplier.get();
+    private final ArrayDeque<Chances> retryQueue = new ArrayDeque<>();
+  }
+
+  private final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier;
+  private final int nbRounds;
+  private final AtomicLongArray[][] inUseBits;
+  private final int[][] wordsPerStripe;
+  private final int maxRetryQueueSize;
+  private final ThreadLocal<ThreadState> threadStates =
+      ThreadLocal.withInitial(() -> new ThreadState());
+  private final LongAdder nbCollisions = new LongAdder();
+  private final LongAdder nbDelayed = new LongAdder();
+  private volatile boolean stop = false;
+
+  /**
+   * Constructor with a default retry queue size
+   *
+   * @param producerSupplier supplier called once per trainer thread to create its own producer
+   * @param chancesSizes the size of the chances for each round and player
+   */
+  public CSCFRMStripedChancesSynchronizer(
+      final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier,
+      final int[][] chancesSizes) {
+    this(producerSupplier, chancesSizes, DEFAULT_MAX_RETRY_QUEUE_SIZE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param producerSupplier supplier called once per trainer thread to create its own producer
+   * @param chancesSizes the size of the chances for each round and player
+   * @param maxRetryQueueSize maximum number of colliding chances queued by each thread
+   */
+  public CSCFRMStripedChancesSynchronizer(
+      final Supplier<? extends CSCFRMChancesProducer<Chances>> producerSupplier,
+      final int[][] chancesSizes, final int maxRetryQueueSize) {
+    checkArgument(maxRetryQueueSize > 0, "The retry queue size must be > 0");
+    this.producerSupplier = producerSupplier;
+    this.maxRetryQueueSize = maxRetryQueueSize;
+    final int nbRounds = this.nbRounds = chancesSizes.length;
+    this.inUseBits = new AtomicLongArray[nbRounds][];
+    this.wordsPerStripe = new int[nbRounds][];
+    for (int i = 0; i < nbRounds; i++) {
+      final int[] playersChances = chancesSizes[i];
+      final int nbPlayers = playersChances.length;
+      final AtomicLongArray[] roundBits = inUseBits[i] = new AtomicLongArray[nbPlayers];
+      final int[] roundWords = wordsPerStripe[i] = new int[nbPlayers];
+      for (int j = 0; j < nbPlayers; j++) {
+        final int chancesPerStripe = (playersChances[j] + STRIPE_MASK) >>> STRIPE_SHIFT;
+        final int words = (chancesPerStripe + 63) >>> 6;
+        // Round up to whole cache lines so that two stripes never share one
+        final int paddedWords = roundWords[j] = (words + LINE_LONGS - 1) / LINE_LONGS * LINE_LONGS;
+        roundBits[j] = new AtomicLongArray(NB_STRIPES * paddedWords);
+      }
+    }
+  }
+
+  @Override
+  public Chances getChances() throws InterruptedException {
+    final ThreadState state = threadStates.get();
+    final ArrayDeque<Chances> retryQueue = state.retryQueue;
+    final CSCFRMChancesProducer<Chances> producer = state.producer;
+    final int maxRetryQueueSize = this.maxRetryQueueSize;
+    while (!stop) {
+      final int nbQueued = retryQueue.size();
+      for (int i = 0; i < nbQueued; i++) {
+        final Chances chances = retryQueue.poll();
+        if (tryReserve(chances.getPlayersChances())) {
+          nbDelayed.decrement();
+          return chances;
+        }
+        retryQueue.add(chances);
+      }
+      if (nbQueued >= maxRetryQueueSize) {
+        Thread.yield();
+        continue;
+      }
+      final Chances chances = producer.produceChances();
+      if (tryReserve(chances.getPlayersChances())) {
+        return chances;
+      }
+      retryQueue.add(chances);
+      nbCollisions.increment();
+      nbDelayed.increment();
+    }
+    recycleRetryQueue(state);
+    return null;
+  }
+
+  /**
+   * Fill the batch with chances reserved together. When the thread's retry queue is full, the
+   * chances reserved so far are returned instead of waiting for other threads.
+   */
+  @Override
+  public int getChances(final Chances[] batch) throws InterruptedException {
+    final ThreadState state = threadStates.get();
+    final ArrayDeque<Chances> retryQueue = state.retryQueue;
+    final CSCFRMChancesProducer<Chances> producer = state.producer;
+    final int maxRetryQueueSize = this.maxRetryQueueSize;
+    final int batchSize = batch.length;
+    int nb = 0;
+    while (!stop) {
+      final int nbQueued = retryQueue.size();
+      for (int i = 0; i < nbQueued && nb < batchSize; i++) {
+        final Chances chances = retryQueue.poll();
+        if (tryReserve(chances.getPlayersChances())) {
+          batch[nb++] = chances;
+          nbDelayed.decrement();
+        } else {
+          retryQueue.add(chances);
+        }
+      }
+      if (nb == batchSize) {
+        return nb;
+      }
+      if (retryQueue.size() >= maxRetryQueueSize) {
+        if (nb > 0) {
+          return nb;
+        }
+        Thread.yield();
+        continue;
+      }
+      final Chances chances = producer.produceChances();
+      if (tryReserve(chances.getPlayersChances())) {
+        batch[nb++] = chances;
+        if (nb == batchSize) {
+          return nb;
+        }
+      } else {
+        retryQueue.add(chances);
+        nbCollisions.increment();
+        nbDelayed.increment();
+      }
+    }
+    // Stopped : release the chances reserved so far and give them back to the producer
+    final int nbRounds = this.nbRounds;
+    for (int i = 0; i < nb; i++) {
+      release(batch[i].getPlayersChances(), nbRounds, 0);
+    }
+    producer.endedUsing(batch, 0, nb);
+    recycleRetryQueue(state);
+    return 0;
+  }
+
+  /**
+   * Give the chances queued by the thread back to its producer when stopped : the runner starts new
+   * trainer threads for each session, so they would never be retried
+   *
+   * @param state the thread's state
+   */
+  private void recycleRetryQueue(final ThreadState state) {
+    final ArrayDeque<Chances> retryQueue = state.retryQueue;
+    final CSCFRMChancesProducer<Chances> producer = state.producer;
+    nbDelayed.add(-retryQueue.size());
+    Chances chances;
+    while ((chances = retryQueue.poll()) != null) {
+      producer.endedUsing(chances);
+    }
+  }
+
+  @Override
+  public void endUsing(final Chances used) throws InterruptedException {
+    release(used.getPlayersChances(), nbRounds, 0);
+    threadStates.get().producer.endedUsing(used);
+  }
+
+  @Override
+  public void endUsing(final Chances[] batch, final int nbChances) throws InterruptedException {
+    final int nbRounds = this.nbRounds;
+    for (int i = 0; i < nbChances; i++) {
+      release(batch[i].getPlayersChances(), nbRounds, 0);
+    }
+    threadStates.get().producer.endedUsing(batch, 0, nbChances);
+  }
+
+  private final boolean tryReserve(final int[][] usedChances) {
+    final int nbRounds = this.nbRounds;
+    final AtomicLongArray[][] inUseBits = this.inUseBits;
+    final int[][] wordsPerStripe = this.wordsPerStripe;
+    for (int i = 0; i < nbRounds; i++) {
+      final AtomicLongArray[] roundBits = inUseBits[i];
+      final int[] roundWords = wordsPerStripe[i];
+      final int[] roundChances = usedChances[i];
+      final int nbPlayers = roundChances.length;
+      for (int j = 0; j < nbPlayers; j++) {
+        final AtomicLongArray bits = roundBits[j];
+        final int chance = roundChances[j];
+        final int slot = chance >>> STRIPE_SHIFT;
+        final int word = (chance & STRIPE_MASK) * roundWords[j] + (slot >>> 6);
+        final long mask = 1L << slot;
+        while (true) {
+          final long current = bits.get(word);
+          if ((current & mask) != 0) {
+            release(usedChances, i, j);
+            return false;
+          }
+          if (bits.compareAndSet(word, current, current | mask)) {
+            break;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Release the chances bits up to a round and player index, excluded
+   *
+   * @param usedChances the chances to release
+   * @param endRound the round of the first chance not to release
+   * @param endPlayer the player of the first chance not to release
+   */
+  private final void release(final int[][] usedChances, final int endRound, final int endPlayer) {
+    final int nbRounds = Math.min(this.nbRounds, endRound + 1);
+    final AtomicLongArray[][] inUseBits = this.inUseBits;
+    final int[][] wordsPerStripe = this.wordsPerStripe;
+    for (int i = 0; i < nbRounds; i++) {
+      final AtomicLongArray[] roundBits = inUseBits[i];
+      final int[] roundWords = wordsPerStripe[i];
+      final int[] roundChances = usedChances[i];
+      final int nbPlayers = i == endRound ? endPlayer : roundChances.length;
+      for (int j = 0; j < nbPlayers; j++) {
+        final AtomicLongArray bits = roundBits[j];
+        final int chance = roundChances[j];
+        final int slot = chance >>> STRIPE_SHIFT;
+        final int word = (chance & STRIPE_MASK) * roundWords[j] + (slot >>> 6);
+        final long mask = 1L << slot;
+        while (true) {
+          final long current = bits.get(word);
+          if (bits.compareAndSet(word, current, current & ~mask)) {
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public long getNbCollisions() {
+    return nbCollisions.sum();
+  }
+
+  /**
+   * The total size of the threads retry queues
+   */
+  @Override
+  public long getNbDelayedChances() {
+    return nbDelayed.sum();
+  }
+
+  @Override
+  public void stop() {
+    stop = true;
+  }
+
+  @Override
+  public void reset() {
+    stop = false;
+  }
+
+  @Override
+  public List<Runnable> getProducers() {
+    return Collections.emptyList();
+  }
+
+}
@@ -5,30 +5,49 @@ import java.util.concurrent.atomic.AtomicLong;
 import com.google.common.util.concurrent.AtomicDoubleArray;
 
 import net.funkyjava.gametheory.extensiveformgame.ActionTree;
+import net.funkyjava.gametheory.extensiveformgame.ActionTreeNodeState.NodeType;
 import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
 import net.funkyjava.gametheory.extensiveformgame.PlayerNode;
 
 /**
  * A trainer performs CSCFRM iterations, assuming that there will be no chances collision. It
- * internally holds depth indexed reusable arrays to avoid creating them at each iteration
+ * internally holds depth indexed reusable arrays to avoid creating them at each iteration. Regrets
+ * and strategy sums are updated following the data's {@link CSCFRMDiscounting} policy, CFR+ by
+ * default. With a {@link CSCFRMPruning}, the subtrees of actions with a zero probability and a
+ * regret under the pruning threshold are skipped, except during the periodic full traversals :
+ * only the opponents' strategy sums are accumulated there. With {@link CSCFRMStrategyWeights}, each
+ * player's strategy sums are also weighted by the weight provided for the chances, like the entry
+ * reach of a {@link net.funkyjava.gametheory.extensiveformgame.Subgame}.
  * 
  * @author Pierre Mardon
  *
  * @param <Chances> the chances class
  */
-public class CSCFRMTrainer<Chances extends CSCFRMChances> {
+public class CSCFRMTrainer<Chances extends CSCFRMChances> implements CSCFRMChancesTrainer<Chances> {
 
   private final int nbRounds;
   private final int nbPlayers;
   private final LinkedActionTreeNode<?, Chances> rootNode;
-  private final CSCFRMNode[][][][] nodes;
-  private final CSCFRMNode[][][] chancesNodes;
+  private final CSCFRMData<?, Chances> data;
+  private final CSCFRMStorage storage;
+  private final CSCFRMLayout layout;
+  private final int[][][] nodesOffsets;
+  private final long[][] chancesOffsets;
+  private final long[][] chancesInfosetIndexes;
+  private final boolean regretsFloored;
+  private final boolean discounting;
+  private final CSCFRMPruning pruning;
+  private final CSCFRMStrategyWeights<Chances> strategyWeights;
+  private long iteration;
+  private boolean pruneIteration;
   private final AtomicDoubleArray utilitySum;
   private final AtomicLong iterations;
   private final double[] realizationWeights;
+  private final double[] playersStrategyWeights;
   private final double[][] depthUtil;
   private final double[][] depthActionUtil;
   private final double[][] depthStrategy;
+  private final boolean[][] depthPruned;
   private final double[] zero;
   private final double[] one;
 
@@ -38,6 +57,31 @@ public class CSCFRMTrainer<Chances extends CSCFRMChances> {
    * @param data the CSCFRM data
    */
   public CSCFRMTrainer(final CSCFRMData<?, Chances> data) {
+    this(data, null);
+  }
+
+  /**
+   * Constructor with regret-based pruning
+   * 
+   * @param data the CSCFRM data
+   * @param pruning the pruning settings and statistics, shared by the trainers of a runner, or
+   *        null to disable pruning
+   */
+  public CSCFRMTrainer(final CSCFRMData<?, Chances> data, final CSCFRMPruning pruning) {
+    this(data, pruning, null);
+  }
+
+  /**
+   * Constructor with regret-based pruning and strategy sums weights
+   * 
+   * @param data the CSCFRM data
+   * @param pruning the pruning settings and statistics, shared by the trainers of a runner, or
+   *        null to disable pruning
+   * @param strategyWeights the players strategy sums weights, or null to only weight them by the
+   *        players realization weights
+   */
+  public CSCFRMTrainer(final CSCFRMData<?, Chances> data, final CSCFRMPruning pruning,
+      final CSCFRMStrategyWeights<Chances> strategyWeights) {
     final ActionTree<?, Chances> actionTree = data.getGameActionTree();
     final int maxDepth = actionTree.getMaxDepth();
     final int maxNbActions = actionTree.getMaxNbActions();
@@ -46,8 +90,16 @@ public class CSCFRMTrainer<Chances extends CSCFRMChances> {
     this.utilitySum = data.getUtilitySum();
     this.iterations = data.getIterations();
     rootNode = actionTree.getRoot();
-    nodes = data.getNodes();
-    chancesNodes = new CSCFRMNode[nbRounds][nbPlayers][];
+    storage = data.getStorage();
+    final CSCFRMLayout layout = this.layout = data.getLayout();
+    nodesOffsets = layout.getNodesOffsets();
+    chancesOffsets = new long[nbRounds][nbPlayers];
+    chancesInfosetIndexes = new long[nbRounds][nbPlayers];
+    this.data = data;
+    regretsFloored = data.getDiscounting().isRegretsFloored();
+    discounting = data.getDiscounting().isDiscounting();
+    this.pruning = pruning;
+    this.strategyWeights = strategyWeights;
     zero = new double[Math.max(nbPlayers, maxNbActions)];
     one = new double[nbPlayers];
     for (int i = 0; i < nbPlayers; i++) {
@@ -56,7 +108,9 @@ public class CSCFRMTrainer<Chances extends CSCFRMChances> {
     depthUtil = new double[maxDepth][nbPlayers];
     depthActionUtil = new double[maxDepth][maxNbActions];
     depthStrategy = new double[maxDepth][maxNbActions];
+    depthPruned = new boolean[maxDepth][maxNbActions];
     realizationWeights = new double[nbPlayers];
+    playersStrategyWeights = one.clone();
   }
 
   /**
@@ -64,21 +118,30 @@ public class CSCFRMTrainer<Chances extends CSCFRMChances> {
    * 
    * @param chances the chances
    */
+  @Override
   public final void train(final Chances chances) {
-    // Get the nodes we need for this iteration given the provided chances
+    // Get the storage offsets we need for this iteration given the provided chances
     final int nbRounds = this.nbRounds;
     final int nbPlayers = this.nbPlayers;
-    final CSCFRMNode[][][][] nodes = this.nodes;
-    final CSCFRMNode[][][] chancesNodes = this.chancesNodes;
+    final CSCFRMLayout layout = this.layout;
+    final long[][] chancesOffsets = this.chancesOffsets;
+    final long[][] chancesInfosetIndexes = this.chancesInfosetIndexes;
     final int[][] playersChances = chances.getPlayersChances();
     for (int round = 0; round < nbRounds; round++) {
       final int[] roundChances = playersChances[round];
-      final CSCFRMNode[][][] roundNodes = nodes[round];
-      final CSCFRMNode[][] roundChancesNodes = chancesNodes[round];
+      final long[] roundChancesOffsets = chancesOffsets[round];
+      final long[] roundInfosetIndexes = chancesInfosetIndexes[round];
       for (int player = 0; player < nbPlayers; player++) {
-        roundChancesNodes[player] = roundNodes[player][roundChances[player]];
+        roundChancesOffsets[player] = layout.chanceOffset(round, player, roundChances[player]);
+        roundInfosetIndexes[player] =
+            layout.chanceInfosetIndex(round, player, roundChances[player]);
       }
     }
+    final long iteration = this.iteration = iterations.get() + 1;
+    pruneIteration = pruning != null && !pruning.isRevisit(iteration);
+    if (strategyWeights != null) {
+      strategyWeights.getWeights(chances, playersStrategyWeights);
+    }
     final double[] realizationWeights = this.realizationWeights;
     System.arraycopy(one, 0, realizationWeights, 0, nbPlayers);
     final double[] utility = rec(0, rootNode, chances, realizationWeights);
@@ -97,7 +160,9 @@ public class CSCFRMTrainer<Chances extends CSCFRMChances> {
         return node.getPayoutsNoChance();
 
       case CHANCES_PAYOUTS:
-        return node.getChancesPayouts().getPayouts(chances);
+        final double[] payouts = depthUtil[depth];
+        node.getChancesPayouts().getPayouts(chances, payouts);
+        return payouts;
 
       case PLAYER:
         final int nbPlayers = this.nbPlayers;
@@ -105,12 +170,15 @@ public class CSCFRMTrainer<Chances extends CSCFRMChances> {
         final int index = node.getPlayerRoundActionIndex();
         final int round = pNode.getRound();
         final int player = pNode.getPlayer();
-        final CSCFRMNode csNode = chancesNodes[round][player][index];
-
+        final long offset = chancesOffsets[round][player] + nodesOffsets[round][player][index];
+        final CSCFRMStorage storage = this.storage;
         final int nbChildren = pNode.getNbActions();
+        if (discounting) {
+          data.discount(chancesInfosetIndexes[round][player] + index, offset, nbChildren,
+              iteration);
+        }
+
         final LinkedActionTreeNode<?, Chances>[] children = node.getChildren();
-        final double[] stratSum = csNode.getStrategySum();
-        final double[] regretSum = csNode.getRegretSum();
         final double[] zero = this.zero;
         final double[] strategy = depthStrategy[depth];
         System.arraycopy(zero, 0, strategy, 0, nbChildren);
@@ -119,23 +187,24 @@ public class CSCFRMTrainer<Chances extends CSCFRMChances> {
         final double[] actionsUtil = depthActionUtil[depth];
         System.arraycopy(zero, 0, actionsUtil, 0, nbChildren);
 
+        final boolean regretsFloored = this.regretsFloored;
         double totalRegret = 0;
         for (int action = 0; action < nbChildren; action++) {
-          double actionRegret = regretSum[action];
-          if (actionRegret < 0) {
-            actionRegret = regretSum[action] = 0;
-          }
-          // CFR+ regret matching
+          // CFR+ floor
+          final double actionRegret = regretsFloored ? storage.floorRegret(offset + action)
+              : storage.getRegret(offset + action);
           totalRegret += strategy[action] = (actionRegret > 0 ? actionRegret : 0);
         }
-        final double playerRealWeight = realizationWeights[player];
+        final double playerRealWeight = realizationWeights[player] * playersStrategyWeights[player];
         if (totalRegret > 0) {
           for (int action = 0; action < nbChildren; action++) {
-            stratSum[action] += playerRealWeight * (strategy[action] /= totalRegret);
+            storage.addStrategySum(offset + action,
+                playerRealWeight * (strategy[action] /= totalRegret));
           }
         } else {
           for (int action = 0; action < nbChildren; action++) {
-            stratSum[action] += playerRealWeight * (strategy[action] = (1.0d / nbChildren));
+            storage.addStrategySum(offset + action,
+                playerRealWeight * (strategy[action] = (1.0d / nbChildren)));
           }
         }
         double weight = 1;
@@ -145,8 +214,23 @@ public class CSCFRMTrainer<Chances extends CSCFRMChances> {
           }
         }
         final int nextDepth = depth + 1;
+        // Actions with a zero probability contribute to no value : their subtree can be skipped
+        final boolean prune = pruneIteration && totalRegret > 0;
+        final double threshold = prune ? pruning.getThreshold() : 0;
+        final boolean[] pruned = depthPruned[depth];
+        int nbPruned = 0;
         for (int action = 0; action < nbChildren; action++) {
           final double oldReal = realizationWeights[player];
+          if (prune && strategy[action] == 0 && storage.getRegret(offset + action) <= threshold) {
+            pruned[action] = true;
+            nbPruned++;
+            // The opponents still reach the subtree : only accumulate their strategy sums
+            realizationWeights[player] = 0;
+            sumStrategies(nextDepth, children[action], realizationWeights);
+            realizationWeights[player] = oldReal;
+            continue;
+          }
+          pruned[action] = false;
           realizationWeights[player] *= strategy[action];
           final double[] childUtil = rec(nextDepth, children[action], chances, realizationWeights);
           for (int p = 0; p < nbPlayers; p++) {
@@ -157,11 +241,68 @@ public class CSCFRMTrainer<Chances extends CSCFRMChances> {
         }
         final double playerUtil = util[player];
         for (int action = 0; action < nbChildren; action++) {
-          regretSum[action] += weight * (actionsUtil[action] - playerUtil);
+          if (nbPruned > 0 && pruned[action]) {
+            continue;
+          }
+          storage.addRegret(offset + action, weight * (actionsUtil[action] - playerUtil));
+        }
+        if (pruning != null) {
+          pruning.count(round, player, index, nbChildren - nbPruned, nbPruned);
         }
         return util;
     }
     return null;
   }
 
+  /**
+   * Walk a pruned subtree to accumulate the strategy sums of the players that still reach it,
+   * without evaluating payouts nor updating regrets
+   */
+  private final void sumStrategies(final int depth, final LinkedActionTreeNode<?, Chances> node,
+      final double[] realizationWeights) {
+    if (node.getNodeType() != NodeType.PLAYER) {
+      return;
+    }
+    final int nbPlayers = this.nbPlayers;
+    final PlayerNode<?> pNode = node.getPlayerNode();
+    final int index = node.getPlayerRoundActionIndex();
+    final int round = pNode.getRound();
+    final int player = pNode.getPlayer();
+    final long offset = chancesOffsets[round][player] + nodesOffsets[round][player][index];
+    final CSCFRMStorage storage = this.storage;
+    final int nbChildren = pNode.getNbActions();
+    if (discounting) {
+      data.discount(chancesInfosetIndexes[round][player] + index, offset, nbChildren, iteration);
+    }
+    final double[] strategy = depthStrategy[depth];
+    double totalRegret = 0;
+    for (int action = 0; action < nbChildren; action++) {
+      final double actionRegret = storage.getRegret(offset + action);
+      totalRegret += strategy[action] = (actionRegret > 0 ? actionRegret : 0);
+    }
+    for (int action = 0; action < nbChildren; action++) {
+      strategy[action] = totalRegret > 0 ? strategy[action] / totalRegret : 1.0d / nbChildren;
+    }
+    final double playerRealWeight = realizationWeights[player];
+    final double playerStrategyWeight = playerRealWeight * playersStrategyWeights[player];
+    if (playerStrategyWeight > 0) {
+      for (int action = 0; action < nbChildren; action++) {
+        storage.addStrategySum(offset + action, playerStrategyWeight * strategy[action]);
+      }
+    }
+    final LinkedActionTreeNode<?, Chances>[] children = node.getChildren();
+    final int nextDepth = depth + 1;
+    for (int action = 0; action < nbChildren; action++) {
+      realizationWeights[player] = playerRealWeight * strategy[action];
+      boolean reached = false;
+      for (int p = 0; p < nbPlayers && !reached; p++) {
+        reached = realizationWeights[p] > 0;
+      }
+      if (reached) {
+        sumStrategies(nextDepth, children[action], realizationWeights);
+      }
+    }
+    realizationWeights[player] = playerRealWeight;
+  }
+
 }
@@ -0,0 +1,20 @@
+package net.funkyjava.gametheory.cscfrm;
+
+/**
+ * Creates the trainers of a {@link CSCFRMRunner}, one per trainer thread. Implementations can
+ * typically be a trainer constructor reference like {@code CSCFRMTrainer::new}.
+ * 
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances class
+ */
+public interface CSCFRMTrainerProvider<Chances extends CSCFRMChances> {
+
+  /**
+   * Create a trainer
+   * 
+   * @param data the data the trainer will update
+   * @return the trainer
+   */
+  CSCFRMChancesTrainer<Chances> getTrainer(final CSCFRMData<?, Chances> data);
+}
@@ -0,0 +1,33 @@
+package net.funkyjava.gametheory.cscfrm;
+
+/**
+ * Public chances used by {@link CSCFRMVectorTrainer}. Instead of one sampled private chance per
+ * player, they give the CSCFRM chance of every private state of each player given the public
+ * chances, and the joint probabilities of the players' private states.
+ * 
+ * {@link #getPlayersChances()} is still used by chances synchronizers. As a vector iteration
+ * touches all chances of the players, implementations should typically return empty rounds arrays
+ * and be used with the {@link CSCFRMHogwildChancesSynchronizer} or a single trainer thread.
+ * 
+ * @author Pierre Mardon
+ *
+ */
+public interface CSCFRMVectorChances extends CSCFRMChances {
+
+  /**
+   * Get the CSCFRM chance of each private state
+   * 
+   * @return the chances indexed by round, player, private state
+   */
+  int[][][] getPrivateStatesChances();
+
+  /**
+   * For each private state i of a player, compute the sum over the opponent's private states j of
+   * the joint probability of (i, j) times the opponent's reach for j
+   * 
+   * @param player the player
+   * @param opponentReach the opponent's reach probability of each of its private states
+   * @param weights destination array indexed by the player's private states
+   */
+  void weightOpponentReach(final int player, final double[] opponentReach, final double[] weights);
+}
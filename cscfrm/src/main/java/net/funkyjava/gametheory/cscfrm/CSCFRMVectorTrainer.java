@@ -0,0 +1,264 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.AtomicDoubleArray;
+
+import net.funkyjava.gametheory.extensiveformgame.ActionTree;
+import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
+import net.funkyjava.gametheory.extensiveformgame.PlayerNode;
+import net.funkyjava.gametheory.extensiveformgame.VectorChancesPayouts;
+
+/**
+ * Public chance sampling CFR+ trainer for two players games. Only public chances are sampled : the
+ * tree is walked once per iteration with vectors of reach probabilities for all private states of
+ * both players, which updates the nodes of all their chances at once.
+ *
+ * The chances must implement {@link CSCFRMVectorChances} and the chances payouts nodes of the game
+ * must implement {@link VectorChancesPayouts}. Private states are weighted by their joint
+ * probability, so the strategy sums of a chance aggregating several private states are weighted by
+ * their probability like with {@link CSCFRMTrainer}'s sampling. Regret sums are expectations
+ * instead of sampled values : data should not be trained alternately by this trainer and a sampling
+ * one. Updates follow the data's {@link CSCFRMDiscounting} policy.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances class
+ */
+public class CSCFRMVectorTrainer<Chances extends CSCFRMChances>
+    implements CSCFRMChancesTrainer<Chances> {
+
+  private static final int nbPlayers = 2;
+
+  private final LinkedActionTreeNode<?, Chances> rootNode;
+  private final CSCFRMData<?, Chances> data;
+  private final CSCFRMStorage storage;
+  private final CSCFRMLayout layout;
+  private final boolean regretsFloored;
+  private final boolean discounting;
+  private long iteration;
+  private final int[][][] nodesOffsets;
+  private final AtomicDoubleArray utilitySum;
+  private final AtomicLong iterations;
+  private final int maxDepth;
+  private final int maxNbActions;
+  private final int[] nbStates = new int[nbPlayers];
+  private int[][][] statesChances;
+  private double[][] priors;
+  private double[] ones;
+  private double[] weights;
+  private double[][][] depthReach;
+  private double[][][] depthUtil;
+  private double[][][] depthActionUtil;
+  private double[][][] depthStrategy;
+  private long[][] depthOffsets;
+
+  /**
+   * Constructor
+   *
+   * @param data the CSCFRM data
+   */
+  public CSCFRMVectorTrainer(final CSCFRMData<?, Chances> data) {
+    checkArgument(data.getNbPlayers() == nbPlayers,
+        "The vector trainer only supports two players games");
+    final ActionTree<?, Chances> actionTree = data.getGameActionTree();
+    this.maxDepth = actionTree.getMaxDepth();
+    this.maxNbActions = actionTree.getMaxNbActions();
+    this.utilitySum = data.getUtilitySum();
+    this.iterations = data.getIterations();
+    this.rootNode = actionTree.getRoot();
+    this.storage = data.getStorage();
+    this.data = data;
+    this.regretsFloored = data.getDiscounting().isRegretsFloored();
+    this.discounting = data.getDiscounting().isDiscounting();
+    final CSCFRMLayout layout = this.layout = data.getLayout();
+    this.nodesOffsets = layout.getNodesOffsets();
+  }
+
+  /**
+   * Allocate the depth indexed buffers when the number of private states changes
+   */
+  private final void allocate(final int[][][] statesChances) {
+    final int[] nbStates = this.nbStates;
+    if (statesChances[0][0].length == nbStates[0] && statesChances[0][1].length == nbStates[1]) {
+      return;
+    }
+    final int maxDepth = this.maxDepth;
+    final int maxNbActions = this.maxNbActions;
+    nbStates[0] = statesChances[0][0].length;
+    nbStates[1] = statesChances[0][1].length;
+    final int maxNbStates = Math.max(nbStates[0], nbStates[1]);
+    priors = new double[][] {new double[nbStates[0]], new double[nbStates[1]]};
+    ones = new double[maxNbStates];
+    Arrays.fill(ones, 1);
+    weights = new double[maxNbStates];
+    depthReach = new double[maxDepth][nbPlayers][];
+    depthUtil = new double[maxDepth][nbPlayers][];
+    for (int d = 0; d < maxDepth; d++) {
+      for (int p = 0; p < nbPlayers; p++) {
+        depthReach[d][p] = new double[nbStates[p]];
+        depthUtil[d][p] = new double[nbStates[p]];
+      }
+    }
+    depthActionUtil = new double[maxDepth][maxNbActions][maxNbStates];
+    depthStrategy = new double[maxDepth][maxNbStates][maxNbActions];
+    depthOffsets = new long[maxDepth][maxNbStates];
+  }
+
+  /**
+   * Iterates CSCFRM for given public chances
+   *
+   * @param chances the public chances, must implement {@link CSCFRMVectorChances}
+   */
+  @Override
+  public final void train(final Chances chances) {
+    final CSCFRMVectorChances vectorChances = (CSCFRMVectorChances) chances;
+    final int[][][] statesChances = this.statesChances = vectorChances.getPrivateStatesChances();
+    allocate(statesChances);
+    iteration = iterations.get() + 1;
+    final double[][] priors = this.priors;
+    final double[][] rootReach = depthReach[0];
+    for (int p = 0; p < nbPlayers; p++) {
+      vectorChances.weightOpponentReach(p, ones, priors[p]);
+      Arrays.fill(rootReach[p], 1);
+    }
+    final double[][] utility = rec(0, rootNode, chances, vectorChances);
+    final AtomicDoubleArray utilitySum = this.utilitySum;
+    for (int p = 0; p < nbPlayers; p++) {
+      final double[] playerUtil = utility[p];
+      double sum = 0;
+      for (int i = 0; i < playerUtil.length; i++) {
+        sum += playerUtil[i];
+      }
+      utilitySum.addAndGet(p, sum);
+    }
+    iterations.incrementAndGet();
+  }
+
+  @SuppressWarnings("unchecked")
+  private final double[][] rec(final int depth, final LinkedActionTreeNode<?, Chances> node,
+      final Chances chances, final CSCFRMVectorChances vectorChances) {
+    final double[][] util = depthUtil[depth];
+    final double[][] reach = depthReach[depth];
+    final double[] weights = this.weights;
+    switch (node.getNodeType()) {
+
+      case PAYOUTS_NO_CHANCE: {
+        final double[] payouts = node.getPayoutsNoChance();
+        for (int p = 0; p < nbPlayers; p++) {
+          final double[] playerUtil = util[p];
+          final double payout = payouts[p];
+          vectorChances.weightOpponentReach(p, reach[1 - p], weights);
+          for (int i = 0; i < playerUtil.length; i++) {
+            playerUtil[i] = payout * weights[i];
+          }
+        }
+        return util;
+      }
+
+      case CHANCES_PAYOUTS: {
+        final VectorChancesPayouts<Chances> payouts =
+            (VectorChancesPayouts<Chances>) node.getChancesPayouts();
+        for (int p = 0; p < nbPlayers; p++) {
+          final double[] opponentReach = reach[1 - p];
+          vectorChances.weightOpponentReach(p, opponentReach, weights);
+          payouts.getUtilities(chances, p, opponentReach, weights, util[p]);
+        }
+        return util;
+      }
+
+      case PLAYER: {
+        final PlayerNode<?> pNode = node.getPlayerNode();
+        final int round = pNode.getRound();
+        final int player = pNode.getPlayer();
+        final int opponent = 1 - player;
+        final int index = node.getPlayerRoundActionIndex();
+        final int nodeOffset = nodesOffsets[round][player][index];
+        final int[] playerStatesChances = statesChances[round][player];
+        final int nbPlayerStates = playerStatesChances.length;
+        final int nbChildren = pNode.getNbActions();
+        final LinkedActionTreeNode<?, Chances>[] children = node.getChildren();
+        final CSCFRMStorage storage = this.storage;
+        final CSCFRMLayout layout = this.layout;
+        final double[][] strategy = depthStrategy[depth];
+        final double[][] actionsUtil = depthActionUtil[depth];
+        final long[] offsets = depthOffsets[depth];
+        final double[] playerReach = reach[player];
+        final double[] playerPriors = priors[player];
+        final boolean regretsFloored = this.regretsFloored;
+        final boolean discounting = this.discounting;
+
+        // Regret matching for each private state
+        for (int i = 0; i < nbPlayerStates; i++) {
+          final int stateChance = playerStatesChances[i];
+          final long offset =
+              offsets[i] = layout.chanceOffset(round, player, stateChance) + nodeOffset;
+          if (discounting) {
+            data.discount(layout.chanceInfosetIndex(round, player, stateChance) + index, offset,
+                nbChildren, iteration);
+          }
+          final double[] stateStrategy = strategy[i];
+          double totalRegret = 0;
+          for (int action = 0; action < nbChildren; action++) {
+            // CFR+ floor
+            final double actionRegret = regretsFloored ? storage.floorRegret(offset + action)
+                : storage.getRegret(offset + action);
+            totalRegret += stateStrategy[action] = (actionRegret > 0 ? actionRegret : 0);
+          }
+          if (totalRegret > 0) {
+            for (int action = 0; action < nbChildren; action++) {
+              stateStrategy[action] /= totalRegret;
+            }
+          } else {
+            for (int action = 0; action < nbChildren; action++) {
+              stateStrategy[action] = 1.0d / nbChildren;
+            }
+          }
+          final double weight = playerPriors[i] * playerReach[i];
+          if (weight > 0) {
+            for (int action = 0; action < nbChildren; action++) {
+              storage.addStrategySum(offset + action, weight * stateStrategy[action]);
+            }
+          }
+        }
+
+        final double[] playerUtil = util[player];
+        final double[] opponentUtil = util[opponent];
+        Arrays.fill(playerUtil, 0);
+        Arrays.fill(opponentUtil, 0);
+        final int nextDepth = depth + 1;
+        final double[][] nextReach = depthReach[nextDepth];
+        final double[] nextPlayerReach = nextReach[player];
+        System.arraycopy(reach[opponent], 0, nextReach[opponent], 0, opponentUtil.length);
+        for (int action = 0; action < nbChildren; action++) {
+          for (int i = 0; i < nbPlayerStates; i++) {
+            nextPlayerReach[i] = playerReach[i] * strategy[i][action];
+          }
+          final double[][] childUtil = rec(nextDepth, children[action], chances, vectorChances);
+          final double[] childPlayerUtil = childUtil[player];
+          final double[] childOpponentUtil = childUtil[opponent];
+          final double[] actionUtil = actionsUtil[action];
+          for (int i = 0; i < nbPlayerStates; i++) {
+            playerUtil[i] += strategy[i][action] * (actionUtil[i] = childPlayerUtil[i]);
+          }
+          for (int j = 0; j < opponentUtil.length; j++) {
+            opponentUtil[j] += childOpponentUtil[j];
+          }
+        }
+        for (int i = 0; i < nbPlayerStates; i++) {
+          final long offset = offsets[i];
+          final double stateUtil = playerUtil[i];
+          for (int action = 0; action < nbChildren; action++) {
+            storage.addRegret(offset + action, actionsUtil[action][i] - stateUtil);
+          }
+        }
+        return util;
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,245 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+/**
+ * Trainer threads get chances from the reserving synchronizers and mark each (round, player,
+ * chance) they hold in a shared owners table : no two threads may hold the same chance of a round
+ * and player at the same time. Producers record the drawn and released chances : each chance is
+ * released once, and all of them are released or still delayed when the synchronizer stops.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMChancesSynchronizersTest {
+
+  private static final int[][] chancesSizes = {{6, 6}, {5}};
+  private static final int nbThreads = 3;
+  private static final int batchSize = 4;
+  private static final long nbTrained = 50_000;
+  private static final long timeoutSeconds = 60;
+
+  /**
+   * Numbered chances
+   */
+  private static final class TestChances implements CSCFRMChances {
+
+    private final long number;
+    private final int[][] playersChances;
+
+    private TestChances(final long number, final int[][] playersChances) {
+      this.number = number;
+      this.playersChances = playersChances;
+    }
+
+    @Override
+    public int[][] getPlayersChances() {
+      return playersChances;
+    }
+  }
+
+  /**
+   * Draws and releases of all producers
+   */
+  private static final class Registry {
+
+    private final AtomicLong nbDrawn = new AtomicLong();
+    private final ConcurrentHashMap<Long, Boolean> released = new ConcurrentHashMap<>();
+    private final AtomicInteger nbReleasedTwice = new AtomicInteger();
+    private final AtomicInteger seeds = new AtomicInteger();
+
+    private CSCFRMChancesProducer<TestChances> newProducer() {
+      final Random random = new Random(seeds.getAndIncrement());
+      return new CSCFRMChancesProducer<TestChances>() {
+
+        @Override
+        public TestChances produceChances() {
+          final int[][] playersChances = new int[chancesSizes.length][];
+          for (int round = 0; round < chancesSizes.length; round++) {
+            final int nbPlayers = chancesSizes[round].length;
+            playersChances[round] = new int[nbPlayers];
+            for (int player = 0; player < nbPlayers; player++) {
+              playersChances[round][player] = random.nextInt(chancesSizes[round][player]);
+            }
+          }
+          return new TestChances(nbDrawn.getAndIncrement(), playersChances);
+        }
+
+        @Override
+        public void endedUsing(final TestChances chances) {
+          if (released.put(chances.number, true) != null) {
+            nbReleasedTwice.incrementAndGet();
+          }
+        }
+      };
+    }
+  }
+
+  /**
+   * Owner thread of each (round, player, chance), and the number of chances that each thread holds
+   * for it
+   */
+  private static final class Owners {
+
+    private final AtomicIntegerArray[][] owners;
+    private final AtomicInteger nbConflicts = new AtomicInteger();
+
+    private Owners() {
+      owners = new AtomicIntegerArray[chancesSizes.length][];
+      for (int round = 0; round < chancesSizes.length; round++) {
+        final int nbPlayers = chancesSizes[round].length;
+        owners[round] = new AtomicIntegerArray[nbPlayers];
+        for (int player = 0; player < nbPlayers; player++) {
+          owners[round][player] = new AtomicIntegerArray(chancesSizes[round][player]);
+        }
+      }
+    }
+
+    private int[][][] newHeldCounts() {
+      final int[][][] counts = new int[chancesSizes.length][][];
+      for (int round = 0; round < chancesSizes.length; round++) {
+        final int nbPlayers = chancesSizes[round].length;
+        counts[round] = new int[nbPlayers][];
+        for (int player = 0; player < nbPlayers; player++) {
+          counts[round][player] = new int[chancesSizes[round][player]];
+        }
+      }
+      return counts;
+    }
+
+    private void hold(final int thread, final int[][][] heldCounts, final TestChances chances) {
+      final int[][] playersChances = chances.getPlayersChances();
+      for (int round = 0; round < playersChances.length; round++) {
+        for (int player = 0; player < playersChances[round].length; player++) {
+          final int chance = playersChances[round][player];
+          if (heldCounts[round][player][chance]++ == 0
+              && !owners[round][player].compareAndSet(chance, 0, thread + 1)) {
+            nbConflicts.incrementAndGet();
+          }
+        }
+      }
+    }
+
+    private void release(final int thread, final int[][][] heldCounts, final TestChances chances) {
+      final int[][] playersChances = chances.getPlayersChances();
+      for (int round = 0; round < playersChances.length; round++) {
+        for (int player = 0; player < playersChances[round].length; player++) {
+          final int chance = playersChances[round][player];
+          if (--heldCounts[round][player][chance] == 0
+              && !owners[round][player].compareAndSet(chance, thread + 1, 0)) {
+            nbConflicts.incrementAndGet();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Striped reservations, with single chances and batches
+   */
+  @Test
+  public void testStriped() throws Exception {
+    for (boolean batches : new boolean[] {false, true}) {
+      final Registry registry = new Registry();
+      final CSCFRMStripedChancesSynchronizer<TestChances> synchronizer =
+          new CSCFRMStripedChancesSynchronizer<>(registry::newProducer, chancesSizes, 8);
+      run(synchronizer, registry, batches);
+      assertTrue(synchronizer.getNbCollisions() > 0);
+      // Retry queues were given back to the producers
+      assertEquals(0, synchronizer.getNbDelayedChances());
+    }
+  }
+
+  /**
+   * Partitions of the chances owned by the threads during short epochs, with single chances and
+   * batches
+   */
+  @Test
+  public void testPartitioned() throws Exception {
+    for (boolean batches : new boolean[] {false, true}) {
+      final Registry registry = new Registry();
+      final CSCFRMPartitionedChancesSynchronizer<TestChances> synchronizer =
+          new CSCFRMPartitionedChancesSynchronizer<>(registry::newProducer, chancesSizes,
+              nbThreads, 16);
+      run(synchronizer, registry, batches);
+    }
+  }
+
+  private static void run(final CSCFRMChancesSynchronizer<TestChances> synchronizer,
+      final Registry registry, final boolean batches) throws Exception {
+    final Owners owners = new Owners();
+    final LongAdder trained = new LongAdder();
+    final AtomicBoolean stopping = new AtomicBoolean();
+    final ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    final List<Future<?>> futures = new ArrayList<>();
+    try {
+      for (int i = 0; i < nbThreads; i++) {
+        final int thread = i;
+        futures.add(executor.submit(() -> {
+          final int[][][] heldCounts = owners.newHeldCounts();
+          final TestChances[] batch = new TestChances[batchSize];
+          while (true) {
+            final int nb;
+            if (batches) {
+              nb = synchronizer.getChances(batch);
+            } else {
+              batch[0] = synchronizer.getChances();
+              nb = batch[0] == null ? 0 : 1;
+            }
+            if (nb == 0) {
+              // Batches also return 0 while waiting for the next epoch
+              if (stopping.get()) {
+                return null;
+              }
+              continue;
+            }
+            for (int j = 0; j < nb; j++) {
+              owners.hold(thread, heldCounts, batch[j]);
+            }
+            // Let the other threads run while the chances are held
+            Thread.yield();
+            for (int j = 0; j < nb; j++) {
+              owners.release(thread, heldCounts, batch[j]);
+            }
+            synchronizer.endUsing(batch, nb);
+            trained.add(nb);
+          }
+        }));
+      }
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+      while (trained.sum() < nbTrained && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      stopping.set(true);
+      synchronizer.stop();
+      for (Future<?> future : futures) {
+        future.get(timeoutSeconds, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(trained.sum() >= nbTrained);
+    assertEquals(0, owners.nbConflicts.get());
+    assertEquals(0, registry.nbReleasedTwice.get());
+    // Each drawn chance was released, or is still waiting for its turn
+    assertEquals(registry.nbDrawn.get(),
+        registry.released.size() + synchronizer.getNbDelayedChances());
+  }
+}
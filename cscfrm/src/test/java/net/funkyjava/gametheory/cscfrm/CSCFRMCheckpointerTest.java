@@ -0,0 +1,209 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.AtomicDoubleArray;
+
+import net.funkyjava.gametheory.cscfrm.KuhnPoker.Deal;
+
+/**
+ * Writes checkpoints of a {@link KuhnPoker} training and restores them in new data : full and delta
+ * records, a truncated trailing record and a file left by another run
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMCheckpointerTest {
+
+  private static final int compactionPeriod = 4;
+
+  private Path path;
+
+  /**
+   * Data values and state at a checkpoint
+   */
+  private static final class Snapshot {
+
+    private final double[] regrets;
+    private final double[] strategySums;
+    private final double[] utilitySum;
+    private final long[] stamps;
+    private final long iterations;
+
+    private Snapshot(final CSCFRMData<String, Deal> data) {
+      final CSCFRMLayout layout = data.getLayout();
+      final CSCFRMStorage storage = data.getStorage();
+      final int size = (int) layout.getSize();
+      regrets = new double[size];
+      strategySums = new double[size];
+      for (int offset = 0; offset < size; offset++) {
+        regrets[offset] = storage.getRegret(offset);
+        strategySums[offset] = storage.getStrategySum(offset);
+      }
+      final AtomicDoubleArray sums = data.getUtilitySum();
+      utilitySum = new double[sums.length()];
+      for (int player = 0; player < utilitySum.length; player++) {
+        utilitySum[player] = sums.get(player);
+      }
+      final int nbInfosets = (int) layout.getNbInfosets();
+      stamps = new long[data.getDiscounting().isDiscounting() ? nbInfosets : 0];
+      for (int infoset = 0; infoset < stamps.length; infoset++) {
+        stamps[infoset] = data.getStamp(infoset);
+      }
+      iterations = data.getIterations().get();
+    }
+
+    private void assertSame(final Snapshot snapshot) {
+      assertEquals(iterations, snapshot.iterations);
+      assertArrayEquals(regrets, snapshot.regrets, 0);
+      assertArrayEquals(strategySums, snapshot.strategySums, 0);
+      assertArrayEquals(utilitySum, snapshot.utilitySum, 0);
+      assertArrayEquals(stamps, snapshot.stamps);
+    }
+  }
+
+  @Before
+  public void createPath() throws IOException {
+    path = Files.createTempFile("cscfrm-checkpoints", ".bin");
+    Files.delete(path);
+  }
+
+  @After
+  public void deletePath() throws IOException {
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(Paths.get(path + ".tmp"));
+  }
+
+  /**
+   * CFR+ deltas and compactions round trip
+   */
+  @Test
+  public void testRoundTripCfrPlus() throws IOException {
+    roundTrip(CSCFRMDiscounting.cfrPlus());
+  }
+
+  /**
+   * Linear CFR round trip, with the iteration stamps of the blocks
+   */
+  @Test
+  public void testRoundTripLinear() throws IOException {
+    roundTrip(CSCFRMDiscounting.linear());
+  }
+
+  private void roundTrip(final CSCFRMDiscounting discounting) throws IOException {
+    final CSCFRMData<String, Deal> data = newData(discounting);
+    final CSCFRMCheckpointer checkpointer = new CSCFRMCheckpointer(data, path, compactionPeriod);
+    final Random random = new Random(0);
+    assertFalse(checkpointer.restore());
+    // Base, then deltas past a compaction, some of them with a single deal
+    for (int i = 0; i < 2 * compactionPeriod; i++) {
+      train(data, checkpointer, random, i % 2 == 0 ? 20 : 1);
+      checkpointer.checkpoint();
+      assertRestores(data, discounting);
+    }
+    // A restored checkpointer keeps appending deltas to the file
+    final CSCFRMData<String, Deal> restored = newData(discounting);
+    final CSCFRMCheckpointer restoredCheckpointer =
+        new CSCFRMCheckpointer(restored, path, compactionPeriod);
+    assertTrue(restoredCheckpointer.restore());
+    final long size = Files.size(path);
+    train(restored, restoredCheckpointer, random, 1);
+    restoredCheckpointer.checkpoint();
+    assertTrue(Files.size(path) > size);
+    assertEquals(2, restoredCheckpointer.getLastNbBlocks());
+    assertRestores(restored, discounting);
+  }
+
+  /**
+   * A record truncated by a crash is ignored, and the next checkpoint rewrites the file
+   */
+  @Test
+  public void testTruncatedRecord() throws IOException {
+    final CSCFRMDiscounting discounting = CSCFRMDiscounting.linear();
+    final CSCFRMData<String, Deal> data = newData(discounting);
+    final CSCFRMCheckpointer checkpointer = new CSCFRMCheckpointer(data, path, compactionPeriod);
+    final Random random = new Random(1);
+    train(data, checkpointer, random, 20);
+    checkpointer.checkpoint();
+    train(data, checkpointer, random, 20);
+    checkpointer.checkpoint();
+    final Snapshot complete = new Snapshot(data);
+    final long completeSize = Files.size(path);
+    train(data, checkpointer, random, 20);
+    checkpointer.checkpoint();
+    final long truncatedSize = completeSize + (Files.size(path) - completeSize) / 2;
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(truncatedSize);
+    }
+    final CSCFRMData<String, Deal> restored = newData(discounting);
+    final CSCFRMCheckpointer restoredCheckpointer =
+        new CSCFRMCheckpointer(restored, path, compactionPeriod);
+    assertTrue(restoredCheckpointer.restore());
+    complete.assertSame(new Snapshot(restored));
+    // Nothing is appended after the truncated record : all blocks are written again
+    train(restored, restoredCheckpointer, random, 1);
+    restoredCheckpointer.checkpoint();
+    assertEquals(2 * KuhnPoker.NB_CARDS, restoredCheckpointer.getLastNbBlocks());
+    assertRestores(restored, discounting);
+  }
+
+  /**
+   * A checkpointer that didn't restore the file of another run replaces it instead of appending
+   * deltas to its base
+   */
+  @Test
+  public void testFileOfAnotherRun() throws IOException {
+    final CSCFRMDiscounting discounting = CSCFRMDiscounting.cfrPlus();
+    final Random random = new Random(2);
+    final CSCFRMData<String, Deal> other = newData(discounting);
+    final CSCFRMCheckpointer otherCheckpointer =
+        new CSCFRMCheckpointer(other, path, compactionPeriod);
+    train(other, otherCheckpointer, random, 50);
+    otherCheckpointer.checkpoint();
+    final CSCFRMData<String, Deal> data = newData(discounting);
+    final CSCFRMCheckpointer checkpointer = new CSCFRMCheckpointer(data, path, compactionPeriod);
+    // Only touches the blocks of one deal
+    train(data, checkpointer, random, 1);
+    checkpointer.checkpoint();
+    assertRestores(data, discounting);
+  }
+
+  private static CSCFRMData<String, Deal> newData(final CSCFRMDiscounting discounting) {
+    return new CSCFRMData<>(new KuhnPoker(), CSCFRMDoubleArrayStorage::new, discounting);
+  }
+
+  private static void train(final CSCFRMData<String, Deal> data,
+      final CSCFRMCheckpointer checkpointer, final Random random, final int nbIterations) {
+    final CSCFRMTrainer<Deal> trainer = new CSCFRMTrainer<>(data);
+    final List<Deal> deals = KuhnPoker.allDeals();
+    final Deal single = deals.get(random.nextInt(deals.size()));
+    for (int i = 0; i < nbIterations; i++) {
+      final Deal deal = nbIterations == 1 ? single : KuhnPoker.randomDeal(random);
+      trainer.train(deal);
+      checkpointer.touched(deal);
+    }
+  }
+
+  private void assertRestores(final CSCFRMData<String, Deal> data,
+      final CSCFRMDiscounting discounting) throws IOException {
+    final CSCFRMData<String, Deal> restored = newData(discounting);
+    assertTrue(new CSCFRMCheckpointer(restored, path, compactionPeriod).restore());
+    new Snapshot(data).assertSame(new Snapshot(restored));
+  }
+}
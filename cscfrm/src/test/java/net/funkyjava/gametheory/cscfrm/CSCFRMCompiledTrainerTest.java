@@ -0,0 +1,75 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.funkyjava.gametheory.cscfrm.KuhnPoker.Deal;
+
+/**
+ * {@link CSCFRMCompiledTrainer} and {@link CSCFRMTrainer} run the same iterations : trained on the
+ * same seeded deals of {@link KuhnPoker}, their storages hold the same values
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMCompiledTrainerTest {
+
+  private static final int nbIterations = 10000;
+
+  /**
+   * CFR+ : floored regrets, uniformly weighted strategy sums
+   */
+  @Test
+  public void testCfrPlus() {
+    check(CSCFRMDiscounting.cfrPlus());
+  }
+
+  /**
+   * Linear CFR, with lazily discounted infosets stamps
+   */
+  @Test
+  public void testLinear() {
+    check(CSCFRMDiscounting.linear());
+  }
+
+  /**
+   * Discounted CFR with distinct positive and negative regrets discounts
+   */
+  @Test
+  public void testDiscounted() {
+    check(CSCFRMDiscounting.discounted(1.5, 0, 2));
+  }
+
+  private static void check(final CSCFRMDiscounting discounting) {
+    final CSCFRMData<String, Deal> data =
+        new CSCFRMData<>(new KuhnPoker(), CSCFRMDoubleArrayStorage::new, discounting);
+    final CSCFRMData<String, Deal> compiledData =
+        new CSCFRMData<>(new KuhnPoker(), CSCFRMDoubleArrayStorage::new, discounting);
+    final CSCFRMTrainer<Deal> trainer = new CSCFRMTrainer<>(data);
+    final CSCFRMCompiledTrainer<Deal> compiledTrainer = new CSCFRMCompiledTrainer<>(compiledData);
+    final Random random = new Random(0);
+    for (int i = 0; i < nbIterations; i++) {
+      final Deal deal = KuhnPoker.randomDeal(random);
+      trainer.train(deal);
+      compiledTrainer.train(deal);
+    }
+    assertEquals(data.getIterations().get(), compiledData.getIterations().get());
+    for (int player = 0; player < 2; player++) {
+      assertEquals(data.getUtilitySum().get(player), compiledData.getUtilitySum().get(player), 0);
+    }
+    final CSCFRMStorage storage = data.getStorage();
+    final CSCFRMStorage compiledStorage = compiledData.getStorage();
+    final long size = data.getLayout().getSize();
+    for (long offset = 0; offset < size; offset++) {
+      assertEquals(storage.getRegret(offset), compiledStorage.getRegret(offset), 0);
+      assertEquals(storage.getStrategySum(offset), compiledStorage.getStrategySum(offset), 0);
+    }
+    final long nbInfosets = data.getLayout().getNbInfosets();
+    for (long infoset = 0; discounting.isDiscounting() && infoset < nbInfosets; infoset++) {
+      assertEquals(data.getStamp(infoset), compiledData.getStamp(infoset));
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.funkyjava.gametheory.cscfrm.KuhnPoker.Deal;
+
+/**
+ * Lazy discounting with iteration stamps matches eager discounting of the whole tables after each
+ * iteration. The game is {@link KuhnPoker} with enough cards for several stamps chunks, where
+ * infosets are left unvisited for up to thousands of iterations so that the discount products go
+ * through the precomputed tables and their asymptotic expansion.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMDiscountingTest {
+
+  private static final int nbCards = 600;
+  private static final int nbIterations = 10000;
+  /**
+   * Iteration after which the lazy data's pending discounts are applied, releasing the stamps
+   * chunks
+   */
+  private static final int applyIteration = 4000;
+  /**
+   * Relative tolerance : past the tables, the regrets discount products come from a midpoint
+   * approximation, a few 1e-9 off with small exponents
+   */
+  private static final double tolerance = 1e-7;
+
+  /**
+   * Linear CFR : closed form discounts
+   */
+  @Test
+  public void testLinear() {
+    check(CSCFRMDiscounting.linear());
+  }
+
+  /**
+   * Discounted CFR with negative regrets halved at each iteration
+   */
+  @Test
+  public void testDiscounted() {
+    check(CSCFRMDiscounting.discounted(1.5, 0, 2));
+  }
+
+  /**
+   * Discounted CFR with both regrets exponents from the tables
+   */
+  @Test
+  public void testDiscountedTables() {
+    check(CSCFRMDiscounting.discounted(2.5, 0.5, 3));
+  }
+
+  private static void check(final CSCFRMDiscounting discounting) {
+    final CSCFRMData<String, Deal> lazy = new CSCFRMData<>(new KuhnPoker(nbCards),
+        CSCFRMDoubleArrayStorage::new, discounting);
+    final CSCFRMData<String, Deal> eager = new CSCFRMData<>(new KuhnPoker(nbCards),
+        CSCFRMDoubleArrayStorage::new, discounting);
+    final CSCFRMTrainer<Deal> lazyTrainer = new CSCFRMTrainer<>(lazy);
+    final CSCFRMTrainer<Deal> eagerTrainer = new CSCFRMTrainer<>(eager);
+    final Random random = new Random(0);
+    for (int iteration = 1; iteration <= nbIterations; iteration++) {
+      // Player 0 never gets the highest cards in the first half
+      final Deal deal = KuhnPoker.randomDeal(random,
+          iteration <= nbIterations / 2 ? nbCards - 100 : nbCards);
+      lazyTrainer.train(deal);
+      eagerTrainer.train(deal);
+      if (iteration == applyIteration) {
+        lazy.applyPendingDiscounts();
+      }
+      if (iteration < nbIterations) {
+        discountAll(eager, discounting, iteration);
+      }
+    }
+    lazy.applyPendingDiscounts();
+    final CSCFRMStorage lazyStorage = lazy.getStorage();
+    final CSCFRMStorage eagerStorage = eager.getStorage();
+    final long size = lazy.getLayout().getSize();
+    for (long offset = 0; offset < size; offset++) {
+      final double regret = eagerStorage.getRegret(offset);
+      assertEquals(regret, lazyStorage.getRegret(offset),
+          tolerance * Math.max(1, Math.abs(regret)));
+      final double strategySum = eagerStorage.getStrategySum(offset);
+      assertEquals(strategySum, lazyStorage.getStrategySum(offset),
+          tolerance * Math.max(1, Math.abs(strategySum)));
+    }
+  }
+
+  /**
+   * Apply the discounts of an iteration to all values, computed term by term, and stamp all the
+   * infosets with the next iteration so that the trainer doesn't discount them again
+   */
+  private static void discountAll(final CSCFRMData<String, Deal> data,
+      final CSCFRMDiscounting discounting, final long iteration) {
+    final double positive = discount(discounting.getAlpha(), iteration);
+    final double negative = discount(discounting.getBeta(), iteration);
+    final double strategy =
+        Math.pow((double) iteration / (iteration + 1), discounting.getGamma());
+    final CSCFRMStorage storage = data.getStorage();
+    final long size = data.getLayout().getSize();
+    for (long offset = 0; offset < size; offset++) {
+      storage.scaleRegret(offset, positive, negative);
+      storage.scaleStrategySum(offset, strategy);
+    }
+    final long nbInfosets = data.getLayout().getNbInfosets();
+    for (long infoset = 0; infoset < nbInfosets; infoset++) {
+      data.setStamp(infoset, iteration + 1);
+    }
+  }
+
+  private static double discount(final double exponent, final long iteration) {
+    if (exponent == Double.POSITIVE_INFINITY) {
+      return 1;
+    }
+    final double pow = Math.pow(iteration, exponent);
+    return pow / (pow + 1);
+  }
+}
@@ -0,0 +1,90 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.funkyjava.gametheory.cscfrm.KuhnPoker.Deal;
+import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
+
+/**
+ * Trains {@link KuhnPoker} with the float storages and the double storage on the same seeded deals
+ * : the average strategies and utilities of the float storages stay close to the double ones, and
+ * their save files are smaller
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMFloatStoragesTest {
+
+  private static final int nbIterations = 200_000;
+  private static final double maxStrategyDiff = 1e-4;
+  private static final double maxUtilityDiff = 1e-5;
+
+  /**
+   * All values stored as floats
+   */
+  @Test
+  public void testFloatStorage() throws IOException {
+    check(CSCFRMFloatArrayStorage::new);
+  }
+
+  /**
+   * Regret sums stored as floats
+   */
+  @Test
+  public void testFloatRegretStorage() throws IOException {
+    check(CSCFRMFloatRegretArrayStorage::new);
+  }
+
+  private static void check(final CSCFRMStorageProvider storageProvider) throws IOException {
+    final CSCFRMData<String, Deal> reference =
+        new CSCFRMData<>(new KuhnPoker(), CSCFRMDoubleArrayStorage::new);
+    final CSCFRMData<String, Deal> data = new CSCFRMData<>(new KuhnPoker(), storageProvider);
+    final CSCFRMTrainer<Deal> referenceTrainer = new CSCFRMTrainer<>(reference);
+    final CSCFRMTrainer<Deal> trainer = new CSCFRMTrainer<>(data);
+    final Random random = new Random(0);
+    for (int i = 0; i < nbIterations; i++) {
+      final Deal deal = KuhnPoker.randomDeal(random);
+      referenceTrainer.train(deal);
+      trainer.train(deal);
+    }
+    // Each data has its own action tree : nodes are matched by round, player and index
+    final LinkedActionTreeNode<String, Deal>[][][] refActionNodes =
+        reference.getGameActionTree().getActionNodes();
+    final LinkedActionTreeNode<String, Deal>[][][] actionNodes =
+        data.getGameActionTree().getActionNodes();
+    double maxDiff = 0;
+    for (int round = 0; round < refActionNodes.length; round++) {
+      for (int player = 0; player < refActionNodes[round].length; player++) {
+        for (int index = 0; index < refActionNodes[round][player].length; index++) {
+          final CSCFRMNode[] ref = reference.nodesFor(refActionNodes[round][player][index]);
+          final CSCFRMNode[] cmp = data.nodesFor(actionNodes[round][player][index]);
+          for (int chance = 0; chance < ref.length; chance++) {
+            final double[] refStrat = ref[chance].getAvgStrategy();
+            final double[] strat = cmp[chance].getAvgStrategy();
+            for (int action = 0; action < refStrat.length; action++) {
+              maxDiff = Math.max(maxDiff, Math.abs(refStrat[action] - strat[action]));
+            }
+          }
+        }
+      }
+    }
+    assertTrue("Average strategy max diff " + maxDiff, maxDiff < maxStrategyDiff);
+    final double[] refUtility = reference.getUtilityAvg();
+    final double[] utility = data.getUtilityAvg();
+    for (int player = 0; player < refUtility.length; player++) {
+      assertEquals(refUtility[player], utility[player], maxUtilityDiff);
+    }
+    final ByteArrayOutputStream refBytes = new ByteArrayOutputStream();
+    reference.write(refBytes);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    data.write(bytes);
+    assertTrue(bytes.size() < refBytes.size());
+  }
+}
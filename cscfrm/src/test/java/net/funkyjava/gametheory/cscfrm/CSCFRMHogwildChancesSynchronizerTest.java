@@ -0,0 +1,74 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import net.funkyjava.gametheory.cscfrm.KuhnPoker.Deal;
+
+/**
+ * Collisions measured by {@link CSCFRMHogwildChancesSynchronizer} : chances of the same batch
+ * never collide, chances held by another thread do
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMHogwildChancesSynchronizerTest {
+
+  /**
+   * Always draws the same deal
+   */
+  private static final class FixedProducer implements CSCFRMChancesProducer<Deal> {
+
+    private final Deal deal;
+
+    private FixedProducer(final Deal deal) {
+      this.deal = deal;
+    }
+
+    @Override
+    public Deal produceChances() {
+      return deal;
+    }
+
+    @Override
+    public void endedUsing(final Deal chances) {}
+  }
+
+  /**
+   * Every chance of a batch is the same deal : only the other thread's draws collide
+   */
+  @Test
+  public void testBatchCollisions() throws InterruptedException, ExecutionException {
+    final CSCFRMHogwildChancesSynchronizer<Deal> synchronizer =
+        new CSCFRMHogwildChancesSynchronizer<>(() -> new FixedProducer(new Deal(0, 1)),
+            new KuhnPoker().roundChancesSizes(), true);
+    final Deal[] batch = new Deal[4];
+    assertEquals(batch.length, synchronizer.getChances(batch));
+    assertEquals(0, synchronizer.getNbCollisions());
+    // Another thread draws the same chances while the batch is in use
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> {
+        final Deal[] otherBatch = new Deal[3];
+        final int nbChances = synchronizer.getChances(otherBatch);
+        synchronizer.endUsing(otherBatch, nbChances);
+        return null;
+      }).get();
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(3, synchronizer.getNbCollisions());
+    synchronizer.endUsing(batch, batch.length);
+    // Once released, the same batch draws again without collision
+    assertEquals(batch.length, synchronizer.getChances(batch));
+    synchronizer.endUsing(batch, batch.length);
+    assertEquals(3, synchronizer.getNbCollisions());
+    assertEquals(11, synchronizer.getNbDrawn());
+    assertEquals(3.0 / 11, synchronizer.getCollisionRate(), 0);
+  }
+}
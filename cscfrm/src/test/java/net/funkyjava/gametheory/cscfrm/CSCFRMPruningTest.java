@@ -0,0 +1,136 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.funkyjava.gametheory.cscfrm.KuhnPoker.Deal;
+import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
+
+/**
+ * Regret-based pruning on {@link KuhnPoker} : pruned training reaches the same strategies as
+ * unpruned training, and every subtree is visited during the periodic full traversals
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMPruningTest {
+
+  private static final int nbIterations = 200_000;
+  private static final int revisitPeriod = 10;
+  private static final double maxStrategyDiff = 0.02;
+  private static final double maxUtilityDiff = 0.002;
+
+  /**
+   * Player 0 has a family of equilibrium strategies in Kuhn poker but player 1's one and the game
+   * value are unique : they must match. Both trainings see the same deals so the sampled
+   * utilities are comparable.
+   */
+  @Test
+  public void testSameStrategies() {
+    final CSCFRMData<String, Deal> data = new CSCFRMData<>(new KuhnPoker());
+    final CSCFRMData<String, Deal> prunedData = new CSCFRMData<>(new KuhnPoker());
+    final CSCFRMPruning pruning = new CSCFRMPruning(prunedData.getLayout(), 0, revisitPeriod);
+    final CSCFRMTrainer<Deal> trainer = new CSCFRMTrainer<>(data);
+    final CSCFRMTrainer<Deal> prunedTrainer = new CSCFRMTrainer<>(prunedData, pruning);
+    final Random random = new Random(0);
+    for (int i = 0; i < nbIterations; i++) {
+      final Deal deal = KuhnPoker.randomDeal(random);
+      trainer.train(deal);
+      prunedTrainer.train(deal);
+    }
+    assertTrue(pruning.getPrunedRatio() > 0);
+    final LinkedActionTreeNode<String, Deal>[] nodes =
+        data.getGameActionTree().getActionNodes()[0][1];
+    final LinkedActionTreeNode<String, Deal>[] prunedNodes =
+        prunedData.getGameActionTree().getActionNodes()[0][1];
+    double maxDiff = 0;
+    for (int index = 0; index < nodes.length; index++) {
+      final CSCFRMNode[] chancesNodes = data.nodesFor(nodes[index]);
+      final CSCFRMNode[] prunedChancesNodes = prunedData.nodesFor(prunedNodes[index]);
+      for (int chance = 0; chance < chancesNodes.length; chance++) {
+        final double[] strategy = chancesNodes[chance].getAvgStrategy();
+        final double[] prunedStrategy = prunedChancesNodes[chance].getAvgStrategy();
+        for (int action = 0; action < strategy.length; action++) {
+          maxDiff = Math.max(maxDiff, Math.abs(strategy[action] - prunedStrategy[action]));
+        }
+      }
+    }
+    assertTrue("Player 1 average strategy max diff " + maxDiff, maxDiff < maxStrategyDiff);
+    assertEquals(data.getUtilityAvg()[0], prunedData.getUtilityAvg()[0], maxUtilityDiff);
+  }
+
+  /**
+   * Subtrees are pruned between the full traversals, and each full traversal visits all the
+   * actions of the tree
+   */
+  @Test
+  public void testRevisits() {
+    final CSCFRMData<String, Deal> data = new CSCFRMData<>(new KuhnPoker());
+    final CSCFRMLayout layout = data.getLayout();
+    final CSCFRMPruning pruning = new CSCFRMPruning(layout, 0, revisitPeriod);
+    final CSCFRMTrainer<Deal> trainer = new CSCFRMTrainer<>(data, pruning);
+    int nbTreeActions = 0;
+    for (int[] playerNbActions : layout.getNodesNbActions()[0]) {
+      for (int nbActions : playerNbActions) {
+        nbTreeActions += nbActions;
+      }
+    }
+    final Random random = new Random(1);
+    long visited = 0;
+    long pruned = 0;
+    int nbPruningIterations = 0;
+    for (int iteration = 1; iteration <= 10 * revisitPeriod * revisitPeriod; iteration++) {
+      trainer.train(KuhnPoker.randomDeal(random));
+      final long newVisited = totalVisited(layout, pruning);
+      final long newPruned = totalPruned(layout, pruning);
+      if (pruning.isRevisit(iteration)) {
+        assertEquals(0, iteration % revisitPeriod);
+        assertEquals(0, newPruned - pruned);
+        assertEquals(nbTreeActions, newVisited - visited);
+      } else if (newPruned > pruned) {
+        nbPruningIterations++;
+      }
+      visited = newVisited;
+      pruned = newPruned;
+    }
+    assertTrue(nbPruningIterations > 0);
+  }
+
+  private static long totalVisited(final CSCFRMLayout layout, final CSCFRMPruning pruning) {
+    long total = 0;
+    final int[][] nbNodes = nbNodes(layout);
+    for (int player = 0; player < nbNodes[0].length; player++) {
+      for (int index = 0; index < nbNodes[0][player]; index++) {
+        total += pruning.getVisited(0, player, index);
+      }
+    }
+    return total;
+  }
+
+  private static long totalPruned(final CSCFRMLayout layout, final CSCFRMPruning pruning) {
+    long total = 0;
+    final int[][] nbNodes = nbNodes(layout);
+    for (int player = 0; player < nbNodes[0].length; player++) {
+      for (int index = 0; index < nbNodes[0][player]; index++) {
+        total += pruning.getPruned(0, player, index);
+      }
+    }
+    return total;
+  }
+
+  private static int[][] nbNodes(final CSCFRMLayout layout) {
+    final int[][][] nodesNbActions = layout.getNodesNbActions();
+    final int[][] res = new int[nodesNbActions.length][];
+    for (int round = 0; round < nodesNbActions.length; round++) {
+      res[round] = new int[nodesNbActions[round].length];
+      for (int player = 0; player < res[round].length; player++) {
+        res[round][player] = nodesNbActions[round][player].length;
+      }
+    }
+    return res;
+  }
+}
@@ -0,0 +1,103 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.funkyjava.gametheory.cscfrm.KuhnPoker.Deal;
+import net.funkyjava.gametheory.io.ChannelReader;
+import net.funkyjava.gametheory.io.ChannelWriter;
+
+/**
+ * Writes the same trained {@link CSCFRMData} through the stream path and the channel path for each
+ * heap storage, checks that the bytes are equal and reads each one back through the other path
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class CSCFRMStoragesIOTest {
+
+  private static final int bufferSize = 128;
+  private static final int nbIterations = 1000;
+
+  @Test
+  public void testDoubleStorage() throws IOException {
+    check(CSCFRMDoubleArrayStorage::new);
+  }
+
+  @Test
+  public void testFloatStorage() throws IOException {
+    check(CSCFRMFloatArrayStorage::new);
+  }
+
+  @Test
+  public void testFloatRegretStorage() throws IOException {
+    check(CSCFRMFloatRegretArrayStorage::new);
+  }
+
+  @Test
+  public void testAtomicStorage() throws IOException {
+    check(CSCFRMAtomicDoubleArrayStorage::new);
+  }
+
+  /**
+   * Chunks smaller than the chance blocks, some of them never allocated
+   */
+  @Test
+  public void testChunkedStorage() throws IOException {
+    check(CSCFRMChunkedStorage.provider(2));
+  }
+
+  private static void check(final CSCFRMStorageProvider storageProvider) throws IOException {
+    final CSCFRMData<String, Deal> data =
+        new CSCFRMData<>(new KuhnPoker(), storageProvider, CSCFRMDiscounting.linear());
+    final CSCFRMTrainer<Deal> trainer = new CSCFRMTrainer<>(data);
+    final Random random = new Random(0);
+    for (int i = 0; i < nbIterations; i++) {
+      // Player 0 never gets the highest card : some infosets are never reached
+      trainer.train(new Deal(random.nextInt(2), 2));
+    }
+    final ByteArrayOutputStream streamBytes = new ByteArrayOutputStream();
+    data.write(streamBytes);
+    final ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+    try (final ChannelWriter writer =
+        new ChannelWriter(Channels.newChannel(channelBytes), bufferSize)) {
+      data.write(writer);
+    }
+    assertArrayEquals(streamBytes.toByteArray(), channelBytes.toByteArray());
+
+    final CSCFRMData<String, Deal> fromStreamBytes =
+        new CSCFRMData<>(new KuhnPoker(), storageProvider, CSCFRMDiscounting.linear());
+    try (final ChannelReader reader = new ChannelReader(
+        Channels.newChannel(new ByteArrayInputStream(streamBytes.toByteArray())), bufferSize)) {
+      fromStreamBytes.fill(reader);
+    }
+    assertSame(data, fromStreamBytes);
+    final CSCFRMData<String, Deal> fromChannelBytes =
+        new CSCFRMData<>(new KuhnPoker(), storageProvider, CSCFRMDiscounting.linear());
+    fromChannelBytes.fill(new ByteArrayInputStream(channelBytes.toByteArray()));
+    assertSame(data, fromChannelBytes);
+  }
+
+  private static void assertSame(final CSCFRMData<String, Deal> data,
+      final CSCFRMData<String, Deal> other) {
+    assertEquals(data.getIterations().get(), other.getIterations().get());
+    for (int player = 0; player < 2; player++) {
+      assertEquals(data.getUtilitySum().get(player), other.getUtilitySum().get(player), 0);
+    }
+    final CSCFRMStorage storage = data.getStorage();
+    final CSCFRMStorage otherStorage = other.getStorage();
+    final long size = data.getLayout().getSize();
+    for (long offset = 0; offset < size; offset++) {
+      assertEquals(storage.getRegret(offset), otherStorage.getRegret(offset), 0);
+      assertEquals(storage.getStrategySum(offset), otherStorage.getStrategySum(offset), 0);
+    }
+  }
+}
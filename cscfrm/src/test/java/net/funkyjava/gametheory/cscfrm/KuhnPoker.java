@@ -0,0 +1,158 @@
+package net.funkyjava.gametheory.cscfrm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.funkyjava.gametheory.extensiveformgame.ActionTreeNode;
+import net.funkyjava.gametheory.extensiveformgame.ChancesPayouts;
+import net.funkyjava.gametheory.extensiveformgame.Game;
+import net.funkyjava.gametheory.extensiveformgame.PlayerNode;
+
+/**
+ * Kuhn poker, the test game of the CSCFRM trainers : each player antes 1 and gets one of 3 cards,
+ * or more for larger layouts, player 0 checks or bets 1, and a bet is folded or called. The player nodes ids are the actions
+ * history, 'c' for check or call and 'b' for bet, and folds end the history with 'f'.
+ *
+ * @author Pierre Mardon
+ *
+ */
+class KuhnPoker implements Game<String, KuhnPoker.Deal> {
+
+  static final int NB_CARDS = 3;
+
+  private final int nbCards;
+
+  /**
+   * The cards of the players, as chances of a single round
+   */
+  static final class Deal implements CSCFRMChances {
+
+    private final int[][] playersChances;
+
+    Deal(final int card0, final int card1) {
+      this.playersChances = new int[][] {{card0, card1}};
+    }
+
+    @Override
+    public int[][] getPlayersChances() {
+      return playersChances;
+    }
+
+    @Override
+    public String toString() {
+      return playersChances[0][0] + "-" + playersChances[0][1];
+    }
+  }
+
+  /**
+   * All the deals of the 3 cards game, in a fixed order
+   *
+   * @return the deals
+   */
+  static List<Deal> allDeals() {
+    final List<Deal> deals = new ArrayList<>();
+    for (int card0 = 0; card0 < NB_CARDS; card0++) {
+      for (int card1 = 0; card1 < NB_CARDS; card1++) {
+        if (card0 != card1) {
+          deals.add(new Deal(card0, card1));
+        }
+      }
+    }
+    return deals;
+  }
+
+  /**
+   * Draw a deal of the 3 cards game
+   *
+   * @param random the random generator
+   * @return the deal
+   */
+  static Deal randomDeal(final Random random) {
+    return randomDeal(random, NB_CARDS);
+  }
+
+  /**
+   * Draw a deal
+   *
+   * @param random the random generator
+   * @param nbCards the number of cards
+   * @return the deal
+   */
+  static Deal randomDeal(final Random random, final int nbCards) {
+    final int card0 = random.nextInt(nbCards);
+    final int card1 = (card0 + 1 + random.nextInt(nbCards - 1)) % nbCards;
+    return new Deal(card0, card1);
+  }
+
+  /**
+   * Constructor for the 3 cards game
+   */
+  KuhnPoker() {
+    this(NB_CARDS);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nbCards the number of cards
+   */
+  KuhnPoker(final int nbCards) {
+    this.nbCards = nbCards;
+  }
+
+  @Override
+  public int[][] roundChancesSizes() {
+    return new int[][] {{nbCards, nbCards}};
+  }
+
+  @Override
+  public int getNbPlayers() {
+    return 2;
+  }
+
+  @Override
+  public ActionTreeNode<String, Deal> rootNode() {
+    return node("");
+  }
+
+  private static ActionTreeNode<String, Deal> node(final String history) {
+    switch (history) {
+      case "":
+      case "c":
+      case "b":
+      case "cb":
+        return new ActionTreeNode<>(new PlayerNode<>(history.length() % 2, 0, 2, history), false,
+            action -> node(history + move(history, action)));
+      case "bf":
+        return new ActionTreeNode<>(new double[] {1, -1});
+      case "cbf":
+        return new ActionTreeNode<>(new double[] {-1, 1});
+      case "cc":
+        return new ActionTreeNode<>(showdown(1));
+      case "bc":
+      case "cbc":
+        return new ActionTreeNode<>(showdown(2));
+      default:
+        throw new IllegalArgumentException("Invalid history " + history);
+    }
+  }
+
+  /**
+   * Action 0 checks or folds, action 1 bets or calls
+   */
+  private static char move(final String history, final int action) {
+    final boolean facingBet = history.endsWith("b");
+    if (action == 0) {
+      return facingBet ? 'f' : 'c';
+    }
+    return facingBet ? 'c' : 'b';
+  }
+
+  private static ChancesPayouts<Deal> showdown(final double stake) {
+    return deal -> {
+      final int[] cards = deal.getPlayersChances()[0];
+      return cards[0] > cards[1] ? new double[] {stake, -stake} : new double[] {-stake, stake};
+    };
+  }
+}
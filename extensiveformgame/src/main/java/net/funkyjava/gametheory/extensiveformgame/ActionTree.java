@@ -2,11 +2,17 @@ package net.funkyjava.gametheory.extensiveformgame;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.commons.lang3.mutable.MutableInt;
 
+import net.funkyjava.gametheory.extensiveformgame.ActionTreeNodeState.NodeType;
+
 /**
  * An action tree represents the full built tree of a game with all nodes stored as
  * {@link LinkedActionTreeNode}
@@ -24,28 +30,148 @@ public class ActionTree<Id, Chances> {
   private final LinkedActionTreeNode<Id, Chances>[][][] actionNodes;
 
   /**
-   * Constructor
+   * Player node or terminal node expanded from the game but not linked yet
+   */
+  private static final class PendingNode<Id, Chances> {
+    private final ActionTreeNode<Id, Chances> state;
+    private PendingNode<Id, Chances>[] children;
+    /**
+     * Max number of nodes from this node to a leaf, computed when linking
+     */
+    private int height;
+
+    private PendingNode(final ActionTreeNode<Id, Chances> state) {
+      this.state = state;
+    }
+  }
+
+  /**
+   * Payouts vector key for interning
+   */
+  static final class PayoutsKey {
+    private final double[] payouts;
+    private final int hash;
+
+    PayoutsKey(final double[] payouts) {
+      this.payouts = payouts;
+      this.hash = Arrays.hashCode(payouts);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return obj instanceof PayoutsKey && Arrays.equals(payouts, ((PayoutsKey) obj).payouts);
+    }
+  }
+
+  /**
+   * Expands the children of a pending player node. Player nodes that may have multiple parents are
+   * interned by id so that they are only expanded once.
+   */
+  private static final class ExpandTask<Id, Chances> extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * Depth from which the subtrees are expanded sequentially by the task of their ancestor
+     */
+    private static final int maxForkDepth = 8;
+
+    private final PendingNode<Id, Chances> node;
+    private final Map<Id, PendingNode<Id, Chances>>[][] nodesById;
+    private final boolean parallel;
+    private final int depth;
+
+    private ExpandTask(final PendingNode<Id, Chances> node,
+        final Map<Id, PendingNode<Id, Chances>>[][] nodesById, final boolean parallel,
+        final int depth) {
+      this.node = node;
+      this.nodesById = nodesById;
+      this.parallel = parallel;
+      this.depth = depth;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void compute() {
+      final ActionTreeNode<Id, Chances> state = node.state;
+      final int nbChildren = state.getPlayerNode().getNbActions();
+      final PendingNode<Id, Chances>[] children = node.children = new PendingNode[nbChildren];
+      final List<ExpandTask<Id, Chances>> tasks = new ArrayList<>(nbChildren);
+      for (int i = 0; i < nbChildren; i++) {
+        final ActionTreeNode<Id, Chances> childState = state.getTransition().nodeForAction(i);
+        final PendingNode<Id, Chances> child = children[i] = new PendingNode<>(childState);
+        if (childState.getNodeType() != NodeType.PLAYER) {
+          continue;
+        }
+        final PlayerNode<Id> playerNode = childState.getPlayerNode();
+        if (childState.isPlayerNodeHasMultipleParents() && playerNode.getId() != null) {
+          final PendingNode<Id, Chances> existing = nodesById[playerNode.getRound()][playerNode
+              .getPlayer()].putIfAbsent(playerNode.getId(), child);
+          if (existing != null) {
+            // Already expanded or being expanded by another task
+            children[i] = existing;
+            continue;
+          }
+        }
+        tasks.add(new ExpandTask<>(child, nodesById, parallel, depth + 1));
+      }
+      if (parallel && depth < maxForkDepth) {
+        invokeAll(tasks);
+      } else {
+        for (ExpandTask<Id, Chances> task : tasks) {
+          task.compute();
+        }
+      }
+    }
+  }
+
+  /**
+   * Constructor. The tree is built in parallel when the game is
+   * {@link Game#isConcurrentlyWalkable()}.
    * 
    * @param game the game from which the tree will be built
    */
-  @SuppressWarnings("unchecked")
   public ActionTree(final Game<Id, Chances> game) {
-    final MutableInt maxNbActions = new MutableInt();
-    final MutableInt depth = new MutableInt();
-    final MutableInt maxDepth = new MutableInt();
+    this(game, game.isConcurrentlyWalkable());
+  }
+
+  /**
+   * Constructor. The game's nodes are first expanded, in parallel or not, player nodes that may
+   * have multiple parents being interned by id. The expanded nodes are then linked in depth-first
+   * order, so that the player nodes indexes don't depend on the expansion order. Equal payouts
+   * vectors are shared.
+   * 
+   * @param game the game from which the tree will be built
+   * @param parallel when true, independent subtrees are expanded in parallel in the fork-join
+   *        common pool. The game's transitions must then be thread safe.
+   */
+  @SuppressWarnings("unchecked")
+  public ActionTree(final Game<Id, Chances> game, final boolean parallel) {
     final int nbPlayers = game.getNbPlayers();
     final int[][] roundsSizes = game.roundChancesSizes();
     final int nbRounds = roundsSizes.length;
+    final Map<Id, PendingNode<Id, Chances>>[][] nodesById = new Map[nbRounds][nbPlayers];
     final List<LinkedActionTreeNode<Id, Chances>>[][] nodes = new List[nbRounds][nbPlayers];
     for (int i = 0; i < nbRounds; i++) {
       for (int j = 0; j < nbPlayers; j++) {
+        nodesById[i][j] = new ConcurrentHashMap<>();
         nodes[i][j] = new ArrayList<>();
       }
     }
-    this.root = buildActionTreeRec(maxNbActions, depth, maxDepth, game.rootNode(), nodes,
-        new LinkedList<double[]>());
+    final PendingNode<Id, Chances> pendingRoot = new PendingNode<>(game.rootNode());
+    if (pendingRoot.state.getNodeType() == NodeType.PLAYER) {
+      new ExpandTask<>(pendingRoot, nodesById, parallel, 0).invoke();
+    }
+    final MutableInt maxNbActions = new MutableInt();
+    this.root = link(pendingRoot, maxNbActions, nodes,
+        new IdentityHashMap<PendingNode<Id, Chances>, LinkedActionTreeNode<Id, Chances>>(),
+        new HashMap<PayoutsKey, double[]>());
     this.maxNbActions = maxNbActions.intValue();
-    this.maxDepth = maxDepth.intValue();
+    this.maxDepth = pendingRoot.height;
     this.actionNodes = new LinkedActionTreeNode[nbRounds][nbPlayers][];
     for (int i = 0; i < nbRounds; i++) {
       for (int j = 0; j < nbPlayers; j++) {
@@ -55,54 +181,46 @@ public class ActionTree<Id, Chances> {
   }
 
   @SuppressWarnings("unchecked")
-  private static final <Id, Chances> LinkedActionTreeNode<Id, Chances> buildActionTreeRec(
-      final MutableInt maxNbActions, final MutableInt depth, final MutableInt maxDepth,
-      final ActionTreeNode<Id, Chances> state,
-      final List<LinkedActionTreeNode<Id, Chances>>[][] nodes, final List<double[]> payoutsList) {
-    depth.increment();
+  private static final <Id, Chances> LinkedActionTreeNode<Id, Chances> link(
+      final PendingNode<Id, Chances> pending, final MutableInt maxNbActions,
+      final List<LinkedActionTreeNode<Id, Chances>>[][] nodes,
+      final Map<PendingNode<Id, Chances>, LinkedActionTreeNode<Id, Chances>> linkedNodes,
+      final Map<PayoutsKey, double[]> payoutsByKey) {
+    final ActionTreeNode<Id, Chances> state = pending.state;
     switch (state.getNodeType()) {
       case PAYOUTS_NO_CHANCE:
-        double[] payouts = state.getPayoutsNoChance();
-        for (double[] p : payoutsList) {
-          if (Arrays.equals(p, payouts)) {
-            payouts = p;
-            break;
-          }
-        }
-        maxDepth.setValue(Math.max(maxDepth.intValue(), depth.intValue()));
-        depth.decrement();
-        return new LinkedActionTreeNode<>(payouts);
+        final double[] payouts = state.getPayoutsNoChance();
+        final double[] interned = payoutsByKey.putIfAbsent(new PayoutsKey(payouts), payouts);
+        pending.height = 1;
+        return new LinkedActionTreeNode<>(interned != null ? interned : payouts);
       case CHANCES_PAYOUTS:
-        maxDepth.setValue(Math.max(maxDepth.intValue(), depth.intValue()));
-        depth.decrement();
+        pending.height = 1;
         return new LinkedActionTreeNode<>(state.getChancesPayouts());
       case PLAYER:
-        final PlayerNode<Id> playerNode = state.getPlayerNode();
-        final int round = playerNode.getRound();
-        final int player = playerNode.getPlayer();
-        if (state.isPlayerNodeHasMultipleParents() && playerNode.getId() != null) {
-          // Check if we already built this node
-          for (LinkedActionTreeNode<Id, Chances> node : nodes[round][player]) {
-            final Id id = playerNode.getId();
-            if (id != null && id.equals(playerNode.getId())) {
-              return node;
-            }
-          }
+        final LinkedActionTreeNode<Id, Chances> linked = linkedNodes.get(pending);
+        if (linked != null) {
+          // Node shared by several parents
+          return linked;
         }
-        final int nbChildren = playerNode.getNbActions();
-
+        final PlayerNode<Id> playerNode = state.getPlayerNode();
+        final PendingNode<Id, Chances>[] pendingChildren = pending.children;
+        final int nbChildren = pendingChildren.length;
         maxNbActions.setValue(Math.max(nbChildren, maxNbActions.intValue()));
         final LinkedActionTreeNode<Id, Chances>[] children = new LinkedActionTreeNode[nbChildren];
+        int height = 0;
         for (int i = 0; i < nbChildren; i++) {
-          children[i] = buildActionTreeRec(maxNbActions, depth, maxDepth,
-              state.getTransition().nodeForAction(i), nodes, payoutsList);
+          final PendingNode<Id, Chances> pendingChild = pendingChildren[i];
+          children[i] = link(pendingChild, maxNbActions, nodes, linkedNodes, payoutsByKey);
+          height = Math.max(height, pendingChild.height);
         }
-        final List<LinkedActionTreeNode<Id, Chances>> roundPlayerNodes = nodes[round][player];
+        pending.height = height + 1;
+        final List<LinkedActionTreeNode<Id, Chances>> roundPlayerNodes =
+            nodes[playerNode.getRound()][playerNode.getPlayer()];
         final int index = roundPlayerNodes.size();
         final LinkedActionTreeNode<Id, Chances> node =
             new LinkedActionTreeNode<>(playerNode, children, index);
         roundPlayerNodes.add(node);
-        depth.decrement();
+        linkedNodes.put(pending, node);
         return node;
       default:
         return null;
@@ -0,0 +1,21 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+/**
+ * Strategy of the players on the nodes of an {@link ActionTree}
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Id> the player nodes id type
+ */
+public interface ActionTreeStrategy<Id> {
+
+  /**
+   * Get the actions probabilities of a player node. Implementations are expected to be thread
+   * safe.
+   *
+   * @param node the player node
+   * @param chance the acting player's chance in the node's round
+   * @return the probability of each action of the node
+   */
+  double[] getStrategy(final LinkedActionTreeNode<Id, ?> node, final int chance);
+}
@@ -17,4 +17,17 @@ public interface ChancesPayouts<Chances> {
    * @return the payouts
    */
   double[] getPayouts(final Chances chances);
+
+  /**
+   * Writes the payouts given the chances in a destination array. Trainers call it with their own
+   * reusable arrays : implementations should override it to avoid allocating a payouts array per
+   * call. The default implementation copies the result of {@link #getPayouts(Object)}.
+   * 
+   * @param chances the chances
+   * @param payouts destination array for the payouts indexed by player
+   */
+  default void getPayouts(final Chances chances, final double[] payouts) {
+    final double[] res = getPayouts(chances);
+    System.arraycopy(res, 0, payouts, 0, res.length);
+  }
 }
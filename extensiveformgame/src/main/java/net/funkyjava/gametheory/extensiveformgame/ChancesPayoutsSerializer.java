@@ -0,0 +1,34 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serializer of the chances dependent payouts of a game, so that its terminal nodes can be stored
+ * in a file like the {@link MappedActionTree} one
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances type
+ */
+public interface ChancesPayoutsSerializer<Chances> {
+
+  /**
+   * Write chances payouts
+   *
+   * @param payouts the payouts
+   * @param out the output
+   * @throws IOException
+   */
+  void write(ChancesPayouts<Chances> payouts, DataOutput out) throws IOException;
+
+  /**
+   * Read chances payouts written by {@link #write(ChancesPayouts, DataOutput)} from the buffer's
+   * position
+   *
+   * @param buffer the buffer
+   * @return the payouts
+   */
+  ChancesPayouts<Chances> read(ByteBuffer buffer);
+}
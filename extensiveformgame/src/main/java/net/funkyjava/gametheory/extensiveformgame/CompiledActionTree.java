@@ -0,0 +1,263 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * Compiled form of an {@link ActionTree} : all nodes are packed in primitive arrays so that
+ * algorithms can walk the tree without pointer chasing nor virtual calls on the hot path.
+ *
+ * Nodes are numbered in DFS pre-order, the root being node 0. Node n's fields are stored in
+ * {@link #getNodes()} from n * {@value #NODE_STRIDE} : its type ({@link #PLAYER},
+ * {@link #PAYOUTS_NO_CHANCE} or {@link #CHANCES_PAYOUTS}), and for player nodes its player, round,
+ * index for this round and player, number of actions and the position of its first child in
+ * {@link #getChildren()}. Terminal nodes hold instead the index of their payouts in
+ * {@link #getPayoutsNoChance()} or {@link #getChancesPayouts()}. Nodes shared by several parents in
+ * the action tree are compiled once. It is the heap {@link PackedActionTree}, see
+ * {@link MappedActionTree} for the off-heap one.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances type
+ */
+public class CompiledActionTree<Chances> implements PackedActionTree<Chances> {
+
+  /**
+   * Player node type
+   */
+  public static final int PLAYER = 0;
+  /**
+   * Terminal node type with constant utility
+   */
+  public static final int PAYOUTS_NO_CHANCE = 1;
+  /**
+   * Terminal node type with utility depending on chances
+   */
+  public static final int CHANCES_PAYOUTS = 2;
+
+  /**
+   * Number of ints per node
+   */
+  public static final int NODE_STRIDE = 6;
+  /**
+   * Offset of the node type
+   */
+  public static final int TYPE = 0;
+  /**
+   * Offset of the acting player of a player node
+   */
+  public static final int PLAYER_INDEX = 1;
+  /**
+   * Offset of the round of a player node
+   */
+  public static final int ROUND = 2;
+  /**
+   * Offset of the node index for its round and player, or of the payouts index of a terminal node
+   */
+  public static final int INDEX = 3;
+  /**
+   * Offset of the number of actions of a player node
+   */
+  public static final int NB_ACTIONS = 4;
+  /**
+   * Offset of the position of the first child of a player node in the children array
+   */
+  public static final int FIRST_CHILD = 5;
+
+  /**
+   * Packed nodes fields
+   */
+  @Getter
+  private final int[] nodes;
+  /**
+   * Children node numbers of all player nodes
+   */
+  @Getter
+  private final int[] children;
+  /**
+   * Constant payouts of the terminal nodes
+   */
+  @Getter
+  private final double[][] payoutsNoChance;
+  /**
+   * Chances dependent payouts of the terminal nodes
+   */
+  @Getter
+  private final ChancesPayouts<Chances>[] chancesPayouts;
+  /**
+   * Linked node of each compiled node, to get back to the ids
+   */
+  @Getter
+  private final LinkedActionTreeNode<?, Chances>[] linkedNodes;
+  /**
+   * Number of nodes
+   */
+  @Getter
+  private final int nbNodes;
+  /**
+   * Max depth of the tree, the root being at depth 1 like for {@link ActionTree#getMaxDepth()}
+   */
+  @Getter
+  private final int maxDepth;
+  /**
+   * Max number of actions between all player nodes
+   */
+  @Getter
+  private final int maxNbActions;
+  private final int[][] nbPlayerNodes;
+
+  private static final class Builder<Chances> {
+    private final List<int[]> nodes = new ArrayList<>();
+    private final List<int[]> children = new ArrayList<>();
+    private final List<double[]> payoutsNoChance = new ArrayList<>();
+    private final List<ChancesPayouts<Chances>> chancesPayouts = new ArrayList<>();
+    private final List<LinkedActionTreeNode<?, Chances>> linkedNodes = new ArrayList<>();
+    private final Map<LinkedActionTreeNode<?, Chances>, Integer> compiled =
+        new IdentityHashMap<>();
+    private final Map<double[], Integer> payoutsIndexes = new IdentityHashMap<>();
+    private final Map<ChancesPayouts<Chances>, Integer> chancesPayoutsIndexes =
+        new IdentityHashMap<>();
+    private int nbChildren = 0;
+
+    private int compile(final LinkedActionTreeNode<?, Chances> node) {
+      final Integer existing = compiled.get(node);
+      if (existing != null) {
+        return existing;
+      }
+      final int number = nodes.size();
+      final int[] fields = new int[NODE_STRIDE];
+      nodes.add(fields);
+      linkedNodes.add(node);
+      compiled.put(node, number);
+      switch (node.getNodeType()) {
+        case PAYOUTS_NO_CHANCE: {
+          fields[TYPE] = PAYOUTS_NO_CHANCE;
+          final double[] payouts = node.getPayoutsNoChance();
+          Integer index = payoutsIndexes.get(payouts);
+          if (index == null) {
+            payoutsIndexes.put(payouts, index = payoutsNoChance.size());
+            payoutsNoChance.add(payouts);
+          }
+          fields[INDEX] = index;
+          children.add(null);
+          return number;
+        }
+        case CHANCES_PAYOUTS: {
+          fields[TYPE] = CHANCES_PAYOUTS;
+          final ChancesPayouts<Chances> payouts = node.getChancesPayouts();
+          Integer index = chancesPayoutsIndexes.get(payouts);
+          if (index == null) {
+            chancesPayoutsIndexes.put(payouts, index = chancesPayouts.size());
+            chancesPayouts.add(payouts);
+          }
+          fields[INDEX] = index;
+          children.add(null);
+          return number;
+        }
+        default: {
+          final PlayerNode<?> playerNode = node.getPlayerNode();
+          final int nbActions = playerNode.getNbActions();
+          fields[TYPE] = PLAYER;
+          fields[PLAYER_INDEX] = playerNode.getPlayer();
+          fields[ROUND] = playerNode.getRound();
+          fields[INDEX] = node.getPlayerRoundActionIndex();
+          fields[NB_ACTIONS] = nbActions;
+          fields[FIRST_CHILD] = nbChildren;
+          nbChildren += nbActions;
+          final int[] nodeChildren = new int[nbActions];
+          children.add(nodeChildren);
+          final LinkedActionTreeNode<?, Chances>[] linkedChildren = node.getChildren();
+          for (int i = 0; i < nbActions; i++) {
+            nodeChildren[i] = compile(linkedChildren[i]);
+          }
+          return number;
+        }
+      }
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param actionTree the action tree to compile
+   */
+  @SuppressWarnings("unchecked")
+  public CompiledActionTree(final ActionTree<?, Chances> actionTree) {
+    final Builder<Chances> builder = new Builder<>();
+    builder.compile(actionTree.getRoot());
+    final int nbNodes = this.nbNodes = builder.nodes.size();
+    final int[] nodes = this.nodes = new int[nbNodes * NODE_STRIDE];
+    final int[] children = this.children = new int[builder.nbChildren];
+    for (int i = 0; i < nbNodes; i++) {
+      final int[] fields = builder.nodes.get(i);
+      System.arraycopy(fields, 0, nodes, i * NODE_STRIDE, NODE_STRIDE);
+      final int[] nodeChildren = builder.children.get(i);
+      if (nodeChildren != null) {
+        System.arraycopy(nodeChildren, 0, children, fields[FIRST_CHILD], nodeChildren.length);
+      }
+    }
+    this.payoutsNoChance = builder.payoutsNoChance.toArray(new double[0][]);
+    this.chancesPayouts = builder.chancesPayouts.toArray(new ChancesPayouts[0]);
+    this.linkedNodes = builder.linkedNodes.toArray(new LinkedActionTreeNode[0]);
+    this.maxDepth = actionTree.getMaxDepth();
+    this.maxNbActions = actionTree.getMaxNbActions();
+    final LinkedActionTreeNode<?, Chances>[][][] actionNodes = actionTree.getActionNodes();
+    final int nbRounds = actionNodes.length;
+    final int[][] nbPlayerNodes = this.nbPlayerNodes = new int[nbRounds][];
+    for (int round = 0; round < nbRounds; round++) {
+      final int nbPlayers = actionNodes[round].length;
+      nbPlayerNodes[round] = new int[nbPlayers];
+      for (int player = 0; player < nbPlayers; player++) {
+        nbPlayerNodes[round][player] = actionNodes[round][player].length;
+      }
+    }
+  }
+
+  @Override
+  public int getNbPlayerNodes(final int round, final int player) {
+    return nbPlayerNodes[round][player];
+  }
+
+  @Override
+  public final int getField(final int node, final int field) {
+    return nodes[node * NODE_STRIDE + field];
+  }
+
+  /**
+   * Type of a node
+   *
+   * @param node the node number
+   * @return the node type
+   */
+  @Override
+  public final int getType(final int node) {
+    return nodes[node * NODE_STRIDE + TYPE];
+  }
+
+  /**
+   * Child of a player node
+   *
+   * @param node the node number
+   * @param action the action index
+   * @return the child node number
+   */
+  @Override
+  public final int getChild(final int node, final int action) {
+    return children[nodes[node * NODE_STRIDE + FIRST_CHILD] + action];
+  }
+
+  @Override
+  public void getPayoutsNoChance(final int index, final double[] payouts) {
+    final double[] nodePayouts = payoutsNoChance[index];
+    System.arraycopy(nodePayouts, 0, payouts, 0, nodePayouts.length);
+  }
+
+  @Override
+  public ChancesPayouts<Chances> getChancesPayouts(final int index) {
+    return chancesPayouts[index];
+  }
+}
@@ -36,4 +36,14 @@ public interface Game<Id, Chances> {
    */
   ActionTreeNode<Id, Chances> rootNode();
 
+  /**
+   * Can the nodes transitions be walked concurrently by several threads. When true, the action tree
+   * is built in parallel.
+   *
+   * @return true when the transitions are thread safe
+   */
+  default boolean isConcurrentlyWalkable() {
+    return false;
+  }
+
 }
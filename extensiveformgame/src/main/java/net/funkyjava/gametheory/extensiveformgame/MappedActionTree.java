@@ -0,0 +1,312 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.CHANCES_PAYOUTS;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.FIRST_CHILD;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.INDEX;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.NB_ACTIONS;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.NODE_STRIDE;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PAYOUTS_NO_CHANCE;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PLAYER;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PLAYER_INDEX;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.ROUND;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.TYPE;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lombok.Getter;
+
+/**
+ * Off-heap compiled action tree : the nodes of a file written by
+ * {@link StreamingActionTreeWriter} are memory-mapped and read in place, so that the tree size is
+ * only limited by the disk and the address space.
+ *
+ * Nodes are numbered and their fields laid out like in a {@link CompiledActionTree}, with the same
+ * constants : both are {@link PackedActionTree}s. Chances payouts are decoded by the
+ * {@link ChancesPayoutsSerializer} on each {@link #getChancesPayouts(int)} call.
+ *
+ * The mapped tree is also a {@link Game} whose ids are the node numbers, so that the usual tools
+ * can walk it. All its player nodes are flagged as possibly having multiple parents for the shared
+ * nodes to be interned.
+ *
+ * File layout, big-endian, from the tree's start in the file : magic, version, number of players
+ * and rounds, round chances sizes, mapped chunks shift, max depth and number of actions, numbers of
+ * nodes, children, constant payouts and chances payouts, number of player nodes by round and
+ * player, then the nodes fields ({@value CompiledActionTree#NODE_STRIDE} ints per node), the
+ * children node numbers, the constant payouts, the chances payouts offsets and their serialized
+ * forms. The tree can follow a header of the file's owner, like the key of a cache.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances type
+ */
+public class MappedActionTree<Chances>
+    implements Game<Integer, Chances>, PackedActionTree<Chances> {
+
+  static final int MAGIC = 0x4D415452;
+  static final int VERSION = 2;
+
+  private final int nbPlayers;
+  private final int[][] roundChancesSizes;
+  /**
+   * Max depth of the tree, the root being at depth 1 like for {@link ActionTree#getMaxDepth()}
+   */
+  @Getter
+  private final int maxDepth;
+  /**
+   * Max number of actions between all player nodes
+   */
+  @Getter
+  private final int maxNbActions;
+  /**
+   * Number of nodes
+   */
+  @Getter
+  private final int nbNodes;
+  /**
+   * Number of constant payouts vectors
+   */
+  @Getter
+  private final int nbPayoutsNoChance;
+  /**
+   * Number of chances payouts
+   */
+  @Getter
+  private final int nbChancesPayouts;
+  private final int[][] nbPlayerNodes;
+  private final MappedChunks nodes;
+  private final MappedChunks children;
+  private final MappedChunks payoutsNoChance;
+  private final MappedChunks chancesPayoutsOffsets;
+  private final MappedChunks chancesPayouts;
+  private final ChancesPayoutsSerializer<Chances> serializer;
+
+  /**
+   * Constructor. Maps a file written by {@link StreamingActionTreeWriter}.
+   *
+   * @param path the file path
+   * @param serializer the chances payouts serializer, may be null when there are no chances
+   *        payouts
+   * @throws IOException when the file cannot be read or mapped
+   */
+  public MappedActionTree(final Path path, final ChancesPayoutsSerializer<Chances> serializer)
+      throws IOException {
+    this(path, 0, serializer);
+  }
+
+  /**
+   * Constructor. Maps a tree written by {@link StreamingActionTreeWriter} after a header.
+   *
+   * @param path the file path
+   * @param treeStart the position of the tree in the file, after the header
+   * @param serializer the chances payouts serializer, may be null when there are no chances
+   *        payouts
+   * @throws IOException when the file cannot be read or mapped
+   */
+  public MappedActionTree(final Path path, final long treeStart,
+      final ChancesPayoutsSerializer<Chances> serializer) throws IOException {
+    this.serializer = serializer;
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final ByteBuffer start = read(channel, treeStart, 4 * Integer.BYTES);
+      checkArgument(start.getInt() == MAGIC && start.getInt() == VERSION,
+          "File %s is not a mapped action tree or has another format version", path);
+      final int nbPlayers = this.nbPlayers = start.getInt();
+      final int nbRounds = start.getInt();
+      checkArgument(nbPlayers > 0 && nbRounds > 0, "Invalid number of players or rounds");
+      final long headerBytes = headerBytes(nbRounds, nbPlayers);
+      final ByteBuffer header =
+          read(channel, treeStart + start.position(), headerBytes - start.position());
+      final int[][] roundChancesSizes = this.roundChancesSizes = new int[nbRounds][nbPlayers];
+      for (int round = 0; round < nbRounds; round++) {
+        for (int player = 0; player < nbPlayers; player++) {
+          roundChancesSizes[round][player] = header.getInt();
+        }
+      }
+      final int chunkShift = header.getInt();
+      checkArgument(
+          chunkShift >= MappedChunks.MIN_CHUNK_SHIFT && chunkShift <= MappedChunks.MAX_CHUNK_SHIFT,
+          "Invalid chunk shift %s", chunkShift);
+      this.maxDepth = header.getInt();
+      this.maxNbActions = header.getInt();
+      final int nbNodes = this.nbNodes = header.getInt();
+      final int nbChildren = header.getInt();
+      final int nbPayouts = this.nbPayoutsNoChance = header.getInt();
+      final int nbChancesPayouts = this.nbChancesPayouts = header.getInt();
+      final int[][] nbPlayerNodes = this.nbPlayerNodes = new int[nbRounds][nbPlayers];
+      for (int round = 0; round < nbRounds; round++) {
+        for (int player = 0; player < nbPlayers; player++) {
+          nbPlayerNodes[round][player] = header.getInt();
+        }
+      }
+      final long nodesBytes = (long) nbNodes * NODE_STRIDE * Integer.BYTES;
+      final long childrenBytes = (long) nbChildren * Integer.BYTES;
+      final long payoutsBytes = (long) nbPayouts * nbPlayers * Double.BYTES;
+      final long offsetsBytes = (long) nbChancesPayouts * Long.BYTES;
+      final long nodesStart = treeStart + headerBytes;
+      final long childrenStart = nodesStart + nodesBytes;
+      final long payoutsStart = childrenStart + childrenBytes;
+      final long offsetsStart = payoutsStart + payoutsBytes;
+      final long chancesPayoutsStart = offsetsStart + offsetsBytes;
+      final long length = channel.size();
+      checkArgument(length >= chancesPayoutsStart, "File %s is truncated", path);
+      this.nodes =
+          new MappedChunks(channel, MapMode.READ_ONLY, nodesStart, nodesBytes, chunkShift);
+      this.children = new MappedChunks(channel, MapMode.READ_ONLY, childrenStart, childrenBytes,
+          chunkShift);
+      this.payoutsNoChance = new MappedChunks(channel, MapMode.READ_ONLY, payoutsStart,
+          payoutsBytes, chunkShift);
+      this.chancesPayoutsOffsets = new MappedChunks(channel, MapMode.READ_ONLY, offsetsStart,
+          offsetsBytes, chunkShift);
+      this.chancesPayouts = new MappedChunks(channel, MapMode.READ_ONLY, chancesPayoutsStart,
+          length - chancesPayoutsStart, chunkShift);
+    }
+  }
+
+  private static ByteBuffer read(final FileChannel channel, final long position,
+      final long length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Truncated mapped action tree header");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Length of the file header
+   *
+   * @param nbRounds number of rounds
+   * @param nbPlayers number of players
+   * @return the number of bytes
+   */
+  static long headerBytes(final int nbRounds, final int nbPlayers) {
+    return (11L + 2L * nbRounds * nbPlayers) * Integer.BYTES;
+  }
+
+  /**
+   * Number of player nodes of a round and player, which are indexed from 0 in
+   * {@link CompiledActionTree#INDEX}
+   *
+   * @param round the round
+   * @param player the player
+   * @return the number of nodes
+   */
+  @Override
+  public int getNbPlayerNodes(final int round, final int player) {
+    return nbPlayerNodes[round][player];
+  }
+
+  /**
+   * Field of a node
+   *
+   * @param node the node number
+   * @param field the field offset, like {@link CompiledActionTree#TYPE}
+   * @return the field value
+   */
+  @Override
+  public final int getField(final int node, final int field) {
+    return nodes.getInt(((long) node * NODE_STRIDE + field) * Integer.BYTES);
+  }
+
+  /**
+   * Type of a node
+   *
+   * @param node the node number
+   * @return the node type
+   */
+  @Override
+  public final int getType(final int node) {
+    return getField(node, TYPE);
+  }
+
+  /**
+   * Child of a player node
+   *
+   * @param node the node number
+   * @param action the action index
+   * @return the child node number
+   */
+  @Override
+  public final int getChild(final int node, final int action) {
+    return children.getInt(((long) getField(node, FIRST_CHILD) + action) * Integer.BYTES);
+  }
+
+  /**
+   * Write constant payouts in a destination array
+   *
+   * @param index the payouts index, from the {@link CompiledActionTree#INDEX} field of a node
+   * @param payouts destination array for the payouts indexed by player
+   */
+  @Override
+  public void getPayoutsNoChance(final int index, final double[] payouts) {
+    final MappedChunks payoutsNoChance = this.payoutsNoChance;
+    final int nbPlayers = this.nbPlayers;
+    final long start = (long) index * nbPlayers * Double.BYTES;
+    for (int p = 0; p < nbPlayers; p++) {
+      payouts[p] = payoutsNoChance.getDouble(start + p * Double.BYTES);
+    }
+  }
+
+  /**
+   * Decode chances payouts
+   *
+   * @param index the payouts index, from the {@link CompiledActionTree#INDEX} field of a node
+   * @return the payouts
+   */
+  @Override
+  public ChancesPayouts<Chances> getChancesPayouts(final int index) {
+    checkState(serializer != null, "No chances payouts serializer provided");
+    return serializer
+        .read(chancesPayouts.duplicate(chancesPayoutsOffsets.getLong((long) index * Long.BYTES)));
+  }
+
+  @Override
+  public int[][] roundChancesSizes() {
+    return roundChancesSizes;
+  }
+
+  @Override
+  public int getNbPlayers() {
+    return nbPlayers;
+  }
+
+  @Override
+  public ActionTreeNode<Integer, Chances> rootNode() {
+    return getNode(0);
+  }
+
+  /**
+   * The transitions only read the mapped nodes
+   */
+  @Override
+  public boolean isConcurrentlyWalkable() {
+    return true;
+  }
+
+  private ActionTreeNode<Integer, Chances> getNode(final int node) {
+    switch (getType(node)) {
+      case PAYOUTS_NO_CHANCE:
+        final double[] payouts = new double[nbPlayers];
+        getPayoutsNoChance(getField(node, INDEX), payouts);
+        return new ActionTreeNode<>(payouts);
+      case CHANCES_PAYOUTS:
+        return new ActionTreeNode<>(getChancesPayouts(getField(node, INDEX)));
+      case PLAYER:
+        final PlayerNode<Integer> playerNode = new PlayerNode<>(getField(node, PLAYER_INDEX),
+            getField(node, ROUND), getField(node, NB_ACTIONS), node);
+        return new ActionTreeNode<>(playerNode, true, action -> getNode(getChild(node, action)));
+      default:
+        throw new IllegalStateException("Invalid node type in mapped action tree");
+    }
+  }
+
+}
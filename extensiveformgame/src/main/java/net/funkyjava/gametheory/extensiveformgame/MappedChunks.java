@@ -0,0 +1,87 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * File region mapped in chunks of 2^chunkShift bytes, {@value #MAX_CHUNK_SHIFT} at most, so that
+ * regions larger than 2GB can be addressed. Positions are relative to the region start : values
+ * whose size divides the chunk size never straddle two chunks when they are aligned on their size
+ * in the region.
+ *
+ * @author Pierre Mardon
+ *
+ */
+final class MappedChunks {
+
+  /**
+   * Shift of the largest chunks, used by default
+   */
+  static final int MAX_CHUNK_SHIFT = 30;
+  /**
+   * Shift of the smallest chunks, so that a double never straddles two chunks
+   */
+  static final int MIN_CHUNK_SHIFT = 3;
+
+  private final int chunkShift;
+  private final long chunkMask;
+  private final MappedByteBuffer[] chunks;
+
+  MappedChunks(final FileChannel channel, final MapMode mode, final long start,
+      final long length, final int chunkShift) throws IOException {
+    final long chunkBytes = 1L << chunkShift;
+    final long chunkMask = this.chunkMask = chunkBytes - 1;
+    this.chunkShift = chunkShift;
+    final int nbChunks = (int) ((length + chunkMask) >>> chunkShift);
+    final MappedByteBuffer[] chunks = this.chunks = new MappedByteBuffer[nbChunks];
+    for (int i = 0; i < nbChunks; i++) {
+      final long first = (long) i << chunkShift;
+      chunks[i] = channel.map(mode, start + first, Math.min(chunkBytes, length - first));
+    }
+  }
+
+  int getInt(final long position) {
+    return chunks[(int) (position >>> chunkShift)].getInt((int) (position & chunkMask));
+  }
+
+  void putInt(final long position, final int value) {
+    chunks[(int) (position >>> chunkShift)].putInt((int) (position & chunkMask), value);
+  }
+
+  long getLong(final long position) {
+    return chunks[(int) (position >>> chunkShift)].getLong((int) (position & chunkMask));
+  }
+
+  void putLong(final long position, final long value) {
+    chunks[(int) (position >>> chunkShift)].putLong((int) (position & chunkMask), value);
+  }
+
+  double getDouble(final long position) {
+    return chunks[(int) (position >>> chunkShift)].getDouble((int) (position & chunkMask));
+  }
+
+  void putDouble(final long position, final double value) {
+    chunks[(int) (position >>> chunkShift)].putDouble((int) (position & chunkMask), value);
+  }
+
+  /**
+   * Get a buffer on the chunk containing a position
+   *
+   * @param position the position in the region
+   * @return a buffer sharing the chunk's content, positioned at the position
+   */
+  ByteBuffer duplicate(final long position) {
+    final ByteBuffer buffer = chunks[(int) (position >>> chunkShift)].duplicate();
+    buffer.position((int) (position & chunkMask));
+    return buffer;
+  }
+
+  void force() {
+    for (MappedByteBuffer chunk : chunks) {
+      chunk.force();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+/**
+ * Action tree whose nodes are numbered in DFS pre-order from the root node 0 and whose fields are
+ * read by offset, with the constants of {@link CompiledActionTree}. Implemented in the heap by
+ * {@link CompiledActionTree} and off-heap by {@link MappedActionTree}, so that algorithms walking
+ * node numbers run on both.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances type
+ */
+public interface PackedActionTree<Chances> {
+
+  /**
+   * Get the number of nodes
+   *
+   * @return the number of nodes
+   */
+  int getNbNodes();
+
+  /**
+   * Get the max depth of the tree, the root being at depth 1 like for
+   * {@link ActionTree#getMaxDepth()}
+   *
+   * @return the max depth
+   */
+  int getMaxDepth();
+
+  /**
+   * Get the max number of actions between all player nodes
+   *
+   * @return the max number of actions
+   */
+  int getMaxNbActions();
+
+  /**
+   * Number of player nodes of a round and player, which are indexed from 0 in
+   * {@link CompiledActionTree#INDEX}
+   *
+   * @param round the round
+   * @param player the player
+   * @return the number of nodes
+   */
+  int getNbPlayerNodes(final int round, final int player);
+
+  /**
+   * Field of a node
+   *
+   * @param node the node number
+   * @param field the field offset, like {@link CompiledActionTree#TYPE}
+   * @return the field value
+   */
+  int getField(final int node, final int field);
+
+  /**
+   * Type of a node
+   *
+   * @param node the node number
+   * @return the node type
+   */
+  int getType(final int node);
+
+  /**
+   * Child of a player node
+   *
+   * @param node the node number
+   * @param action the action index
+   * @return the child node number
+   */
+  int getChild(final int node, final int action);
+
+  /**
+   * Write constant payouts in a destination array
+   *
+   * @param index the payouts index, from the {@link CompiledActionTree#INDEX} field of a node
+   * @param payouts destination array for the payouts indexed by player
+   */
+  void getPayoutsNoChance(final int index, final double[] payouts);
+
+  /**
+   * Get chances payouts
+   *
+   * @param index the payouts index, from the {@link CompiledActionTree#INDEX} field of a node
+   * @return the payouts
+   */
+  ChancesPayouts<Chances> getChancesPayouts(final int index);
+}
@@ -0,0 +1,388 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.CHANCES_PAYOUTS;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.FIRST_CHILD;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.INDEX;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.NB_ACTIONS;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.NODE_STRIDE;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PAYOUTS_NO_CHANCE;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PLAYER;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PLAYER_INDEX;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.ROUND;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.TYPE;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.funkyjava.gametheory.extensiveformgame.ActionTree.PayoutsKey;
+
+/**
+ * Streaming builder of the {@link MappedActionTree} file of a game, for trees that don't fit in the
+ * heap as an {@link ActionTree}. The game is walked twice through its
+ * {@link ActionTreePlayerChoiceTransition}s without keeping the nodes : a first pass counts the
+ * nodes, children and payouts to lay out the file sections, a second one writes each node in DFS
+ * pre-order at its place in the file, which is mapped in chunks. Only the current path, the ids of
+ * the player nodes that may have multiple parents and the distinct constant payouts vectors are
+ * kept in the heap. The game must be walked identically by both passes.
+ *
+ * Nodes are numbered, interned and indexed like in the {@link CompiledActionTree} of the
+ * {@link ActionTree} built from the same game. Serialized chances payouts never straddle two mapped
+ * chunks.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Id> the player nodes id type
+ * @param <Chances> the chances type
+ */
+public class StreamingActionTreeWriter<Id, Chances> {
+
+  /**
+   * Log2 of the default mapped chunks size
+   */
+  public static final int DEFAULT_CHUNK_SHIFT = MappedChunks.MAX_CHUNK_SHIFT;
+
+  private final int nbPlayers;
+  private final int[][] roundChancesSizes;
+  private final ChancesPayoutsSerializer<Chances> serializer;
+  private final int chunkShift;
+  /**
+   * Interned player nodes by round, player and id : their height during the count pass, their
+   * number during the fill pass
+   */
+  private final Map<Id, Integer>[][] internedNodes;
+  private final Map<PayoutsKey, Integer> payoutsIndexes = new HashMap<>();
+  private final List<double[]> payoutsNoChance = new ArrayList<>();
+  private final int[][] nbPlayerNodes;
+  private long nbNodes;
+  private long nbChildren;
+  private long nbChancesPayouts;
+  private int maxNbActions;
+
+  private final int[][] nextIndexes;
+  private int nextNode;
+  private int nextChild;
+  private int nextChancesPayouts;
+  private MappedChunks nodes;
+  private MappedChunks children;
+  private MappedChunks chancesPayoutsOffsets;
+  private OutputStream chancesPayouts;
+  private long chancesPayoutsPosition;
+  private final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+  private final DataOutputStream serializedOut = new DataOutputStream(serialized);
+
+  @SuppressWarnings("unchecked")
+  private StreamingActionTreeWriter(final Game<Id, Chances> game,
+      final ChancesPayoutsSerializer<Chances> serializer, final int chunkShift) {
+    final int nbPlayers = this.nbPlayers = game.getNbPlayers();
+    final int[][] roundChancesSizes = this.roundChancesSizes = game.roundChancesSizes();
+    final int nbRounds = roundChancesSizes.length;
+    this.serializer = serializer;
+    this.chunkShift = chunkShift;
+    this.internedNodes = new Map[nbRounds][nbPlayers];
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        internedNodes[round][player] = new HashMap<>();
+      }
+    }
+    this.nbPlayerNodes = new int[nbRounds][nbPlayers];
+    this.nextIndexes = new int[nbRounds][nbPlayers];
+  }
+
+  /**
+   * Write the tree of a game. The file is written next to its path and moved in place when
+   * complete.
+   *
+   * @param game the game
+   * @param path the file path
+   * @param serializer the chances payouts serializer, may be null when the game has no chances
+   *        payouts
+   * @throws IOException
+   */
+  public static <Id, Chances> void write(final Game<Id, Chances> game, final Path path,
+      final ChancesPayoutsSerializer<Chances> serializer) throws IOException {
+    write(game, path, serializer, new byte[0], DEFAULT_CHUNK_SHIFT);
+  }
+
+  /**
+   * Write the tree of a game after a header, to be mapped with
+   * {@link MappedActionTree#MappedActionTree(Path, long, ChancesPayoutsSerializer)} at the header's
+   * length. The file is written next to its path and moved in place when complete.
+   *
+   * @param game the game
+   * @param path the file path
+   * @param serializer the chances payouts serializer, may be null when the game has no chances
+   *        payouts
+   * @param header the bytes written before the tree, like the key of a cache
+   * @param chunkShift log2 of the mapped chunks size, from 3 to {@value #DEFAULT_CHUNK_SHIFT}. The
+   *        tree is read with the same chunks. Smaller chunks than the default only serve to test
+   *        the chunks boundaries.
+   * @throws IOException
+   */
+  public static <Id, Chances> void write(final Game<Id, Chances> game, final Path path,
+      final ChancesPayoutsSerializer<Chances> serializer, final byte[] header,
+      final int chunkShift) throws IOException {
+    checkArgument(
+        chunkShift >= MappedChunks.MIN_CHUNK_SHIFT && chunkShift <= MappedChunks.MAX_CHUNK_SHIFT,
+        "Invalid chunk shift %s", chunkShift);
+    final StreamingActionTreeWriter<Id, Chances> writer =
+        new StreamingActionTreeWriter<>(game, serializer, chunkShift);
+    final int maxDepth = writer.count(game.rootNode());
+    checkState(writer.nbNodes <= Integer.MAX_VALUE && writer.nbChildren <= Integer.MAX_VALUE
+        && writer.nbChancesPayouts <= Integer.MAX_VALUE, "Too many nodes to number them as ints");
+    writer.clearInternedNodes();
+    final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+    try (final FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      final ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+      while (headerBuffer.hasRemaining()) {
+        channel.write(headerBuffer, headerBuffer.position());
+      }
+      writer.fill(channel, header.length, maxDepth, game.rootNode());
+    }
+    Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private void clearInternedNodes() {
+    for (Map<Id, Integer>[] roundNodes : internedNodes) {
+      for (Map<Id, Integer> nodes : roundNodes) {
+        nodes.clear();
+      }
+    }
+  }
+
+  private Map<Id, Integer> internedNodes(final ActionTreeNode<Id, Chances> node) {
+    final PlayerNode<Id> playerNode = node.getPlayerNode();
+    if (!node.isPlayerNodeHasMultipleParents() || playerNode.getId() == null) {
+      return null;
+    }
+    return internedNodes[playerNode.getRound()][playerNode.getPlayer()];
+  }
+
+  /**
+   * Count pass
+   *
+   * @param node the node
+   * @return the node's height, 1 for terminal nodes
+   */
+  private int count(final ActionTreeNode<Id, Chances> node) {
+    switch (node.getNodeType()) {
+      case PAYOUTS_NO_CHANCE: {
+        nbNodes++;
+        final double[] payouts = node.getPayoutsNoChance();
+        if (payoutsIndexes.putIfAbsent(new PayoutsKey(payouts), payoutsNoChance.size()) == null) {
+          payoutsNoChance.add(payouts);
+        }
+        return 1;
+      }
+      case CHANCES_PAYOUTS:
+        checkArgument(serializer != null, "A serializer is required to write chances payouts");
+        nbNodes++;
+        nbChancesPayouts++;
+        return 1;
+      case PLAYER: {
+        final PlayerNode<Id> playerNode = node.getPlayerNode();
+        final Map<Id, Integer> heights = internedNodes(node);
+        if (heights != null) {
+          final Integer height = heights.get(playerNode.getId());
+          if (height != null) {
+            return height;
+          }
+        }
+        final int nbActions = playerNode.getNbActions();
+        nbNodes++;
+        nbChildren += nbActions;
+        nbPlayerNodes[playerNode.getRound()][playerNode.getPlayer()]++;
+        maxNbActions = Math.max(maxNbActions, nbActions);
+        final ActionTreePlayerChoiceTransition<Id, Chances> transition = node.getTransition();
+        int height = 0;
+        for (int i = 0; i < nbActions; i++) {
+          height = Math.max(height, count(transition.nodeForAction(i)));
+        }
+        height++;
+        if (heights != null) {
+          heights.put(playerNode.getId(), height);
+        }
+        return height;
+      }
+      default:
+        throw new IllegalArgumentException();
+    }
+  }
+
+  private void fill(final FileChannel channel, final long treeStart, final int maxDepth,
+      final ActionTreeNode<Id, Chances> root) throws IOException {
+    final int chunkShift = this.chunkShift;
+    final int nbPlayers = this.nbPlayers;
+    final int[][] roundChancesSizes = this.roundChancesSizes;
+    final int nbRounds = roundChancesSizes.length;
+    final List<double[]> payoutsNoChance = this.payoutsNoChance;
+    final int nbPayouts = payoutsNoChance.size();
+    final long headerBytes = MappedActionTree.headerBytes(nbRounds, nbPlayers);
+    final ByteBuffer header = ByteBuffer.allocate((int) headerBytes);
+    header.putInt(MappedActionTree.MAGIC);
+    header.putInt(MappedActionTree.VERSION);
+    header.putInt(nbPlayers);
+    header.putInt(nbRounds);
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        header.putInt(roundChancesSizes[round][player]);
+      }
+    }
+    header.putInt(chunkShift);
+    header.putInt(maxDepth);
+    header.putInt(maxNbActions);
+    header.putInt((int) nbNodes);
+    header.putInt((int) nbChildren);
+    header.putInt(nbPayouts);
+    header.putInt((int) nbChancesPayouts);
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        header.putInt(nbPlayerNodes[round][player]);
+      }
+    }
+    header.flip();
+    while (header.hasRemaining()) {
+      channel.write(header, treeStart + header.position());
+    }
+    final long nodesBytes = nbNodes * NODE_STRIDE * Integer.BYTES;
+    final long childrenBytes = nbChildren * Integer.BYTES;
+    final long payoutsBytes = (long) nbPayouts * nbPlayers * Double.BYTES;
+    final long offsetsBytes = nbChancesPayouts * Long.BYTES;
+    final long nodesStart = treeStart + headerBytes;
+    final long childrenStart = nodesStart + nodesBytes;
+    final long payoutsStart = childrenStart + childrenBytes;
+    final long offsetsStart = payoutsStart + payoutsBytes;
+    final long chancesPayoutsStart = offsetsStart + offsetsBytes;
+    final MappedChunks nodes = this.nodes =
+        new MappedChunks(channel, MapMode.READ_WRITE, nodesStart, nodesBytes, chunkShift);
+    final MappedChunks children = this.children =
+        new MappedChunks(channel, MapMode.READ_WRITE, childrenStart, childrenBytes, chunkShift);
+    final MappedChunks payouts =
+        new MappedChunks(channel, MapMode.READ_WRITE, payoutsStart, payoutsBytes, chunkShift);
+    final MappedChunks offsets = this.chancesPayoutsOffsets =
+        new MappedChunks(channel, MapMode.READ_WRITE, offsetsStart, offsetsBytes, chunkShift);
+    for (int i = 0; i < nbPayouts; i++) {
+      final double[] vector = payoutsNoChance.get(i);
+      final long start = (long) i * nbPlayers * Double.BYTES;
+      for (int p = 0; p < nbPlayers; p++) {
+        payouts.putDouble(start + p * Double.BYTES, vector[p]);
+      }
+    }
+    channel.position(chancesPayoutsStart);
+    final OutputStream chancesPayouts =
+        this.chancesPayouts = new BufferedOutputStream(Channels.newOutputStream(channel));
+    fill(root);
+    chancesPayouts.flush();
+    checkState(nextNode == nbNodes && nextChild == nbChildren
+        && nextChancesPayouts == nbChancesPayouts, "The game changed between the two passes");
+    nodes.force();
+    children.force();
+    payouts.force();
+    offsets.force();
+  }
+
+  /**
+   * Fill pass
+   *
+   * @param node the node
+   * @return the node number
+   * @throws IOException
+   */
+  private int fill(final ActionTreeNode<Id, Chances> node) throws IOException {
+    switch (node.getNodeType()) {
+      case PAYOUTS_NO_CHANCE: {
+        final int number = nextNode++;
+        putField(number, TYPE, PAYOUTS_NO_CHANCE);
+        putField(number, INDEX, payoutsIndexes.get(new PayoutsKey(node.getPayoutsNoChance())));
+        return number;
+      }
+      case CHANCES_PAYOUTS: {
+        final int number = nextNode++;
+        final int index = nextChancesPayouts++;
+        putField(number, TYPE, CHANCES_PAYOUTS);
+        putField(number, INDEX, index);
+        writeChancesPayouts(index, node.getChancesPayouts());
+        return number;
+      }
+      case PLAYER: {
+        final PlayerNode<Id> playerNode = node.getPlayerNode();
+        final Map<Id, Integer> numbers = internedNodes(node);
+        if (numbers != null) {
+          final Integer existing = numbers.get(playerNode.getId());
+          if (existing != null) {
+            // Node shared by several parents
+            return existing;
+          }
+        }
+        final int number = nextNode++;
+        if (numbers != null) {
+          numbers.put(playerNode.getId(), number);
+        }
+        final int player = playerNode.getPlayer();
+        final int round = playerNode.getRound();
+        final int nbActions = playerNode.getNbActions();
+        final int firstChild = nextChild;
+        nextChild += nbActions;
+        putField(number, TYPE, PLAYER);
+        putField(number, PLAYER_INDEX, player);
+        putField(number, ROUND, round);
+        putField(number, NB_ACTIONS, nbActions);
+        putField(number, FIRST_CHILD, firstChild);
+        final ActionTreePlayerChoiceTransition<Id, Chances> transition = node.getTransition();
+        for (int i = 0; i < nbActions; i++) {
+          final int child = fill(transition.nodeForAction(i));
+          children.putInt(((long) firstChild + i) * Integer.BYTES, child);
+        }
+        // Indexed once linked like in the action tree
+        putField(number, INDEX, nextIndexes[round][player]++);
+        return number;
+      }
+      default:
+        throw new IllegalArgumentException();
+    }
+  }
+
+  private void putField(final int node, final int field, final int value) {
+    nodes.putInt(((long) node * NODE_STRIDE + field) * Integer.BYTES, value);
+  }
+
+  private void writeChancesPayouts(final int index, final ChancesPayouts<Chances> payouts)
+      throws IOException {
+    final ByteArrayOutputStream serialized = this.serialized;
+    serialized.reset();
+    serializer.write(payouts, serializedOut);
+    final int size = serialized.size();
+    final int chunkShift = this.chunkShift;
+    checkState(size <= 1L << chunkShift, "Serialized chances payouts larger than a chunk");
+    long position = chancesPayoutsPosition;
+    final long chunkEnd = ((position >>> chunkShift) + 1) << chunkShift;
+    if (position + size > chunkEnd) {
+      // Pad to the next chunk
+      for (; position < chunkEnd; position++) {
+        chancesPayouts.write(0);
+      }
+    }
+    chancesPayoutsOffsets.putLong((long) index * Long.BYTES, position);
+    serialized.writeTo(chancesPayouts);
+    chancesPayoutsPosition = position + size;
+  }
+
+}
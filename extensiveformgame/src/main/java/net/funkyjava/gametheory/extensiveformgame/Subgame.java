@@ -0,0 +1,201 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import lombok.Getter;
+import net.funkyjava.gametheory.extensiveformgame.ActionTreeNodeState.NodeType;
+
+/**
+ * Subtree of an {@link ActionTree} that no other part of the tree shares, built by a
+ * {@link SubgameDecomposition}. It is a {@link Game} walking the linked nodes of the whole tree, so
+ * that it can be solved like any game, and it holds its entries from the trunk.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Id> the player nodes id type
+ * @param <Chances> the chances type
+ */
+public class Subgame<Id, Chances> implements Game<Id, Chances> {
+
+  /**
+   * The subgame's root in the whole action tree
+   */
+  @Getter
+  private final LinkedActionTreeNode<Id, Chances> root;
+  /**
+   * The edges from the trunk to the root
+   */
+  @Getter
+  private final List<SubgameEntry<Id>> entries;
+  private final int[][] roundChancesSizes;
+  private final int nbPlayers;
+
+  Subgame(final LinkedActionTreeNode<Id, Chances> root, final List<SubgameEntry<Id>> entries,
+      final int[][] roundChancesSizes, final int nbPlayers) {
+    this.root = root;
+    this.entries = Collections.unmodifiableList(entries);
+    this.roundChancesSizes = roundChancesSizes;
+    this.nbPlayers = nbPlayers;
+  }
+
+  @Override
+  public int[][] roundChancesSizes() {
+    return roundChancesSizes;
+  }
+
+  @Override
+  public int getNbPlayers() {
+    return nbPlayers;
+  }
+
+  @Override
+  public ActionTreeNode<Id, Chances> rootNode() {
+    return getNode(root, null);
+  }
+
+  /**
+   * The linked nodes are only read
+   */
+  @Override
+  public boolean isConcurrentlyWalkable() {
+    return true;
+  }
+
+  /**
+   * Get a view of this subgame whose payouts are weighted by the entries reach : each player's
+   * payout is multiplied by the sum over the entries of the other players reach probabilities.
+   * Regrets computed on it are the counterfactual regrets of the subgame's nodes in the whole game
+   * with the trunk strategy. The players own trunk reach, given by
+   * {@link #getEntryReach(int, int[][])}, must still weight their strategy sums for the average
+   * strategies to be the whole game ones.
+   *
+   * @param playersChances function providing the chances indexed by round and player
+   * @return the weighted game
+   */
+  public Game<Id, Chances> entryWeightedGame(final Function<Chances, int[][]> playersChances) {
+    return new Game<Id, Chances>() {
+
+      @Override
+      public int[][] roundChancesSizes() {
+        return roundChancesSizes;
+      }
+
+      @Override
+      public int getNbPlayers() {
+        return nbPlayers;
+      }
+
+      @Override
+      public ActionTreeNode<Id, Chances> rootNode() {
+        return getNode(root, playersChances);
+      }
+
+      @Override
+      public boolean isConcurrentlyWalkable() {
+        return true;
+      }
+    };
+  }
+
+  private ActionTreeNode<Id, Chances> getNode(final LinkedActionTreeNode<Id, Chances> node,
+      final Function<Chances, int[][]> playersChances) {
+    switch (node.getNodeType()) {
+      case PAYOUTS_NO_CHANCE:
+        if (playersChances == null) {
+          return new ActionTreeNode<>(node.getPayoutsNoChance());
+        }
+        return new ActionTreeNode<>(new EntryWeightedPayouts(node, playersChances));
+      case CHANCES_PAYOUTS:
+        if (playersChances == null) {
+          return new ActionTreeNode<>(node.getChancesPayouts());
+        }
+        return new ActionTreeNode<>(new EntryWeightedPayouts(node, playersChances));
+      case PLAYER:
+        final LinkedActionTreeNode<Id, Chances>[] children = node.getChildren();
+        return new ActionTreeNode<>(node.getPlayerNode(),
+            node != root && node.getParents().size() > 1,
+            action -> getNode(children[action], playersChances));
+      default:
+        throw new IllegalArgumentException();
+    }
+  }
+
+  /**
+   * Get a player's probability to reach the subgame's root with the trunk strategy : the sum over
+   * the entries of its reach probability
+   *
+   * @param player the player
+   * @param playersChances the chances indexed by round and player
+   * @return the player's entry reach
+   */
+  public double getEntryReach(final int player, final int[][] playersChances) {
+    final List<SubgameEntry<Id>> entries = this.entries;
+    final int nbEntries = entries.size();
+    double res = 0;
+    for (int i = 0; i < nbEntries; i++) {
+      res += entries.get(i).getReach(player, playersChances);
+    }
+    return res;
+  }
+
+  /**
+   * Multiply each player's payout by the sum over the entries of the other players reach
+   *
+   * @param chances the players chances indexed by round and player
+   * @param payouts the payouts to weight
+   */
+  private void weight(final int[][] chances, final double[] payouts) {
+    final List<SubgameEntry<Id>> entries = this.entries;
+    final int nbEntries = entries.size();
+    final int nbPlayers = this.nbPlayers;
+    for (int player = 0; player < nbPlayers; player++) {
+      double weight = 0;
+      for (int i = 0; i < nbEntries; i++) {
+        final SubgameEntry<Id> entry = entries.get(i);
+        double opponentsReach = 1;
+        for (int opponent = 0; opponent < nbPlayers; opponent++) {
+          if (opponent != player) {
+            opponentsReach *= entry.getReach(opponent, chances);
+          }
+        }
+        weight += opponentsReach;
+      }
+      payouts[player] *= weight;
+    }
+  }
+
+  private final class EntryWeightedPayouts implements ChancesPayouts<Chances> {
+
+    private final double[] payoutsNoChance;
+    private final ChancesPayouts<Chances> chancesPayouts;
+    private final Function<Chances, int[][]> playersChances;
+
+    private EntryWeightedPayouts(final LinkedActionTreeNode<Id, Chances> node,
+        final Function<Chances, int[][]> playersChances) {
+      this.payoutsNoChance =
+          node.getNodeType() == NodeType.PAYOUTS_NO_CHANCE ? node.getPayoutsNoChance() : null;
+      this.chancesPayouts = node.getChancesPayouts();
+      this.playersChances = playersChances;
+    }
+
+    @Override
+    public double[] getPayouts(final Chances chances) {
+      final double[] payouts = new double[nbPlayers];
+      getPayouts(chances, payouts);
+      return payouts;
+    }
+
+    @Override
+    public void getPayouts(final Chances chances, final double[] payouts) {
+      if (payoutsNoChance != null) {
+        System.arraycopy(payoutsNoChance, 0, payouts, 0, nbPlayers);
+      } else {
+        chancesPayouts.getPayouts(chances, payouts);
+      }
+      weight(playersChances.apply(chances), payouts);
+    }
+  }
+
+}
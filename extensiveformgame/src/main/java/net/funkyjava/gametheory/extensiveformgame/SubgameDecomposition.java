@@ -0,0 +1,225 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+import net.funkyjava.gametheory.extensiveformgame.ActionTreeNodeState.NodeType;
+
+/**
+ * Decomposition of an {@link ActionTree} at a round : the player nodes of the previous rounds form
+ * the trunk, whose strategy is fixed, and each node of the split round or a later one reached from
+ * the trunk is the root of a {@link Subgame}. Subgames must be independent : no node may be shared
+ * by two of them, which imperfect recall in the rounds after the split may prevent.
+ *
+ * The subgames can then be solved concurrently, each with its own data, and their strategies are
+ * stitched with the trunk strategy in a whole game {@link ActionTreeStrategy}.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Id> the player nodes id type
+ * @param <Chances> the chances type
+ */
+public class SubgameDecomposition<Id, Chances> {
+
+  /**
+   * The whole game action tree
+   */
+  @Getter
+  private final ActionTree<Id, Chances> actionTree;
+  private final ActionTreeStrategy<Id> trunkStrategy;
+  /**
+   * The first round of the subgames
+   */
+  @Getter
+  private final int splitRound;
+  /**
+   * The subgames in the depth-first order of their first entry
+   */
+  @Getter
+  private final List<Subgame<Id, Chances>> subgames;
+  /**
+   * Index of the subgame owning each node after the split
+   */
+  private final Map<LinkedActionTreeNode<Id, Chances>, Integer> subgameOfNode =
+      new IdentityHashMap<>();
+
+  /**
+   * Constructor. Walks the trunk to compute the subgames entries reach probabilities with the trunk
+   * strategy, and checks the subgames independence.
+   *
+   * @param actionTree the whole game action tree
+   * @param roundChancesSizes the chances sizes indexed by round and player
+   * @param splitRound the first round of the subgames, strictly positive
+   * @param trunkStrategy the strategy of the trunk nodes
+   */
+  public SubgameDecomposition(final ActionTree<Id, Chances> actionTree,
+      final int[][] roundChancesSizes, final int splitRound,
+      final ActionTreeStrategy<Id> trunkStrategy) {
+    final int nbRounds = roundChancesSizes.length;
+    checkArgument(splitRound > 0 && splitRound < nbRounds,
+        "Split round %s must be between 1 and the last round %s", splitRound, nbRounds - 1);
+    this.actionTree = actionTree;
+    this.trunkStrategy = trunkStrategy;
+    this.splitRound = splitRound;
+    final int nbPlayers = roundChancesSizes[0].length;
+    final double[][][] rootReach = new double[nbPlayers][splitRound][];
+    for (int player = 0; player < nbPlayers; player++) {
+      for (int round = 0; round < splitRound; round++) {
+        final double[] reach =
+            rootReach[player][round] = new double[roundChancesSizes[round][player]];
+        Arrays.fill(reach, 1);
+      }
+    }
+    final Map<LinkedActionTreeNode<Id, Chances>, List<SubgameEntry<Id>>> entries =
+        new IdentityHashMap<>();
+    final List<LinkedActionTreeNode<Id, Chances>> roots = new ArrayList<>();
+    final LinkedActionTreeNode<Id, Chances> root = actionTree.getRoot();
+    checkArgument(
+        root.getNodeType() == NodeType.PLAYER && root.getPlayerNode().getRound() < splitRound,
+        "The root must be a player node before the split round");
+    walkTrunk(root, rootReach, entries, roots);
+    final List<Subgame<Id, Chances>> subgames = new ArrayList<>(roots.size());
+    for (LinkedActionTreeNode<Id, Chances> subgameRoot : roots) {
+      final int index = subgames.size();
+      claim(subgameRoot, index);
+      subgames.add(
+          new Subgame<>(subgameRoot, entries.get(subgameRoot), roundChancesSizes, nbPlayers));
+    }
+    this.subgames = Collections.unmodifiableList(subgames);
+  }
+
+  private void walkTrunk(final LinkedActionTreeNode<Id, Chances> node, final double[][][] reach,
+      final Map<LinkedActionTreeNode<Id, Chances>, List<SubgameEntry<Id>>> entries,
+      final List<LinkedActionTreeNode<Id, Chances>> roots) {
+    final PlayerNode<Id> playerNode = node.getPlayerNode();
+    final int player = playerNode.getPlayer();
+    final int round = playerNode.getRound();
+    final double[] playerReach = reach[player][round];
+    final int nbChances = playerReach.length;
+    final double[][] strategies = new double[nbChances][];
+    for (int chance = 0; chance < nbChances; chance++) {
+      strategies[chance] = trunkStrategy.getStrategy(node, chance);
+    }
+    final LinkedActionTreeNode<Id, Chances>[] children = node.getChildren();
+    final int nbChildren = children.length;
+    for (int action = 0; action < nbChildren; action++) {
+      final LinkedActionTreeNode<Id, Chances> child = children[action];
+      if (child.getNodeType() != NodeType.PLAYER) {
+        continue;
+      }
+      final double[][][] childReach = reach.clone();
+      final double[][] childPlayerReach = childReach[player] = reach[player].clone();
+      final double[] childRoundReach = childPlayerReach[round] = new double[nbChances];
+      for (int chance = 0; chance < nbChances; chance++) {
+        childRoundReach[chance] = playerReach[chance] * strategies[chance][action];
+      }
+      if (child.getPlayerNode().getRound() < splitRound) {
+        walkTrunk(child, childReach, entries, roots);
+        continue;
+      }
+      List<SubgameEntry<Id>> childEntries = entries.get(child);
+      if (childEntries == null) {
+        entries.put(child, childEntries = new ArrayList<>());
+        roots.add(child);
+      }
+      childEntries.add(new SubgameEntry<>(node, action, childReach));
+    }
+  }
+
+  private void claim(final LinkedActionTreeNode<Id, Chances> node, final int subgame) {
+    if (node.getNodeType() != NodeType.PLAYER) {
+      return;
+    }
+    final Integer owner = subgameOfNode.putIfAbsent(node, subgame);
+    if (owner != null) {
+      checkArgument(owner == subgame,
+          "Subgames %s and %s share a node of round %s : they are not independent", owner, subgame,
+          node.getPlayerNode().getRound());
+      return;
+    }
+    checkArgument(node.getPlayerNode().getRound() >= splitRound,
+        "A node of round %s is reached after the split round %s", node.getPlayerNode().getRound(),
+        splitRound);
+    for (LinkedActionTreeNode<Id, Chances> child : node.getChildren()) {
+      claim(child, subgame);
+    }
+  }
+
+  /**
+   * Solve all subgames concurrently in the fork-join common pool and stitch their strategies with
+   * the trunk one. For the stitched strategy to be the whole game one, the solver should train
+   * {@link Subgame#entryWeightedGame(Function)} and weight each player's strategy sums by its
+   * {@link Subgame#getEntryReach(int, int[][])}.
+   *
+   * @param solver the subgame solver, that must be thread safe
+   * @return the whole game strategy
+   */
+  public ActionTreeStrategy<Id> solve(
+      final Function<Subgame<Id, Chances>, SubgameSolution<Id>> solver) {
+    return stitch(subgames.parallelStream().map(solver).collect(Collectors.toList()));
+  }
+
+  /**
+   * Stitch the subgames solutions with the trunk strategy. Solutions whose strategy sums were not
+   * weighted by the players entry reach only match the whole game average strategy when that reach
+   * doesn't depend on the players chances.
+   *
+   * @param solutions the solution of each subgame, in the order of {@link #getSubgames()}
+   * @return the whole game strategy
+   */
+  public ActionTreeStrategy<Id> stitch(final List<SubgameSolution<Id>> solutions) {
+    final List<Subgame<Id, Chances>> subgames = this.subgames;
+    final int nbSubgames = subgames.size();
+    checkArgument(solutions.size() == nbSubgames, "Expected %s solutions, got %s", nbSubgames,
+        solutions.size());
+    final Map<LinkedActionTreeNode<Id, ?>, LinkedActionTreeNode<Id, ?>> solutionNodes =
+        new IdentityHashMap<>();
+    for (int i = 0; i < nbSubgames; i++) {
+      match(subgames.get(i).getRoot(), solutions.get(i).getActionTree().getRoot(), solutionNodes);
+    }
+    final Map<LinkedActionTreeNode<Id, Chances>, Integer> subgameOfNode = this.subgameOfNode;
+    final ActionTreeStrategy<Id> trunkStrategy = this.trunkStrategy;
+    return (node, chance) -> {
+      final Integer subgame = subgameOfNode.get(node);
+      if (subgame == null) {
+        return trunkStrategy.getStrategy(node, chance);
+      }
+      return solutions.get(subgame).getStrategy().getStrategy(solutionNodes.get(node), chance);
+    };
+  }
+
+  private static <Id> void match(final LinkedActionTreeNode<Id, ?> node,
+      final LinkedActionTreeNode<Id, ?> solutionNode,
+      final Map<LinkedActionTreeNode<Id, ?>, LinkedActionTreeNode<Id, ?>> solutionNodes) {
+    // Terminal nodes types may differ when the solved game weights the payouts
+    final boolean isPlayer = node.getNodeType() == NodeType.PLAYER;
+    checkState(isPlayer == (solutionNode.getNodeType() == NodeType.PLAYER),
+        "The solution tree doesn't match the subgame");
+    if (!isPlayer) {
+      return;
+    }
+    final LinkedActionTreeNode<Id, ?> matched = solutionNodes.putIfAbsent(node, solutionNode);
+    if (matched != null) {
+      checkState(matched == solutionNode, "The solution tree doesn't share the subgame's nodes");
+      return;
+    }
+    final LinkedActionTreeNode<Id, ?>[] children = node.getChildren();
+    final LinkedActionTreeNode<Id, ?>[] solutionChildren = solutionNode.getChildren();
+    checkState(children.length == solutionChildren.length,
+        "The solution tree doesn't match the subgame");
+    for (int i = 0; i < children.length; i++) {
+      match(children[i], solutionChildren[i], solutionNodes);
+    }
+  }
+
+}
@@ -0,0 +1,64 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+import lombok.Getter;
+
+/**
+ * Entry of a {@link Subgame} : an edge from a node of the trunk to the subgame's root, with the
+ * probability of each player to play the trunk actions leading to it
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Id> the player nodes id type
+ */
+public class SubgameEntry<Id> {
+
+  /**
+   * The trunk node from which the subgame is entered
+   */
+  @Getter
+  private final LinkedActionTreeNode<Id, ?> parent;
+  /**
+   * The parent's action leading to the subgame's root
+   */
+  @Getter
+  private final int action;
+  /**
+   * Reach factors indexed by player, trunk round and chance. The probability of a player to play
+   * the trunk actions leading to this entry is the product of its factors for its chances of each
+   * trunk round.
+   */
+  @Getter
+  private final double[][][] reach;
+
+  /**
+   * Constructor
+   *
+   * @param parent the trunk node from which the subgame is entered
+   * @param action the parent's action leading to the subgame's root
+   * @param reach reach factors indexed by player, trunk round and chance
+   */
+  public SubgameEntry(final LinkedActionTreeNode<Id, ?> parent, final int action,
+      final double[][][] reach) {
+    this.parent = parent;
+    this.action = action;
+    this.reach = reach;
+  }
+
+  /**
+   * Get the probability of a player to play the trunk actions leading to this entry
+   *
+   * @param player the player
+   * @param playersChances the chances indexed by round and player
+   * @return the player's reach probability
+   */
+  public double getReach(final int player, final int[][] playersChances) {
+    final double[][] playerReach = reach[player];
+    final int nbRounds = playerReach.length;
+    double res = 1;
+    for (int round = 0; round < nbRounds; round++) {
+      res *= playerReach[round][playersChances[round][player]];
+    }
+    return res;
+  }
+
+}
@@ -0,0 +1,38 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+import lombok.Getter;
+
+/**
+ * Solution of a {@link Subgame} : the action tree built from it by the solver and the strategy on
+ * this tree's nodes
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Id> the player nodes id type
+ */
+public class SubgameSolution<Id> {
+
+  /**
+   * The action tree built from the subgame
+   */
+  @Getter
+  private final ActionTree<Id, ?> actionTree;
+  /**
+   * The strategy on the action tree's nodes
+   */
+  @Getter
+  private final ActionTreeStrategy<Id> strategy;
+
+  /**
+   * Constructor
+   *
+   * @param actionTree the action tree built from the subgame
+   * @param strategy the strategy on the action tree's nodes
+   */
+  public SubgameSolution(final ActionTree<Id, ?> actionTree,
+      final ActionTreeStrategy<Id> strategy) {
+    this.actionTree = actionTree;
+    this.strategy = strategy;
+  }
+
+}
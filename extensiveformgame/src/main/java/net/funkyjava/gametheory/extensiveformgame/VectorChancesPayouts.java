@@ -0,0 +1,28 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+/**
+ * Vector form of {@link ChancesPayouts} for two players games : computes the utility of each
+ * private state of a player against all private states of the opponent at once, given the public
+ * chances. Every implementation is expected to be thread safe
+ * 
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances type
+ */
+public interface VectorChancesPayouts<Chances> {
+
+  /**
+   * Compute the counterfactual utility of each private state of a player. For the player's private
+   * state i, the result is the sum over the opponent's private states j of the joint probability
+   * of (i, j) times the opponent's reach probability for j times the player's payout.
+   * 
+   * @param chances the public chances
+   * @param player the player whose utilities are computed
+   * @param opponentReach the opponent's reach probability of each of its private states
+   * @param opponentWeights for each private state i of the player, the sum over the opponent's
+   *        private states j of the joint probability of (i, j) times the opponent's reach for j
+   * @param utilities destination array for the utilities indexed by the player's private states
+   */
+  void getUtilities(final Chances chances, final int player, final double[] opponentReach,
+      final double[] opponentWeights, final double[] utilities);
+}
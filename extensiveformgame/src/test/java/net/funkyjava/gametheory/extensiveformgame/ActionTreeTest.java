@@ -0,0 +1,315 @@
+package net.funkyjava.gametheory.extensiveformgame;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.funkyjava.gametheory.extensiveformgame.ActionTreeNodeState.NodeType;
+
+/**
+ * Builds the {@link ActionTree} of a multi-round game with imperfect recall, sequentially and in
+ * parallel, and checks both against a plain walk of the game
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class ActionTreeTest {
+
+  private static final int nbRounds = 3;
+  private static final int maxRaises = 3;
+  private static final List<int[]> allChances = new ArrayList<>();
+
+  static {
+    for (int card0 = 0; card0 < 3; card0++) {
+      for (int card1 = 0; card1 < 3; card1++) {
+        allChances.add(new int[] {card0, card1});
+      }
+    }
+  }
+
+  /**
+   * Two players ante 1 and play rounds where each raise adds 1 to the pot, up to a few raises per
+   * round. Player 0 acts first in each round. Raising is the first action so that the first node of
+   * a round is first reached by its shortest path. Players only remember the pot when a round
+   * starts : the first node of a round has multiple parents and its id is the round and the pot.
+   */
+  private static final class RaiseGame implements Game<String, int[]> {
+
+    @Override
+    public int[][] roundChancesSizes() {
+      final int[][] sizes = new int[nbRounds][];
+      for (int round = 0; round < nbRounds; round++) {
+        sizes[round] = new int[] {3, 3};
+      }
+      return sizes;
+    }
+
+    @Override
+    public int getNbPlayers() {
+      return 2;
+    }
+
+    @Override
+    public ActionTreeNode<String, int[]> rootNode() {
+      return node(0, 1, "");
+    }
+
+    @Override
+    public boolean isConcurrentlyWalkable() {
+      return true;
+    }
+
+    private static String actions(final String history) {
+      final boolean facingRaise = history.endsWith("r");
+      final boolean canRaise = history.length() - history.replace("r", "").length() < maxRaises;
+      if (facingRaise) {
+        return canRaise ? "rcf" : "cf";
+      }
+      return canRaise ? "rc" : "c";
+    }
+
+    private static ActionTreeNode<String, int[]> node(final int round, final int pot,
+        final String history) {
+      final int player = history.length() % 2;
+      final String actions = actions(history);
+      final String id = history.isEmpty() ? round + ":" + pot : round + ":" + pot + ":" + history;
+      return new ActionTreeNode<>(new PlayerNode<>(player, round, actions.length(), id),
+          history.isEmpty() && round > 0,
+          action -> next(round, pot, history, actions.charAt(action)));
+    }
+
+    private static ActionTreeNode<String, int[]> next(final int round, final int pot,
+        final String history, final char action) {
+      final int nbRaises = history.length() - history.replace("r", "").length();
+      final int player = history.length() % 2;
+      switch (action) {
+        case 'f':
+          // The folding player loses what was put in the pot before the last raise
+          final int lost = pot + nbRaises - 1;
+          return new ActionTreeNode<>(
+              player == 0 ? new double[] {-lost, lost} : new double[] {lost, -lost});
+        case 'c':
+          if (history.isEmpty()) {
+            return node(round, pot, "c");
+          }
+          final int newPot = pot + nbRaises;
+          if (round == nbRounds - 1) {
+            return new ActionTreeNode<>((ChancesPayouts<int[]>) chances -> {
+              final double win = Integer.compare(chances[0], chances[1]) * newPot;
+              return new double[] {win, -win};
+            });
+          }
+          return node(round + 1, newPot, "");
+        default:
+          return node(round, pot, history + action);
+      }
+    }
+  }
+
+  /**
+   * Sequential and parallel builds give the same tree, with the same player nodes indexes
+   */
+  @Test
+  public void testSequentialAndParallel() {
+    final RaiseGame game = new RaiseGame();
+    final ActionTree<String, int[]> sequential = new ActionTree<>(game, false);
+    final ActionTree<String, int[]> parallel = new ActionTree<>(game, true);
+    assertEquals(sequential.getMaxDepth(), parallel.getMaxDepth());
+    assertEquals(sequential.getMaxNbActions(), parallel.getMaxNbActions());
+    final LinkedActionTreeNode<String, int[]>[][][] sequentialNodes = sequential.getActionNodes();
+    final LinkedActionTreeNode<String, int[]>[][][] parallelNodes = parallel.getActionNodes();
+    for (int round = 0; round < nbRounds; round++) {
+      for (int player = 0; player < 2; player++) {
+        final LinkedActionTreeNode<String, int[]>[] nodes = sequentialNodes[round][player];
+        assertEquals(nodes.length, parallelNodes[round][player].length);
+        for (int index = 0; index < nodes.length; index++) {
+          assertEquals(nodes[index].getPlayerNode(),
+              parallelNodes[round][player][index].getPlayerNode());
+        }
+      }
+    }
+    compare(sequential.getRoot(), parallel.getRoot(), new IdentityHashMap<>());
+  }
+
+  /**
+   * Each linked player node has the id of the game node it was reached from, so shared first
+   * nodes of a round are only merged with nodes of the same id
+   */
+  @Test
+  public void testIds() {
+    final RaiseGame game = new RaiseGame();
+    for (boolean parallel : new boolean[] {false, true}) {
+      final ActionTree<String, int[]> tree = new ActionTree<>(game, parallel);
+      walk(game.rootNode(), tree.getRoot());
+      final List<Set<String>> ids = new ArrayList<>();
+      for (int i = 0; i < 2 * nbRounds; i++) {
+        ids.add(new HashSet<>());
+      }
+      countIds(game.rootNode(), ids);
+      final LinkedActionTreeNode<String, int[]>[][][] nodes = tree.getActionNodes();
+      for (int round = 0; round < nbRounds; round++) {
+        for (int player = 0; player < 2; player++) {
+          final LinkedActionTreeNode<String, int[]>[] roundPlayerNodes = nodes[round][player];
+          assertEquals(ids.get(2 * round + player).size(), roundPlayerNodes.length);
+          for (int index = 0; index < roundPlayerNodes.length; index++) {
+            assertEquals(index, roundPlayerNodes[index].getPlayerRoundActionIndex());
+          }
+        }
+      }
+      // A first node of the second round is reached from several histories
+      boolean shared = false;
+      for (LinkedActionTreeNode<String, int[]> node : nodes[1][0]) {
+        shared |= node.getParents().size() > 1;
+      }
+      assertTrue(shared);
+    }
+  }
+
+  /**
+   * Equal payouts vectors are shared
+   */
+  @Test
+  public void testPayoutsShared() {
+    final RaiseGame game = new RaiseGame();
+    for (boolean parallel : new boolean[] {false, true}) {
+      final ActionTree<String, int[]> tree = new ActionTree<>(game, parallel);
+      final Map<List<Double>, double[]> payoutsByValue = new HashMap<>();
+      final int nbFolds = collectPayouts(tree.getRoot(), payoutsByValue,
+          new IdentityHashMap<LinkedActionTreeNode<String, int[]>, Boolean>());
+      assertTrue(nbFolds > payoutsByValue.size());
+    }
+  }
+
+  /**
+   * The max depth is the longest path of the game, including the paths that reach a shared node
+   * after its first parent
+   */
+  @Test
+  public void testMaxDepth() {
+    final RaiseGame game = new RaiseGame();
+    final int expected = depth(game.rootNode());
+    assertEquals(expected, new ActionTree<>(game, false).getMaxDepth());
+    assertEquals(expected, new ActionTree<>(game, true).getMaxDepth());
+  }
+
+  private static void compare(final LinkedActionTreeNode<String, int[]> node,
+      final LinkedActionTreeNode<String, int[]> other,
+      final Map<LinkedActionTreeNode<String, int[]>, LinkedActionTreeNode<String, int[]>> pairs) {
+    final LinkedActionTreeNode<String, int[]> paired = pairs.putIfAbsent(node, other);
+    if (paired != null) {
+      // Shared in both trees
+      assertSame(paired, other);
+      return;
+    }
+    assertEquals(node.getNodeType(), other.getNodeType());
+    switch (node.getNodeType()) {
+      case PAYOUTS_NO_CHANCE:
+        assertArrayEquals(node.getPayoutsNoChance(), other.getPayoutsNoChance(), 0);
+        break;
+      case CHANCES_PAYOUTS:
+        for (int[] chances : allChances) {
+          assertArrayEquals(node.getChancesPayouts().getPayouts(chances),
+              other.getChancesPayouts().getPayouts(chances), 0);
+        }
+        break;
+      case PLAYER:
+        assertEquals(node.getPlayerNode(), other.getPlayerNode());
+        assertEquals(node.getPlayerRoundActionIndex(), other.getPlayerRoundActionIndex());
+        final LinkedActionTreeNode<String, int[]>[] children = node.getChildren();
+        for (int i = 0; i < children.length; i++) {
+          compare(children[i], other.getChildren()[i], pairs);
+        }
+        break;
+    }
+  }
+
+  private static void walk(final ActionTreeNode<String, int[]> state,
+      final LinkedActionTreeNode<String, int[]> node) {
+    assertEquals(state.getNodeType(), node.getNodeType());
+    switch (state.getNodeType()) {
+      case PAYOUTS_NO_CHANCE:
+        assertArrayEquals(state.getPayoutsNoChance(), node.getPayoutsNoChance(), 0);
+        break;
+      case CHANCES_PAYOUTS:
+        for (int[] chances : allChances) {
+          assertArrayEquals(state.getChancesPayouts().getPayouts(chances),
+              node.getChancesPayouts().getPayouts(chances), 0);
+        }
+        break;
+      case PLAYER:
+        final PlayerNode<String> playerNode = state.getPlayerNode();
+        assertEquals(playerNode, node.getPlayerNode());
+        for (int i = 0; i < playerNode.getNbActions(); i++) {
+          walk(state.getTransition().nodeForAction(i), node.getChildren()[i]);
+        }
+        break;
+    }
+  }
+
+  private static void countIds(final ActionTreeNode<String, int[]> state,
+      final List<Set<String>> ids) {
+    if (state.getNodeType() != NodeType.PLAYER) {
+      return;
+    }
+    final PlayerNode<String> playerNode = state.getPlayerNode();
+    if (!ids.get(2 * playerNode.getRound() + playerNode.getPlayer()).add(playerNode.getId())) {
+      return;
+    }
+    for (int i = 0; i < playerNode.getNbActions(); i++) {
+      countIds(state.getTransition().nodeForAction(i), ids);
+    }
+  }
+
+  private static int collectPayouts(final LinkedActionTreeNode<String, int[]> node,
+      final Map<List<Double>, double[]> payoutsByValue,
+      final Map<LinkedActionTreeNode<String, int[]>, Boolean> visited) {
+    switch (node.getNodeType()) {
+      case PAYOUTS_NO_CHANCE:
+        final double[] payouts = node.getPayoutsNoChance();
+        final List<Double> value = new ArrayList<>();
+        for (double payout : payouts) {
+          value.add(payout);
+        }
+        final double[] shared = payoutsByValue.putIfAbsent(value, payouts);
+        if (shared != null) {
+          assertSame(shared, payouts);
+        }
+        return 1;
+      case PLAYER:
+        if (visited.put(node, true) != null) {
+          return 0;
+        }
+        int nbFolds = 0;
+        for (LinkedActionTreeNode<String, int[]> child : node.getChildren()) {
+          nbFolds += collectPayouts(child, payoutsByValue, visited);
+        }
+        return nbFolds;
+      default:
+        assertNotNull(node.getChancesPayouts());
+        return 0;
+    }
+  }
+
+  private static int depth(final ActionTreeNode<String, int[]> state) {
+    if (state.getNodeType() != NodeType.PLAYER) {
+      return 1;
+    }
+    int depth = 0;
+    for (int i = 0; i < state.getPlayerNode().getNbActions(); i++) {
+      depth = Math.max(depth, depth(state.getTransition().nodeForAction(i)));
+    }
+    return depth + 1;
+  }
+}
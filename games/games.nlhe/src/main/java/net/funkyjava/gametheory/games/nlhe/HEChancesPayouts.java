@@ -1,25 +1,34 @@
 package net.funkyjava.gametheory.games.nlhe;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.List;
 
 import net.funkyjava.gametheory.extensiveformgame.ChancesPayouts;
+import net.funkyjava.gametheory.extensiveformgame.ChancesPayoutsSerializer;
+import net.funkyjava.gametheory.extensiveformgame.VectorChancesPayouts;
 import net.funkyjava.gametheory.gameutil.poker.bets.NLHand;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLState;
 import net.funkyjava.gametheory.gameutil.poker.bets.pots.Pot;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.RoundState;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.data.NoBetPlayerData;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.data.PlayerData;
 
 /**
- * {@link ChancesPayouts} implementation for NLHE
+ * {@link ChancesPayouts} implementation for NLHE. It also implements {@link VectorChancesPayouts}
+ * when the equity provider is a {@link HEVectorEquityProvider}.
  * 
  * @author Pierre Mardon
  *
  * @param <Chances> chances type
  */
-public class HEChancesPayouts<Chances> implements ChancesPayouts<Chances> {
+public class HEChancesPayouts<Chances>
+    implements ChancesPayouts<Chances>, VectorChancesPayouts<Chances> {
 
   private final int nbPots;
   private final int nbPlayers;
@@ -28,6 +37,7 @@ public class HEChancesPayouts<Chances> implements ChancesPayouts<Chances> {
   private final double[] pots;
   private final int betRoundIndex;
   private final HEEquityProvider<Chances> equityProvider;
+  private final HEVectorEquityProvider<Chances> vectorEquityProvider;
 
   /**
    * Constructor
@@ -35,9 +45,12 @@ public class HEChancesPayouts<Chances> implements ChancesPayouts<Chances> {
    * @param hand the hand
    * @param equityProvider
    */
+  @SuppressWarnings("unchecked")
   public HEChancesPayouts(final NLHand hand, final HEEquityProvider<Chances> equityProvider) {
     checkState(hand.getRoundState() == RoundState.SHOWDOWN, "Hand should be in showdown state");
     this.equityProvider = equityProvider;
+    this.vectorEquityProvider = equityProvider instanceof HEVectorEquityProvider
+        ? (HEVectorEquityProvider<Chances>) equityProvider : null;
     final int nbPlayers = this.nbPlayers = hand.getNbPlayers();
     this.betRoundIndex = hand.getBetRoundIndex();
     final List<NoBetPlayerData> initialData = hand.getInitialPlayersData();
@@ -73,11 +86,164 @@ public class HEChancesPayouts<Chances> implements ChancesPayouts<Chances> {
     }
   }
 
+  /**
+   * Constructor from a compact state
+   *
+   * @param state the state, in showdown
+   * @param equityProvider the equity provider for showdown
+   */
+  @SuppressWarnings("unchecked")
+  public HEChancesPayouts(final NLState state, final HEEquityProvider<Chances> equityProvider) {
+    checkState(state.getRoundState() == RoundState.SHOWDOWN, "State should be in showdown");
+    this.equityProvider = equityProvider;
+    this.vectorEquityProvider = equityProvider instanceof HEVectorEquityProvider
+        ? (HEVectorEquityProvider<Chances>) equityProvider : null;
+    final int nbPlayers = this.nbPlayers = state.getNbPlayers();
+    this.betRoundIndex = state.getBetRoundIndex();
+    final double[] basePayouts = this.basePayouts = new double[nbPlayers];
+    for (int i = 0; i < nbPlayers; i++) {
+      basePayouts[i] = state.getStack(i) - state.getInitialStack(i);
+    }
+    final int nbStatePots = state.getNbPots();
+    int nbPots = 0;
+    for (int i = 0; i < nbStatePots; i++) {
+      final int potPlayers = state.getPotPlayers(i);
+      if (Integer.bitCount(potPlayers) == 1) {
+        // Excedent bet
+        basePayouts[Integer.numberOfTrailingZeros(potPlayers)] += state.getPotValue(i);
+      } else {
+        nbPots++;
+      }
+    }
+    this.nbPots = nbPots;
+    final double[] pots = this.pots = new double[nbPots];
+    final boolean[][] potsPlayers = this.potsPlayers = new boolean[nbPots][nbPlayers];
+    int pot = 0;
+    for (int i = 0; i < nbStatePots; i++) {
+      final int statePotPlayers = state.getPotPlayers(i);
+      if (Integer.bitCount(statePotPlayers) == 1) {
+        continue;
+      }
+      pots[pot] = state.getPotValue(i);
+      final boolean[] potPlayers = potsPlayers[pot];
+      for (int p = 0; p < nbPlayers; p++) {
+        potPlayers[p] = state.isInHand(p) && (statePotPlayers & (1 << p)) != 0;
+      }
+      pot++;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private HEChancesPayouts(final int betRoundIndex, final double[] basePayouts,
+      final double[] pots, final boolean[][] potsPlayers,
+      final HEEquityProvider<Chances> equityProvider) {
+    this.equityProvider = equityProvider;
+    this.vectorEquityProvider = equityProvider instanceof HEVectorEquityProvider
+        ? (HEVectorEquityProvider<Chances>) equityProvider : null;
+    this.nbPlayers = basePayouts.length;
+    this.betRoundIndex = betRoundIndex;
+    this.basePayouts = basePayouts;
+    this.nbPots = pots.length;
+    this.pots = pots;
+    this.potsPlayers = potsPlayers;
+  }
+
+  /**
+   * Write the showdown descriptor : bet round, base payouts, and each pot's value with its players
+   * mask. The equity provider is not written.
+   *
+   * @param out the output
+   * @throws IOException
+   */
+  void write(final DataOutput out) throws IOException {
+    final int nbPlayers = this.nbPlayers;
+    checkState(nbPlayers <= Integer.SIZE, "Too many players to write the pots players masks");
+    out.writeInt(betRoundIndex);
+    out.writeInt(nbPots);
+    for (int p = 0; p < nbPlayers; p++) {
+      out.writeDouble(basePayouts[p]);
+    }
+    for (int i = 0; i < nbPots; i++) {
+      out.writeDouble(pots[i]);
+      final boolean[] potPlayers = potsPlayers[i];
+      int mask = 0;
+      for (int p = 0; p < nbPlayers; p++) {
+        if (potPlayers[p]) {
+          mask |= 1 << p;
+        }
+      }
+      out.writeInt(mask);
+    }
+  }
+
+  /**
+   * Read a showdown descriptor written by {@link #write(DataOutput)} from the buffer's position
+   *
+   * @param buffer the buffer
+   * @param nbPlayers the number of players
+   * @param equityProvider the equity provider for showdown
+   * @return the chances payouts
+   */
+  static <Chances> HEChancesPayouts<Chances> read(final ByteBuffer buffer, final int nbPlayers,
+      final HEEquityProvider<Chances> equityProvider) {
+    final int betRoundIndex = buffer.getInt();
+    final int nbPots = buffer.getInt();
+    checkArgument(nbPots >= 0, "Invalid number of pots %s", nbPots);
+    final double[] basePayouts = new double[nbPlayers];
+    for (int p = 0; p < nbPlayers; p++) {
+      basePayouts[p] = buffer.getDouble();
+    }
+    final double[] pots = new double[nbPots];
+    final boolean[][] potsPlayers = new boolean[nbPots][nbPlayers];
+    for (int i = 0; i < nbPots; i++) {
+      pots[i] = buffer.getDouble();
+      final int mask = buffer.getInt();
+      final boolean[] potPlayers = potsPlayers[i];
+      for (int p = 0; p < nbPlayers; p++) {
+        potPlayers[p] = (mask & (1 << p)) != 0;
+      }
+    }
+    return new HEChancesPayouts<>(betRoundIndex, basePayouts, pots, potsPlayers, equityProvider);
+  }
+
+  /**
+   * Get a serializer of the showdown descriptors, for instance to write a hold'em tree with the
+   * {@link net.funkyjava.gametheory.extensiveformgame.StreamingActionTreeWriter}
+   *
+   * @param nbPlayers the number of players
+   * @param equityProvider the equity provider for showdown of the read payouts
+   * @return the serializer
+   */
+  public static <Chances> ChancesPayoutsSerializer<Chances> serializer(final int nbPlayers,
+      final HEEquityProvider<Chances> equityProvider) {
+    return new ChancesPayoutsSerializer<Chances>() {
+
+      @Override
+      public void write(final ChancesPayouts<Chances> payouts, final DataOutput out)
+          throws IOException {
+        checkArgument(payouts instanceof HEChancesPayouts,
+            "Only hold'em showdown payouts can be serialized");
+        ((HEChancesPayouts<Chances>) payouts).write(out);
+      }
+
+      @Override
+      public ChancesPayouts<Chances> read(final ByteBuffer buffer) {
+        return HEChancesPayouts.read(buffer, nbPlayers, equityProvider);
+      }
+    };
+  }
+
   @Override
   public double[] getPayouts(final Chances chances) {
+    final double[] payouts = new double[nbPlayers];
+    getPayouts(chances, payouts);
+    return payouts;
+  }
+
+  @Override
+  public void getPayouts(final Chances chances, final double[] payouts) {
     final HEEquityProvider<Chances> equityProvider = this.equityProvider;
     final int nbPlayers = this.nbPlayers;
-    final double[] payouts = new double[nbPlayers];
     final boolean[][] potsPlayers = this.potsPlayers;
     final double[] pots = this.pots;
     final int betRoundIndex = this.betRoundIndex;
@@ -90,7 +256,28 @@ public class HEChancesPayouts<Chances> implements ChancesPayouts<Chances> {
         payouts[p] += equity[p] * pot;
       }
     }
-    return payouts;
+  }
+
+  @Override
+  public void getUtilities(final Chances chances, final int player, final double[] opponentReach,
+      final double[] opponentWeights, final double[] utilities) {
+    final HEVectorEquityProvider<Chances> vectorEquityProvider = this.vectorEquityProvider;
+    checkState(vectorEquityProvider != null, "The equity provider doesn't support vectors");
+    final double basePayout = basePayouts[player];
+    final int nbStates = utilities.length;
+    for (int i = 0; i < nbStates; i++) {
+      utilities[i] = basePayout * opponentWeights[i];
+    }
+    final boolean[][] potsPlayers = this.potsPlayers;
+    final double[] pots = this.pots;
+    final int betRoundIndex = this.betRoundIndex;
+    final int nbPots = this.nbPots;
+    for (int i = 0; i < nbPots; i++) {
+      if (potsPlayers[i][player]) {
+        vectorEquityProvider.addWeightedEquities(betRoundIndex, chances, potsPlayers[i], player,
+            opponentReach, pots[i], utilities);
+      }
+    }
   }
 
 }
@@ -0,0 +1,29 @@
+package net.funkyjava.gametheory.games.nlhe;
+
+/**
+ * Equity provider that can also compute the equities of all private states of a player against
+ * all private states of the opponent at once, for two players vector trainers
+ * 
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances type
+ */
+public interface HEVectorEquityProvider<Chances> extends HEEquityProvider<Chances> {
+
+  /**
+   * For each private state i of the player, add to the result the factor times the sum over the
+   * opponent's private states j of the joint probability of (i, j) times the opponent's reach for
+   * j times the player's equity
+   * 
+   * @param betRoundIndex the bet round index
+   * @param chances the public chances
+   * @param playersToConsider player that are still in hand
+   * @param player the player whose equities are computed
+   * @param opponentReach the opponent's reach probability of each of its private states
+   * @param factor the factor to apply, typically the pot
+   * @param result the array to add the weighted equities to, indexed by the player's private states
+   */
+  void addWeightedEquities(final int betRoundIndex, final Chances chances,
+      final boolean[] playersToConsider, final int player, final double[] opponentReach,
+      final double factor, final double[] result);
+}
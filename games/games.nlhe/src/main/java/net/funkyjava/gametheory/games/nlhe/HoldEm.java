@@ -103,6 +103,14 @@ public class HoldEm<Chances> implements Game<NLBetTreeNode, Chances> {
     return getNode(betTree.getRootNode());
   }
 
+  /**
+   * The bet tree is fully built : the transitions only read it
+   */
+  @Override
+  public boolean isConcurrentlyWalkable() {
+    return true;
+  }
+
   private ActionTreeNode<NLBetTreeNode, Chances> getNode(final NLBetTreeNode node) {
     switch (node.roundState) {
       case END_NO_SHOWDOWN:
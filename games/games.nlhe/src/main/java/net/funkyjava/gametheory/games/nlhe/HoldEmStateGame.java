@@ -0,0 +1,166 @@
+package net.funkyjava.gametheory.games.nlhe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+
+import lombok.Getter;
+import net.funkyjava.gametheory.extensiveformgame.ActionTreeNode;
+import net.funkyjava.gametheory.extensiveformgame.ActionTreePlayerChoiceTransition;
+import net.funkyjava.gametheory.extensiveformgame.Game;
+import net.funkyjava.gametheory.extensiveformgame.PlayerNode;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLHandParser;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLState;
+import net.funkyjava.gametheory.gameutil.poker.bets.moves.Move;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeAbstractor;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLStateBetTreeAbstractor;
+
+/**
+ * No Limit Hold'em extensive form game walking compact {@link NLState}s : unlike {@link HoldEm}, no
+ * bet tree is built and no hand is cloned, each transition copies the parent state and does the
+ * move. The abstractor must be a {@link NLStateBetTreeAbstractor}, like the push/fold and per bet
+ * turn abstractors.
+ *
+ * The player nodes ids are their states. In imperfect recall, the first nodes of each bet round
+ * are matched by state equality, like {@link HoldEm}'s bet tree matches them by players data.
+ *
+ * @author Pierre Mardon
+ *
+ * @param <Chances> the chances type
+ */
+public class HoldEmStateGame<Chances> implements Game<NLState, Chances> {
+
+  private final int nbPlayers;
+  private final NLState initialState;
+  private final NLStateBetTreeAbstractor abstractor;
+  private final HEEquityProvider<Chances> equityProvider;
+  private final int[][] roundChancesSizes;
+  /**
+   * Perfect recall boolean. When false, the first nodes of each round may have multiple parents
+   */
+  @Getter
+  private final boolean perfectRecall;
+
+  /**
+   * Constructor
+   *
+   * @param initialState the state at the beginning of the first bet round
+   * @param abstractor the state abstractor
+   * @param roundChancesSizes size of the chances for each bet round (assumed equal for each player)
+   * @param equityProvider the equity provider for showdown
+   * @param perfectRecall perfect recall boolean. When false, the first nodes of each round may have
+   *        multiple parents
+   */
+  public HoldEmStateGame(final NLState initialState, final NLStateBetTreeAbstractor abstractor,
+      final int[] roundChancesSizes, final HEEquityProvider<Chances> equityProvider,
+      final boolean perfectRecall) {
+    final int nbRounds = initialState.getNbBetRounds();
+    checkArgument(nbRounds == roundChancesSizes.length,
+        "The number of rounds is not consistant between the hand (%s) and the round chances sizes (%s)",
+        nbRounds, roundChancesSizes.length);
+    this.initialState = initialState.copy();
+    this.abstractor = abstractor;
+    this.equityProvider = equityProvider;
+    this.perfectRecall = perfectRecall;
+    final int nbPlayers = this.nbPlayers = initialState.getNbPlayers();
+    final int[][] roundsPlayersChancesSizes = this.roundChancesSizes = new int[nbRounds][nbPlayers];
+    for (int i = 0; i < nbRounds; i++) {
+      for (int j = 0; j < nbPlayers; j++) {
+        roundsPlayersChancesSizes[i][j] = roundChancesSizes[i];
+      }
+    }
+  }
+
+  /**
+   * Convenience method to construct from a bet tree file and other needed parameters
+   *
+   * @param betTreePath the path to the bet tree file, that must be read as a
+   *        {@link NLStateBetTreeAbstractor}
+   * @param handString the hand string representation to be fed to {@link NLHandParser}
+   * @param roundChancesSizes the round chances sizes
+   * @param equityProvider the equity provider
+   * @param perfectRecall perfect recall boolean. When false, the first nodes of each round may have
+   *        multiple parents
+   * @return the built NLHE game
+   * @throws FileNotFoundException
+   * @throws IOException
+   */
+  public static <Chances> HoldEmStateGame<Chances> get(final String betTreePath,
+      final String handString, final int[] roundChancesSizes,
+      final HEEquityProvider<Chances> equityProvider, final boolean perfectRecall)
+      throws FileNotFoundException, IOException {
+    final NLState state =
+        NLState.fromHand(NLHandParser.parse(handString, roundChancesSizes.length));
+    final NLBetTreeAbstractor abstractor = NLBetTreeAbstractor.read(betTreePath);
+    checkArgument(abstractor instanceof NLStateBetTreeAbstractor,
+        "The bet tree at %s depends on the moves history and can't abstract states", betTreePath);
+    return new HoldEmStateGame<>(state, (NLStateBetTreeAbstractor) abstractor, roundChancesSizes,
+        equityProvider, perfectRecall);
+  }
+
+  @Override
+  public int[][] roundChancesSizes() {
+    return roundChancesSizes;
+  }
+
+  @Override
+  public int getNbPlayers() {
+    return nbPlayers;
+  }
+
+  @Override
+  public ActionTreeNode<NLState, Chances> rootNode() {
+    return getNode(initialState.copy());
+  }
+
+  /**
+   * Each transition works on its own state copies and the abstractor is thread safe
+   */
+  @Override
+  public boolean isConcurrentlyWalkable() {
+    return true;
+  }
+
+  private ActionTreeNode<NLState, Chances> getNode(final NLState state) {
+    switch (state.getRoundState()) {
+      case END_NO_SHOWDOWN:
+        final double[] payouts = new double[nbPlayers];
+        state.getNoShowdownPayouts(payouts);
+        return new ActionTreeNode<>(payouts);
+      case SHOWDOWN:
+        return new ActionTreeNode<>(new HEChancesPayouts<>(state, equityProvider));
+      case WAITING_MOVE:
+        final List<Move> moves = abstractor.movesForState(state);
+        checkArgument(!moves.isEmpty(), "Bet tree abstractor returned no move for state %s",
+            state);
+        return new ActionTreeNode<>(
+            new PlayerNode<>(state.getBettingPlayer(), state.getBetRoundIndex(), moves.size(),
+                state),
+            state.isRoundFirstNode() && !perfectRecall, new PlayerTransition(state, moves));
+      default:
+        throw new IllegalArgumentException();
+    }
+  }
+
+  private class PlayerTransition implements ActionTreePlayerChoiceTransition<NLState, Chances> {
+
+    private final NLState state;
+    private final List<Move> moves;
+
+    PlayerTransition(final NLState state, final List<Move> moves) {
+      this.state = state;
+      this.moves = moves;
+    }
+
+    @Override
+    public ActionTreeNode<NLState, Chances> nodeForAction(final int actionIndex) {
+      final NLState child = state.copy();
+      child.doMove(moves.get(actionIndex));
+      return getNode(child);
+    }
+
+  }
+
+}
@@ -0,0 +1,175 @@
+package net.funkyjava.gametheory.games.nlhe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import com.google.common.base.Optional;
+
+import lombok.extern.slf4j.Slf4j;
+import net.funkyjava.gametheory.extensiveformgame.ActionTree;
+import net.funkyjava.gametheory.extensiveformgame.Game;
+import net.funkyjava.gametheory.extensiveformgame.MappedActionTree;
+import net.funkyjava.gametheory.extensiveformgame.StreamingActionTreeWriter;
+
+/**
+ * Binary cache of a NLHE action tree, so that a restart doesn't rebuild the
+ * {@link net.funkyjava.gametheory.gameutil.poker.bets.tree.NLAbstractedBetTree} nor replay the hand
+ * for each node.
+ *
+ * The file is a {@link MappedActionTree} of a {@link HoldEm} game, whose showdown pots descriptors
+ * are serialized by {@link HEChancesPayouts#serializer(int, HEEquityProvider)}, after a header
+ * keyed by a hash of the hand string, the bet tree abstractor file and the game settings :
+ * {@link #open(Path, byte[], HEEquityProvider)} only accepts a cache written with the same key. The
+ * opened tree is a {@link Game} whose ids are the node numbers : walking it only reads the mapped
+ * nodes, so the {@link ActionTree} built from it has the same structure and nodes indexes as the
+ * one built from the original game, and data saved with one of them can be loaded with the other.
+ *
+ * Header, big-endian : magic, version, key and number of players, followed by the mapped tree.
+ *
+ * @author Pierre Mardon
+ *
+ */
+@Slf4j
+public final class HoldEmTreeCache {
+
+  private static final int MAGIC = 0x48455443;
+  private static final int VERSION = 3;
+  private static final int KEY_LENGTH = 32;
+  private static final int HEADER_BYTES = 3 * Integer.BYTES + KEY_LENGTH;
+
+  private HoldEmTreeCache() {}
+
+  /**
+   * Compute the cache key of a game
+   *
+   * @param handString the hand string representation fed to the hand parser
+   * @param betTreePath the formal bet tree file path, or null when the abstractor isn't read from a
+   *        file
+   * @param roundChancesSizes the round chances sizes
+   * @param perfectRecall perfect recall boolean of the bet tree
+   * @return the key
+   * @throws IOException when the bet tree file can't be read
+   */
+  public static byte[] key(final String handString, final Path betTreePath,
+      final int[] roundChancesSizes, final boolean perfectRecall) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(VERSION).array());
+    digest.update(handString.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    if (betTreePath != null) {
+      digest.update(Files.readAllBytes(betTreePath));
+    }
+    digest.update((byte) 0);
+    final ByteBuffer settings =
+        ByteBuffer.allocate(Integer.BYTES * (roundChancesSizes.length + 1) + 1);
+    settings.putInt(roundChancesSizes.length);
+    for (int size : roundChancesSizes) {
+      settings.putInt(size);
+    }
+    settings.put((byte) (perfectRecall ? 1 : 0));
+    digest.update(settings.array());
+    return digest.digest();
+  }
+
+  /**
+   * Memory-map a cache file
+   *
+   * @param path the cache file path
+   * @param key the expected key
+   * @param equityProvider the equity provider for showdown
+   * @return the cached tree, or absent when there's no file or when it was written with another key
+   *         or format version
+   * @throws IOException
+   */
+  public static <Chances> Optional<MappedActionTree<Chances>> open(final Path path,
+      final byte[] key, final HEEquityProvider<Chances> equityProvider) throws IOException {
+    checkArgument(key.length == KEY_LENGTH, "Invalid key length %s", key.length);
+    if (!Files.exists(path)) {
+      log.info("No tree cache at {}", path);
+      return Optional.absent();
+    }
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          break;
+        }
+      }
+    }
+    header.flip();
+    if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC
+        || header.getInt() != VERSION) {
+      log.warn("Ignoring tree cache {} : not a tree cache or another format version", path);
+      return Optional.absent();
+    }
+    final byte[] fileKey = new byte[KEY_LENGTH];
+    header.get(fileKey);
+    if (!Arrays.equals(key, fileKey)) {
+      log.info("Ignoring tree cache {} : built for another hand or bet tree", path);
+      return Optional.absent();
+    }
+    final int nbPlayers = header.getInt();
+    try {
+      return Optional.of(new MappedActionTree<>(path, HEADER_BYTES,
+          HEChancesPayouts.serializer(nbPlayers, equityProvider)));
+    } catch (EOFException | IllegalArgumentException e) {
+      log.warn("Ignoring tree cache {} : {}", path, e.getMessage());
+      return Optional.absent();
+    }
+  }
+
+  /**
+   * Write the cache of a {@link HoldEm} game, streaming its tree without building the
+   * {@link ActionTree}. The file is written next to its path and moved in place when complete.
+   *
+   * @param path the cache file path
+   * @param key the key
+   * @param game the game
+   * @throws IOException
+   */
+  public static <Chances> void write(final Path path, final byte[] key,
+      final Game<?, Chances> game) throws IOException {
+    write(path, key, game, StreamingActionTreeWriter.DEFAULT_CHUNK_SHIFT);
+  }
+
+  /**
+   * Write the cache of a {@link HoldEm} game with a given mapped chunks size
+   *
+   * @param path the cache file path
+   * @param key the key
+   * @param game the game
+   * @param chunkShift log2 of the mapped chunks size, see {@link StreamingActionTreeWriter}
+   * @throws IOException
+   */
+  public static <Chances> void write(final Path path, final byte[] key,
+      final Game<?, Chances> game, final int chunkShift) throws IOException {
+    checkArgument(key.length == KEY_LENGTH, "Invalid key length %s", key.length);
+    final int nbPlayers = game.getNbPlayers();
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.put(key);
+    header.putInt(nbPlayers);
+    // Writing showdowns doesn't need their equity
+    StreamingActionTreeWriter.write(game, path,
+        HEChancesPayouts.<Chances>serializer(nbPlayers, null), header.array(), chunkShift);
+    log.info("Wrote tree cache {}", path);
+  }
+
+}
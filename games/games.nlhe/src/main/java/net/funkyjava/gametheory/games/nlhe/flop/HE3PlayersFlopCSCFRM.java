@@ -22,8 +22,8 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.funkyjava.gametheory.cscfrm.CSCFRMChancesSynchronizer;
 import net.funkyjava.gametheory.cscfrm.CSCFRMData;
-import net.funkyjava.gametheory.cscfrm.CSCFRMMutexChancesSynchronizer;
 import net.funkyjava.gametheory.cscfrm.CSCFRMRunner;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStripedChancesSynchronizer;
 import net.funkyjava.gametheory.games.nlhe.HoldEm;
 import net.funkyjava.gametheory.games.nlhe.preflop.HEPreflopExcel;
 import net.funkyjava.gametheory.games.nlhe.preflop.HEPreflopHelper;
@@ -198,12 +198,12 @@ public class HE3PlayersFlopCSCFRM {
         "The bet tree should not have more than two bet rounds");
     final HoldEm<HEFlopChances> game =
         new HoldEm<>(tree, new int[] {169, flopBuckets.getNbBuckets()}, equityProvider);
-    final HEFlopChancesProducer chancesProducer =
-        new HEFlopChancesProducer(3, flopBuckets.getBuckets());
+    final int[] buckets = flopBuckets.getBuckets();
     final int nbBuckets = flopBuckets.getNbBuckets();
     final int[][] chancesSizes = new int[][] {{169, 169, 169}, {nbBuckets, nbBuckets, nbBuckets}};
     final CSCFRMChancesSynchronizer<HEFlopChances> synchronizer =
-        new CSCFRMMutexChancesSynchronizer<>(chancesProducer, chancesSizes);
+        new CSCFRMStripedChancesSynchronizer<>(() -> new HEFlopChancesProducer(3, buckets),
+            chancesSizes);
     final CSCFRMData<NLBetTreeNode, HEFlopChances> data = this.data = new CSCFRMData<>(game);
     final int nbTrainerThreads = Math.max(Runtime.getRuntime().availableProcessors(), 1);
     this.runner = new CSCFRMRunner<>(data, synchronizer, nbTrainerThreads);
@@ -1,18 +1,17 @@
 package net.funkyjava.gametheory.games.nlhe.flop;
 
+import java.util.Arrays;
+
 import net.funkyjava.gametheory.games.nlhe.HEEquityProvider;
 import net.funkyjava.gametheory.games.nlhe.preflop.HE3PlayersPreflopEquityProvider;
-import net.funkyjava.gametheory.gameutil.cards.Cards52SpecTranslator;
-import net.funkyjava.gametheory.gameutil.cards.IntCardsSpec;
 import net.funkyjava.gametheory.gameutil.poker.he.evaluators.ThreePlayersEquitiesIndexes;
 import net.funkyjava.gametheory.gameutil.poker.he.evaluators.ThreePlayersPreflopReducedEquityTable;
-import net.funkyjava.gametheory.gameutil.poker.he.handeval.twoplustwo.TwoPlusTwoEvaluator;
-import net.funkyjava.gametheory.gameutil.poker.he.indexing.waugh.WaughIndexer;
 
 public class HE3PlayersFlopEquityProvider implements HEEquityProvider<HEFlopChances> {
 
 
   private final HE3PlayersPreflopEquityProvider preflopProvider;
+  private final HEFlopShowdownEvaluator showdownEvaluator = new HEFlopShowdownEvaluator(3);
 
   public HE3PlayersFlopEquityProvider(final ThreePlayersPreflopReducedEquityTable table) {
     this.preflopProvider = new HE3PlayersPreflopEquityProvider(table);
@@ -34,19 +33,11 @@ public class HE3PlayersFlopEquityProvider implements HEEquityProvider<HEFlopChan
     }
     double[][] flopEquities = chances.getFlopEquities();
     if (flopEquities == null) {
-      final TwoPlusTwoEvaluator eval = new TwoPlusTwoEvaluator();
-      final IntCardsSpec specs = eval.getCardsSpec();
-      final IntCardsSpec origSpecs = WaughIndexer.cardsSpecs;
-      final Cards52SpecTranslator translate = new Cards52SpecTranslator(origSpecs, specs);
-      final int[] evals = new int[3];
-      final int[] boardCards = chances.getBoardCards();
-      translate.translate(boardCards);
-      final int[][] playersCards = chances.getPlayersCards();
-      translate.translate(playersCards);
-      eval.get7CardsEvals(playersCards, boardCards, evals);
-      translate.reverse(boardCards);
-      translate.reverse(playersCards);
-      flopEquities = new double[4][3];
+      final int[] evals = showdownEvaluator.evaluate(chances);
+      flopEquities = chances.getFlopEquitiesBuffer(4, 3);
+      for (double[] equities : flopEquities) {
+        Arrays.fill(equities, 0);
+      }
       fillEquities(flopEquities, evals[0], evals[1], evals[2]);
       chances.setFlopEquities(flopEquities);
       // final int[][] playersCards = chances.getPlayersCards();
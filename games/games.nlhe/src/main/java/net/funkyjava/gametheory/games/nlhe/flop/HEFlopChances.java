@@ -5,6 +5,7 @@ import net.funkyjava.gametheory.games.nlhe.preflop.HEPreflopChances;
 public class HEFlopChances extends HEPreflopChances {
 
   private double[][] flopEquities;
+  private boolean flopEquitiesSet = false;
 
   private int[][] playersCards;
 
@@ -19,12 +20,43 @@ public class HEFlopChances extends HEPreflopChances {
     this.boardCards = boardCards;
   }
 
+  /**
+   * Get the flop equities computed for these chances
+   * 
+   * @return the flop equities, or null when they were not computed yet
+   */
   public double[][] getFlopEquities() {
-    return flopEquities;
+    return flopEquitiesSet ? flopEquities : null;
   }
 
+  /**
+   * Set the flop equities of these chances. Setting null marks them as not computed but keeps the
+   * last array for {@link #getFlopEquitiesBuffer(int, int)}.
+   * 
+   * @param flopEquities the flop equities or null
+   */
   public void setFlopEquities(double[][] flopEquities) {
-    this.flopEquities = flopEquities;
+    if (flopEquities != null) {
+      this.flopEquities = flopEquities;
+    }
+    this.flopEquitiesSet = flopEquities != null;
+  }
+
+  /**
+   * Get an array to compute the flop equities into, reused when the chances are recycled. Its
+   * values are the ones of the previous chances.
+   * 
+   * @param nbEquities number of equities arrays
+   * @param nbPlayers number of players
+   * @return the flop equities buffer
+   */
+  public double[][] getFlopEquitiesBuffer(final int nbEquities, final int nbPlayers) {
+    final double[][] flopEquities = this.flopEquities;
+    if (flopEquities != null && flopEquities.length == nbEquities
+        && flopEquities[0].length == nbPlayers) {
+      return flopEquities;
+    }
+    return this.flopEquities = new double[nbEquities][nbPlayers];
   }
 
   public int[][] getPlayersCards() {
@@ -3,18 +3,27 @@ package net.funkyjava.gametheory.games.nlhe.flop;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
+
+import org.apache.commons.math3.random.RandomGenerator;
 
 import net.funkyjava.gametheory.cscfrm.CSCFRMChancesProducer;
 import net.funkyjava.gametheory.gameutil.cards.Deck52Cards;
+import net.funkyjava.gametheory.gameutil.cards.SplitMixRandomGenerator;
 import net.funkyjava.gametheory.gameutil.poker.he.indexing.waugh.WaughIndexer;
 
-
+/**
+ * Flop chances producer. Each instance has its own random generator, indexers and recycled chances
+ * pool : create one per thread.
+ *
+ * @author Pierre Mardon
+ *
+ */
 public class HEFlopChancesProducer implements CSCFRMChancesProducer<HEFlopChances> {
 
   private final int nbPlayers;
-  private final List<HEFlopChances> chancesCache = new LinkedList<>();
+  private HEFlopChances[] chancesPool = new HEFlopChances[16];
+  private int poolSize = 0;
   private final WaughIndexer preflopIndexer = new WaughIndexer(new int[] {2});
   private final WaughIndexer flopIndexer = new WaughIndexer(new int[] {2, 3});
   private final int[][] allCards;
@@ -25,8 +34,27 @@ public class HEFlopChancesProducer implements CSCFRMChancesProducer<HEFlopChance
   private final int[] flopBuckets;
   private final Deck52Cards deck = new Deck52Cards(preflopIndexer.getCardsSpec());
 
+  /**
+   * Constructor with a new independent random stream
+   *
+   * @param nbPlayers the number of players
+   * @param flopBuckets the bucket of each flop index
+   */
   public HEFlopChancesProducer(final int nbPlayers, final int[] flopBuckets) {
+    this(nbPlayers, flopBuckets, new SplitMixRandomGenerator());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nbPlayers the number of players
+   * @param flopBuckets the bucket of each flop index
+   * @param random the random generator, only used by this producer
+   */
+  public HEFlopChancesProducer(final int nbPlayers, final int[] flopBuckets,
+      final RandomGenerator random) {
     this.nbPlayers = nbPlayers;
+    deck.setRandom(random);
     this.flopBuckets = checkNotNull(flopBuckets, "Flop buckets shouldn't be null");
     checkArgument(flopBuckets.length == flopIndexer.getIndexSize(),
         "Expected same size for flop buckets (" + flopBuckets.length + ") and flopIndexer ("
@@ -50,7 +78,6 @@ public class HEFlopChancesProducer implements CSCFRMChancesProducer<HEFlopChance
   public HEFlopChances produceChances() {
     final int[][] allCards = this.allCards;
     final int nbPlayers = this.nbPlayers;
-    final List<HEFlopChances> chancesCache = this.chancesCache;
     final WaughIndexer preflopIndexer = this.preflopIndexer;
     final WaughIndexer flopIndexer = this.flopIndexer;
     final int[][][] eachPlayerPreflopCardsGroups = this.eachPlayerPreflopCardsGroups;
@@ -63,14 +90,14 @@ public class HEFlopChancesProducer implements CSCFRMChancesProducer<HEFlopChance
     int[][] playersCards;
     int[] flopCards;
     int[] boardCards;
-    if (chancesCache.isEmpty()) {
+    if (poolSize == 0) {
       playersChances = new int[2][nbPlayers];
       playersCards = new int[nbPlayers][2];
       flopCards = new int[3];
       boardCards = new int[5];
       chances = new HEFlopChances(playersChances, playersCards, flopCards, boardCards);
     } else {
-      chances = chancesCache.remove(0);
+      chances = chancesPool[--poolSize];
       playersChances = chances.getPlayersChances();
       playersCards = chances.getPlayersCards();
       flopCards = chances.getFlopCards();
@@ -94,7 +121,10 @@ public class HEFlopChancesProducer implements CSCFRMChancesProducer<HEFlopChance
   @Override
   public void endedUsing(HEFlopChances chances) {
     chances.setFlopEquities(null);
-    chancesCache.add(chances);
+    if (poolSize == chancesPool.length) {
+      chancesPool = Arrays.copyOf(chancesPool, 2 * poolSize);
+    }
+    chancesPool[poolSize++] = chances;
   }
 
 }
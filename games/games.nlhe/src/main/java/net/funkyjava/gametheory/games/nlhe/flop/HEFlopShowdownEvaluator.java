@@ -0,0 +1,64 @@
+package net.funkyjava.gametheory.games.nlhe.flop;
+
+import net.funkyjava.gametheory.gameutil.cards.Cards52SpecTranslator;
+import net.funkyjava.gametheory.gameutil.cards.IntCardsSpec;
+import net.funkyjava.gametheory.gameutil.poker.he.handeval.twoplustwo.TwoPlusTwoEvaluator;
+import net.funkyjava.gametheory.gameutil.poker.he.indexing.waugh.WaughIndexer;
+
+/**
+ * Evaluates the players 7 cards hands of {@link HEFlopChances} without allocating. The evaluator
+ * and the cards translator are shared, each thread translates the cards in its own arrays instead
+ * of translating the chances cards back and forth.
+ *
+ * @author Pierre Mardon
+ *
+ */
+class HEFlopShowdownEvaluator {
+
+  private final class ThreadState {
+    private final int[] boardCards = new int[5];
+    private final int[][] playersCards = new int[nbPlayers][2];
+    private final int[] evals = new int[nbPlayers];
+  }
+
+  private final int nbPlayers;
+  private final TwoPlusTwoEvaluator evaluator = new TwoPlusTwoEvaluator();
+  private final Cards52SpecTranslator translator;
+  private final ThreadLocal<ThreadState> threadStates =
+      ThreadLocal.withInitial(() -> new ThreadState());
+
+  HEFlopShowdownEvaluator(final int nbPlayers) {
+    this.nbPlayers = nbPlayers;
+    final IntCardsSpec specs = evaluator.getCardsSpec();
+    this.translator = new Cards52SpecTranslator(WaughIndexer.cardsSpecs, specs);
+  }
+
+  /**
+   * Evaluate the players hands
+   *
+   * @param chances the chances
+   * @return the players evaluations, in an array owned by the calling thread that is valid until
+   *         its next call
+   */
+  final int[] evaluate(final HEFlopChances chances) {
+    final ThreadState state = threadStates.get();
+    final Cards52SpecTranslator translator = this.translator;
+    final int[] srcBoard = chances.getBoardCards();
+    final int[] boardCards = state.boardCards;
+    for (int i = 0; i < 5; i++) {
+      boardCards[i] = translator.translate(srcBoard[i]);
+    }
+    final int[][] srcPlayersCards = chances.getPlayersCards();
+    final int[][] playersCards = state.playersCards;
+    final int nbPlayers = this.nbPlayers;
+    for (int p = 0; p < nbPlayers; p++) {
+      final int[] src = srcPlayersCards[p];
+      final int[] dest = playersCards[p];
+      dest[0] = translator.translate(src[0]);
+      dest[1] = translator.translate(src[1]);
+    }
+    final int[] evals = state.evals;
+    evaluator.get7CardsEvals(playersCards, boardCards, evals);
+    return evals;
+  }
+}
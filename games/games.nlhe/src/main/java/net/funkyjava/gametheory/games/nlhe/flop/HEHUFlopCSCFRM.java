@@ -1,6 +1,7 @@
 package net.funkyjava.gametheory.games.nlhe.flop;
 
 import static net.funkyjava.gametheory.io.ProgramArguments.getArgument;
+import static net.funkyjava.gametheory.io.ProgramArguments.getStrictlyPositiveIntArgument;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,6 +10,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
@@ -21,10 +23,18 @@ import com.google.common.base.Preconditions;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.funkyjava.gametheory.cscfrm.CSCFRMChancesSynchronizer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMCheckpointer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMChunkedStorage;
 import net.funkyjava.gametheory.cscfrm.CSCFRMData;
-import net.funkyjava.gametheory.cscfrm.CSCFRMMutexChancesSynchronizer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMDoubleArrayStorage;
 import net.funkyjava.gametheory.cscfrm.CSCFRMRunner;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStorageProvider;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStripedChancesSynchronizer;
+import net.funkyjava.gametheory.extensiveformgame.MappedActionTree;
 import net.funkyjava.gametheory.games.nlhe.HoldEm;
+import net.funkyjava.gametheory.games.nlhe.HoldEmTreeCache;
+import net.funkyjava.gametheory.games.nlhe.preflop.HEHUPreflopCSCFRM;
 import net.funkyjava.gametheory.games.nlhe.preflop.HEPreflopExcel;
 import net.funkyjava.gametheory.games.nlhe.preflop.HEPreflopHelper;
 import net.funkyjava.gametheory.gameutil.cards.DefaultIntCardsSpecs;
@@ -46,6 +56,14 @@ public class HEHUFlopCSCFRM {
   private static final String handPrefix = "hand=";
   private static final String betTreePathPrefix = "tree=";
   private static final String flopBuckets = "flopBuckets=";
+  private static final String storagePrefix = "storage=";
+  private static final String cachePrefix = "cache=";
+  private static final String checkpointPrefix = "checkpoint=";
+  private static final String checkpointFileSuffix = ".ckpt";
+  /**
+   * Number of incremental checkpoints appended before the checkpoints file is compacted
+   */
+  private static final int checkpointCompactionPeriod = 10;
 
   private static HUPreflopEquityTables getTables(final String path)
       throws IOException, ClassNotFoundException {
@@ -87,14 +105,23 @@ public class HEHUFlopCSCFRM {
     final Optional<String> svgOpt = getArgument(args, svgPathPrefix);
     log.info("Creating CSCFRM environment");
     final Optional<String> betTreeOpt = getArgument(args, betTreePathPrefix);
-    HEHUFlopCSCFRM cfrmTmp;
-    if (betTreeOpt.isPresent()) {
-      final NLBetTreeAbstractor abstractor = NLBetTreeAbstractor.read(betTreeOpt.get());
-      cfrmTmp = new HEHUFlopCSCFRM(hand, abstractor, tables, svgOpt.orNull(), flopBuckets);
-    } else {
-      cfrmTmp = new HEHUFlopCSCFRM(hand, tables, svgOpt.orNull(), flopBuckets);
+    final CSCFRMStorageProvider storageProvider = HEHUPreflopCSCFRM
+        .getStorageProvider(getArgument(args, storagePrefix).orNull(), svgOpt.orNull());
+    final NLBetTreeAbstractor abstractor = betTreeOpt.isPresent()
+        ? NLBetTreeAbstractor.read(betTreeOpt.get()) : new NLPushFoldBetTreeAbstractor();
+    final Optional<String> cacheOpt = getArgument(args, cachePrefix);
+    final byte[] cacheKey = cacheOpt.isPresent()
+        ? HoldEmTreeCache.key(handOpt.get(),
+            betTreeOpt.isPresent() ? Paths.get(betTreeOpt.get()) : null,
+            new int[] {169, flopBuckets.getNbBuckets()}, false)
+        : null;
+    final HEHUFlopCSCFRM cfrm = new HEHUFlopCSCFRM(hand, abstractor, tables, svgOpt.orNull(),
+        flopBuckets, storageProvider, cacheOpt.orNull(), cacheKey);
+    final Optional<Integer> checkpointOpt =
+        getStrictlyPositiveIntArgument(args, checkpointPrefix);
+    if (checkpointOpt.isPresent()) {
+      cfrm.enableCheckpoints(checkpointOpt.get());
     }
-    final HEHUFlopCSCFRM cfrm = cfrmTmp;
     try {
       cfrm.load();
     } catch (IOException e) {
@@ -194,30 +221,99 @@ public class HEHUFlopCSCFRM {
   }
 
   private final HUPreflopEquityTables tables;
+  private final NLHand hand;
+  private final NLBetTreeAbstractor betTreeAbstractor;
+  private final int nbFlopBuckets;
+  private final HEHUFlopEquityProvider equityProvider;
+  /**
+   * The CSCFRM data, built from the {@link HoldEmTreeCache} when it was valid
+   */
   @Getter
-  private final CSCFRMData<NLBetTreeNode, HEFlopChances> data;
+  private final CSCFRMData<?, HEFlopChances> data;
+  /**
+   * The same data when built from the bet tree. Otherwise a view on the cached data's storage,
+   * built from the bet tree on the first print of the preflop strategies.
+   */
+  private CSCFRMData<NLBetTreeNode, HEFlopChances> betTreeData;
   @Getter
   private final CSCFRMRunner<HEFlopChances> runner;
   private final String svgPath;
+  private CSCFRMCheckpointer checkpointer = null;
 
   public HEHUFlopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
       final HUPreflopEquityTables tables, final String svgPath, final Buckets flopBuckets) {
+    this(hand, betTreeAbstractor, tables, svgPath, flopBuckets, CSCFRMDoubleArrayStorage::new);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param hand the hand settings
+   * @param betTreeAbstractor the bet tree abstractor
+   * @param tables the HU preflop equity tables
+   * @param svgPath the save path or null
+   * @param flopBuckets the flop buckets
+   * @param storageProvider the storage provider, e.g. {@code CSCFRMChunkedStorage::new} to
+   *        allocate the values of the flop infosets only when they are reached
+   */
+  public HEHUFlopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
+      final HUPreflopEquityTables tables, final String svgPath, final Buckets flopBuckets,
+      final CSCFRMStorageProvider storageProvider) {
+    this(hand, betTreeAbstractor, tables, svgPath, flopBuckets, storageProvider,
+        Optional.<MappedActionTree<HEFlopChances>>absent());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param hand the hand settings
+   * @param betTreeAbstractor the bet tree abstractor
+   * @param tables the HU preflop equity tables
+   * @param svgPath the save path or null
+   * @param flopBuckets the flop buckets
+   * @param storageProvider the storage provider
+   * @param cachePath the {@link HoldEmTreeCache} path or null. When the cache is valid, the bet
+   *        tree is only built to print the preflop strategies. Otherwise the cache is streamed
+   *        from the game after building the tree.
+   * @param cacheKey the cache key computed with
+   *        {@link HoldEmTreeCache#key(String, java.nio.file.Path, int[], boolean)} for this hand,
+   *        bet tree, flop buckets and imperfect recall, or null when there's no cache path
+   * @throws IOException when the cache can't be read or written
+   */
+  public HEHUFlopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
+      final HUPreflopEquityTables tables, final String svgPath, final Buckets flopBuckets,
+      final CSCFRMStorageProvider storageProvider, final String cachePath,
+      final byte[] cacheKey) throws IOException {
+    this(hand, betTreeAbstractor, tables, svgPath, flopBuckets, storageProvider,
+        openCache(cachePath, cacheKey, tables));
+    if (cachePath != null && betTreeData == data) {
+      HoldEmTreeCache.write(Paths.get(cachePath), cacheKey, betTreeGame());
+    }
+  }
+
+  private HEHUFlopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
+      final HUPreflopEquityTables tables, final String svgPath, final Buckets flopBuckets,
+      final CSCFRMStorageProvider storageProvider,
+      final Optional<MappedActionTree<HEFlopChances>> cache) {
     this.tables = tables;
     this.svgPath = svgPath;
-    final HEHUFlopEquityProvider equityProvider =
-        new HEHUFlopEquityProvider(tables, DefaultIntCardsSpecs.getDefault());
-    final NLAbstractedBetTree tree = new NLAbstractedBetTree(hand, betTreeAbstractor, false);
-    Preconditions.checkArgument(tree.nbOfBetRounds <= 2,
-        "The bet tree should not have more than two bet rounds");
-    final int nbFlopBuckets = flopBuckets.getNbBuckets();
-    final HoldEm<HEFlopChances> game =
-        new HoldEm<>(tree, new int[] {169, nbFlopBuckets}, equityProvider);
-    final HEFlopChancesProducer chancesProducer =
-        new HEFlopChancesProducer(2, flopBuckets.getBuckets());
+    this.hand = hand;
+    this.betTreeAbstractor = betTreeAbstractor;
+    final int nbFlopBuckets = this.nbFlopBuckets = flopBuckets.getNbBuckets();
+    this.equityProvider = new HEHUFlopEquityProvider(tables, DefaultIntCardsSpecs.getDefault());
+    if (cache.isPresent()) {
+      this.betTreeData = null;
+      this.data = new CSCFRMData<>(cache.get(), storageProvider);
+    } else {
+      final CSCFRMData<NLBetTreeNode, HEFlopChances> betTreeData =
+          this.betTreeData = new CSCFRMData<>(betTreeGame(), storageProvider);
+      this.data = betTreeData;
+    }
+    final int[] buckets = flopBuckets.getBuckets();
     final int[][] chancesSizes = new int[][] {{169, 169}, {nbFlopBuckets, nbFlopBuckets}};
     final CSCFRMChancesSynchronizer<HEFlopChances> synchronizer =
-        new CSCFRMMutexChancesSynchronizer<>(chancesProducer, chancesSizes);
-    final CSCFRMData<NLBetTreeNode, HEFlopChances> data = this.data = new CSCFRMData<>(game);
+        new CSCFRMStripedChancesSynchronizer<>(() -> new HEFlopChancesProducer(2, buckets),
+            chancesSizes);
     final int nbTrainerThreads = Math.max(Runtime.getRuntime().availableProcessors(), 1);
     this.runner = new CSCFRMRunner<>(data, synchronizer, nbTrainerThreads);
   }
@@ -227,6 +323,69 @@ public class HEHUFlopCSCFRM {
     this(hand, new NLPushFoldBetTreeAbstractor(), tables, svgPath, flopBuckets);
   }
 
+  private static Optional<MappedActionTree<HEFlopChances>> openCache(final String cachePath,
+      final byte[] cacheKey, final HUPreflopEquityTables tables) throws IOException {
+    if (cachePath == null) {
+      return Optional.absent();
+    }
+    final Optional<MappedActionTree<HEFlopChances>> cache = HoldEmTreeCache.open(
+        Paths.get(cachePath), cacheKey,
+        new HEHUFlopEquityProvider(tables, DefaultIntCardsSpecs.getDefault()));
+    if (cache.isPresent()) {
+      log.info("Using tree cache {}", cachePath);
+    }
+    return cache;
+  }
+
+  private HoldEm<HEFlopChances> betTreeGame() {
+    final NLAbstractedBetTree tree = new NLAbstractedBetTree(hand, betTreeAbstractor, false);
+    Preconditions.checkArgument(tree.nbOfBetRounds <= 2,
+        "The bet tree should not have more than two bet rounds");
+    return new HoldEm<>(tree, new int[] {169, nbFlopBuckets}, equityProvider);
+  }
+
+  /**
+   * Get the data indexed by bet tree nodes. When the data was built from the cache, the bet tree is
+   * rebuilt once and its layout, identical to the cached one, addresses the same storage. The
+   * iterations count and the utility sums are copied at each call.
+   */
+  private CSCFRMData<NLBetTreeNode, HEFlopChances> betTreeData() {
+    final CSCFRMData<?, HEFlopChances> data = this.data;
+    if (betTreeData == null) {
+      log.info("Building the bet tree to map the cached tree nodes");
+      final CSCFRMStorage storage = data.getStorage();
+      final CSCFRMData<NLBetTreeNode, HEFlopChances> view =
+          new CSCFRMData<>(betTreeGame(), layout -> storage, data.getDiscounting());
+      Preconditions.checkState(
+          view.getLayout().getSize() == data.getLayout().getSize() && Arrays.deepEquals(
+              view.getLayout().getNodesNbActions(), data.getLayout().getNodesNbActions()),
+          "The bet tree doesn't match the cached tree");
+      betTreeData = view;
+    }
+    final CSCFRMData<NLBetTreeNode, HEFlopChances> betTreeData = this.betTreeData;
+    if (betTreeData != data) {
+      betTreeData.getIterations().set(data.getIterations().get());
+      final int nbPlayers = data.getNbPlayers();
+      for (int i = 0; i < nbPlayers; i++) {
+        betTreeData.getUtilitySum().set(i, data.getUtilitySum().get(i));
+      }
+    }
+    return betTreeData;
+  }
+
+  /**
+   * Take incremental checkpoints in the svg path suffixed with ".ckpt" while training. Must be
+   * called before {@link #load()} to restore the last checkpoints.
+   * 
+   * @param periodSeconds the delay between two checkpoints in seconds
+   */
+  public void enableCheckpoints(final int periodSeconds) {
+    Preconditions.checkArgument(svgPath != null, "Checkpoints require a svg path");
+    final CSCFRMCheckpointer checkpointer = this.checkpointer = new CSCFRMCheckpointer(data,
+        Paths.get(svgPath + checkpointFileSuffix), checkpointCompactionPeriod);
+    runner.enableCheckpoints(checkpointer, periodSeconds * 1000L);
+  }
+
   public void load() throws IOException {
     if (svgPath == null) {
       log.warn("No svg path provided, not loading");
@@ -235,6 +394,7 @@ public class HEHUFlopCSCFRM {
     final File file = Paths.get(svgPath).toFile();
     if (!file.exists()) {
       log.warn("No file at path {}, may be initial run", svgPath);
+      restoreCheckpoints();
       return;
     }
     try (final FileInputStream fis = new FileInputStream(file)) {
@@ -243,6 +403,14 @@ public class HEHUFlopCSCFRM {
       log.error("Failed to load file at path {}", svgPath);
       throw e;
     }
+    restoreCheckpoints();
+  }
+
+  private void restoreCheckpoints() throws IOException {
+    if (checkpointer != null && checkpointer.restore()) {
+      log.info("Restored checkpoints from {}, {} iterations", checkpointer.getPath(),
+          data.getIterations().get());
+    }
   }
 
   public void save() throws IOException {
@@ -263,6 +431,24 @@ public class HEHUFlopCSCFRM {
       log.error("Failed to save file at path {}", svgPath);
       throw e;
     }
+    if (checkpointer != null) {
+      // Keep the checkpoints consistent with the saved data
+      checkpointer.compact();
+    }
+    logStorageUsage();
+  }
+
+  /**
+   * Log the allocated and reached ratios of a {@link CSCFRMChunkedStorage}
+   */
+  public void logStorageUsage() {
+    final CSCFRMStorage storage = data.getStorage();
+    if (!(storage instanceof CSCFRMChunkedStorage)) {
+      return;
+    }
+    final CSCFRMChunkedStorage chunked = (CSCFRMChunkedStorage) storage;
+    log.info("Chunked storage : {} allocated values ({} of the layout), reached ratio {}",
+        chunked.getNbAllocatedValues(), chunked.getAllocatedRatio(), chunked.getReachedRatio());
   }
 
   private static Map<Integer, String> getPlayersNames() {
@@ -273,12 +459,13 @@ public class HEHUFlopCSCFRM {
   }
 
   public void printPreflopStrategies() {
-    HEPreflopHelper.printStrategies(data, tables.getHoleCardsIndexer(), getPlayersNames());
+    HEPreflopHelper.printStrategies(betTreeData(), tables.getHoleCardsIndexer(),
+        getPlayersNames());
   }
 
   public void writePreflopStrategiesExcel(String pathStr) {
     try {
-      final Workbook wb = HEPreflopExcel.createStrategiesWorkBook(data,
+      final Workbook wb = HEPreflopExcel.createStrategiesWorkBook(betTreeData(),
           tables.getHoleCardsIndexer(), getPlayersNames());
       try (final FileOutputStream fos = new FileOutputStream(pathStr)) {
         wb.write(fos);
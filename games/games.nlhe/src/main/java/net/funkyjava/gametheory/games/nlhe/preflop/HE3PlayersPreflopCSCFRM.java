@@ -8,6 +8,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
@@ -22,15 +23,21 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.funkyjava.gametheory.cscfrm.CSCFRMChancesSynchronizer;
 import net.funkyjava.gametheory.cscfrm.CSCFRMData;
-import net.funkyjava.gametheory.cscfrm.CSCFRMMutexChancesSynchronizer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMEnumerationTrainer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMHogwildChancesSynchronizer;
 import net.funkyjava.gametheory.cscfrm.CSCFRMRunner;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStripedChancesSynchronizer;
 import net.funkyjava.gametheory.games.nlhe.HoldEm;
+import net.funkyjava.gametheory.games.nlhe.HoldEmStateGame;
 import net.funkyjava.gametheory.gameutil.poker.bets.NLHand;
 import net.funkyjava.gametheory.gameutil.poker.bets.NLHandParser;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLState;
 import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLAbstractedBetTree;
 import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeAbstractor;
 import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeNode;
 import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLPushFoldBetTreeAbstractor;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLStateBetTreeAbstractor;
 import net.funkyjava.gametheory.gameutil.poker.he.evaluators.ThreePlayersPreflopReducedEquityTable;
 import net.funkyjava.gametheory.gameutil.poker.he.indexing.waugh.WaughIndexer;
 
@@ -41,6 +48,7 @@ public class HE3PlayersPreflopCSCFRM {
   public static final String handPrefix = "hand=";
   public static final String svgPathPrefix = "svg=";
   public static final String interactiveArg = "-i";
+  public static final String exactArg = "-exact";
 
   private static ThreePlayersPreflopReducedEquityTable getTables(final String path)
       throws IOException {
@@ -73,7 +81,9 @@ public class HE3PlayersPreflopCSCFRM {
     }
     final Optional<String> svgOpt = getArgument(args, svgPathPrefix);
     log.info("Creating CSCFRM environment");
-    final HE3PlayersPreflopCSCFRM cfrm = new HE3PlayersPreflopCSCFRM(hand, tables, svgOpt.orNull());
+    final boolean exact = getArgument(args, exactArg).isPresent();
+    final HE3PlayersPreflopCSCFRM cfrm = new HE3PlayersPreflopCSCFRM(hand,
+        new NLPushFoldBetTreeAbstractor(), tables, svgOpt.orNull(), exact);
     try {
       cfrm.load();
     } catch (IOException e) {
@@ -155,33 +165,78 @@ public class HE3PlayersPreflopCSCFRM {
     }
   }
 
+  /**
+   * The CSCFRM data, built from a {@link HoldEmStateGame} when the abstractor can abstract states
+   */
   @Getter
-  private final CSCFRMData<NLBetTreeNode, HEPreflopChances> data;
+  private final CSCFRMData<?, HEPreflopChances> data;
+  /**
+   * The same data when built from the bet tree. Otherwise a view on the data's storage, built from
+   * the bet tree on the first print of the strategies.
+   */
+  private CSCFRMData<NLBetTreeNode, HEPreflopChances> betTreeData;
   @Getter
   private final CSCFRMRunner<HEPreflopChances> runner;
   private final ThreePlayersPreflopReducedEquityTable tables;
+  private final NLHand hand;
+  private final NLBetTreeAbstractor betTreeAbstractor;
+  private final HE3PlayersPreflopEquityProvider equityProvider;
   private final String svgPath;
   @Getter
   private final WaughIndexer holeCardsIndexer;
 
   public HE3PlayersPreflopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
       final ThreePlayersPreflopReducedEquityTable tables, final String svgPath) {
+    this(hand, betTreeAbstractor, tables, svgPath, false);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param hand the hand settings
+   * @param betTreeAbstractor the bet tree abstractor. When it's a {@link NLStateBetTreeAbstractor},
+   *        like the default push/fold one, the game walks {@link NLState}s and no bet tree is built
+   *        until the strategies are printed.
+   * @param tables the 3 players preflop reduced equity table
+   * @param svgPath the save path or null
+   * @param exact when true, each iteration enumerates all hole cards triples in parallel over
+   *        player 0's hole cards instead of sampling them
+   */
+  public HE3PlayersPreflopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
+      final ThreePlayersPreflopReducedEquityTable tables, final String svgPath,
+      final boolean exact) {
     this.tables = tables;
     this.svgPath = svgPath;
     this.holeCardsIndexer = tables.getHoleCardsIndexer();
+    this.hand = hand;
+    this.betTreeAbstractor = betTreeAbstractor;
     final HE3PlayersPreflopEquityProvider equityProvider =
-        new HE3PlayersPreflopEquityProvider(tables);
-    final NLAbstractedBetTree tree = new NLAbstractedBetTree(hand, betTreeAbstractor, false);
-    Preconditions.checkArgument(tree.nbOfBetRounds <= 1,
-        "The bet tree should not have more than one bet rounds");
-    final HoldEm<HEPreflopChances> game = new HoldEm<>(tree, new int[] {169}, equityProvider);
-    final HEPreflopChancesProducer chancesProducer = new HEPreflopChancesProducer(3);
+        this.equityProvider = new HE3PlayersPreflopEquityProvider(tables);
     final int[][] chancesSizes = new int[][] {{169, 169, 169}};
-    final CSCFRMChancesSynchronizer<HEPreflopChances> synchronizer =
-        new CSCFRMMutexChancesSynchronizer<>(chancesProducer, chancesSizes);
-    final CSCFRMData<NLBetTreeNode, HEPreflopChances> data = this.data = new CSCFRMData<>(game);
-    final int nbTrainerThreads = Math.max(Runtime.getRuntime().availableProcessors(), 1);
-    this.runner = new CSCFRMRunner<>(data, synchronizer, nbTrainerThreads);
+    if (betTreeAbstractor instanceof NLStateBetTreeAbstractor) {
+      this.betTreeData = null;
+      this.data = new CSCFRMData<>(new HoldEmStateGame<>(NLState.fromHand(hand),
+          (NLStateBetTreeAbstractor) betTreeAbstractor, new int[] {169}, equityProvider, false));
+    } else {
+      this.data = this.betTreeData = new CSCFRMData<>(betTreeGame());
+    }
+    final CSCFRMData<?, HEPreflopChances> data = this.data;
+    if (exact) {
+      // Each iteration enumerates all chances with its own workers : the drawn chances are ignored
+      final HE3PlayersPreflopChancesEnumeration enumeration =
+          new HE3PlayersPreflopChancesEnumeration();
+      final CSCFRMChancesSynchronizer<HEPreflopChances> synchronizer =
+          new CSCFRMHogwildChancesSynchronizer<>(() -> new HEPreflopChancesProducer(3),
+              chancesSizes, false);
+      this.runner = new CSCFRMRunner<>(data, synchronizer, 1,
+          cscfrmData -> new CSCFRMEnumerationTrainer<>(cscfrmData, enumeration));
+    } else {
+      final CSCFRMChancesSynchronizer<HEPreflopChances> synchronizer =
+          new CSCFRMStripedChancesSynchronizer<>(() -> new HEPreflopChancesProducer(3),
+              chancesSizes);
+      final int nbTrainerThreads = Math.max(Runtime.getRuntime().availableProcessors(), 1);
+      this.runner = new CSCFRMRunner<>(data, synchronizer, nbTrainerThreads);
+    }
   }
 
   public HE3PlayersPreflopCSCFRM(final NLHand hand,
@@ -189,6 +244,42 @@ public class HE3PlayersPreflopCSCFRM {
     this(hand, new NLPushFoldBetTreeAbstractor(), tables, svgPath);
   }
 
+  private HoldEm<HEPreflopChances> betTreeGame() {
+    final NLAbstractedBetTree tree = new NLAbstractedBetTree(hand, betTreeAbstractor, false);
+    Preconditions.checkArgument(tree.nbOfBetRounds <= 1,
+        "The bet tree should not have more than one bet rounds");
+    return new HoldEm<>(tree, new int[] {169}, equityProvider);
+  }
+
+  /**
+   * Get the data indexed by bet tree nodes. When the data was built from states, the bet tree is
+   * built once and its layout, identical to the states one, addresses the same storage. The
+   * iterations count and the utility sums are copied at each call.
+   */
+  private CSCFRMData<NLBetTreeNode, HEPreflopChances> betTreeData() {
+    final CSCFRMData<?, HEPreflopChances> data = this.data;
+    if (betTreeData == null) {
+      log.info("Building the bet tree to map the states nodes");
+      final CSCFRMStorage storage = data.getStorage();
+      final CSCFRMData<NLBetTreeNode, HEPreflopChances> view =
+          new CSCFRMData<>(betTreeGame(), layout -> storage, data.getDiscounting());
+      Preconditions.checkState(
+          view.getLayout().getSize() == data.getLayout().getSize() && Arrays.deepEquals(
+              view.getLayout().getNodesNbActions(), data.getLayout().getNodesNbActions()),
+          "The bet tree doesn't match the states tree");
+      betTreeData = view;
+    }
+    final CSCFRMData<NLBetTreeNode, HEPreflopChances> betTreeData = this.betTreeData;
+    if (betTreeData != data) {
+      betTreeData.getIterations().set(data.getIterations().get());
+      final int nbPlayers = data.getNbPlayers();
+      for (int i = 0; i < nbPlayers; i++) {
+        betTreeData.getUtilitySum().set(i, data.getUtilitySum().get(i));
+      }
+    }
+    return betTreeData;
+  }
+
   private void load() throws IOException {
     if (svgPath == null) {
       log.warn("No svg path provided, not loading");
@@ -236,12 +327,12 @@ public class HE3PlayersPreflopCSCFRM {
   }
 
   public void printStrategies() {
-    HEPreflopHelper.printStrategies(data, holeCardsIndexer, getPlayersNames());
+    HEPreflopHelper.printStrategies(betTreeData(), holeCardsIndexer, getPlayersNames());
   }
 
   public void writeStrategiesExcel(String pathStr) {
     try {
-      final Workbook wb = HEPreflopExcel.createStrategiesWorkBook(data,
+      final Workbook wb = HEPreflopExcel.createStrategiesWorkBook(betTreeData(),
           tables.getHoleCardsIndexer(), getPlayersNames());
       try (final FileOutputStream fos = new FileOutputStream(pathStr)) {
         wb.write(fos);
@@ -257,6 +348,7 @@ public class HE3PlayersPreflopCSCFRM {
 
   public void writeStrategiesSheet(final Map<String, CellStyle> styles, final String sheetName,
       final Workbook wb) {
-    HEPreflopExcel.createStrategiesSheet(sheetName, wb, data, holeCardsIndexer, getPlayersNames());
+    HEPreflopExcel.createStrategiesSheet(sheetName, wb, betTreeData(), holeCardsIndexer,
+        getPlayersNames());
   }
 }
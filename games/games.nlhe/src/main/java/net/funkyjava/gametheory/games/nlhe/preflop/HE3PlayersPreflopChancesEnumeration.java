@@ -0,0 +1,117 @@
+package net.funkyjava.gametheory.games.nlhe.preflop;
+
+import java.util.function.ObjDoubleConsumer;
+
+import net.funkyjava.gametheory.cscfrm.CSCFRMChancesEnumeration;
+import net.funkyjava.gametheory.gameutil.poker.he.indexing.waugh.WaughIndexer;
+
+/**
+ * Enumeration of the 3 players preflop hole cards indexes triples with their joint probability,
+ * taking cards removal into account. There is one part per player 0's hole cards index.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class HE3PlayersPreflopChancesEnumeration
+    implements CSCFRMChancesEnumeration<HEPreflopChances> {
+
+  private static final int nbHoleCards = 169;
+
+  /**
+   * Joint probability of the hole cards indexed by each player's hole cards index
+   */
+  private final double[][][] jointWeights;
+
+  /**
+   * Constructor
+   */
+  public HE3PlayersPreflopChancesEnumeration() {
+    this.jointWeights = jointWeights();
+  }
+
+  /**
+   * Compute the joint probability of each triple of hole cards indexes. Suits permutations preserve
+   * the indexes, so the counts of a player 0's hole cards index are the ones of any of its hole
+   * cards multiplied by the number of its hole cards.
+   *
+   * @return the joint probabilities indexed by each player's hole cards index
+   */
+  public static double[][][] jointWeights() {
+    final WaughIndexer indexer = new WaughIndexer(new int[] {2});
+    final int offset = indexer.getCardsSpec().getOffset();
+    final int nbHands = 52 * 51 / 2;
+    final long[] masks = new long[nbHands];
+    final int[] indexes = new int[nbHands];
+    final int[] representatives = new int[nbHoleCards];
+    final int[] nbHandsPerIndex = new int[nbHoleCards];
+    final int[][] cards = new int[1][2];
+    int hand = 0;
+    for (int c1 = 0; c1 < 52; c1++) {
+      for (int c2 = c1 + 1; c2 < 52; c2++) {
+        cards[0][0] = c1 + offset;
+        cards[0][1] = c2 + offset;
+        final int index = indexes[hand] = indexer.indexOf(cards);
+        masks[hand] = (1L << c1) | (1L << c2);
+        if (nbHandsPerIndex[index]++ == 0) {
+          representatives[index] = hand;
+        }
+        hand++;
+      }
+    }
+    // Counts are exact in doubles and normalized in place
+    final double[][][] res = new double[nbHoleCards][nbHoleCards][nbHoleCards];
+    long total = 0;
+    for (int i = 0; i < nbHoleCards; i++) {
+      final long mask0 = masks[representatives[i]];
+      final double[][] iCounts = res[i];
+      final int mult = nbHandsPerIndex[i];
+      for (int h1 = 0; h1 < nbHands; h1++) {
+        final long mask1 = masks[h1];
+        if ((mask0 & mask1) != 0) {
+          continue;
+        }
+        final double[] jCounts = iCounts[indexes[h1]];
+        final long mask01 = mask0 | mask1;
+        for (int h2 = 0; h2 < nbHands; h2++) {
+          if ((mask01 & masks[h2]) == 0) {
+            jCounts[indexes[h2]] += mult;
+            total += mult;
+          }
+        }
+      }
+    }
+    for (int i = 0; i < nbHoleCards; i++) {
+      for (int j = 0; j < nbHoleCards; j++) {
+        final double[] kCounts = res[i][j];
+        for (int k = 0; k < nbHoleCards; k++) {
+          kCounts[k] /= total;
+        }
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public int getNbParts() {
+    return nbHoleCards;
+  }
+
+  @Override
+  public void enumerate(final int part, final ObjDoubleConsumer<HEPreflopChances> consumer) {
+    final int[] holeCards = new int[] {part, 0, 0};
+    final HEPreflopChances chances = new HEPreflopChances(new int[][] {holeCards});
+    final double[][] weights = jointWeights[part];
+    for (int j = 0; j < nbHoleCards; j++) {
+      final double[] jWeights = weights[j];
+      holeCards[1] = j;
+      for (int k = 0; k < nbHoleCards; k++) {
+        final double weight = jWeights[k];
+        if (weight > 0) {
+          holeCards[2] = k;
+          consumer.accept(chances, weight);
+        }
+      }
+    }
+  }
+
+}
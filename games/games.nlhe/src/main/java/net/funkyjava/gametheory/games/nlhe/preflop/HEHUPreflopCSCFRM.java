@@ -1,6 +1,7 @@
 package net.funkyjava.gametheory.games.nlhe.preflop;
 
 import static net.funkyjava.gametheory.io.ProgramArguments.getArgument;
+import static net.funkyjava.gametheory.io.ProgramArguments.getStrictlyPositiveIntArgument;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,10 +10,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
 
+import javax.management.JMException;
+
 import org.apache.poi.ss.usermodel.Workbook;
 
 import com.google.common.base.Optional;
@@ -20,18 +24,43 @@ import com.google.common.base.Preconditions;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import net.funkyjava.gametheory.cscfrm.CSCFRMAtomicDoubleArrayStorage;
 import net.funkyjava.gametheory.cscfrm.CSCFRMChancesSynchronizer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMCheckpointer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMChunkedStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMCompiledTrainer;
 import net.funkyjava.gametheory.cscfrm.CSCFRMData;
-import net.funkyjava.gametheory.cscfrm.CSCFRMMutexChancesSynchronizer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMDiscounting;
+import net.funkyjava.gametheory.cscfrm.CSCFRMDoubleArrayStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMEnumerationTrainer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMExternalSamplingTrainer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMFloatArrayStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMFloatRegretArrayStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMHogwildChancesSynchronizer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMMappedStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMPartitionedChancesSynchronizer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMPruning;
 import net.funkyjava.gametheory.cscfrm.CSCFRMRunner;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStorageProvider;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStripedChancesSynchronizer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMTrainer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMTrainerProvider;
+import net.funkyjava.gametheory.cscfrm.CSCFRMVectorTrainer;
+import net.funkyjava.gametheory.extensiveformgame.CompiledActionTree;
 import net.funkyjava.gametheory.games.nlhe.HoldEm;
+import net.funkyjava.gametheory.games.nlhe.HoldEmStateGame;
 import net.funkyjava.gametheory.gameutil.poker.bets.NLHand;
 import net.funkyjava.gametheory.gameutil.poker.bets.NLHandParser;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLState;
 import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLAbstractedBetTree;
 import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeAbstractor;
 import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeNode;
 import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLPushFoldBetTreeAbstractor;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLStateBetTreeAbstractor;
 import net.funkyjava.gametheory.gameutil.poker.he.evaluators.HUPreflopEquityTables;
+import net.funkyjava.gametheory.io.ChannelReader;
+import net.funkyjava.gametheory.io.ChannelWriter;
 
 @Slf4j
 public class HEHUPreflopCSCFRM {
@@ -41,6 +70,23 @@ public class HEHUPreflopCSCFRM {
   private static final String interactiveArg = "-i";
   private static final String handPrefix = "hand=";
   private static final String betTreePathPrefix = "tree=";
+  private static final String storagePrefix = "storage=";
+  private static final String modePrefix = "mode=";
+  private static final String batchSizePrefix = "batch=";
+  private static final String discountingPrefix = "discounting=";
+  private static final String pruningPrefix = "prune=";
+  /**
+   * Period in iterations of the full traversals when pruning
+   */
+  private static final int pruningRevisitPeriod = 100;
+  private static final String mappedFileSuffix = ".mmap";
+  private static final String checkpointPrefix = "checkpoint=";
+  private static final String checkpointFileSuffix = ".ckpt";
+  /**
+   * Number of incremental checkpoints appended before the checkpoints file is compacted
+   */
+  private static final int checkpointCompactionPeriod = 10;
+  private static final String metricsPrefix = "metrics=";
 
   private static HUPreflopEquityTables getTables(final String path)
       throws IOException, ClassNotFoundException {
@@ -51,6 +97,134 @@ public class HEHUPreflopCSCFRM {
     }
   }
 
+  /**
+   * Training modes
+   */
+  public static enum TrainingMode {
+    /**
+     * Chance sampling with the lock-free striped synchronizer
+     */
+    STRIPED,
+    /**
+     * External sampling with the lock-free striped synchronizer
+     */
+    EXTERNAL,
+    /**
+     * Chance sampling on the compiled action tree with the lock-free striped synchronizer
+     */
+    COMPILED,
+    /**
+     * Chance sampling without chances reservation
+     */
+    HOGWILD,
+    /**
+     * Chance sampling with chances partitioned between the threads by epochs
+     */
+    PARTITIONED,
+    /**
+     * Vector iterations on all hole cards at once, on a single thread
+     */
+    VECTOR,
+    /**
+     * Full CFR iterations enumerating all hole cards couples, in parallel over player 0's hole
+     * cards
+     */
+    EXACT
+  }
+
+  /**
+   * Get the training mode matching a mode argument : "striped" (default), "external",
+   * "compiled", "hogwild", "partitioned", "vector" or "exact"
+   * 
+   * @param mode the mode argument or null
+   * @return the training mode
+   */
+  public static TrainingMode getTrainingMode(final String mode) {
+    if (mode == null) {
+      return TrainingMode.STRIPED;
+    }
+    try {
+      return TrainingMode.valueOf(mode.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          "Unknown mode \"" + mode
+          + "\", expected one of striped, external, compiled, hogwild, partitioned, vector, exact",
+          e);
+    }
+  }
+
+  /**
+   * Get the storage provider matching a storage argument : "double" (default), "float" or
+   * "float-regret"
+   * 
+   * @param storage the storage argument or null
+   * @return the storage provider
+   */
+  public static CSCFRMStorageProvider getStorageProvider(final String storage) {
+    return getStorageProvider(storage, null);
+  }
+
+  /**
+   * Get the storage provider matching a storage argument : "double" (default), "float",
+   * "float-regret", "atomic", "chunked" or "mmap". The "chunked" storage allocates values on first
+   * touch. The "mmap" storage maps the file at the svg path suffixed with ".mmap".
+   * 
+   * @param storage the storage argument or null
+   * @param svgPath the save path, required for the "mmap" storage
+   * @return the storage provider
+   */
+  public static CSCFRMStorageProvider getStorageProvider(final String storage,
+      final String svgPath) {
+    if (storage == null) {
+      return CSCFRMDoubleArrayStorage::new;
+    }
+    switch (storage) {
+      case "double":
+        return CSCFRMDoubleArrayStorage::new;
+      case "float":
+        return CSCFRMFloatArrayStorage::new;
+      case "float-regret":
+        return CSCFRMFloatRegretArrayStorage::new;
+      case "atomic":
+        return CSCFRMAtomicDoubleArrayStorage::new;
+      case "chunked":
+        return CSCFRMChunkedStorage::new;
+      case "mmap":
+        Preconditions.checkArgument(svgPath != null, "The mmap storage requires a svg path");
+        return CSCFRMMappedStorage.provider(Paths.get(svgPath + mappedFileSuffix));
+      default:
+        throw new IllegalArgumentException("Unknown storage \"" + storage
+            + "\", expected one of double, float, float-regret, atomic, chunked, mmap");
+    }
+  }
+
+  /**
+   * Get the discounting policy matching a discounting argument : "cfr+" (default), "linear", "dcfr"
+   * (α = 1.5, β = 0, γ = 2) or "dcfr:α,β,γ"
+   * 
+   * @param discounting the discounting argument or null
+   * @return the discounting policy
+   */
+  public static CSCFRMDiscounting getDiscounting(final String discounting) {
+    if (discounting == null || discounting.equals("cfr+")) {
+      return CSCFRMDiscounting.cfrPlus();
+    }
+    if (discounting.equals("linear")) {
+      return CSCFRMDiscounting.linear();
+    }
+    if (discounting.equals("dcfr")) {
+      return CSCFRMDiscounting.discounted(1.5, 0, 2);
+    }
+    if (discounting.startsWith("dcfr:")) {
+      final String[] params = discounting.substring(5).split(",");
+      Preconditions.checkArgument(params.length == 3, "Expected dcfr:alpha,beta,gamma");
+      return CSCFRMDiscounting.discounted(Double.parseDouble(params[0]),
+          Double.parseDouble(params[1]), Double.parseDouble(params[2]));
+    }
+    throw new IllegalArgumentException("Unknown discounting \"" + discounting
+        + "\", expected one of cfr+, linear, dcfr, dcfr:alpha,beta,gamma");
+  }
+
   public static void main(String[] args) throws FileNotFoundException, IOException {
     final Optional<String> handOpt = getArgument(args, handPrefix);
     if (!handOpt.isPresent()) {
@@ -73,14 +247,34 @@ public class HEHUPreflopCSCFRM {
     final Optional<String> svgOpt = getArgument(args, svgPathPrefix);
     log.info("Creating CSCFRM environment");
     final Optional<String> betTreeOpt = getArgument(args, betTreePathPrefix);
-    HEHUPreflopCSCFRM cfrmTmp;
-    if (betTreeOpt.isPresent()) {
-      final NLBetTreeAbstractor abstractor = NLBetTreeAbstractor.read(betTreeOpt.get());
-      cfrmTmp = new HEHUPreflopCSCFRM(hand, abstractor, tables, svgOpt.orNull());
-    } else {
-      cfrmTmp = new HEHUPreflopCSCFRM(hand, tables, svgOpt.orNull());
-    }
+    final CSCFRMStorageProvider storageProvider =
+        getStorageProvider(getArgument(args, storagePrefix).orNull(), svgOpt.orNull());
+    final NLBetTreeAbstractor abstractor = betTreeOpt.isPresent()
+        ? NLBetTreeAbstractor.read(betTreeOpt.get()) : new NLPushFoldBetTreeAbstractor();
+    final HEHUPreflopCSCFRM cfrmTmp =
+        new HEHUPreflopCSCFRM(hand, abstractor, tables, svgOpt.orNull(), storageProvider,
+            getTrainingMode(getArgument(args, modePrefix).orNull()),
+            getDiscounting(getArgument(args, discountingPrefix).orNull()),
+            getArgument(args, pruningPrefix).transform(Double::parseDouble));
     final HEHUPreflopCSCFRM cfrm = cfrmTmp;
+    final Optional<Integer> batchSizeOpt = getStrictlyPositiveIntArgument(args, batchSizePrefix);
+    if (batchSizeOpt.isPresent()) {
+      cfrm.runner.setBatchSize(batchSizeOpt.get());
+    }
+    final Optional<Integer> checkpointOpt =
+        getStrictlyPositiveIntArgument(args, checkpointPrefix);
+    if (checkpointOpt.isPresent()) {
+      cfrm.enableCheckpoints(checkpointOpt.get());
+    }
+    final Optional<Integer> metricsOpt = getStrictlyPositiveIntArgument(args, metricsPrefix);
+    if (metricsOpt.isPresent()) {
+      try {
+        cfrm.runner.getMetrics().register(HEHUPreflopCSCFRM.class.getSimpleName());
+      } catch (JMException e) {
+        log.warn("Unable to register the metrics MBean", e);
+      }
+      cfrm.runner.enableMetricsLog(metricsOpt.get() * 1000L);
+    }
     try {
       cfrm.load();
     } catch (IOException e) {
@@ -181,28 +375,154 @@ public class HEHUPreflopCSCFRM {
   }
 
   private final HUPreflopEquityTables tables;
+  private final NLHand hand;
+  private final NLBetTreeAbstractor betTreeAbstractor;
+  private final HEHUPreflopEquityProvider equityProvider;
+  /**
+   * The CSCFRM data, built from a {@link HoldEmStateGame} when the abstractor can abstract states
+   */
   @Getter
-  private final CSCFRMData<NLBetTreeNode, HEPreflopChances> data;
+  private final CSCFRMData<?, HEPreflopChances> data;
+  /**
+   * The same data when built from the bet tree. Otherwise a view on the data's storage, built from
+   * the bet tree on the first print of the strategies.
+   */
+  private CSCFRMData<NLBetTreeNode, HEPreflopChances> betTreeData;
   @Getter
   private final CSCFRMRunner<HEPreflopChances> runner;
   private final String svgPath;
+  private final CSCFRMHogwildChancesSynchronizer<HEPreflopChances> hogwildSynchronizer;
+  private final CSCFRMPruning pruning;
+  private CSCFRMCheckpointer checkpointer = null;
 
   public HEHUPreflopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
       final HUPreflopEquityTables tables, final String svgPath) {
+    this(hand, betTreeAbstractor, tables, svgPath, CSCFRMDoubleArrayStorage::new);
+  }
+
+  public HEHUPreflopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
+      final HUPreflopEquityTables tables, final String svgPath,
+      final CSCFRMStorageProvider storageProvider) {
+    this(hand, betTreeAbstractor, tables, svgPath, storageProvider, TrainingMode.STRIPED);
+  }
+
+  public HEHUPreflopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
+      final HUPreflopEquityTables tables, final String svgPath,
+      final CSCFRMStorageProvider storageProvider, final TrainingMode mode) {
+    this(hand, betTreeAbstractor, tables, svgPath, storageProvider, mode,
+        CSCFRMDiscounting.cfrPlus());
+  }
+
+  public HEHUPreflopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
+      final HUPreflopEquityTables tables, final String svgPath,
+      final CSCFRMStorageProvider storageProvider, final TrainingMode mode,
+      final CSCFRMDiscounting discounting) {
+    this(hand, betTreeAbstractor, tables, svgPath, storageProvider, mode, discounting,
+        Optional.absent());
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param hand the hand settings
+   * @param betTreeAbstractor the bet tree abstractor. When it's a {@link NLStateBetTreeAbstractor},
+   *        like the default push/fold one, the game walks {@link NLState}s and no bet tree is built
+   *        until the strategies are printed.
+   * @param tables the HU preflop equity tables
+   * @param svgPath the save path or null
+   * @param storageProvider the storage provider
+   * @param mode the training mode
+   * @param discounting the regret update and averaging policy
+   * @param pruningThreshold when present, the regret threshold under which zero probability
+   *        actions are pruned. Only for chance sampling modes.
+   */
+  public HEHUPreflopCSCFRM(final NLHand hand, final NLBetTreeAbstractor betTreeAbstractor,
+      final HUPreflopEquityTables tables, final String svgPath,
+      final CSCFRMStorageProvider storageProvider, final TrainingMode mode,
+      final CSCFRMDiscounting discounting, final Optional<Double> pruningThreshold) {
+    Preconditions.checkArgument(
+        !pruningThreshold.isPresent() || mode == TrainingMode.STRIPED
+            || mode == TrainingMode.HOGWILD || mode == TrainingMode.PARTITIONED,
+        "Pruning is only available for the chance sampling modes");
     this.tables = tables;
     this.svgPath = svgPath;
-    final HEHUPreflopEquityProvider equityProvider = new HEHUPreflopEquityProvider(tables);
-    final NLAbstractedBetTree tree = new NLAbstractedBetTree(hand, betTreeAbstractor, false);
-    Preconditions.checkArgument(tree.nbOfBetRounds <= 1,
-        "The bet tree should not have more than one bet rounds");
-    final HoldEm<HEPreflopChances> game = new HoldEm<>(tree, new int[] {169}, equityProvider);
-    final HEPreflopChancesProducer chancesProducer = new HEPreflopChancesProducer(2);
+    this.hand = hand;
+    this.betTreeAbstractor = betTreeAbstractor;
+    final HEHUPreflopEquityProvider equityProvider =
+        this.equityProvider = new HEHUPreflopEquityProvider(tables);
     final int[][] chancesSizes = new int[][] {{169, 169}};
-    final CSCFRMChancesSynchronizer<HEPreflopChances> synchronizer =
-        new CSCFRMMutexChancesSynchronizer<>(chancesProducer, chancesSizes);
-    final CSCFRMData<NLBetTreeNode, HEPreflopChances> data = this.data = new CSCFRMData<>(game);
-    final int nbTrainerThreads = Math.max(Runtime.getRuntime().availableProcessors(), 1);
-    this.runner = new CSCFRMRunner<>(data, synchronizer, nbTrainerThreads);
+    final CSCFRMChancesSynchronizer<HEPreflopChances> synchronizer;
+    CSCFRMTrainerProvider<HEPreflopChances> trainerProvider = CSCFRMTrainer::new;
+    int nbTrainerThreads = Math.max(Runtime.getRuntime().availableProcessors(), 1);
+    switch (mode) {
+      case HOGWILD:
+        synchronizer = this.hogwildSynchronizer = new CSCFRMHogwildChancesSynchronizer<>(
+            () -> new HEPreflopChancesProducer(2), chancesSizes, true);
+        break;
+      case PARTITIONED:
+        this.hogwildSynchronizer = null;
+        synchronizer = new CSCFRMPartitionedChancesSynchronizer<>(
+            () -> new HEPreflopChancesProducer(2), chancesSizes, nbTrainerThreads);
+        break;
+      case VECTOR:
+        // Each vector iteration updates all nodes : train on a single thread
+        final HEHUPreflopVectorChances vectorChances = new HEHUPreflopVectorChances(tables);
+        this.hogwildSynchronizer = null;
+        synchronizer = new CSCFRMHogwildChancesSynchronizer<>(
+            () -> new HEPreflopVectorChancesProducer(vectorChances), chancesSizes, false);
+        trainerProvider = CSCFRMVectorTrainer::new;
+        nbTrainerThreads = 1;
+        break;
+      case EXACT:
+        // Each iteration enumerates all chances with its own workers : the drawn chances are
+        // ignored
+        final HEHUPreflopChancesEnumeration enumeration = new HEHUPreflopChancesEnumeration(tables);
+        this.hogwildSynchronizer = null;
+        synchronizer = new CSCFRMHogwildChancesSynchronizer<>(
+            () -> new HEPreflopChancesProducer(2), chancesSizes, false);
+        trainerProvider = cscfrmData -> new CSCFRMEnumerationTrainer<>(cscfrmData, enumeration);
+        nbTrainerThreads = 1;
+        break;
+      case EXTERNAL:
+        this.hogwildSynchronizer = null;
+        synchronizer = new CSCFRMStripedChancesSynchronizer<>(
+            () -> new HEPreflopChancesProducer(2), chancesSizes);
+        trainerProvider = CSCFRMExternalSamplingTrainer::new;
+        break;
+      case COMPILED:
+        this.hogwildSynchronizer = null;
+        synchronizer = new CSCFRMStripedChancesSynchronizer<>(
+            () -> new HEPreflopChancesProducer(2), chancesSizes);
+        break;
+      default:
+        this.hogwildSynchronizer = null;
+        synchronizer = new CSCFRMStripedChancesSynchronizer<>(
+            () -> new HEPreflopChancesProducer(2), chancesSizes);
+    }
+    if (betTreeAbstractor instanceof NLStateBetTreeAbstractor) {
+      this.betTreeData = null;
+      this.data = new CSCFRMData<>(
+          new HoldEmStateGame<>(NLState.fromHand(hand),
+              (NLStateBetTreeAbstractor) betTreeAbstractor, new int[] {169}, equityProvider, false),
+          storageProvider, discounting);
+    } else {
+      this.data = this.betTreeData = new CSCFRMData<>(betTreeGame(), storageProvider, discounting);
+    }
+    final CSCFRMData<?, HEPreflopChances> data = this.data;
+    if (pruningThreshold.isPresent()) {
+      final CSCFRMPruning pruning = this.pruning =
+          new CSCFRMPruning(data.getLayout(), pruningThreshold.get(), pruningRevisitPeriod);
+      trainerProvider = cscfrmData -> new CSCFRMTrainer<>(cscfrmData, pruning);
+    } else {
+      this.pruning = null;
+    }
+    if (mode == TrainingMode.COMPILED) {
+      // Compiled once for all trainers
+      final CompiledActionTree<HEPreflopChances> compiledTree =
+          new CompiledActionTree<>(data.getGameActionTree());
+      trainerProvider = cscfrmData -> new CSCFRMCompiledTrainer<>(cscfrmData, compiledTree);
+    }
+    this.runner = new CSCFRMRunner<>(data, synchronizer, nbTrainerThreads, trainerProvider);
   }
 
   public HEHUPreflopCSCFRM(final NLHand hand, final HUPreflopEquityTables tables,
@@ -210,6 +530,55 @@ public class HEHUPreflopCSCFRM {
     this(hand, new NLPushFoldBetTreeAbstractor(), tables, svgPath);
   }
 
+  private HoldEm<HEPreflopChances> betTreeGame() {
+    final NLAbstractedBetTree tree = new NLAbstractedBetTree(hand, betTreeAbstractor, false);
+    Preconditions.checkArgument(tree.nbOfBetRounds <= 1,
+        "The bet tree should not have more than one bet rounds");
+    return new HoldEm<>(tree, new int[] {169}, equityProvider);
+  }
+
+  /**
+   * Get the data indexed by bet tree nodes. When the data was built from states, the bet tree is
+   * built once and its layout, identical to the states one, addresses the same storage. The
+   * iterations count and the utility sums are copied at each call.
+   */
+  private CSCFRMData<NLBetTreeNode, HEPreflopChances> betTreeData() {
+    final CSCFRMData<?, HEPreflopChances> data = this.data;
+    if (betTreeData == null) {
+      log.info("Building the bet tree to map the states nodes");
+      final CSCFRMStorage storage = data.getStorage();
+      final CSCFRMData<NLBetTreeNode, HEPreflopChances> view =
+          new CSCFRMData<>(betTreeGame(), layout -> storage, data.getDiscounting());
+      Preconditions.checkState(
+          view.getLayout().getSize() == data.getLayout().getSize() && Arrays.deepEquals(
+              view.getLayout().getNodesNbActions(), data.getLayout().getNodesNbActions()),
+          "The bet tree doesn't match the states tree");
+      betTreeData = view;
+    }
+    final CSCFRMData<NLBetTreeNode, HEPreflopChances> betTreeData = this.betTreeData;
+    if (betTreeData != data) {
+      betTreeData.getIterations().set(data.getIterations().get());
+      final int nbPlayers = data.getNbPlayers();
+      for (int i = 0; i < nbPlayers; i++) {
+        betTreeData.getUtilitySum().set(i, data.getUtilitySum().get(i));
+      }
+    }
+    return betTreeData;
+  }
+
+  /**
+   * Take incremental checkpoints in the svg path suffixed with ".ckpt" while training. Must be
+   * called before {@link #load()} to restore the last checkpoints.
+   * 
+   * @param periodSeconds the delay between two checkpoints in seconds
+   */
+  public void enableCheckpoints(final int periodSeconds) {
+    Preconditions.checkArgument(svgPath != null, "Checkpoints require a svg path");
+    final CSCFRMCheckpointer checkpointer = this.checkpointer = new CSCFRMCheckpointer(data,
+        Paths.get(svgPath + checkpointFileSuffix), checkpointCompactionPeriod);
+    runner.enableCheckpoints(checkpointer, periodSeconds * 1000L);
+  }
+
   public void load() throws IOException {
     if (svgPath == null) {
       log.warn("No svg path provided, not loading");
@@ -218,14 +587,28 @@ public class HEHUPreflopCSCFRM {
     final File file = Paths.get(svgPath).toFile();
     if (!file.exists()) {
       log.warn("No file at path {}, may be initial run", svgPath);
+      restoreCheckpoints();
       return;
     }
-    try (final FileInputStream fis = new FileInputStream(file)) {
-      data.fill(fis);
+    try (final ChannelReader reader = ChannelReader.open(file.toPath())) {
+      if (data.getStorage() instanceof CSCFRMMappedStorage) {
+        // Values are already mapped, only the state is read
+        data.fillState(reader.getDataInputStream());
+      } else {
+        data.fill(reader);
+      }
     } catch (IOException e) {
       log.error("Failed to load file at path {}", svgPath);
       throw e;
     }
+    restoreCheckpoints();
+  }
+
+  private void restoreCheckpoints() throws IOException {
+    if (checkpointer != null && checkpointer.restore()) {
+      log.info("Restored checkpoints from {}, {} iterations", checkpointer.getPath(),
+          data.getIterations().get());
+    }
   }
 
   public void save() throws IOException {
@@ -240,12 +623,22 @@ public class HEHUPreflopCSCFRM {
         return;
       }
     }
-    try (final FileOutputStream fos = new FileOutputStream(file)) {
-      data.write(fos);
+    try (final ChannelWriter writer = ChannelWriter.open(file.toPath())) {
+      if (data.getStorage() instanceof CSCFRMMappedStorage) {
+        // Writing the state applies the pending discounts to the mapped values before forcing them
+        data.writeState(writer.getDataOutputStream());
+        ((CSCFRMMappedStorage) data.getStorage()).force();
+      } else {
+        data.write(writer);
+      }
     } catch (IOException e) {
       log.error("Failed to save file at path {}", svgPath);
       throw e;
     }
+    if (checkpointer != null) {
+      // Keep the checkpoints consistent with the saved data
+      checkpointer.compact();
+    }
   }
 
   private static Map<Integer, String> getPlayersNames() {
@@ -256,12 +649,20 @@ public class HEHUPreflopCSCFRM {
   }
 
   public void printStrategies() {
-    HEPreflopHelper.printStrategies(data, tables.getHoleCardsIndexer(), getPlayersNames());
+    log.info("Average regrets {}", Arrays.toString(data.getAverageRegrets()));
+    if (hogwildSynchronizer != null) {
+      log.info("Hogwild collision rate {}", hogwildSynchronizer.getCollisionRate());
+    }
+    if (pruning != null) {
+      log.info("Pruned subtrees ratio {}", pruning.getPrunedRatio());
+    }
+    HEPreflopHelper.printStrategies(betTreeData(), tables.getHoleCardsIndexer(),
+        getPlayersNames());
   }
 
   public void writeStrategiesExcel(String pathStr) {
     try {
-      final Workbook wb = HEPreflopExcel.createStrategiesWorkBook(data,
+      final Workbook wb = HEPreflopExcel.createStrategiesWorkBook(betTreeData(),
           tables.getHoleCardsIndexer(), getPlayersNames());
       try (final FileOutputStream fos = new FileOutputStream(pathStr)) {
         wb.write(fos);
@@ -0,0 +1,50 @@
+package net.funkyjava.gametheory.games.nlhe.preflop;
+
+import java.util.function.ObjDoubleConsumer;
+
+import net.funkyjava.gametheory.cscfrm.CSCFRMChancesEnumeration;
+import net.funkyjava.gametheory.gameutil.poker.he.evaluators.HUPreflopEquityTables;
+
+/**
+ * Enumeration of the HU preflop hole cards indexes couples with their joint probability. There is
+ * one part per player 0's hole cards index.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class HEHUPreflopChancesEnumeration
+    implements CSCFRMChancesEnumeration<HEPreflopChances> {
+
+  private static final int nbHoleCards = 169;
+
+  private final double[][] jointWeights;
+
+  /**
+   * Constructor
+   *
+   * @param tables the computed equity tables providing the hole cards couples counts
+   */
+  public HEHUPreflopChancesEnumeration(final HUPreflopEquityTables tables) {
+    this.jointWeights = HEHUPreflopVectorChances.jointWeights(tables);
+  }
+
+  @Override
+  public int getNbParts() {
+    return nbHoleCards;
+  }
+
+  @Override
+  public void enumerate(final int part, final ObjDoubleConsumer<HEPreflopChances> consumer) {
+    final int[] holeCards = new int[] {part, 0};
+    final HEPreflopChances chances = new HEPreflopChances(new int[][] {holeCards});
+    final double[] weights = jointWeights[part];
+    for (int i = 0; i < nbHoleCards; i++) {
+      final double weight = weights[i];
+      if (weight > 0) {
+        holeCards[1] = i;
+        consumer.accept(chances, weight);
+      }
+    }
+  }
+
+}
@@ -2,17 +2,22 @@ package net.funkyjava.gametheory.games.nlhe.preflop;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
-import net.funkyjava.gametheory.games.nlhe.HEEquityProvider;
+import net.funkyjava.gametheory.games.nlhe.HEVectorEquityProvider;
 import net.funkyjava.gametheory.gameutil.poker.he.evaluators.HUPreflopEquityTables;
 
-public class HEHUPreflopEquityProvider implements HEEquityProvider<HEPreflopChances> {
+public class HEHUPreflopEquityProvider implements HEVectorEquityProvider<HEPreflopChances> {
 
   final double[][][] table;
+  /**
+   * Joint probability times equity indexed by player, player's hole cards, opponent's hole cards
+   */
+  private final double[][][] weightedEquities;
 
   public HEHUPreflopEquityProvider(final HUPreflopEquityTables tables) {
     checkArgument(tables.isComputed(), "HU preflop equity tables are not computed");
     final double[][] baseTable = tables.getReducedEquity();
     this.table = expand(baseTable);
+    this.weightedEquities = weight(baseTable, HEHUPreflopVectorChances.jointWeights(tables));
   }
 
   private final static double[][][] expand(final double[][] baseTable) {
@@ -28,6 +33,18 @@ public class HEHUPreflopEquityProvider implements HEEquityProvider<HEPreflopChan
     return table;
   }
 
+  private final static double[][][] weight(final double[][] baseTable,
+      final double[][] jointWeights) {
+    final double[][][] res = new double[2][169][169];
+    for (int i = 0; i < 169; i++) {
+      for (int j = 0; j < 169; j++) {
+        res[0][i][j] = jointWeights[i][j] * baseTable[i][j];
+        res[1][j][i] = jointWeights[i][j] * (1 - baseTable[i][j]);
+      }
+    }
+    return res;
+  }
+
   @Override
   public double[] getEquity(final int betRoundIndex, final HEPreflopChances chances,
       boolean[] playersToConsider) {
@@ -35,4 +52,19 @@ public class HEHUPreflopEquityProvider implements HEEquityProvider<HEPreflopChan
     return table[playersChances[0]][playersChances[1]];
   }
 
+  @Override
+  public void addWeightedEquities(final int betRoundIndex, final HEPreflopChances chances,
+      final boolean[] playersToConsider, final int player, final double[] opponentReach,
+      final double factor, final double[] result) {
+    final double[][] weightedEquities = this.weightedEquities[player];
+    for (int i = 0; i < 169; i++) {
+      final double[] row = weightedEquities[i];
+      double sum = 0;
+      for (int j = 0; j < 169; j++) {
+        sum += row[j] * opponentReach[j];
+      }
+      result[i] += factor * sum;
+    }
+  }
+
 }
@@ -0,0 +1,91 @@
+package net.funkyjava.gametheory.games.nlhe.preflop;
+
+import lombok.Getter;
+import net.funkyjava.gametheory.cscfrm.CSCFRMVectorChances;
+import net.funkyjava.gametheory.gameutil.poker.he.evaluators.HUPreflopEquityTables;
+
+/**
+ * HU preflop chances for vector trainers : there is no public chance, the private states of each
+ * player are the 169 hole cards indexes and their joint probabilities take cards removal into
+ * account.
+ * 
+ * @author Pierre Mardon
+ *
+ */
+public class HEHUPreflopVectorChances extends HEPreflopChances implements CSCFRMVectorChances {
+
+  private static final int nbHoleCards = 169;
+
+  /**
+   * Joint probability of the hole cards indexed by player 0's and player 1's hole cards indexes
+   */
+  @Getter
+  private final double[][] jointWeights;
+  @Getter
+  private final int[][][] privateStatesChances;
+
+  /**
+   * Constructor
+   * 
+   * @param tables the computed equity tables providing the hole cards couples counts
+   */
+  public HEHUPreflopVectorChances(final HUPreflopEquityTables tables) {
+    super(new int[1][0]);
+    this.jointWeights = jointWeights(tables);
+    final int[][][] privateStatesChances = this.privateStatesChances = new int[1][2][nbHoleCards];
+    for (int i = 0; i < nbHoleCards; i++) {
+      privateStatesChances[0][0][i] = privateStatesChances[0][1][i] = i;
+    }
+  }
+
+  /**
+   * Compute the joint probability of each couple of hole cards indexes
+   * 
+   * @param tables the computed equity tables providing the hole cards couples counts
+   * @return the joint probabilities indexed by player 0's and player 1's hole cards indexes
+   */
+  public static double[][] jointWeights(final HUPreflopEquityTables tables) {
+    final int[][] counts = tables.getReducedCounts();
+    long total = 0;
+    for (int i = 0; i < nbHoleCards; i++) {
+      for (int j = 0; j < nbHoleCards; j++) {
+        total += counts[i][j];
+      }
+    }
+    final double[][] res = new double[nbHoleCards][nbHoleCards];
+    for (int i = 0; i < nbHoleCards; i++) {
+      for (int j = 0; j < nbHoleCards; j++) {
+        res[i][j] = counts[i][j] / (double) total;
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public void weightOpponentReach(final int player, final double[] opponentReach,
+      final double[] weights) {
+    final double[][] jointWeights = this.jointWeights;
+    if (player == 0) {
+      for (int i = 0; i < nbHoleCards; i++) {
+        final double[] row = jointWeights[i];
+        double sum = 0;
+        for (int j = 0; j < nbHoleCards; j++) {
+          sum += row[j] * opponentReach[j];
+        }
+        weights[i] = sum;
+      }
+    } else {
+      for (int j = 0; j < nbHoleCards; j++) {
+        weights[j] = 0;
+      }
+      for (int i = 0; i < nbHoleCards; i++) {
+        final double[] row = jointWeights[i];
+        final double reach = opponentReach[i];
+        for (int j = 0; j < nbHoleCards; j++) {
+          weights[j] += row[j] * reach;
+        }
+      }
+    }
+  }
+
+}
@@ -1,23 +1,49 @@
 package net.funkyjava.gametheory.games.nlhe.preflop;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
+
+import org.apache.commons.math3.random.RandomGenerator;
 
 import net.funkyjava.gametheory.cscfrm.CSCFRMChancesProducer;
 import net.funkyjava.gametheory.gameutil.cards.Deck52Cards;
+import net.funkyjava.gametheory.gameutil.cards.SplitMixRandomGenerator;
 import net.funkyjava.gametheory.gameutil.poker.he.indexing.waugh.WaughIndexer;
 
+/**
+ * Preflop chances producer. Each instance has its own random generator, indexer and recycled
+ * chances pool : create one per thread.
+ *
+ * @author Pierre Mardon
+ *
+ */
 public class HEPreflopChancesProducer implements CSCFRMChancesProducer<HEPreflopChances> {
 
   private final int nbPlayers;
-  private final List<HEPreflopChances> chancesCache = new LinkedList<>();
+  private HEPreflopChances[] chancesPool = new HEPreflopChances[16];
+  private int poolSize = 0;
   private final WaughIndexer preflopIndexer = new WaughIndexer(new int[] {2});
   private final int[][] allCards;
   private final int[][][] eachPlayerCardsGroups;
   private final Deck52Cards deck = new Deck52Cards(preflopIndexer.getCardsSpec());
 
+  /**
+   * Constructor with a new independent random stream
+   *
+   * @param nbPlayers the number of players
+   */
   public HEPreflopChancesProducer(final int nbPlayers) {
+    this(nbPlayers, new SplitMixRandomGenerator());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nbPlayers the number of players
+   * @param random the random generator, only used by this producer
+   */
+  public HEPreflopChancesProducer(final int nbPlayers, final RandomGenerator random) {
     this.nbPlayers = nbPlayers;
+    deck.setRandom(random);
     final int[][] allCards = this.allCards = new int[nbPlayers][2];
     final int[][][] eachPlayerCardsGroups = this.eachPlayerCardsGroups = new int[nbPlayers][1][];
     for (int i = 0; i < nbPlayers; i++) {
@@ -29,17 +55,16 @@ public class HEPreflopChancesProducer implements CSCFRMChancesProducer<HEPreflop
   public HEPreflopChances produceChances() {
     final int[][] allCards = this.allCards;
     final int nbPlayers = this.nbPlayers;
-    final List<HEPreflopChances> chancesCache = this.chancesCache;
     final WaughIndexer preflopIndexer = this.preflopIndexer;
     final int[][][] eachPlayerCardsGroups = this.eachPlayerCardsGroups;
     deck.oneShotDeckDraw(allCards);
     HEPreflopChances chances;
     int[][] playersChances;
-    if (chancesCache.isEmpty()) {
+    if (poolSize == 0) {
       playersChances = new int[1][nbPlayers];
       chances = new HEPreflopChances(playersChances);
     } else {
-      chances = chancesCache.remove(0);
+      chances = chancesPool[--poolSize];
       playersChances = chances.getPlayersChances();
     }
     final int[] preflopChances = playersChances[0];
@@ -51,7 +76,10 @@ public class HEPreflopChancesProducer implements CSCFRMChancesProducer<HEPreflop
 
   @Override
   public void endedUsing(HEPreflopChances chances) {
-    chancesCache.add(chances);
+    if (poolSize == chancesPool.length) {
+      chancesPool = Arrays.copyOf(chancesPool, 2 * poolSize);
+    }
+    chancesPool[poolSize++] = chances;
   }
 
 }
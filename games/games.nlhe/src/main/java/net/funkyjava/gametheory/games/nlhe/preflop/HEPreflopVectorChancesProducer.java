@@ -0,0 +1,33 @@
+package net.funkyjava.gametheory.games.nlhe.preflop;
+
+import net.funkyjava.gametheory.cscfrm.CSCFRMChancesProducer;
+
+/**
+ * Producer for preflop vector trainers : as there is no public chance preflop, the same vector
+ * chances are always produced
+ * 
+ * @author Pierre Mardon
+ *
+ */
+public class HEPreflopVectorChancesProducer implements CSCFRMChancesProducer<HEPreflopChances> {
+
+  private final HEPreflopChances chances;
+
+  /**
+   * Constructor
+   * 
+   * @param chances the vector chances to produce
+   */
+  public HEPreflopVectorChancesProducer(final HEHUPreflopVectorChances chances) {
+    this.chances = chances;
+  }
+
+  @Override
+  public HEPreflopChances produceChances() {
+    return chances;
+  }
+
+  @Override
+  public void endedUsing(final HEPreflopChances chances) {}
+
+}
@@ -0,0 +1,149 @@
+package net.funkyjava.gametheory.games.nlhe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.funkyjava.gametheory.extensiveformgame.ActionTree;
+import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
+import net.funkyjava.gametheory.extensiveformgame.PlayerNode;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLHand;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLHandParser;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLState;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLAbstractedBetTree;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeAbstractor;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeNode;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLPerBetTurnBetTreeAbstractor;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLPushFoldBetTreeAbstractor;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLStateBetTreeAbstractor;
+
+/**
+ * Builds the action trees of {@link HoldEm} and {@link HoldEmStateGame} for the same hands and
+ * abstractors and checks they have the same structure, nodes indexes and payouts
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class HoldEmStateGameTest {
+
+  private static final String perBetTurnTree = "min - allin | allin\nmin - allin | allin\n";
+
+  /**
+   * Stake independent equity that differs between the players, so that swapped pots players change
+   * the payouts
+   */
+  private static final HEEquityProvider<Object> equityProvider = (round, chances, players) -> {
+    final int nbPlayers = players.length;
+    final double[] equity = new double[nbPlayers];
+    double total = 0;
+    for (int p = 0; p < nbPlayers; p++) {
+      if (players[p]) {
+        total += equity[p] = p + 1 + round;
+      }
+    }
+    for (int p = 0; p < nbPlayers; p++) {
+      equity[p] /= total;
+    }
+    return equity;
+  };
+
+  /**
+   * Heads up push/fold
+   */
+  @Test
+  public void testHeadsUpPushFold() {
+    compare("blinds-enable=true sb=10 bb=20|200 sb-300 bb", 1, new NLPushFoldBetTreeAbstractor());
+  }
+
+  /**
+   * Three players push/fold with different stacks, so that side pots are built
+   */
+  @Test
+  public void testSidePotsPushFold() {
+    compare("blinds-enable=true sb=10 bb=20|100 sb-200 bb-45", 1,
+        new NLPushFoldBetTreeAbstractor());
+  }
+
+  /**
+   * Three players with ante and two bet rounds reached by limps and checks
+   */
+  @Test
+  public void testAntePerBetTurn() {
+    compare("blinds-enable=true ante-enable=true ante=5 sb=10 bb=20|300-200 sb-150 bb", 2,
+        new NLPerBetTurnBetTreeAbstractor(
+            new ByteArrayInputStream(perBetTurnTree.getBytes(StandardCharsets.UTF_8))));
+  }
+
+  private static <Abstractor extends NLBetTreeAbstractor & NLStateBetTreeAbstractor> void compare(
+      final String handStr, final int nbRounds, final Abstractor abstractor) {
+    final int[] roundChancesSizes = new int[nbRounds];
+    for (int round = 0; round < nbRounds; round++) {
+      roundChancesSizes[round] = 3 + round;
+    }
+    for (boolean perfectRecall : new boolean[] {false, true}) {
+      final NLHand hand = NLHandParser.parse(handStr, nbRounds);
+      final ActionTree<NLBetTreeNode, Object> handTree =
+          new ActionTree<>(new HoldEm<>(new NLAbstractedBetTree(hand, abstractor, perfectRecall),
+              roundChancesSizes, equityProvider));
+      final ActionTree<NLState, Object> stateTree =
+          new ActionTree<>(new HoldEmStateGame<>(NLState.fromHand(hand), abstractor,
+              roundChancesSizes, equityProvider, perfectRecall));
+      assertEquals(handTree.getMaxDepth(), stateTree.getMaxDepth());
+      assertEquals(handTree.getMaxNbActions(), stateTree.getMaxNbActions());
+      final LinkedActionTreeNode<NLBetTreeNode, Object>[][][] handNodes =
+          handTree.getActionNodes();
+      final LinkedActionTreeNode<NLState, Object>[][][] stateNodes = stateTree.getActionNodes();
+      assertEquals(handNodes.length, stateNodes.length);
+      for (int round = 0; round < handNodes.length; round++) {
+        assertEquals(handNodes[round].length, stateNodes[round].length);
+        for (int player = 0; player < handNodes[round].length; player++) {
+          assertEquals(handNodes[round][player].length, stateNodes[round][player].length);
+        }
+      }
+      compare(handTree.getRoot(), stateTree.getRoot(), new IdentityHashMap<>());
+    }
+  }
+
+  private static void compare(final LinkedActionTreeNode<NLBetTreeNode, Object> handNode,
+      final LinkedActionTreeNode<NLState, Object> stateNode,
+      final Map<LinkedActionTreeNode<NLBetTreeNode, Object>, LinkedActionTreeNode<NLState, Object>>
+      visited) {
+    final LinkedActionTreeNode<NLState, Object> matched = visited.get(handNode);
+    if (matched != null) {
+      // Shared nodes must be shared the same way
+      assertSame(matched, stateNode);
+      return;
+    }
+    visited.put(handNode, stateNode);
+    assertEquals(handNode.getNodeType(), stateNode.getNodeType());
+    switch (handNode.getNodeType()) {
+      case PAYOUTS_NO_CHANCE:
+        assertArrayEquals(handNode.getPayoutsNoChance(), stateNode.getPayoutsNoChance(), 0);
+        return;
+      case CHANCES_PAYOUTS:
+        assertArrayEquals(handNode.getChancesPayouts().getPayouts(null),
+            stateNode.getChancesPayouts().getPayouts(null), 1e-9);
+        return;
+      case PLAYER:
+        final PlayerNode<NLBetTreeNode> handPlayerNode = handNode.getPlayerNode();
+        final PlayerNode<NLState> statePlayerNode = stateNode.getPlayerNode();
+        assertEquals(handPlayerNode.getPlayer(), statePlayerNode.getPlayer());
+        assertEquals(handPlayerNode.getRound(), statePlayerNode.getRound());
+        assertEquals(handPlayerNode.getNbActions(), statePlayerNode.getNbActions());
+        assertEquals(handNode.getPlayerRoundActionIndex(), stateNode.getPlayerRoundActionIndex());
+        assertEquals(handNode.getParents().size(), stateNode.getParents().size());
+        final LinkedActionTreeNode<NLBetTreeNode, Object>[] handChildren = handNode.getChildren();
+        final LinkedActionTreeNode<NLState, Object>[] stateChildren = stateNode.getChildren();
+        for (int action = 0; action < handChildren.length; action++) {
+          compare(handChildren[action], stateChildren[action], visited);
+        }
+    }
+  }
+}
@@ -0,0 +1,303 @@
+package net.funkyjava.gametheory.games.nlhe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.funkyjava.gametheory.cscfrm.CSCFRMChances;
+import net.funkyjava.gametheory.cscfrm.CSCFRMData;
+import net.funkyjava.gametheory.cscfrm.CSCFRMDiscounting;
+import net.funkyjava.gametheory.cscfrm.CSCFRMDoubleArrayStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMLayout;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStrategyWeights;
+import net.funkyjava.gametheory.cscfrm.CSCFRMTrainer;
+import net.funkyjava.gametheory.extensiveformgame.ActionTreeNodeState.NodeType;
+import net.funkyjava.gametheory.extensiveformgame.ActionTreeStrategy;
+import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
+import net.funkyjava.gametheory.extensiveformgame.PlayerNode;
+import net.funkyjava.gametheory.extensiveformgame.Subgame;
+import net.funkyjava.gametheory.extensiveformgame.SubgameDecomposition;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLHandParser;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLAbstractedBetTree;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeNode;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLPerBetTurnBetTreeAbstractor;
+
+/**
+ * Checks that a CSCFRM iteration on the entry weighted subgames of a {@link HoldEm} game, with the
+ * strategy sums weighted by the entry reach, updates the subgames nodes like the whole game
+ * counterfactual regrets and strategy sums of the same strategy
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class HoldEmSubgameDecompositionTest {
+
+  private static final String perBetTurnTree = "min - allin | allin\nmin - allin | allin\n";
+  private static final int[] roundChancesSizes = {3, 2};
+  private static final int nbTrunkIterations = 5;
+
+  /**
+   * Chances of the test, that drive the equity
+   */
+  private static final class TestChances implements CSCFRMChances {
+
+    private final int[][] playersChances;
+
+    private TestChances(final int[][] playersChances) {
+      this.playersChances = playersChances;
+    }
+
+    @Override
+    public int[][] getPlayersChances() {
+      return playersChances;
+    }
+  }
+
+  /**
+   * Stake independent equity that depends on the players chances of the round
+   */
+  private static final HEEquityProvider<TestChances> equityProvider =
+      (round, chances, players) -> {
+        final int[] roundChances = chances.getPlayersChances()[round];
+        final int nbPlayers = players.length;
+        final double[] equity = new double[nbPlayers];
+        double total = 0;
+        for (int p = 0; p < nbPlayers; p++) {
+          if (players[p]) {
+            total += equity[p] = 1 + p + 2 * roundChances[p];
+          }
+        }
+        for (int p = 0; p < nbPlayers; p++) {
+          equity[p] /= total;
+        }
+        return equity;
+      };
+
+  /**
+   * Heads up with perfect recall : each subgame has one entry
+   */
+  @Test
+  public void testHeadsUpPerfectRecall() {
+    check("blinds-enable=true sb=10 bb=20|200 sb-300 bb", true);
+  }
+
+  /**
+   * Heads up with imperfect recall : the flop nodes reached by different preflop lines are merged
+   * in a subgame with multiple entries
+   */
+  @Test
+  public void testHeadsUpImperfectRecall() {
+    check("blinds-enable=true sb=10 bb=20|200 sb-300 bb", false);
+  }
+
+  /**
+   * Three players with imperfect recall, so that the entries weights are products of two
+   * opponents reach
+   */
+  @Test
+  public void testThreePlayersImperfectRecall() {
+    check("blinds-enable=true sb=10 bb=20|300 sb-200 bb-150", false);
+  }
+
+  private static void check(final String handStr, final boolean perfectRecall) {
+    final int nbRounds = roundChancesSizes.length;
+    final HoldEm<TestChances> game = new HoldEm<>(new NLAbstractedBetTree(
+        NLHandParser.parse(handStr, nbRounds), new NLPerBetTurnBetTreeAbstractor(
+            new ByteArrayInputStream(perBetTurnTree.getBytes(StandardCharsets.UTF_8))),
+        perfectRecall), roundChancesSizes, equityProvider);
+    final int nbPlayers = game.getNbPlayers();
+    final List<TestChances> allChances = allChances(nbPlayers);
+    // Train the whole game a few iterations so that its current strategy isn't uniform
+    final CSCFRMData<NLBetTreeNode, TestChances> whole = new CSCFRMData<>(game);
+    final CSCFRMTrainer<TestChances> wholeTrainer = new CSCFRMTrainer<>(whole);
+    for (int i = 0; i < nbTrunkIterations; i++) {
+      for (TestChances chances : allChances) {
+        wholeTrainer.train(chances);
+      }
+    }
+    final ActionTreeStrategy<NLBetTreeNode> strategy =
+        (node, chance) -> strategy(whole, node, chance);
+    final SubgameDecomposition<NLBetTreeNode, TestChances> decomposition =
+        new SubgameDecomposition<>(whole.getGameActionTree(), whole.getRoundChancesSizes(), 1,
+            strategy);
+    final List<Subgame<NLBetTreeNode, TestChances>> subgames = decomposition.getSubgames();
+    assertFalse(subgames.isEmpty());
+    assertEquals(perfectRecall,
+        subgames.stream().allMatch(subgame -> subgame.getEntries().size() == 1));
+    final CSCFRMDiscounting vanilla = new CSCFRMDiscounting(false, Double.POSITIVE_INFINITY,
+        Double.POSITIVE_INFINITY, 0);
+    for (Subgame<NLBetTreeNode, TestChances> subgame : subgames) {
+      final CSCFRMData<NLBetTreeNode, TestChances> data = new CSCFRMData<>(
+          subgame.entryWeightedGame(TestChances::getPlayersChances), CSCFRMDoubleArrayStorage::new,
+          vanilla);
+      final Map<LinkedActionTreeNode<?, ?>, LinkedActionTreeNode<?, ?>> nodes =
+          new IdentityHashMap<>();
+      match(subgame.getRoot(), data.getGameActionTree().getRoot(), nodes);
+      final CSCFRMTrainer<TestChances> trainer =
+          new CSCFRMTrainer<>(data, null, CSCFRMStrategyWeights.entryReach(subgame));
+      for (TestChances chances : allChances) {
+        final Map<LinkedActionTreeNode<?, ?>, double[]> regrets = new IdentityHashMap<>();
+        final Map<LinkedActionTreeNode<?, ?>, double[]> strategySums = new IdentityHashMap<>();
+        final double[] reach = new double[nbPlayers];
+        for (int p = 0; p < nbPlayers; p++) {
+          reach[p] = 1;
+        }
+        reference(whole, whole.getGameActionTree().getRoot(), chances, reach, regrets,
+            strategySums);
+        // Start the subgame iteration from the whole game's current regrets
+        for (LinkedActionTreeNode<?, ?> node : nodes.keySet()) {
+          final long wholeOffset = offset(whole.getLayout(), node, chances);
+          final long offset = offset(data.getLayout(), nodes.get(node), chances);
+          final int nbActions = node.getPlayerNode().getNbActions();
+          for (int action = 0; action < nbActions; action++) {
+            data.getStorage().setRegret(offset + action,
+                whole.getStorage().getRegret(wholeOffset + action));
+            data.getStorage().setStrategySum(offset + action, 0);
+          }
+        }
+        trainer.train(chances);
+        for (LinkedActionTreeNode<?, ?> node : nodes.keySet()) {
+          final long wholeOffset = offset(whole.getLayout(), node, chances);
+          final long offset = offset(data.getLayout(), nodes.get(node), chances);
+          final double[] expectedRegrets = regrets.get(node);
+          final double[] expectedStrategySums = strategySums.get(node);
+          for (int action = 0; action < expectedRegrets.length; action++) {
+            assertEquals(expectedRegrets[action], data.getStorage().getRegret(offset + action)
+                - whole.getStorage().getRegret(wholeOffset + action), 1e-9);
+            assertEquals(expectedStrategySums[action],
+                data.getStorage().getStrategySum(offset + action), 1e-9);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Walk all histories of the whole game with its current strategy and sum per node the
+   * counterfactual regrets and the strategy sums increments
+   */
+  private static double[] reference(final CSCFRMData<NLBetTreeNode, TestChances> whole,
+      final LinkedActionTreeNode<NLBetTreeNode, TestChances> node, final TestChances chances,
+      final double[] reach, final Map<LinkedActionTreeNode<?, ?>, double[]> regrets,
+      final Map<LinkedActionTreeNode<?, ?>, double[]> strategySums) {
+    switch (node.getNodeType()) {
+      case PAYOUTS_NO_CHANCE:
+        return node.getPayoutsNoChance();
+      case CHANCES_PAYOUTS:
+        return node.getChancesPayouts().getPayouts(chances);
+      default:
+        final PlayerNode<NLBetTreeNode> pNode = node.getPlayerNode();
+        final int player = pNode.getPlayer();
+        final int nbActions = pNode.getNbActions();
+        final int nbPlayers = reach.length;
+        final double[] strategy =
+            strategy(whole, node, chances.getPlayersChances()[pNode.getRound()][player]);
+        final double[] util = new double[nbPlayers];
+        final double[] actionsUtil = new double[nbActions];
+        final double playerReach = reach[player];
+        final LinkedActionTreeNode<NLBetTreeNode, TestChances>[] children = node.getChildren();
+        for (int action = 0; action < nbActions; action++) {
+          reach[player] = playerReach * strategy[action];
+          final double[] childUtil =
+              reference(whole, children[action], chances, reach, regrets, strategySums);
+          for (int p = 0; p < nbPlayers; p++) {
+            util[p] += strategy[action] * childUtil[p];
+          }
+          actionsUtil[action] = childUtil[player];
+        }
+        reach[player] = playerReach;
+        double opponentsReach = 1;
+        for (int p = 0; p < nbPlayers; p++) {
+          if (p != player) {
+            opponentsReach *= reach[p];
+          }
+        }
+        final double[] nodeRegrets = regrets.computeIfAbsent(node, n -> new double[nbActions]);
+        final double[] nodeStrategySums =
+            strategySums.computeIfAbsent(node, n -> new double[nbActions]);
+        for (int action = 0; action < nbActions; action++) {
+          nodeRegrets[action] += opponentsReach * (actionsUtil[action] - util[player]);
+          nodeStrategySums[action] += playerReach * strategy[action];
+        }
+        return util;
+    }
+  }
+
+  /**
+   * Regret matching on the whole game's current regrets
+   */
+  private static double[] strategy(final CSCFRMData<NLBetTreeNode, TestChances> whole,
+      final LinkedActionTreeNode<?, ?> node, final int chance) {
+    final PlayerNode<?> pNode = node.getPlayerNode();
+    final int nbActions = pNode.getNbActions();
+    final long offset = whole.getLayout().nodeOffset(pNode.getRound(), pNode.getPlayer(), chance,
+        node.getPlayerRoundActionIndex());
+    final CSCFRMStorage storage = whole.getStorage();
+    final double[] strategy = new double[nbActions];
+    double total = 0;
+    for (int action = 0; action < nbActions; action++) {
+      total += strategy[action] = Math.max(0, storage.getRegret(offset + action));
+    }
+    for (int action = 0; action < nbActions; action++) {
+      strategy[action] = total > 0 ? strategy[action] / total : 1.0 / nbActions;
+    }
+    return strategy;
+  }
+
+  private static long offset(final CSCFRMLayout layout, final LinkedActionTreeNode<?, ?> node,
+      final TestChances chances) {
+    final PlayerNode<?> pNode = node.getPlayerNode();
+    final int round = pNode.getRound();
+    final int player = pNode.getPlayer();
+    return layout.nodeOffset(round, player, chances.getPlayersChances()[round][player],
+        node.getPlayerRoundActionIndex());
+  }
+
+  /**
+   * Map the subgame's player nodes in the whole tree to the nodes of the tree built from it
+   */
+  private static void match(final LinkedActionTreeNode<?, ?> node,
+      final LinkedActionTreeNode<?, ?> subgameNode,
+      final Map<LinkedActionTreeNode<?, ?>, LinkedActionTreeNode<?, ?>> nodes) {
+    if (node.getNodeType() != NodeType.PLAYER || nodes.put(node, subgameNode) != null) {
+      return;
+    }
+    final LinkedActionTreeNode<?, ?>[] children = node.getChildren();
+    final LinkedActionTreeNode<?, ?>[] subgameChildren = subgameNode.getChildren();
+    for (int action = 0; action < children.length; action++) {
+      match(children[action], subgameChildren[action], nodes);
+    }
+  }
+
+  private static List<TestChances> allChances(final int nbPlayers) {
+    final List<TestChances> res = new ArrayList<>();
+    final int nbRounds = roundChancesSizes.length;
+    int nbCombinations = 1;
+    for (int round = 0; round < nbRounds; round++) {
+      for (int p = 0; p < nbPlayers; p++) {
+        nbCombinations *= roundChancesSizes[round];
+      }
+    }
+    for (int i = 0; i < nbCombinations; i++) {
+      final int[][] playersChances = new int[nbRounds][nbPlayers];
+      int rest = i;
+      for (int round = 0; round < nbRounds; round++) {
+        for (int p = 0; p < nbPlayers; p++) {
+          playersChances[round][p] = rest % roundChancesSizes[round];
+          rest /= roundChancesSizes[round];
+        }
+      }
+      res.add(new TestChances(playersChances));
+    }
+    return res;
+  }
+}
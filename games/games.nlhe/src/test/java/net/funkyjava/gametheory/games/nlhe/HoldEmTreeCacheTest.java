@@ -0,0 +1,233 @@
+package net.funkyjava.gametheory.games.nlhe;
+
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.CHANCES_PAYOUTS;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.INDEX;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.NB_ACTIONS;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.NODE_STRIDE;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PAYOUTS_NO_CHANCE;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PLAYER;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.PLAYER_INDEX;
+import static net.funkyjava.gametheory.extensiveformgame.CompiledActionTree.ROUND;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+
+import net.funkyjava.gametheory.cscfrm.CSCFRMChances;
+import net.funkyjava.gametheory.cscfrm.CSCFRMCompiledTrainer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMData;
+import net.funkyjava.gametheory.cscfrm.CSCFRMLayout;
+import net.funkyjava.gametheory.cscfrm.CSCFRMStorage;
+import net.funkyjava.gametheory.extensiveformgame.CompiledActionTree;
+import net.funkyjava.gametheory.extensiveformgame.MappedActionTree;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLHandParser;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLAbstractedBetTree;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeNode;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLPerBetTurnBetTreeAbstractor;
+
+/**
+ * Writes the {@link HoldEmTreeCache} of small games with mapped chunks of a few bytes, so that the
+ * nodes, children and showdowns sections span many chunks, and checks the mapped tree against the
+ * {@link CompiledActionTree} of the same game and that {@link CSCFRMCompiledTrainer} runs the same
+ * iterations on both
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class HoldEmTreeCacheTest {
+
+  private static final String perBetTurnTree = "min - allin | allin\nmin - allin | allin\n";
+  private static final int[] roundChancesSizes = {3, 2};
+  private static final int chunkShift = 7;
+  private static final int nbIterations = 3;
+
+  /**
+   * Chances of the test, that drive the equity
+   */
+  private static final class TestChances implements CSCFRMChances {
+
+    private final int[][] playersChances;
+
+    private TestChances(final int[][] playersChances) {
+      this.playersChances = playersChances;
+    }
+
+    @Override
+    public int[][] getPlayersChances() {
+      return playersChances;
+    }
+  }
+
+  /**
+   * Stake independent equity that depends on the players chances of the round
+   */
+  private static final HEEquityProvider<TestChances> equityProvider =
+      (round, chances, players) -> {
+        final int[] roundChances = chances.getPlayersChances()[round];
+        final int nbPlayers = players.length;
+        final double[] equity = new double[nbPlayers];
+        double total = 0;
+        for (int p = 0; p < nbPlayers; p++) {
+          if (players[p]) {
+            total += equity[p] = 1 + p + 2 * roundChances[p];
+          }
+        }
+        for (int p = 0; p < nbPlayers; p++) {
+          equity[p] /= total;
+        }
+        return equity;
+      };
+
+  /**
+   * Heads up with perfect recall
+   */
+  @Test
+  public void testHeadsUp() throws IOException {
+    check("blinds-enable=true sb=10 bb=20|200 sb-300 bb", true);
+  }
+
+  /**
+   * Three players with ante, side pots and imperfect recall, so that nodes are shared
+   */
+  @Test
+  public void testThreePlayersImperfectRecall() throws IOException {
+    check("blinds-enable=true ante-enable=true ante=5 sb=10 bb=20|300-200 sb-150 bb", false);
+  }
+
+  private static void check(final String handStr, final boolean perfectRecall)
+      throws IOException {
+    final HoldEm<TestChances> game = new HoldEm<>(new NLAbstractedBetTree(
+        NLHandParser.parse(handStr, roundChancesSizes.length), new NLPerBetTurnBetTreeAbstractor(
+            new ByteArrayInputStream(perBetTurnTree.getBytes(StandardCharsets.UTF_8))),
+        perfectRecall), roundChancesSizes, equityProvider);
+    final byte[] key = HoldEmTreeCache.key(handStr, null, roundChancesSizes, perfectRecall);
+    final byte[] otherKey = HoldEmTreeCache.key(handStr, null, roundChancesSizes, !perfectRecall);
+    final Path path = Files.createTempFile("holdem-tree-cache", ".bin");
+    try {
+      HoldEmTreeCache.write(path, key, game, chunkShift);
+      assertFalse(HoldEmTreeCache.open(path, otherKey, equityProvider).isPresent());
+      final Optional<MappedActionTree<TestChances>> cache =
+          HoldEmTreeCache.open(path, key, equityProvider);
+      assertTrue(cache.isPresent());
+      final MappedActionTree<TestChances> mapped = cache.get();
+      final CSCFRMData<NLBetTreeNode, TestChances> compiledData = new CSCFRMData<>(game);
+      final CompiledActionTree<TestChances> compiled =
+          new CompiledActionTree<>(compiledData.getGameActionTree());
+      assertTrue((long) mapped.getNbNodes() * NODE_STRIDE * Integer.BYTES > 4L << chunkShift);
+      final List<TestChances> allChances = allChances(game.getNbPlayers());
+      compare(compiled, mapped, allChances);
+      final CSCFRMData<Integer, TestChances> mappedData = new CSCFRMData<>(mapped);
+      final int[][] chancesSizes = mapped.roundChancesSizes();
+      final CSCFRMLayout layout = new CSCFRMLayout(mapped, chancesSizes);
+      final int[][][] nodesNbActions = compiledData.getLayout().getNodesNbActions();
+      assertTrue(Arrays.deepEquals(nodesNbActions, layout.getNodesNbActions()));
+      assertTrue(Arrays.deepEquals(nodesNbActions, mappedData.getLayout().getNodesNbActions()));
+      assertTrue(Arrays.deepEquals(nodesNbActions,
+          new CSCFRMLayout(compiled, chancesSizes).getNodesNbActions()));
+      final CSCFRMCompiledTrainer<TestChances> compiledTrainer =
+          new CSCFRMCompiledTrainer<>(compiledData, compiled);
+      final CSCFRMCompiledTrainer<TestChances> mappedTrainer =
+          new CSCFRMCompiledTrainer<>(mappedData, mapped);
+      for (int i = 0; i < nbIterations; i++) {
+        for (TestChances chances : allChances) {
+          compiledTrainer.train(chances);
+          mappedTrainer.train(chances);
+        }
+      }
+      final CSCFRMStorage compiledStorage = compiledData.getStorage();
+      final CSCFRMStorage mappedStorage = mappedData.getStorage();
+      final long size = layout.getSize();
+      for (long offset = 0; offset < size; offset++) {
+        assertEquals(compiledStorage.getRegret(offset), mappedStorage.getRegret(offset), 0);
+        assertEquals(compiledStorage.getStrategySum(offset), mappedStorage.getStrategySum(offset),
+            0);
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  private static void compare(final CompiledActionTree<TestChances> compiled,
+      final MappedActionTree<TestChances> mapped, final List<TestChances> allChances) {
+    final int nbPlayers = mapped.getNbPlayers();
+    final int nbNodes = compiled.getNbNodes();
+    assertEquals(nbNodes, mapped.getNbNodes());
+    assertEquals(compiled.getMaxDepth(), mapped.getMaxDepth());
+    assertEquals(compiled.getMaxNbActions(), mapped.getMaxNbActions());
+    for (int round = 0; round < roundChancesSizes.length; round++) {
+      for (int player = 0; player < nbPlayers; player++) {
+        assertEquals(compiled.getNbPlayerNodes(round, player),
+            mapped.getNbPlayerNodes(round, player));
+      }
+    }
+    final double[] compiledPayouts = new double[nbPlayers];
+    final double[] mappedPayouts = new double[nbPlayers];
+    for (int node = 0; node < nbNodes; node++) {
+      final int type = compiled.getType(node);
+      assertEquals(type, mapped.getType(node));
+      final int index = compiled.getField(node, INDEX);
+      assertEquals(index, mapped.getField(node, INDEX));
+      switch (type) {
+        case PAYOUTS_NO_CHANCE:
+          compiled.getPayoutsNoChance(index, compiledPayouts);
+          mapped.getPayoutsNoChance(index, mappedPayouts);
+          assertArrayEquals(compiledPayouts, mappedPayouts, 0);
+          break;
+        case CHANCES_PAYOUTS:
+          for (TestChances chances : allChances) {
+            compiled.getChancesPayouts(index).getPayouts(chances, compiledPayouts);
+            mapped.getChancesPayouts(index).getPayouts(chances, mappedPayouts);
+            assertArrayEquals(compiledPayouts, mappedPayouts, 0);
+          }
+          break;
+        case PLAYER:
+          assertEquals(compiled.getField(node, PLAYER_INDEX), mapped.getField(node, PLAYER_INDEX));
+          assertEquals(compiled.getField(node, ROUND), mapped.getField(node, ROUND));
+          final int nbActions = compiled.getField(node, NB_ACTIONS);
+          assertEquals(nbActions, mapped.getField(node, NB_ACTIONS));
+          for (int action = 0; action < nbActions; action++) {
+            assertEquals(compiled.getChild(node, action), mapped.getChild(node, action));
+          }
+          break;
+        default:
+          throw new AssertionError("Invalid node type " + type);
+      }
+    }
+  }
+
+  private static List<TestChances> allChances(final int nbPlayers) {
+    final List<TestChances> res = new ArrayList<>();
+    final int nbRounds = roundChancesSizes.length;
+    int nbCombinations = 1;
+    for (int round = 0; round < nbRounds; round++) {
+      for (int p = 0; p < nbPlayers; p++) {
+        nbCombinations *= roundChancesSizes[round];
+      }
+    }
+    for (int i = 0; i < nbCombinations; i++) {
+      final int[][] playersChances = new int[nbRounds][nbPlayers];
+      int rest = i;
+      for (int round = 0; round < nbRounds; round++) {
+        for (int p = 0; p < nbPlayers; p++) {
+          playersChances[round][p] = rest % roundChancesSizes[round];
+          rest /= roundChancesSizes[round];
+        }
+      }
+      res.add(new TestChances(playersChances));
+    }
+    return res;
+  }
+}
@@ -0,0 +1,143 @@
+package net.funkyjava.gametheory.games.nlhe.preflop;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import lombok.extern.slf4j.Slf4j;
+import net.funkyjava.gametheory.cscfrm.CSCFRMData;
+import net.funkyjava.gametheory.cscfrm.CSCFRMNode;
+import net.funkyjava.gametheory.cscfrm.CSCFRMTrainer;
+import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
+import net.funkyjava.gametheory.games.nlhe.HoldEm;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLHand;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLHandParser;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLAbstractedBetTree;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeNode;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLPushFoldBetTreeAbstractor;
+import net.funkyjava.gametheory.gameutil.poker.he.evaluators.HUPreflopEquityTables;
+
+/**
+ * Compares the float storage modes with the double storage mode on the HU push/fold preflop game :
+ * same chances sequence, then average strategies, utilities and save sizes are logged. The float
+ * storages average strategies and utilities must stay close to the double ones and their save files
+ * must be smaller.
+ *
+ * The test only runs when the {@value HEHUPreflopTrainersBenchmarkTest#equityPathProperty} system
+ * property provides the path of the HU preflop equity tables.
+ *
+ * @author Pierre Mardon
+ *
+ */
+@Slf4j
+public class HEHUPreflopStorageAccuracyTest {
+
+  private static final String handStr = "blinds-enable=true sb=1 bb=2|20 sb-20 bb";
+  private static final int nbIterations = 10_000_000;
+  private static final double maxStrategyDiff = 0.01;
+  private static final double maxUtilityDiff = 0.01;
+
+  @Test
+  public void testFloatStoragesAccuracy() throws IOException, ClassNotFoundException {
+    final String pathStr =
+        System.getProperty(HEHUPreflopTrainersBenchmarkTest.equityPathProperty);
+    if (pathStr == null) {
+      return;
+    }
+    final Path path = Paths.get(pathStr);
+    final HUPreflopEquityTables tables;
+    try (final FileInputStream fis = new FileInputStream(path.toFile());
+        final ObjectInputStream ois = new ObjectInputStream(fis)) {
+      tables = (HUPreflopEquityTables) ois.readObject();
+    }
+    final NLHand hand = NLHandParser.parse(handStr, 1);
+    final NLAbstractedBetTree tree =
+        new NLAbstractedBetTree(hand, new NLPushFoldBetTreeAbstractor(), false);
+    final HoldEm<HEPreflopChances> game =
+        new HoldEm<>(tree, new int[] {169}, new HEHUPreflopEquityProvider(tables));
+    final CSCFRMData<NLBetTreeNode, HEPreflopChances> doubleData =
+        new CSCFRMData<>(game, HEHUPreflopCSCFRM.getStorageProvider("double"));
+    final CSCFRMData<NLBetTreeNode, HEPreflopChances> floatData =
+        new CSCFRMData<>(game, HEHUPreflopCSCFRM.getStorageProvider("float"));
+    final CSCFRMData<NLBetTreeNode, HEPreflopChances> mixedData =
+        new CSCFRMData<>(game, HEHUPreflopCSCFRM.getStorageProvider("float-regret"));
+    final CSCFRMTrainer<HEPreflopChances> doubleTrainer = new CSCFRMTrainer<>(doubleData);
+    final CSCFRMTrainer<HEPreflopChances> floatTrainer = new CSCFRMTrainer<>(floatData);
+    final CSCFRMTrainer<HEPreflopChances> mixedTrainer = new CSCFRMTrainer<>(mixedData);
+    final HEPreflopChancesProducer producer = new HEPreflopChancesProducer(2);
+    for (int i = 0; i < nbIterations; i++) {
+      final HEPreflopChances chances = producer.produceChances();
+      final int[] preflopChances = chances.getPlayersChances()[0];
+      if (preflopChances[0] == preflopChances[1]) {
+        // Same bucket for both players : CSCFRM would see a collision
+        producer.endedUsing(chances);
+        continue;
+      }
+      doubleTrainer.train(chances);
+      floatTrainer.train(chances);
+      mixedTrainer.train(chances);
+      producer.endedUsing(chances);
+    }
+    compare("float", doubleData, floatData);
+    compare("float-regret", doubleData, mixedData);
+  }
+
+  private static void compare(final String name,
+      final CSCFRMData<NLBetTreeNode, HEPreflopChances> reference,
+      final CSCFRMData<NLBetTreeNode, HEPreflopChances> data) throws IOException {
+    // Each data has its own action tree : nodes are matched by round, player and index
+    final LinkedActionTreeNode<NLBetTreeNode, HEPreflopChances>[][][] refActionNodes =
+        reference.getGameActionTree().getActionNodes();
+    final LinkedActionTreeNode<NLBetTreeNode, HEPreflopChances>[][][] actionNodes =
+        data.getGameActionTree().getActionNodes();
+    double maxDiff = 0;
+    double diffSum = 0;
+    long nbValues = 0;
+    for (int round = 0; round < refActionNodes.length; round++) {
+      for (int player = 0; player < refActionNodes[round].length; player++) {
+        for (int index = 0; index < refActionNodes[round][player].length; index++) {
+          final CSCFRMNode[] ref = reference.nodesFor(refActionNodes[round][player][index]);
+          final CSCFRMNode[] cmp = data.nodesFor(actionNodes[round][player][index]);
+          for (int i = 0; i < ref.length; i++) {
+            final double[] refStrat = ref[i].getAvgStrategy();
+            final double[] strat = cmp[i].getAvgStrategy();
+            for (int j = 0; j < refStrat.length; j++) {
+              final double diff = Math.abs(refStrat[j] - strat[j]);
+              if (Double.isNaN(diff)) {
+                continue;
+              }
+              maxDiff = Math.max(maxDiff, diff);
+              diffSum += diff;
+              nbValues++;
+            }
+          }
+        }
+      }
+    }
+    final double[] refUtil = reference.getUtilityAvg();
+    final double[] util = data.getUtilityAvg();
+    final ByteArrayOutputStream refBytes = new ByteArrayOutputStream();
+    reference.write(refBytes);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    data.write(bytes);
+    log.info("{} vs double : avg strategy max diff {} mean diff {}", name, maxDiff,
+        diffSum / Math.max(nbValues, 1));
+    for (int i = 0; i < refUtil.length; i++) {
+      log.info("{} vs double : player {} utility {} vs {}", name, i, util[i], refUtil[i]);
+    }
+    log.info("{} vs double : save size {} bytes vs {} bytes", name, bytes.size(), refBytes.size());
+    assertTrue(name + " avg strategy max diff " + maxDiff, maxDiff < maxStrategyDiff);
+    for (int i = 0; i < refUtil.length; i++) {
+      assertTrue(name + " player " + i + " utility " + util[i] + " expected " + refUtil[i],
+          Math.abs(util[i] - refUtil[i]) < maxUtilityDiff);
+    }
+    assertTrue(name + " save size", bytes.size() < refBytes.size());
+  }
+}
@@ -0,0 +1,157 @@
+package net.funkyjava.gametheory.games.nlhe.preflop;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import lombok.extern.slf4j.Slf4j;
+import net.funkyjava.gametheory.cscfrm.CSCFRMChancesTrainer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMData;
+import net.funkyjava.gametheory.cscfrm.CSCFRMDoubleArrayStorage;
+import net.funkyjava.gametheory.cscfrm.CSCFRMExternalSamplingTrainer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMNode;
+import net.funkyjava.gametheory.cscfrm.CSCFRMTrainer;
+import net.funkyjava.gametheory.cscfrm.CSCFRMTrainerProvider;
+import net.funkyjava.gametheory.cscfrm.CSCFRMVectorTrainer;
+import net.funkyjava.gametheory.extensiveformgame.LinkedActionTreeNode;
+import net.funkyjava.gametheory.games.nlhe.HoldEm;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLHand;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLHandParser;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLAbstractedBetTree;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLBetTreeNode;
+import net.funkyjava.gametheory.gameutil.poker.bets.tree.NLPushFoldBetTreeAbstractor;
+import net.funkyjava.gametheory.gameutil.poker.he.evaluators.HUPreflopEquityTables;
+
+/**
+ * Compares the convergence per CPU second of the chance sampling and external sampling trainers on
+ * the HU push/fold preflop game. A reference solution is computed with the vector trainer, then each
+ * sampling trainer runs on a single thread and the distance of its average strategies to the
+ * reference is logged after each CPU second. Both trainers must end close to the reference.
+ *
+ * The test only runs when the {@value #equityPathProperty} system property provides the path of the
+ * HU preflop equity tables.
+ *
+ * @author Pierre Mardon
+ *
+ */
+@Slf4j
+public class HEHUPreflopTrainersBenchmarkTest {
+
+  static final String equityPathProperty = "heHuEquityPath";
+
+  private static final String handStr = "blinds-enable=true sb=1 bb=2|20 sb-20 bb";
+  private static final int nbReferenceIterations = 10_000;
+  private static final int nbCpuSeconds = 10;
+  private static final long nanosPerSecond = 1_000_000_000L;
+  private static final double maxStrategyDiff = 0.1;
+  private static final double maxUtilityDiff = 0.1;
+
+  @Test
+  public void testTrainersConvergence() throws IOException, ClassNotFoundException {
+    final String pathStr = System.getProperty(equityPathProperty);
+    if (pathStr == null) {
+      return;
+    }
+    final Path path = Paths.get(pathStr);
+    final HUPreflopEquityTables tables;
+    try (final FileInputStream fis = new FileInputStream(path.toFile());
+        final ObjectInputStream ois = new ObjectInputStream(fis)) {
+      tables = (HUPreflopEquityTables) ois.readObject();
+    }
+    final NLHand hand = NLHandParser.parse(handStr, 1);
+    final NLAbstractedBetTree tree =
+        new NLAbstractedBetTree(hand, new NLPushFoldBetTreeAbstractor(), false);
+    final HoldEm<HEPreflopChances> game =
+        new HoldEm<>(tree, new int[] {169}, new HEHUPreflopEquityProvider(tables));
+
+    final CSCFRMData<NLBetTreeNode, HEPreflopChances> reference =
+        new CSCFRMData<>(game, CSCFRMDoubleArrayStorage::new);
+    final CSCFRMVectorTrainer<HEPreflopChances> referenceTrainer =
+        new CSCFRMVectorTrainer<>(reference);
+    final HEHUPreflopVectorChances vectorChances = new HEHUPreflopVectorChances(tables);
+    for (int i = 0; i < nbReferenceIterations; i++) {
+      referenceTrainer.train(vectorChances);
+    }
+    log.info("Reference : utility {} average regrets {}",
+        Arrays.toString(reference.getUtilityAvg()),
+        Arrays.toString(reference.getAverageRegrets()));
+
+    benchmark("chance sampling", game, reference, CSCFRMTrainer::new);
+    benchmark("external sampling", game, reference, CSCFRMExternalSamplingTrainer::new);
+  }
+
+  private static void benchmark(final String name, final HoldEm<HEPreflopChances> game,
+      final CSCFRMData<NLBetTreeNode, HEPreflopChances> reference,
+      final CSCFRMTrainerProvider<HEPreflopChances> trainerProvider) {
+    final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    final CSCFRMData<NLBetTreeNode, HEPreflopChances> data =
+        new CSCFRMData<>(game, CSCFRMDoubleArrayStorage::new);
+    final CSCFRMChancesTrainer<HEPreflopChances> trainer = trainerProvider.getTrainer(data);
+    final HEPreflopChancesProducer producer = new HEPreflopChancesProducer(2);
+    final long start = threadBean.getCurrentThreadCpuTime();
+    for (int second = 1; second <= nbCpuSeconds; second++) {
+      final long end = start + second * nanosPerSecond;
+      while (threadBean.getCurrentThreadCpuTime() < end) {
+        // Check the CPU time every 1000 iterations
+        for (int i = 0; i < 1000; i++) {
+          final HEPreflopChances chances = producer.produceChances();
+          trainer.train(chances);
+          producer.endedUsing(chances);
+        }
+      }
+      log.info("{} : {} CPU s {} iterations, strategy mean diff {} average regrets {}", name,
+          second, data.getIterations().get(), meanStrategyDiff(reference, data),
+          Arrays.toString(data.getAverageRegrets()));
+    }
+    final double strategyDiff = meanStrategyDiff(reference, data);
+    assertTrue(name + " strategy mean diff " + strategyDiff, strategyDiff < maxStrategyDiff);
+    final double[] refUtility = reference.getUtilityAvg();
+    final double[] utility = data.getUtilityAvg();
+    for (int player = 0; player < refUtility.length; player++) {
+      assertTrue(name + " player " + player + " utility " + utility[player] + " expected "
+          + refUtility[player], Math.abs(utility[player] - refUtility[player]) < maxUtilityDiff);
+    }
+  }
+
+  private static double meanStrategyDiff(
+      final CSCFRMData<NLBetTreeNode, HEPreflopChances> reference,
+      final CSCFRMData<NLBetTreeNode, HEPreflopChances> data) {
+    // Each data has its own action tree : nodes are matched by round, player and index
+    final LinkedActionTreeNode<NLBetTreeNode, HEPreflopChances>[][][] refActionNodes =
+        reference.getGameActionTree().getActionNodes();
+    final LinkedActionTreeNode<NLBetTreeNode, HEPreflopChances>[][][] actionNodes =
+        data.getGameActionTree().getActionNodes();
+    double diffSum = 0;
+    long nbValues = 0;
+    for (int round = 0; round < refActionNodes.length; round++) {
+      for (int player = 0; player < refActionNodes[round].length; player++) {
+        for (int index = 0; index < refActionNodes[round][player].length; index++) {
+          final CSCFRMNode[] ref = reference.nodesFor(refActionNodes[round][player][index]);
+          final CSCFRMNode[] cmp = data.nodesFor(actionNodes[round][player][index]);
+          for (int i = 0; i < ref.length; i++) {
+            final double[] refStrat = ref[i].getAvgStrategy();
+            final double[] strat = cmp[i].getAvgStrategy();
+            for (int j = 0; j < refStrat.length; j++) {
+              final double diff = Math.abs(refStrat[j] - strat[j]);
+              if (Double.isNaN(diff)) {
+                continue;
+              }
+              diffSum += diff;
+              nbValues++;
+            }
+          }
+        }
+      }
+    }
+    return diffSum / Math.max(nbValues, 1);
+  }
+}
@@ -0,0 +1,158 @@
+package net.funkyjava.gametheory.gameutil.cards;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+import org.apache.commons.math3.random.BitsStreamGenerator;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * <p>
+ * Fast splittable {@link RandomGenerator} using the SplitMix64 algorithm of
+ * {@link java.util.SplittableRandom} : each value is a mix of a seed incremented by an odd gamma.
+ * Generators created with the default constructor or with {@link #split()} use distinct seeds and
+ * gammas, so that each thread can draw from its own independent stream without any
+ * synchronization.
+ * </p>
+ * <p>
+ * Not thread safe.
+ * </p>
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class SplitMixRandomGenerator extends BitsStreamGenerator {
+
+  private static final long serialVersionUID = -4476315325390219467L;
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  private static final double DOUBLE_UNIT = 0x1.0p-53;
+  /** Seeds of the generators created with the default constructor */
+  private static final AtomicLong defaultSeeds =
+      new AtomicLong(mix64(System.currentTimeMillis()) ^ mix64(System.nanoTime()));
+
+  private long seed;
+  private long gamma;
+
+  /**
+   * Constructor for a new independent stream
+   */
+  public SplitMixRandomGenerator() {
+    final long seed = defaultSeeds.getAndAdd(2 * GOLDEN_GAMMA);
+    this.seed = mix64(seed);
+    this.gamma = mixGamma(seed + GOLDEN_GAMMA);
+  }
+
+  /**
+   * Constructor for a reproducible stream
+   *
+   * @param seed the seed
+   */
+  public SplitMixRandomGenerator(final long seed) {
+    this(seed, GOLDEN_GAMMA);
+  }
+
+  private SplitMixRandomGenerator(final long seed, final long gamma) {
+    this.seed = seed;
+    this.gamma = gamma;
+  }
+
+  private static final long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  private static final int mix32(long z) {
+    z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+    return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+  }
+
+  /**
+   * Odd gamma with enough bit transitions
+   */
+  private static final long mixGamma(long z) {
+    z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+    z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    z = (z ^ (z >>> 33)) | 1L;
+    final int n = Long.bitCount(z ^ (z >>> 1));
+    return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+  }
+
+  private final long nextSeed() {
+    return seed += gamma;
+  }
+
+  /**
+   * Create a new generator whose stream is independent from this one's. This generator's stream
+   * advances.
+   *
+   * @return the new generator
+   */
+  public SplitMixRandomGenerator split() {
+    return new SplitMixRandomGenerator(nextLong(), mixGamma(nextSeed()));
+  }
+
+  @Override
+  public void setSeed(final int seed) {
+    setSeed((long) seed);
+  }
+
+  @Override
+  public void setSeed(final int[] seed) {
+    long s = 0;
+    for (int value : seed) {
+      s = mix64(s + (value & 0xffffffffL));
+    }
+    setSeed(s);
+  }
+
+  @Override
+  public void setSeed(final long seed) {
+    this.seed = seed;
+    this.gamma = GOLDEN_GAMMA;
+    clear();
+  }
+
+  @Override
+  protected int next(final int bits) {
+    return mix32(nextSeed()) >>> (32 - bits);
+  }
+
+  @Override
+  public int nextInt() {
+    return mix32(nextSeed());
+  }
+
+  /**
+   * Unbiased bounded int, by rejection of the values of the last incomplete range
+   */
+  @Override
+  public int nextInt(final int n) {
+    if (n <= 0) {
+      throw new NotStrictlyPositiveException(n);
+    }
+    int r = mix32(nextSeed());
+    final int m = n - 1;
+    if ((n & m) == 0) {
+      return r & m;
+    }
+    for (int u = r >>> 1; u + m - (r = u % n) < 0; u = mix32(nextSeed()) >>> 1) {
+    }
+    return r;
+  }
+
+  @Override
+  public long nextLong() {
+    return mix64(nextSeed());
+  }
+
+  @Override
+  public double nextDouble() {
+    return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+  }
+
+  @Override
+  public boolean nextBoolean() {
+    return mix32(nextSeed()) < 0;
+  }
+}
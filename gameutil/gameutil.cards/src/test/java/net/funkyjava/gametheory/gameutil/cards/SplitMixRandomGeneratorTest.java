@@ -0,0 +1,72 @@
+package net.funkyjava.gametheory.gameutil.cards;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * @author Pierre Mardon
+ *
+ */
+public class SplitMixRandomGeneratorTest {
+
+  /**
+   * Seeded streams must be the ones of {@link SplittableRandom}
+   */
+  @Test
+  public void testSameAsSplittableRandom() {
+    final SplitMixRandomGenerator random = new SplitMixRandomGenerator(42);
+    final SplittableRandom expected = new SplittableRandom(42);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(expected.nextLong(), random.nextLong());
+      assertEquals(expected.nextInt(), random.nextInt());
+      assertEquals(expected.nextInt(52 - i % 52), random.nextInt(52 - i % 52));
+      assertEquals(expected.nextDouble(), random.nextDouble(), 0);
+    }
+  }
+
+  /**
+   * Split streams must differ
+   */
+  @Test
+  public void testSplit() {
+    final SplitMixRandomGenerator random = new SplitMixRandomGenerator(42);
+    final SplitMixRandomGenerator split = random.split();
+    final SplitMixRandomGenerator other = new SplitMixRandomGenerator();
+    int nbEquals = 0;
+    for (int i = 0; i < 1000; i++) {
+      final long value = random.nextLong();
+      if (value == split.nextLong() || value == other.nextLong()) {
+        nbEquals++;
+      }
+    }
+    assertEquals(0, nbEquals);
+    assertNotEquals(new SplitMixRandomGenerator().nextLong(),
+        new SplitMixRandomGenerator().nextLong());
+  }
+
+  /**
+   * Bounded ints must be uniform enough
+   */
+  @Test
+  public void testNextIntUniformity() {
+    final SplitMixRandomGenerator random = new SplitMixRandomGenerator(42);
+    final int bound = 52;
+    final int nbDraws = 5200000;
+    final int[] counts = new int[bound];
+    for (int i = 0; i < nbDraws; i++) {
+      counts[random.nextInt(bound)]++;
+    }
+    final double expected = (double) nbDraws / bound;
+    double chi2 = 0;
+    for (int count : counts) {
+      chi2 += (count - expected) * (count - expected) / expected;
+    }
+    // 51 degrees of freedom, p = 0.001
+    assertTrue("Chi2 too high : " + chi2, chi2 < 87.97);
+  }
+}
@@ -327,6 +327,16 @@ public class NLHand implements Cloneable {
         ? Collections.<Move>emptyList() : betRounds[betRoundIndex].getMoves();
   }
 
+  /**
+   * Get the big blind value of the current bet round
+   *
+   * @return the big blind value
+   */
+  int getBetRoundBigBlind() {
+    checkArgument(isBetRound(), "Doesn't seem to be in a bet round");
+    return betRounds[round - roundOffset].getSpec().getBigBlindValue();
+  }
+
   public List<Move> getCurrentRoundBetMoves() {
     return getBetMoves(round - roundOffset);
   }
@@ -0,0 +1,650 @@
+package net.funkyjava.gametheory.gameutil.poker.bets;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+import net.funkyjava.gametheory.gameutil.poker.bets.moves.Move;
+import net.funkyjava.gametheory.gameutil.poker.bets.pots.Pot;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.RoundState;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.RoundType;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.anteround.AnteValue;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.BetChoice;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.BetRange;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.CallValue;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.RaiseRange;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.blindsround.BlindValue;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.data.NoBetPlayerData;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.data.PlayerData;
+
+/**
+ * Compact no-limit hold'em bet rounds state, following the same rules as {@link NLHand} from the
+ * first bet round. All the state is held in primitive arrays, so that copying a state is a few
+ * {@link System#arraycopy} and doing a move doesn't allocate but when a round ends.
+ *
+ * The pots of the finished rounds are stored as layers of values and contributing players masks,
+ * built like {@link NLHand#getCurrentPots()}. Their arrays are never modified once built, so
+ * copies share them. Unlike {@link NLHand}, the moves history isn't kept and the next bet round is
+ * started automatically when a round ends, so a state is always either waiting for a move or
+ * terminal ({@link RoundState#SHOWDOWN} or {@link RoundState#END_NO_SHOWDOWN}).
+ *
+ * Equality is the betting situation equality : bet round, players stacks, bets and in-hand flags
+ * and the bet round progression. The pots and moves history are ignored, like when a bet tree
+ * matches the first nodes of a round for imperfect recall.
+ *
+ * Intends to be used in a monothread way, each thread working on its own copies.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class NLState {
+
+  /**
+   * Number of players
+   */
+  @Getter
+  private final int nbPlayers;
+  /**
+   * Number of bet rounds
+   */
+  @Getter
+  private final int nbBetRounds;
+  private final int bigBlind;
+  private final int[] initialStacks;
+  private final int[] stacks;
+  private final int[] bets;
+  private final int[] playersBetSubRound;
+  private final boolean[] inHand;
+  private final boolean[] played;
+  /**
+   * Current bet round index
+   */
+  @Getter
+  private int betRoundIndex;
+  private int player;
+  private int highestBet;
+  private int lastRaise;
+  private int betSubRound;
+  /**
+   * Number of moves done in the current bet round
+   */
+  @Getter
+  private int nbRoundMoves;
+  /**
+   * Number of bets and raises done in the current bet round
+   */
+  @Getter
+  private int nbRoundBetTurns;
+  /**
+   * Current state : {@link RoundState#WAITING_MOVE}, {@link RoundState#SHOWDOWN} or
+   * {@link RoundState#END_NO_SHOWDOWN}
+   */
+  @Getter
+  private RoundState roundState;
+  private int nbPots;
+  private int[] potsValues;
+  private int[] potsPlayers;
+
+  private NLState(final int nbPlayers, final int nbBetRounds, final int bigBlind,
+      final int[] initialStacks) {
+    checkArgument(nbPlayers <= Integer.SIZE, "Too many players %s for the pots players masks",
+        nbPlayers);
+    this.nbPlayers = nbPlayers;
+    this.nbBetRounds = nbBetRounds;
+    this.bigBlind = bigBlind;
+    this.initialStacks = initialStacks;
+    this.stacks = new int[nbPlayers];
+    this.bets = new int[nbPlayers];
+    this.playersBetSubRound = new int[nbPlayers];
+    this.inHand = new boolean[nbPlayers];
+    this.played = new boolean[nbPlayers];
+  }
+
+  private NLState(final NLState src) {
+    this(src.nbPlayers, src.nbBetRounds, src.bigBlind, src.initialStacks);
+    copyFrom(src);
+  }
+
+  /**
+   * Get a copy of this state
+   *
+   * @return the copy
+   */
+  public NLState copy() {
+    return new NLState(this);
+  }
+
+  /**
+   * Set this state to a copy of another one of the same hand, without allocating
+   *
+   * @param src the source state
+   */
+  public void copyFrom(final NLState src) {
+    checkArgument(src.initialStacks == initialStacks, "The states must come from the same hand");
+    final int nbPlayers = this.nbPlayers;
+    System.arraycopy(src.stacks, 0, stacks, 0, nbPlayers);
+    System.arraycopy(src.bets, 0, bets, 0, nbPlayers);
+    System.arraycopy(src.playersBetSubRound, 0, playersBetSubRound, 0, nbPlayers);
+    System.arraycopy(src.inHand, 0, inHand, 0, nbPlayers);
+    System.arraycopy(src.played, 0, played, 0, nbPlayers);
+    betRoundIndex = src.betRoundIndex;
+    player = src.player;
+    highestBet = src.highestBet;
+    lastRaise = src.lastRaise;
+    betSubRound = src.betSubRound;
+    nbRoundMoves = src.nbRoundMoves;
+    nbRoundBetTurns = src.nbRoundBetTurns;
+    roundState = src.roundState;
+    nbPots = src.nbPots;
+    potsValues = src.potsValues;
+    potsPlayers = src.potsPlayers;
+  }
+
+  /**
+   * Create the state of a hand at its first bet round. A copy of the hand pays the missing antes
+   * and blinds and goes to the first bet round like when building a bet tree, the hand itself is
+   * not modified.
+   *
+   * @param srcHand the hand, before or at the beginning of its first bet round
+   * @return the state waiting for the first bet move
+   */
+  public static NLState fromHand(final NLHand srcHand) {
+    final NLHand hand = firstBetRoundHand(srcHand);
+    checkArgument(hand.getCurrentRoundBetMoves().isEmpty(),
+        "The hand's bet round has already started");
+    final int nbPlayers = hand.getNbPlayers();
+    final List<NoBetPlayerData> initialData = hand.getInitialPlayersData();
+    final int[] initialStacks = new int[nbPlayers];
+    for (int i = 0; i < nbPlayers; i++) {
+      initialStacks[i] = initialData.get(i).getStack();
+    }
+    final NLState state =
+        new NLState(nbPlayers, hand.getNbBetRounds(), hand.getBetRoundBigBlind(), initialStacks);
+    final List<PlayerData> playersData = hand.getPlayersData();
+    int highestBet = 0;
+    for (int i = 0; i < nbPlayers; i++) {
+      final PlayerData data = playersData.get(i);
+      state.stacks[i] = data.getStack();
+      state.bets[i] = data.getBet();
+      state.inHand[i] = data.isInHand();
+      highestBet = Math.max(highestBet, data.getBet());
+    }
+    state.betRoundIndex = hand.getBetRoundIndex();
+    state.betSubRound = highestBet > 0 ? 1 : 0;
+    state.highestBet = highestBet > 0 ? Math.max(highestBet, state.bigBlind) : 0;
+    state.player = hand.getBettingPlayer();
+    state.roundState = RoundState.WAITING_MOVE;
+    final List<Pot> pots = hand.getCurrentPots();
+    final int nbPots = state.nbPots = pots.size();
+    final int[] potsValues = state.potsValues = new int[nbPots];
+    final int[] potsPlayers = state.potsPlayers = new int[nbPots];
+    for (int i = 0; i < nbPots; i++) {
+      final Pot pot = pots.get(i);
+      potsValues[i] = pot.getValue();
+      for (Integer potPlayer : pot.getPlayers()) {
+        potsPlayers[i] |= 1 << potPlayer;
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Copy a hand and pay its missing antes and blinds until its first bet round
+   *
+   * @param srcHand the hand, not modified
+   * @return the copy waiting for a bet move
+   */
+  static NLHand firstBetRoundHand(final NLHand srcHand) {
+    final NLHand hand = srcHand.clone();
+    while (hand.getRoundType() != RoundType.BETS) {
+      switch (hand.getRoundState()) {
+        case NEXT_ROUND:
+          if (hand.getRoundType() == RoundType.ANTE) {
+            checkState(hand.nextRoundAfterAnte(), "Unable to go to the round after antes");
+          } else {
+            checkState(hand.betRoundAfterBlinds(), "Unable to go to the round after blinds");
+          }
+          break;
+        case WAITING_MOVE:
+          if (hand.getRoundType() == RoundType.ANTE) {
+            final Map<Integer, AnteValue> antes = hand.getMissingAnte();
+            for (final Integer antePlayer : antes.keySet()) {
+              hand.doMove(Move.getAnte(antePlayer, antes.get(antePlayer).getValue()));
+            }
+          } else {
+            final Map<Integer, BlindValue> blinds = hand.getMissingBlinds();
+            for (final Integer blindsPlayer : blinds.keySet()) {
+              final BlindValue blind = blinds.get(blindsPlayer);
+              switch (blind.getType()) {
+                case BB:
+                  hand.doMove(Move.getBb(blindsPlayer, blind.getValue()));
+                  break;
+                case SB:
+                  hand.doMove(Move.getSb(blindsPlayer, blind.getValue()));
+                  break;
+              }
+            }
+          }
+          break;
+        default:
+          throw new IllegalArgumentException(
+              "The hand ends before its first bet round in state " + hand.getRoundState());
+      }
+    }
+    checkArgument(hand.getRoundState() == RoundState.WAITING_MOVE,
+        "The hand's bet round is in state %s, expected %s", hand.getRoundState(),
+        RoundState.WAITING_MOVE);
+    return hand;
+  }
+
+  /**
+   * Get the player expected to do the next move
+   *
+   * @return the active player
+   */
+  public int getBettingPlayer() {
+    checkWaitingMove();
+    return player;
+  }
+
+  /**
+   * Check if no move was done in the current bet round
+   *
+   * @return true for the first node of a bet round
+   */
+  public boolean isRoundFirstNode() {
+    return nbRoundMoves == 0;
+  }
+
+  /**
+   * Get a player's stack
+   *
+   * @param player the player
+   * @return the player's stack, without its current bet
+   */
+  public int getStack(final int player) {
+    return stacks[player];
+  }
+
+  /**
+   * Get a player's initial stack
+   *
+   * @param player the player
+   * @return the player's stack before antes and blinds
+   */
+  public int getInitialStack(final int player) {
+    return initialStacks[player];
+  }
+
+  /**
+   * Get a player's bet in the current bet round
+   *
+   * @param player the player
+   * @return the player's bet
+   */
+  public int getBet(final int player) {
+    return bets[player];
+  }
+
+  /**
+   * Check if a player didn't fold
+   *
+   * @param player the player
+   * @return true when the player is in hand
+   */
+  public boolean isInHand(final int player) {
+    return inHand[player];
+  }
+
+  /**
+   * Get the highest of the players bets in the current bet round
+   *
+   * @return the max bet
+   */
+  public int getMaxBet() {
+    int maxBet = 0;
+    for (int bet : bets) {
+      maxBet = Math.max(maxBet, bet);
+    }
+    return maxBet;
+  }
+
+  /**
+   * Get the number of pots of the finished bet rounds
+   *
+   * @return the number of pots
+   */
+  public int getNbPots() {
+    return nbPots;
+  }
+
+  /**
+   * Get the value of a pot
+   *
+   * @param pot the pot index
+   * @return the pot value
+   */
+  public int getPotValue(final int pot) {
+    return potsValues[pot];
+  }
+
+  /**
+   * Get the players that contributed to a pot
+   *
+   * @param pot the pot index
+   * @return the mask of the players, bit p being set for player p
+   */
+  public int getPotPlayers(final int pot) {
+    return potsPlayers[pot];
+  }
+
+  /**
+   * Get the total value of the pots of the finished bet rounds, like
+   * {@link NLHand#getTotalPotsValue()}
+   *
+   * @return the total pots value
+   */
+  public int getTotalPotsValue() {
+    int res = 0;
+    final int[] potsValues = this.potsValues;
+    for (int i = 0; i < nbPots; i++) {
+      res += potsValues[i];
+    }
+    return res;
+  }
+
+  /**
+   * Get the only player in hand when all others folded
+   *
+   * @return the winning player
+   */
+  public int getNoShowdownWinningPlayer() {
+    checkState(roundState == RoundState.END_NO_SHOWDOWN, "Wrong state %s to ask for winning player",
+        roundState);
+    for (int i = 0; i < nbPlayers; i++) {
+      if (inHand[i]) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("Didn't find the winning player");
+  }
+
+  /**
+   * Compute the players payouts when all players folded but one : the winner takes all the pots
+   *
+   * @param payouts the destination array of the payouts, indexed by player
+   */
+  public void getNoShowdownPayouts(final double[] payouts) {
+    final int winner = getNoShowdownWinningPlayer();
+    for (int i = 0; i < nbPlayers; i++) {
+      payouts[i] = stacks[i] - initialStacks[i];
+    }
+    payouts[winner] += getTotalPotsValue();
+  }
+
+  /**
+   * Get the call value for the active player
+   *
+   * @return the call value
+   */
+  public CallValue getCallValue() {
+    checkWaitingMove();
+    final int call = Math.min(stacks[player] + bets[player], highestBet);
+    return new CallValue(call, call - bets[player], bets[player]);
+  }
+
+  /**
+   * Get the bet range for the active player
+   *
+   * @return the bet range
+   */
+  public BetRange getBetRange() {
+    checkWaitingMove();
+    if (betSubRound > 0) {
+      return BetRange.getNoRange();
+    }
+    return new BetRange(Math.min(stacks[player], bigBlind), stacks[player]);
+  }
+
+  /**
+   * Get the raise range for the active player
+   *
+   * @return the raise range
+   */
+  public RaiseRange getRaiseRange() {
+    checkWaitingMove();
+    final int fullStack = bets[player] + stacks[player];
+    if (fullStack <= highestBet || playersBetSubRound[player] == betSubRound) {
+      return RaiseRange.getNoRange();
+    }
+    if (fullStack <= highestBet + lastRaise) {
+      return RaiseRange.getSingleton(bets[player], fullStack);
+    }
+    return new RaiseRange(bets[player], highestBet + lastRaise, fullStack);
+  }
+
+  /**
+   * Get the {@link BetChoice} of the active player
+   *
+   * @return the bet choice
+   */
+  public BetChoice getBetChoice() {
+    return new BetChoice(getBetRange(), getCallValue(), getRaiseRange(), getBettingPlayer());
+  }
+
+  /**
+   * Perform a bet move : fold, call, bet or raise
+   *
+   * @param m the move to perform
+   */
+  public void doMove(final Move m) {
+    checkWaitingMove();
+    final int player = this.player;
+    checkArgument(m.getPlayer() == player, "Wrong player %s for this move, expected %s",
+        m.getPlayer(), player);
+    final int val = m.getValue();
+    switch (m.getType()) {
+      case BET:
+        checkState(betSubRound == 0, "Can't bet, maybe you mean call or raise");
+        checkState(bets[player] == 0, "This player has already betted");
+        checkArgument(val >= bigBlind || val == stacks[player],
+            "Incorrect value for player %s bet of %s, stack %s", player, val, stacks[player]);
+        checkArgument(m.getOldBet() == bets[player]);
+        stacks[player] -= val;
+        bets[player] = val;
+        betSubRound = 1;
+        playersBetSubRound[player] = 1;
+        lastRaise = highestBet = Math.max(val, bigBlind);
+        nbRoundBetTurns++;
+        break;
+      case CALL:
+        checkArgument(
+            highestBet == val || (stacks[player] + bets[player] == val && val < highestBet),
+            "Wrong call value %s", val);
+        checkArgument(m.getOldBet() == bets[player]);
+        playersBetSubRound[player] = betSubRound;
+        stacks[player] -= val - bets[player];
+        bets[player] = val;
+        break;
+      case RAISE:
+        final RaiseRange raiseTo = getRaiseRange();
+        checkState(raiseTo.exists(), "Player %s can't raise !", player);
+        checkArgument(raiseTo.getMin() <= val && raiseTo.getMax() >= val,
+            "Raise %s is invalid, expected between %s and %s", val, raiseTo.getMin(),
+            raiseTo.getMax());
+        checkArgument(m.getOldBet() == bets[player]);
+        stacks[player] -= val - bets[player];
+        bets[player] = val;
+        if (val >= highestBet + lastRaise) {
+          playersBetSubRound[player] = ++betSubRound;
+          lastRaise = val - highestBet;
+        } else {
+          playersBetSubRound[player] = betSubRound;
+          lastRaise += val - highestBet;
+        }
+        highestBet = val;
+        nbRoundBetTurns++;
+        break;
+      case FOLD:
+        inHand[player] = false;
+        break;
+      default:
+        throw new IllegalArgumentException("Unauthorized move " + m);
+    }
+    nbRoundMoves++;
+    played[player] = true;
+    goToNextState();
+  }
+
+  private void checkWaitingMove() {
+    checkState(roundState == RoundState.WAITING_MOVE, "Wrong state %s, no move expected",
+        roundState);
+  }
+
+  private void goToNextState() {
+    final int nbPlayers = this.nbPlayers;
+    final boolean[] inHand = this.inHand;
+    final int[] stacks = this.stacks;
+    int nextPlayer = -1;
+    int nbInHand = 0;
+    int nbNotAllIn = 0;
+    int nbCanPlay = 0;
+    for (int i = 0; i < nbPlayers; i++) {
+      final int p = (player + i + 1) % nbPlayers;
+      if (!inHand[p]) {
+        continue;
+      }
+      nbInHand++;
+      if (stacks[p] == 0) {
+        continue;
+      }
+      nbNotAllIn++;
+      if (playersBetSubRound[p] < betSubRound
+          || (playersBetSubRound[p] == betSubRound && bets[p] < highestBet) || !played[p]) {
+        nbCanPlay++;
+        if (nextPlayer < 0) {
+          nextPlayer = p;
+        }
+      }
+    }
+    if (nbInHand == 1) {
+      closeRoundPots();
+      roundState = RoundState.END_NO_SHOWDOWN;
+      return;
+    }
+    if (nbCanPlay > 0) {
+      checkState(nextPlayer != player, "Internal Error : Same player acting again");
+      roundState = RoundState.WAITING_MOVE;
+      player = nextPlayer;
+      return;
+    }
+    closeRoundPots();
+    if (nbNotAllIn <= 1 || betRoundIndex == nbBetRounds - 1) {
+      roundState = RoundState.SHOWDOWN;
+      return;
+    }
+    nextBetRound();
+  }
+
+  private void nextBetRound() {
+    final int nbPlayers = this.nbPlayers;
+    Arrays.fill(bets, 0);
+    Arrays.fill(playersBetSubRound, 0);
+    Arrays.fill(played, false);
+    betRoundIndex++;
+    highestBet = 0;
+    lastRaise = 0;
+    betSubRound = 0;
+    nbRoundMoves = 0;
+    nbRoundBetTurns = 0;
+    int first = 0;
+    while (!inHand[first]) {
+      first++;
+    }
+    player = first == 0 ? nbPlayers - 1 : first - 1;
+    goToNextState();
+  }
+
+  /**
+   * Add the pots of the current bet round to the layers, like {@link Pot#getPots(Pot, List)}
+   */
+  private void closeRoundPots() {
+    final int nbPlayers = this.nbPlayers;
+    final boolean[] inHand = this.inHand;
+    final int[] remaining = bets.clone();
+    int nbPots = this.nbPots;
+    final int[] potsValues = Arrays.copyOf(this.potsValues, nbPots + nbPlayers);
+    final int[] potsPlayers = Arrays.copyOf(this.potsPlayers, nbPots + nbPlayers);
+    boolean first = true;
+    while (true) {
+      int players = 0;
+      int minBet = Integer.MAX_VALUE;
+      for (int p = 0; p < nbPlayers; p++) {
+        if (inHand[p] && remaining[p] > 0) {
+          players |= 1 << p;
+          minBet = Math.min(minBet, remaining[p]);
+        }
+      }
+      if (minBet == Integer.MAX_VALUE) {
+        break;
+      }
+      int value = 0;
+      for (int p = 0; p < nbPlayers; p++) {
+        final int taken = Math.min(minBet, remaining[p]);
+        value += taken;
+        remaining[p] -= taken;
+      }
+      if (first && nbPots > 0 && potsPlayers[nbPots - 1] == players) {
+        potsValues[nbPots - 1] += value;
+      } else {
+        potsValues[nbPots] = value;
+        potsPlayers[nbPots] = players;
+        nbPots++;
+      }
+      first = false;
+    }
+    this.nbPots = nbPots;
+    this.potsValues = Arrays.copyOf(potsValues, nbPots);
+    this.potsPlayers = Arrays.copyOf(potsPlayers, nbPots);
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = betRoundIndex;
+    for (int p = 0; p < nbPlayers; p++) {
+      hash = 31 * hash + stacks[p];
+      hash = 31 * hash + bets[p];
+      hash = 31 * hash + (inHand[p] ? 1 : 0);
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof NLState)) {
+      return false;
+    }
+    final NLState state = (NLState) obj;
+    return state.betRoundIndex == betRoundIndex && state.roundState == roundState
+        && state.player == player && state.highestBet == highestBet
+        && state.lastRaise == lastRaise && state.betSubRound == betSubRound
+        && Arrays.equals(state.stacks, stacks) && Arrays.equals(state.bets, bets)
+        && Arrays.equals(state.inHand, inHand) && Arrays.equals(state.played, played)
+        && Arrays.equals(state.playersBetSubRound, playersBetSubRound);
+  }
+
+  @Override
+  public String toString() {
+    return "NLState [betRound=" + betRoundIndex + ", state=" + roundState + ", player=" + player
+        + ", stacks=" + Arrays.toString(stacks) + ", bets=" + Arrays.toString(bets) + ", inHand="
+        + Arrays.toString(inHand) + ", pots=" + Arrays.toString(potsValues) + "]";
+  }
+
+}
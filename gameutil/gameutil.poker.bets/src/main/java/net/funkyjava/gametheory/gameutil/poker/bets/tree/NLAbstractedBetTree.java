@@ -4,6 +4,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +44,12 @@ public class NLAbstractedBetTree {
   private List<NLBetTreeNode> noShowdownNodesList = new ArrayList<>();
   private List<List<NLBetTreeNode>> betRoundsNodesList = new ArrayList<>();
   private List<List<NLBetTreeNode>> betRoundsFirstNodesList = new ArrayList<>();
+  /**
+   * Interned nodes by hash, the buckets are scanned with the nodes equality methods
+   */
+  private Map<Integer, List<NLBetTreeNode>> showdownNodesByHash = new HashMap<>();
+  private Map<Integer, List<NLBetTreeNode>> noShowdownNodesByHash = new HashMap<>();
+  private List<Map<Integer, List<NLBetTreeNode>>> betRoundsFirstNodesByHash = new ArrayList<>();
 
   public NLAbstractedBetTree(@NonNull final NLHand hand,
       @NonNull final NLBetTreeAbstractor abstractor, final boolean perfectRecall) {
@@ -52,6 +59,7 @@ public class NLAbstractedBetTree {
     for (int i = 0; i < nbOfBetRounds; i++) {
       betRoundsFirstNodesList.add(new ArrayList<NLBetTreeNode>());
       betRoundsNodesList.add(new ArrayList<NLBetTreeNode>());
+      betRoundsFirstNodesByHash.add(new HashMap<Integer, List<NLBetTreeNode>>());
     }
     this.nbPlayers = hand.getNbPlayers();
     rootNode = nodeFor(hand, abstractor);
@@ -63,6 +71,18 @@ public class NLAbstractedBetTree {
     noShowdownNodesList = null;
     betRoundsNodesList = null;
     betRoundsFirstNodesList = null;
+    showdownNodesByHash = null;
+    noShowdownNodesByHash = null;
+    betRoundsFirstNodesByHash = null;
+  }
+
+  private static List<NLBetTreeNode> bucket(final Map<Integer, List<NLBetTreeNode>> nodesByHash,
+      final int hash) {
+    List<NLBetTreeNode> bucket = nodesByHash.get(hash);
+    if (bucket == null) {
+      nodesByHash.put(hash, bucket = new ArrayList<>(1));
+    }
+    return bucket;
   }
 
   private NLBetTreeNode nodeFor(@NonNull final NLHand hand,
@@ -119,12 +139,13 @@ public class NLAbstractedBetTree {
     final int index = showdownNodesList.size();
     final NLBetTreeNode tmpNode =
         new NLBetTreeNode(hand, new LinkedHashMap<Move, NLBetTreeNode>(), index);
-    for (int i = 0; i < index; i++) {
-      final NLBetTreeNode node = showdownNodesList.get(i);
+    final List<NLBetTreeNode> bucket = bucket(showdownNodesByHash, tmpNode.showdownHash());
+    for (final NLBetTreeNode node : bucket) {
       if (node.equalsForShowdown(tmpNode)) {
         return node;
       }
     }
+    bucket.add(tmpNode);
     showdownNodesList.add(tmpNode);
     return tmpNode;
   }
@@ -133,12 +154,13 @@ public class NLAbstractedBetTree {
     final int index = noShowdownNodesList.size();
     final NLBetTreeNode tmpNode =
         new NLBetTreeNode(hand, new LinkedHashMap<Move, NLBetTreeNode>(), index);
-    for (int i = 0; i < index; i++) {
-      final NLBetTreeNode node = noShowdownNodesList.get(i);
+    final List<NLBetTreeNode> bucket = bucket(noShowdownNodesByHash, tmpNode.noShowdownHash());
+    for (final NLBetTreeNode node : bucket) {
       if (node.equalsForNoShowdown(tmpNode)) {
         return node;
       }
     }
+    bucket.add(tmpNode);
     noShowdownNodesList.add(tmpNode);
     return tmpNode;
   }
@@ -151,11 +173,13 @@ public class NLAbstractedBetTree {
     if (moves.isEmpty()) {
       startingNode = true;
       if (!perfectRecall) {
-        final List<NLBetTreeNode> startingNodes =
-            betRoundsFirstNodesList.get(hand.getBetRoundIndex());
-        for (final NLBetTreeNode node : startingNodes) {
-          if (node.samePlayersData(hand)) {
-            return node;
+        final List<NLBetTreeNode> startingNodes = betRoundsFirstNodesByHash
+            .get(hand.getBetRoundIndex()).get(NLBetTreeNode.playersDataHash(hand));
+        if (startingNodes != null) {
+          for (final NLBetTreeNode node : startingNodes) {
+            if (node.samePlayersData(hand)) {
+              return node;
+            }
           }
         }
       }
@@ -183,6 +207,8 @@ public class NLAbstractedBetTree {
     betRoundsNodesList.get(betRound).add(node);
     if (startingNode) {
       betRoundsFirstNodesList.get(betRound).add(node);
+      bucket(betRoundsFirstNodesByHash.get(betRound), NLBetTreeNode.playersDataHash(hand))
+          .add(node);
     }
     return node;
   }
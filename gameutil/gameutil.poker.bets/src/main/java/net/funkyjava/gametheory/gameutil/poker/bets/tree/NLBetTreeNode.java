@@ -11,6 +11,7 @@ import lombok.Getter;
 import net.funkyjava.gametheory.gameutil.poker.bets.NLHand;
 import net.funkyjava.gametheory.gameutil.poker.bets.moves.Move;
 import net.funkyjava.gametheory.gameutil.poker.bets.pots.Pot;
+import net.funkyjava.gametheory.gameutil.poker.bets.pots.PotShare;
 import net.funkyjava.gametheory.gameutil.poker.bets.pots.SharedPot;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.RoundState;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.RoundType;
@@ -63,8 +64,34 @@ public class NLBetTreeNode {
     }
   }
 
+  /**
+   * Hash consistent with {@link #equalsForShowdown(NLBetTreeNode)} : it doesn't depend on the
+   * order of the pots and of their players
+   *
+   * @return the showdown hash
+   */
+  public int showdownHash() {
+    int hash = betRoundIndex;
+    for (final Pot pot : hand.getCurrentPots()) {
+      int playersHash = 0;
+      for (final Integer player : pot.getPlayers()) {
+        playersHash += player;
+      }
+      hash += 31 * pot.getValue() + playersHash;
+    }
+    return hash;
+  }
+
+  /**
+   * Showdowns are equal when they have the same pots in the same bet round : the equity of the pots
+   * players depends on the bet round
+   *
+   * @param node the other node
+   * @return true when both nodes are equal showdowns
+   */
   public boolean equalsForShowdown(NLBetTreeNode node) {
-    if (roundState != RoundState.SHOWDOWN || node.roundState != RoundState.SHOWDOWN) {
+    if (roundState != RoundState.SHOWDOWN || node.roundState != RoundState.SHOWDOWN
+        || node.betRoundIndex != betRoundIndex) {
       return false;
     }
     final List<Pot> pots = node.hand.getCurrentPots();
@@ -80,6 +107,35 @@ public class NLBetTreeNode {
     return true;
   }
 
+  /**
+   * Hash consistent with {@link #equalsForNoShowdown(NLBetTreeNode)} : it doesn't depend on the
+   * order of the shared pots and of their shares
+   *
+   * @return the no showdown hash
+   */
+  public int noShowdownHash() {
+    int hash = playerIndex;
+    for (final PlayerData data : hand.getPlayersData()) {
+      hash = 31 * hash + data.getStack();
+    }
+    final Optional<List<SharedPot>> optPots = hand.getSharedPots();
+    if (optPots.isPresent()) {
+      for (final SharedPot pot : optPots.get()) {
+        for (final PotShare share : pot.getShares()) {
+          hash += 31 * share.hashCode();
+        }
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * No showdown ends are equal when the same player wins the same shared pots and all players have
+   * the same stacks : the losers payouts depend on what they put in the pots
+   *
+   * @param node the other node
+   * @return true when both nodes are equal no showdown ends
+   */
   public boolean equalsForNoShowdown(NLBetTreeNode node) {
     if (roundState != RoundState.END_NO_SHOWDOWN || node.roundState != RoundState.END_NO_SHOWDOWN) {
       return false;
@@ -87,6 +143,13 @@ public class NLBetTreeNode {
     if (node.playerIndex != playerIndex) {
       return false;
     }
+    final List<PlayerData> data = node.hand.getPlayersData();
+    final List<PlayerData> data1 = hand.getPlayersData();
+    for (int i = 0; i < data1.size(); i++) {
+      if (data.get(i).getStack() != data1.get(i).getStack()) {
+        return false;
+      }
+    }
     final Optional<List<SharedPot>> optPots = node.hand.getSharedPots();
     final Optional<List<SharedPot>> optPots1 = hand.getSharedPots();
     if (!optPots.isPresent() || !optPots1.isPresent()) {
@@ -105,6 +168,21 @@ public class NLBetTreeNode {
     return true;
   }
 
+  /**
+   * Hash consistent with {@link #samePlayersData(NLHand)} : it doesn't depend on the order of the
+   * players data
+   *
+   * @param hand the hand
+   * @return the players data hash
+   */
+  public static int playersDataHash(final NLHand hand) {
+    int hash = 0;
+    for (final PlayerData data : hand.getPlayersData()) {
+      hash += data.hashCode();
+    }
+    return hash;
+  }
+
   public boolean samePlayersData(NLHand hand) {
     final List<PlayerData> p1 = hand.getPlayersData();
     final List<PlayerData> p2 = this.hand.getPlayersData();
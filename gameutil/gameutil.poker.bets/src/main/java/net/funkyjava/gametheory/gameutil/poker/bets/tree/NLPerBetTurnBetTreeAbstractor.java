@@ -16,18 +16,22 @@ import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import com.google.common.base.Optional;
 
 import lombok.extern.slf4j.Slf4j;
 import net.funkyjava.gametheory.gameutil.poker.bets.NLHand;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLState;
 import net.funkyjava.gametheory.gameutil.poker.bets.moves.Move;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.BetChoice;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.CallValue;
 import net.funkyjava.gametheory.gameutil.poker.bets.tree.ParsedMove.ParsedMoveType;
 
 @Slf4j
-public class NLPerBetTurnBetTreeAbstractor implements NLBetTreeAbstractor {
+public class NLPerBetTurnBetTreeAbstractor
+    implements NLBetTreeAbstractor, NLStateBetTreeAbstractor {
 
   private final List<List<Set<ParsedMove>>> moves = new ArrayList<>();
   private final int nbRounds;
@@ -50,6 +54,17 @@ public class NLPerBetTurnBetTreeAbstractor implements NLBetTreeAbstractor {
     return res;
   }
 
+  @Override
+  public List<Move> movesForState(final NLState state) {
+    final List<Move> res = new ArrayList<>();
+    matchMoves(state.getBetRoundIndex(), state.getNbRoundBetTurns(), state.getBetChoice(),
+        parsedMove -> ParsedMove.moveFrom(state, parsedMove), (parsedMove, move) -> {
+          if (!res.contains(move))
+            res.add(move);
+        });
+    return res;
+  }
+
   public Map<Move, ParsedMove> parsedMoves(final NLHand hand) {
     final Map<Move, ParsedMove> res = new HashMap<>();
     matchMoves(hand, new MatchingMovesProcessor() {
@@ -63,32 +78,40 @@ public class NLPerBetTurnBetTreeAbstractor implements NLBetTreeAbstractor {
   }
 
   public void matchMoves(final NLHand hand, final MatchingMovesProcessor processor) {
-    final int round = hand.getBetRoundIndex();
+    if (hand.getBetRoundIndex() > nbRounds - 1) {
+      return;
+    }
+    matchMoves(hand.getBetRoundIndex(), getTurnIndex(hand), hand.getBetChoice(),
+        parsedMove -> ParsedMove.moveFrom(hand, parsedMove),
+        (parsedMove, move) -> processor.process(hand, parsedMove, move));
+  }
+
+  private void matchMoves(final int round, final int turnIndex, final BetChoice betChoice,
+      final Function<ParsedMove, Optional<Move>> moveFrom,
+      final BiConsumer<ParsedMove, Move> processor) {
     if (round > nbRounds - 1) {
       return;
     }
     List<Set<ParsedMove>> roundMoves = moves.get(round);
-    final int turnIndex = getTurnIndex(hand);
     if (turnIndex < roundMoves.size()) {
       for (ParsedMove move : roundMoves.get(turnIndex)) {
-        final Optional<Move> m = ParsedMove.moveFrom(hand, move);
+        final Optional<Move> m = moveFrom.apply(move);
         if (m.isPresent()) {
           Move validMove = m.get();
-          processor.process(hand, move, validMove);
+          processor.accept(move, validMove);
         }
       }
     }
 
-    final BetChoice betChoice = hand.getBetChoice();
     final CallValue callValue = betChoice.getCallValue();
     if (callValue.exists()) {
       final int val = callValue.getValue();
       final Move callMove = Move.getCall(betChoice.getPlayer(), val, callValue.getOldBet());
-      processor.process(hand, new ParsedMove(ParsedMoveType.CALL, 0, 0, "Call"), callMove);
+      processor.accept(new ParsedMove(ParsedMoveType.CALL, 0, 0, "Call"), callMove);
     }
     if (!callValue.isCheck()) {
       final Move foldMove = Move.getFold(betChoice.getPlayer());
-      processor.process(hand, new ParsedMove(ParsedMoveType.FOLD, 0, 0, "Fold"), foldMove);
+      processor.accept(new ParsedMove(ParsedMoveType.FOLD, 0, 0, "Fold"), foldMove);
     }
   }
 
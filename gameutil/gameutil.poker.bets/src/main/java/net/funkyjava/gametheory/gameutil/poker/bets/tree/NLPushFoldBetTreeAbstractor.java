@@ -4,18 +4,28 @@ import java.util.LinkedList;
 import java.util.List;
 
 import net.funkyjava.gametheory.gameutil.poker.bets.NLHand;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLState;
 import net.funkyjava.gametheory.gameutil.poker.bets.moves.Move;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.BetChoice;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.BetRange;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.CallValue;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.RaiseRange;
 
-public class NLPushFoldBetTreeAbstractor implements NLBetTreeAbstractor {
+public class NLPushFoldBetTreeAbstractor
+    implements NLBetTreeAbstractor, NLStateBetTreeAbstractor {
 
   @Override
   public List<Move> movesForHand(final NLHand hand) {
+    return movesForChoice(hand.getBetChoice());
+  }
+
+  @Override
+  public List<Move> movesForState(final NLState state) {
+    return movesForChoice(state.getBetChoice());
+  }
+
+  private static List<Move> movesForChoice(final BetChoice choice) {
     final List<Move> moves = new LinkedList<>();
-    final BetChoice choice = hand.getBetChoice();
     final int player = choice.getPlayer();
     moves.add(Move.getFold(player));
     final BetRange betRange = choice.getBetRange();
@@ -0,0 +1,26 @@
+package net.funkyjava.gametheory.gameutil.poker.bets.tree;
+
+import java.util.List;
+
+import net.funkyjava.gametheory.gameutil.poker.bets.NLState;
+import net.funkyjava.gametheory.gameutil.poker.bets.moves.Move;
+
+/**
+ * Bet tree abstractor providing the moves of compact {@link NLState}s, for abstractions that don't
+ * depend on the moves history but through the state. States of the same tree may be walked
+ * concurrently, so implementations must be thread safe.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public interface NLStateBetTreeAbstractor {
+
+  /**
+   * Get the abstracted moves of a state waiting for a move
+   *
+   * @param state the state
+   * @return the ordered moves
+   */
+  List<Move> movesForState(NLState state);
+
+}
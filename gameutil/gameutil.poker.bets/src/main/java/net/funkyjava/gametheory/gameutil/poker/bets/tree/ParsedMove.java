@@ -3,7 +3,6 @@ package net.funkyjava.gametheory.gameutil.poker.bets.tree;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.util.LinkedHashMap;
-import java.util.List;
 
 import com.google.common.base.Optional;
 
@@ -12,6 +11,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import net.funkyjava.gametheory.gameutil.poker.bets.NLHand;
+import net.funkyjava.gametheory.gameutil.poker.bets.NLState;
 import net.funkyjava.gametheory.gameutil.poker.bets.moves.Move;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.BetChoice;
 import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.BetRange;
@@ -87,33 +87,50 @@ public class ParsedMove {
   }
 
   public static final Optional<Move> moveFrom(final NLHand hand, final ParsedMove move) {
+    final int totPots =
+        move.getType() == ParsedMoveType.POT_MULTIPLIER ? hand.getTotalPotsValue() : 0;
+    int maxBet = 0;
+    if (move.getType() == ParsedMoveType.MAX_BET_MULTIPLIER) {
+      for (PlayerData pData : hand.getPlayersData()) {
+        maxBet = Math.max(maxBet, pData.getBet());
+      }
+    }
+    return moveFrom(hand.getBetChoice(), totPots, maxBet, move);
+  }
+
+  public static final Optional<Move> moveFrom(final NLState state, final ParsedMove move) {
+    final int totPots =
+        move.getType() == ParsedMoveType.POT_MULTIPLIER ? state.getTotalPotsValue() : 0;
+    final int maxBet = move.getType() == ParsedMoveType.MAX_BET_MULTIPLIER ? state.getMaxBet() : 0;
+    return moveFrom(state.getBetChoice(), totPots, maxBet, move);
+  }
+
+  private static final Optional<Move> moveFrom(final BetChoice betChoice, final int totPots,
+      final int maxBet, final ParsedMove move) {
     switch (move.getType()) {
       case ALL_IN:
-        return allInMoveFrom(hand);
+        return allInMoveFrom(betChoice);
       case CALL:
-        return callMoveFrom(hand);
+        return callMoveFrom(betChoice);
       case FOLD:
-        return foldMoveFrom(hand);
+        return foldMoveFrom(betChoice);
       case MAX_BET_MULTIPLIER:
-        return maxBetMultiplierMoveFrom(hand, move.getMultiplier());
+        return multipliedMoveFrom(betChoice, (int) (maxBet * move.getMultiplier()));
       case MIN_BET_RAISE:
-        return minBetRaiseMoveFrom(hand);
+        return minBetRaiseMoveFrom(betChoice);
       case NUMERIC:
-        return numericMoveFrom(hand, move.getNumericValue());
+        return numericMoveFrom(betChoice, move.getNumericValue());
       case POT_MULTIPLIER:
-        return potMultiplierMoveFrom(hand, move.getMultiplier());
+        return multipliedMoveFrom(betChoice, (int) (totPots * move.getMultiplier()));
 
     }
     return Optional.absent();
   }
 
-  private static final Optional<Move> potMultiplierMoveFrom(final NLHand hand,
-      final double multiplier) {
-    final int totPots = hand.getTotalPotsValue();
-    final int betValue = (int) (totPots * multiplier);
-    final BetChoice betChoice = hand.getBetChoice();
+  private static final Optional<Move> multipliedMoveFrom(final BetChoice betChoice,
+      final int betValue) {
     final RaiseRange raiseRange = betChoice.getRaiseRange();
-    final int player = hand.getBettingPlayer();
+    final int player = betChoice.getPlayer();
     if (raiseRange.exists()) {
       return Optional.of(Move.getRaise(player,
           Math.max(Math.min(raiseRange.getMax(), betValue), raiseRange.getMin()),
@@ -127,10 +144,10 @@ public class ParsedMove {
     return Optional.absent();
   }
 
-  private static final Optional<Move> numericMoveFrom(final NLHand hand, final int numValue) {
-    final BetChoice betChoice = hand.getBetChoice();
+  private static final Optional<Move> numericMoveFrom(final BetChoice betChoice,
+      final int numValue) {
     final RaiseRange raiseRange = betChoice.getRaiseRange();
-    final int player = hand.getBettingPlayer();
+    final int player = betChoice.getPlayer();
     if (raiseRange.exists() && numValue <= raiseRange.getMax() && numValue >= raiseRange.getMin()) {
       return Optional.of(Move.getRaise(player, numValue, raiseRange.getOldBet()));
     }
@@ -145,10 +162,9 @@ public class ParsedMove {
     return Optional.absent();
   }
 
-  private static final Optional<Move> allInMoveFrom(final NLHand hand) {
-    final BetChoice betChoice = hand.getBetChoice();
+  private static final Optional<Move> allInMoveFrom(final BetChoice betChoice) {
     final RaiseRange raiseRange = betChoice.getRaiseRange();
-    final int player = hand.getBettingPlayer();
+    final int player = betChoice.getPlayer();
     if (raiseRange.exists()) {
       return Optional.of(Move.getRaise(player, raiseRange.getMax(), raiseRange.getOldBet()));
     }
@@ -156,12 +172,11 @@ public class ParsedMove {
     if (betRange.exists()) {
       return Optional.of(Move.getBet(player, betRange.getMax()));
     }
-    return callMoveFrom(hand);
+    return callMoveFrom(betChoice);
   }
 
-  private static final Optional<Move> callMoveFrom(final NLHand hand) {
-    final BetChoice betChoice = hand.getBetChoice();
-    final int player = hand.getBettingPlayer();
+  private static final Optional<Move> callMoveFrom(final BetChoice betChoice) {
+    final int player = betChoice.getPlayer();
     final CallValue callVal = betChoice.getCallValue();
     if (callVal.exists()) {
       return Optional.of(Move.getCall(player, callVal.getValue(), callVal.getOldBet()));
@@ -169,44 +184,13 @@ public class ParsedMove {
     return Optional.absent();
   }
 
-  private static final Optional<Move> foldMoveFrom(final NLHand hand) {
-    final int player = hand.getBettingPlayer();
-    return Optional.of(Move.getFold(player));
-  }
-
-  private static final Optional<Move> maxBetMultiplierMoveFrom(final NLHand hand,
-      final double multiplier) {
-    final List<PlayerData> data = hand.getPlayersData();
-    int maxBet = 0;
-    for (PlayerData pData : data) {
-      maxBet = Math.max(maxBet, pData.getBet());
-    }
-    final int raiseBet = (int) (maxBet * multiplier);
-    final BetChoice betChoice = hand.getBetChoice();
-    final RaiseRange raiseRange = betChoice.getRaiseRange();
-    final int player = hand.getBettingPlayer();
-    if (raiseRange.exists()) {
-      return Optional.of(Move.getRaise(player,
-          Math.max(Math.min(raiseRange.getMax(), raiseBet), raiseRange.getMin()),
-          raiseRange.getOldBet()));
-    }
-    final BetRange betRange = betChoice.getBetRange();
-    if (betRange.exists()) {
-      return Optional.of(
-          Move.getBet(player, Math.max(Math.min(betRange.getMax(), raiseBet), betRange.getMin())));
-    }
-    return Optional.absent();
+  private static final Optional<Move> foldMoveFrom(final BetChoice betChoice) {
+    return Optional.of(Move.getFold(betChoice.getPlayer()));
   }
 
-  private static final Optional<Move> minBetRaiseMoveFrom(final NLHand hand) {
-    final List<PlayerData> data = hand.getPlayersData();
-    int maxBet = 0;
-    for (PlayerData pData : data) {
-      maxBet = Math.max(maxBet, pData.getBet());
-    }
-    final BetChoice betChoice = hand.getBetChoice();
+  private static final Optional<Move> minBetRaiseMoveFrom(final BetChoice betChoice) {
     final RaiseRange raiseRange = betChoice.getRaiseRange();
-    final int player = hand.getBettingPlayer();
+    final int player = betChoice.getPlayer();
     if (raiseRange.exists()) {
       return Optional.of(Move.getRaise(player, raiseRange.getMin(), raiseRange.getOldBet()));
     }
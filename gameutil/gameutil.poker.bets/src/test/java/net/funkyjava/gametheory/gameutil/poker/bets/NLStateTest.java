@@ -0,0 +1,160 @@
+package net.funkyjava.gametheory.gameutil.poker.bets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.funkyjava.gametheory.gameutil.poker.bets.moves.Move;
+import net.funkyjava.gametheory.gameutil.poker.bets.pots.Pot;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.RoundState;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.BetChoice;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.BetRange;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.CallValue;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.betround.RaiseRange;
+import net.funkyjava.gametheory.gameutil.poker.bets.rounds.data.PlayerData;
+
+/**
+ * Walks {@link NLHand}s and their {@link NLState}s in lockstep and checks they always agree
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class NLStateTest {
+
+  /**
+   * Heads up with blinds
+   */
+  @Test
+  public void testHeadsUp() {
+    walk(NLHandParser.parse("blinds-enable=true sb=10 bb=20|200 sb-300 bb", 3));
+  }
+
+  /**
+   * Three players with different stacks, so that side pots are built
+   */
+  @Test
+  public void testSidePots() {
+    walk(NLHandParser.parse("blinds-enable=true sb=10 bb=20|100 sb-200 bb-45", 3));
+  }
+
+  /**
+   * Three players with ante and a short big blind
+   */
+  @Test
+  public void testAnte() {
+    walk(NLHandParser.parse(
+        "blinds-enable=true ante-enable=true ante=5 sb=10 bb=20|300-200 sb-15 bb", 2));
+  }
+
+  private static void walk(final NLHand hand) {
+    walk(NLState.firstBetRoundHand(hand), NLState.fromHand(hand));
+  }
+
+  private static void walk(final NLHand hand, final NLState state) {
+    final RoundState roundState = hand.getRoundState();
+    assertEquals(roundState, state.getRoundState());
+    assertEquals(hand.getBetRoundIndex(), state.getBetRoundIndex());
+    assertEquals(hand.getTotalPotsValue(), state.getTotalPotsValue());
+    switch (roundState) {
+      case WAITING_MOVE:
+        assertEquals((int) hand.getBettingPlayer(), state.getBettingPlayer());
+        assertEquals(hand.getCurrentRoundBetMoves().isEmpty(), state.isRoundFirstNode());
+        final BetChoice handChoice = hand.getBetChoice();
+        assertSameChoice(handChoice, state.getBetChoice());
+        for (Move move : moves(handChoice, hand.getCurrentRoundBetMoves().size() < 2)) {
+          final NLHand nextHand = hand.clone();
+          assertTrue(nextHand.doMove(move));
+          if (nextHand.getRoundState() == RoundState.NEXT_ROUND) {
+            assertTrue(nextHand.nextBetRound());
+          }
+          final NLState nextState = state.copy();
+          nextState.doMove(move);
+          walk(nextHand, nextState);
+        }
+        break;
+      case END_NO_SHOWDOWN:
+        assertEquals((int) hand.getNoShowdownWinningPlayer(),
+            state.getNoShowdownWinningPlayer());
+        assertSamePlayers(hand, state);
+        assertSamePots(hand, state);
+        break;
+      case SHOWDOWN:
+        assertSamePlayers(hand, state);
+        assertSamePots(hand, state);
+        break;
+      default:
+        throw new IllegalStateException("Unexpected round state " + roundState);
+    }
+  }
+
+  /**
+   * Fold, call, min bet, all-in and min raise when few moves were done this round, to keep the
+   * tree small
+   */
+  private static List<Move> moves(final BetChoice choice, final boolean withMinRaise) {
+    final List<Move> moves = new ArrayList<>();
+    final int player = choice.getPlayer();
+    final CallValue call = choice.getCallValue();
+    if (!call.isCheck()) {
+      moves.add(Move.getFold(player));
+    }
+    moves.add(Move.getCall(player, call.getValue(), call.getOldBet()));
+    final BetRange bet = choice.getBetRange();
+    if (bet.exists()) {
+      moves.add(Move.getBet(player, bet.getMin()));
+      if (bet.getMax() != bet.getMin()) {
+        moves.add(Move.getBet(player, bet.getMax()));
+      }
+    }
+    final RaiseRange raise = choice.getRaiseRange();
+    if (raise.exists()) {
+      if (withMinRaise && raise.getMax() != raise.getMin()) {
+        moves.add(Move.getRaise(player, raise.getMin(), raise.getOldBet()));
+      }
+      moves.add(Move.getRaise(player, raise.getMax(), raise.getOldBet()));
+    }
+    return moves;
+  }
+
+  private static void assertSameChoice(final BetChoice expected, final BetChoice actual) {
+    assertEquals(expected.getPlayer(), actual.getPlayer());
+    final BetRange bet = expected.getBetRange();
+    assertEquals(bet.getMin(), actual.getBetRange().getMin());
+    assertEquals(bet.getMax(), actual.getBetRange().getMax());
+    final CallValue call = expected.getCallValue();
+    assertEquals(call.getValue(), actual.getCallValue().getValue());
+    assertEquals(call.getToAdd(), actual.getCallValue().getToAdd());
+    assertEquals(call.getOldBet(), actual.getCallValue().getOldBet());
+    final RaiseRange raise = expected.getRaiseRange();
+    assertEquals(raise.getOldBet(), actual.getRaiseRange().getOldBet());
+    assertEquals(raise.getMin(), actual.getRaiseRange().getMin());
+    assertEquals(raise.getMax(), actual.getRaiseRange().getMax());
+  }
+
+  private static void assertSamePlayers(final NLHand hand, final NLState state) {
+    for (PlayerData data : hand.getPlayersData()) {
+      final int player = data.getPlayer();
+      assertEquals(data.getStack(), state.getStack(player));
+      assertEquals(data.isInHand(), state.isInHand(player));
+    }
+  }
+
+  private static void assertSamePots(final NLHand hand, final NLState state) {
+    final List<Pot> pots = hand.getCurrentPots();
+    assertEquals(pots.size(), state.getNbPots());
+    for (int i = 0; i < pots.size(); i++) {
+      final Pot pot = pots.get(i);
+      assertEquals(pot.getValue(), state.getPotValue(i));
+      int mask = 0;
+      for (Integer player : pot.getPlayers()) {
+        mask |= 1 << player;
+      }
+      assertEquals(mask, state.getPotPlayers(i));
+    }
+  }
+
+}
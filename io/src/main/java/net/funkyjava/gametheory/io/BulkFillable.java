@@ -0,0 +1,34 @@
+package net.funkyjava.gametheory.io;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * {@link Fillable} that can also be filled and written in bulk through NIO channels. Both paths
+ * must read and write the same bytes, so that files written by one can be read by the other. Files
+ * are read and written through channels by default.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public interface BulkFillable extends Fillable {
+
+  public void fill(ChannelReader reader) throws IOException;
+
+  public void write(ChannelWriter writer) throws IOException;
+
+  @Override
+  public default void fill(String path) throws IOException {
+    try (final ChannelReader reader = ChannelReader.open(Paths.get(path))) {
+      fill(reader);
+    }
+  }
+
+  @Override
+  public default void write(String path) throws IOException {
+    try (final ChannelWriter writer = ChannelWriter.open(Paths.get(path))) {
+      write(writer);
+    }
+  }
+
+}
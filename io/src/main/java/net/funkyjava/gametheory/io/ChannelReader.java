@@ -0,0 +1,309 @@
+package net.funkyjava.gametheory.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered reader of a {@link ReadableByteChannel} that reads primitive arrays in bulk through
+ * buffer views. Values are big-endian like with {@link DataInputStream}, so that anything written
+ * with {@link java.io.DataOutputStream} or {@link ChannelWriter} can be read.
+ *
+ * {@link #getDataInputStream()} reads from the same buffer, to fill objects that only have a
+ * stream path.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class ChannelReader implements Closeable {
+
+  /**
+   * Default buffer size in bytes
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+  /**
+   * Under this number of values, values are read one by one rather than through a view
+   */
+  private static final int MIN_VIEW_LENGTH = 16;
+
+  private final ReadableByteChannel channel;
+  private final ByteBuffer buffer;
+  private final DataInputStream dataInputStream;
+
+  /**
+   * Constructor with the default buffer size
+   *
+   * @param channel the channel to read
+   */
+  public ChannelReader(final ReadableByteChannel channel) {
+    this(channel, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param channel the channel to read
+   * @param bufferSize the buffer size in bytes, at least 128
+   */
+  public ChannelReader(final ReadableByteChannel channel, final int bufferSize) {
+    checkArgument(bufferSize >= 128, "The buffer size must be >= 128");
+    this.channel = channel;
+    final ByteBuffer buffer = this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    buffer.limit(0);
+    this.dataInputStream = new DataInputStream(new InputStream() {
+
+      @Override
+      public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fillBuffer()) {
+          return -1;
+        }
+        return buffer.get() & 0xff;
+      }
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        if (!buffer.hasRemaining() && !fillBuffer()) {
+          return -1;
+        }
+        final int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+      }
+    });
+  }
+
+  /**
+   * Open a file for reading
+   *
+   * @param path the file path
+   * @return the reader
+   * @throws IOException
+   */
+  public static ChannelReader open(final Path path) throws IOException {
+    return new ChannelReader(FileChannel.open(path, StandardOpenOption.READ));
+  }
+
+  /**
+   * Stream reading from this reader's buffer. It must be used instead of the channel while this
+   * reader is in use.
+   *
+   * @return the data input stream
+   */
+  public DataInputStream getDataInputStream() {
+    return dataInputStream;
+  }
+
+  /**
+   * Read more bytes from the channel after the remaining ones
+   *
+   * @return false at the end of the channel
+   */
+  private boolean fillBuffer() throws IOException {
+    final ByteBuffer buffer = this.buffer;
+    buffer.compact();
+    try {
+      while (buffer.hasRemaining()) {
+        final int read = channel.read(buffer);
+        if (read < 0) {
+          return buffer.position() > 0;
+        }
+        if (read == 0) {
+          break;
+        }
+      }
+      return true;
+    } finally {
+      buffer.flip();
+    }
+  }
+
+  private void ensure(final int nbBytes) throws IOException {
+    while (buffer.remaining() < nbBytes) {
+      final int remaining = buffer.remaining();
+      if (!fillBuffer() || buffer.remaining() == remaining) {
+        throw new EOFException();
+      }
+    }
+  }
+
+  public int readInt() throws IOException {
+    ensure(4);
+    return buffer.getInt();
+  }
+
+  public long readLong() throws IOException {
+    ensure(8);
+    return buffer.getLong();
+  }
+
+  public float readFloat() throws IOException {
+    ensure(4);
+    return buffer.getFloat();
+  }
+
+  public double readDouble() throws IOException {
+    ensure(8);
+    return buffer.getDouble();
+  }
+
+  /**
+   * Fill a whole array
+   *
+   * @param dest the destination array
+   * @throws IOException
+   */
+  public void readDoubles(final double[] dest) throws IOException {
+    readDoubles(dest, 0, dest.length);
+  }
+
+  /**
+   * Fill a range of an array
+   *
+   * @param dest the destination array
+   * @param offset the index of the first value
+   * @param length the number of values to read
+   * @throws IOException
+   */
+  public void readDoubles(final double[] dest, int offset, int length) throws IOException {
+    final ByteBuffer buffer = this.buffer;
+    if (length < MIN_VIEW_LENGTH) {
+      ensure(length * 8);
+      for (int i = 0; i < length; i++) {
+        dest[offset + i] = buffer.getDouble();
+      }
+      return;
+    }
+    while (length > 0) {
+      int n = Math.min(buffer.remaining() / 8, length);
+      if (n == 0) {
+        ensure(8);
+        continue;
+      }
+      buffer.asDoubleBuffer().get(dest, offset, n);
+      buffer.position(buffer.position() + n * 8);
+      offset += n;
+      length -= n;
+    }
+  }
+
+  /**
+   * Fill a whole array
+   *
+   * @param dest the destination array
+   * @throws IOException
+   */
+  public void readFloats(final float[] dest) throws IOException {
+    readFloats(dest, 0, dest.length);
+  }
+
+  /**
+   * Fill a range of an array
+   *
+   * @param dest the destination array
+   * @param offset the index of the first value
+   * @param length the number of values to read
+   * @throws IOException
+   */
+  public void readFloats(final float[] dest, int offset, int length) throws IOException {
+    final ByteBuffer buffer = this.buffer;
+    if (length < MIN_VIEW_LENGTH) {
+      ensure(length * 4);
+      for (int i = 0; i < length; i++) {
+        dest[offset + i] = buffer.getFloat();
+      }
+      return;
+    }
+    while (length > 0) {
+      int n = Math.min(buffer.remaining() / 4, length);
+      if (n == 0) {
+        ensure(4);
+        continue;
+      }
+      buffer.asFloatBuffer().get(dest, offset, n);
+      buffer.position(buffer.position() + n * 4);
+      offset += n;
+      length -= n;
+    }
+  }
+
+  /**
+   * Fill a whole array
+   *
+   * @param dest the destination array
+   * @throws IOException
+   */
+  public void readInts(final int[] dest) throws IOException {
+    readInts(dest, 0, dest.length);
+  }
+
+  /**
+   * Fill a range of an array
+   *
+   * @param dest the destination array
+   * @param offset the index of the first value
+   * @param length the number of values to read
+   * @throws IOException
+   */
+  public void readInts(final int[] dest, int offset, int length) throws IOException {
+    final ByteBuffer buffer = this.buffer;
+    if (length < MIN_VIEW_LENGTH) {
+      ensure(length * 4);
+      for (int i = 0; i < length; i++) {
+        dest[offset + i] = buffer.getInt();
+      }
+      return;
+    }
+    while (length > 0) {
+      int n = Math.min(buffer.remaining() / 4, length);
+      if (n == 0) {
+        ensure(4);
+        continue;
+      }
+      buffer.asIntBuffer().get(dest, offset, n);
+      buffer.position(buffer.position() + n * 4);
+      offset += n;
+      length -= n;
+    }
+  }
+
+  /**
+   * Fill a whole array
+   *
+   * @param dest the destination array
+   * @throws IOException
+   */
+  public void readLongs(final long[] dest) throws IOException {
+    final ByteBuffer buffer = this.buffer;
+    int offset = 0;
+    int length = dest.length;
+    while (length > 0) {
+      int n = Math.min(buffer.remaining() / 8, length);
+      if (n == 0) {
+        ensure(8);
+        continue;
+      }
+      buffer.asLongBuffer().get(dest, offset, n);
+      buffer.position(buffer.position() + n * 8);
+      offset += n;
+      length -= n;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
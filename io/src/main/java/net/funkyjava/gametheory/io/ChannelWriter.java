@@ -0,0 +1,307 @@
+package net.funkyjava.gametheory.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered writer to a {@link WritableByteChannel} that writes primitive arrays in bulk through
+ * buffer views. Values are big-endian like with {@link DataOutputStream}, so that what it writes
+ * can be read with {@link java.io.DataInputStream} or {@link ChannelReader}.
+ *
+ * {@link #getDataOutputStream()} writes to the same buffer, to write objects that only have a
+ * stream path.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class ChannelWriter implements Closeable, Flushable {
+
+  /**
+   * Default buffer size in bytes
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+  /**
+   * Under this number of values, values are written one by one rather than through a view
+   */
+  private static final int MIN_VIEW_LENGTH = 16;
+
+  private final WritableByteChannel channel;
+  private final ByteBuffer buffer;
+  private final DataOutputStream dataOutputStream;
+
+  /**
+   * Constructor with the default buffer size
+   *
+   * @param channel the channel to write to
+   */
+  public ChannelWriter(final WritableByteChannel channel) {
+    this(channel, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param channel the channel to write to
+   * @param bufferSize the buffer size in bytes, at least 128
+   */
+  public ChannelWriter(final WritableByteChannel channel, final int bufferSize) {
+    checkArgument(bufferSize >= 128, "The buffer size must be >= 128");
+    this.channel = channel;
+    final ByteBuffer buffer = this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.dataOutputStream = new DataOutputStream(new OutputStream() {
+
+      @Override
+      public void write(final int b) throws IOException {
+        ensure(1);
+        buffer.put((byte) b);
+      }
+
+      @Override
+      public void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+          if (!buffer.hasRemaining()) {
+            drain();
+          }
+          final int n = Math.min(len, buffer.remaining());
+          buffer.put(b, off, n);
+          off += n;
+          len -= n;
+        }
+      }
+    });
+  }
+
+  /**
+   * Create or truncate a file for writing
+   *
+   * @param path the file path
+   * @return the writer
+   * @throws IOException
+   */
+  public static ChannelWriter open(final Path path) throws IOException {
+    return new ChannelWriter(FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+  }
+
+  /**
+   * Stream writing to this writer's buffer. It must be used instead of the channel while this
+   * writer is in use.
+   *
+   * @return the data output stream
+   */
+  public DataOutputStream getDataOutputStream() {
+    return dataOutputStream;
+  }
+
+  /**
+   * Write the buffered bytes to the channel
+   */
+  private void drain() throws IOException {
+    final ByteBuffer buffer = this.buffer;
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private void ensure(final int nbBytes) throws IOException {
+    if (buffer.remaining() < nbBytes) {
+      drain();
+    }
+  }
+
+  public void writeInt(final int value) throws IOException {
+    ensure(4);
+    buffer.putInt(value);
+  }
+
+  public void writeLong(final long value) throws IOException {
+    ensure(8);
+    buffer.putLong(value);
+  }
+
+  public void writeFloat(final float value) throws IOException {
+    ensure(4);
+    buffer.putFloat(value);
+  }
+
+  public void writeDouble(final double value) throws IOException {
+    ensure(8);
+    buffer.putDouble(value);
+  }
+
+  /**
+   * Write a whole array
+   *
+   * @param src the source array
+   * @throws IOException
+   */
+  public void writeDoubles(final double[] src) throws IOException {
+    writeDoubles(src, 0, src.length);
+  }
+
+  /**
+   * Write a range of an array
+   *
+   * @param src the source array
+   * @param offset the index of the first value
+   * @param length the number of values to write
+   * @throws IOException
+   */
+  public void writeDoubles(final double[] src, int offset, int length) throws IOException {
+    final ByteBuffer buffer = this.buffer;
+    if (length < MIN_VIEW_LENGTH) {
+      ensure(length * 8);
+      for (int i = 0; i < length; i++) {
+        buffer.putDouble(src[offset + i]);
+      }
+      return;
+    }
+    while (length > 0) {
+      final int n = Math.min(buffer.remaining() / 8, length);
+      if (n == 0) {
+        drain();
+        continue;
+      }
+      buffer.asDoubleBuffer().put(src, offset, n);
+      buffer.position(buffer.position() + n * 8);
+      offset += n;
+      length -= n;
+    }
+  }
+
+  /**
+   * Write a whole array
+   *
+   * @param src the source array
+   * @throws IOException
+   */
+  public void writeFloats(final float[] src) throws IOException {
+    writeFloats(src, 0, src.length);
+  }
+
+  /**
+   * Write a range of an array
+   *
+   * @param src the source array
+   * @param offset the index of the first value
+   * @param length the number of values to write
+   * @throws IOException
+   */
+  public void writeFloats(final float[] src, int offset, int length) throws IOException {
+    final ByteBuffer buffer = this.buffer;
+    if (length < MIN_VIEW_LENGTH) {
+      ensure(length * 4);
+      for (int i = 0; i < length; i++) {
+        buffer.putFloat(src[offset + i]);
+      }
+      return;
+    }
+    while (length > 0) {
+      final int n = Math.min(buffer.remaining() / 4, length);
+      if (n == 0) {
+        drain();
+        continue;
+      }
+      buffer.asFloatBuffer().put(src, offset, n);
+      buffer.position(buffer.position() + n * 4);
+      offset += n;
+      length -= n;
+    }
+  }
+
+  /**
+   * Write a whole array
+   *
+   * @param src the source array
+   * @throws IOException
+   */
+  public void writeInts(final int[] src) throws IOException {
+    writeInts(src, 0, src.length);
+  }
+
+  /**
+   * Write a range of an array
+   *
+   * @param src the source array
+   * @param offset the index of the first value
+   * @param length the number of values to write
+   * @throws IOException
+   */
+  public void writeInts(final int[] src, int offset, int length) throws IOException {
+    final ByteBuffer buffer = this.buffer;
+    if (length < MIN_VIEW_LENGTH) {
+      ensure(length * 4);
+      for (int i = 0; i < length; i++) {
+        buffer.putInt(src[offset + i]);
+      }
+      return;
+    }
+    while (length > 0) {
+      final int n = Math.min(buffer.remaining() / 4, length);
+      if (n == 0) {
+        drain();
+        continue;
+      }
+      buffer.asIntBuffer().put(src, offset, n);
+      buffer.position(buffer.position() + n * 4);
+      offset += n;
+      length -= n;
+    }
+  }
+
+  /**
+   * Write a whole array
+   *
+   * @param src the source array
+   * @throws IOException
+   */
+  public void writeLongs(final long[] src) throws IOException {
+    final ByteBuffer buffer = this.buffer;
+    int offset = 0;
+    int length = src.length;
+    while (length > 0) {
+      final int n = Math.min(buffer.remaining() / 8, length);
+      if (n == 0) {
+        drain();
+        continue;
+      }
+      buffer.asLongBuffer().put(src, offset, n);
+      buffer.position(buffer.position() + n * 8);
+      offset += n;
+      length -= n;
+    }
+  }
+
+  /**
+   * Write the buffered bytes to the channel
+   */
+  @Override
+  public void flush() throws IOException {
+    drain();
+  }
+
+  /**
+   * Flush and close the channel
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+
+}
@@ -5,28 +5,78 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 
+/**
+ * Serialization of primitive arrays and {@link Fillable}s, in the {@link DataOutputStream} format.
+ * Stream methods convert the values by chunks of bytes through buffer views rather than one by one.
+ * {@link ChannelReader} and {@link ChannelWriter} methods read and write the same bytes through
+ * NIO channels.
+ * 
+ * @author Pierre Mardon
+ *
+ */
 public class IOUtils {
 
+  /**
+   * Maximum size in bytes of the chunks converted at once by the stream methods
+   */
+  private static final int CHUNK_SIZE = 1 << 16;
+
   private IOUtils() {}
 
-  public static void fill(InputStream is, double[] dest) throws IOException {
-    final DataInputStream dis = new DataInputStream(is);
+  private static byte[] chunk(final long nbBytes) {
+    return new byte[(int) Math.min(CHUNK_SIZE, nbBytes)];
+  }
+
+  private static void readDoubles(final DataInputStream dis, final byte[] chunk,
+      final double[] dest) throws IOException {
+    final DoubleBuffer view = ByteBuffer.wrap(chunk).asDoubleBuffer();
+    final int chunkLength = chunk.length / 8;
     final int length = dest.length;
-    for (int i = 0; i < length; i++) {
-      dest[i] = dis.readDouble();
+    for (int i = 0; i < length;) {
+      final int n = Math.min(chunkLength, length - i);
+      dis.readFully(chunk, 0, n * 8);
+      view.clear();
+      view.get(dest, i, n);
+      i += n;
     }
   }
 
+  private static void writeDoubles(final OutputStream os, final byte[] chunk, final double[] src)
+      throws IOException {
+    final DoubleBuffer view = ByteBuffer.wrap(chunk).asDoubleBuffer();
+    final int chunkLength = chunk.length / 8;
+    final int length = src.length;
+    for (int i = 0; i < length;) {
+      final int n = Math.min(chunkLength, length - i);
+      view.clear();
+      view.put(src, i, n);
+      os.write(chunk, 0, n * 8);
+      i += n;
+    }
+  }
+
+  private static long nbValues(final double[][] arrays) {
+    long res = 0;
+    for (double[] array : arrays) {
+      res += array.length;
+    }
+    return res;
+  }
+
+  public static void fill(InputStream is, double[] dest) throws IOException {
+    readDoubles(new DataInputStream(is), chunk(dest.length * 8L), dest);
+  }
+
   public static void fill(InputStream is, double[][] dest) throws IOException {
     final DataInputStream dis = new DataInputStream(is);
+    final byte[] chunk = chunk(nbValues(dest) * 8);
     final int length = dest.length;
     for (int i = 0; i < length; i++) {
-      final double[] destI = dest[i];
-      final int lengthI = destI.length;
-      for (int j = 0; j < lengthI; j++) {
-        destI[j] = dis.readDouble();
-      }
+      readDoubles(dis, chunk, dest[i]);
     }
   }
 
@@ -56,9 +106,16 @@ public class IOUtils {
 
   public static void fill(InputStream is, int[] dest) throws IOException {
     final DataInputStream dis = new DataInputStream(is);
+    final byte[] chunk = chunk(dest.length * 4L);
+    final IntBuffer view = ByteBuffer.wrap(chunk).asIntBuffer();
+    final int chunkLength = chunk.length / 4;
     final int length = dest.length;
-    for (int i = 0; i < length; i++) {
-      dest[i] = dis.readInt();
+    for (int i = 0; i < length;) {
+      final int n = Math.min(chunkLength, length - i);
+      dis.readFully(chunk, 0, n * 4);
+      view.clear();
+      view.get(dest, i, n);
+      i += n;
     }
   }
 
@@ -105,22 +162,14 @@ public class IOUtils {
   }
 
   public static void write(OutputStream os, double[] src) throws IOException {
-    final DataOutputStream dos = new DataOutputStream(os);
-    final int length = src.length;
-    for (int i = 0; i < length; i++) {
-      dos.writeDouble(src[i]);
-    }
+    writeDoubles(os, chunk(src.length * 8L), src);
   }
 
   public static void write(OutputStream os, double[][] src) throws IOException {
-    final DataOutputStream dos = new DataOutputStream(os);
+    final byte[] chunk = chunk(nbValues(src) * 8);
     final int length = src.length;
     for (int i = 0; i < length; i++) {
-      final double[] srcI = src[i];
-      final int lengthI = srcI.length;
-      for (int j = 0; j < lengthI; j++) {
-        dos.writeDouble(srcI[j]);
-      }
+      writeDoubles(os, chunk, src[i]);
     }
   }
 
@@ -149,10 +198,16 @@ public class IOUtils {
   }
 
   public static void write(OutputStream os, int[] src) throws IOException {
-    final DataOutputStream dos = new DataOutputStream(os);
+    final byte[] chunk = chunk(src.length * 4L);
+    final IntBuffer view = ByteBuffer.wrap(chunk).asIntBuffer();
+    final int chunkLength = chunk.length / 4;
     final int length = src.length;
-    for (int i = 0; i < length; i++) {
-      dos.writeInt(src[i]);
+    for (int i = 0; i < length;) {
+      final int n = Math.min(chunkLength, length - i);
+      view.clear();
+      view.put(src, i, n);
+      os.write(chunk, 0, n * 4);
+      i += n;
     }
   }
 
@@ -197,4 +252,190 @@ public class IOUtils {
       write(os, src[i]);
     }
   }
+
+  public static void fill(ChannelReader reader, double[] dest) throws IOException {
+    reader.readDoubles(dest);
+  }
+
+  public static void fill(ChannelReader reader, double[][] dest) throws IOException {
+    final int length = dest.length;
+    for (int i = 0; i < length; i++) {
+      reader.readDoubles(dest[i]);
+    }
+  }
+
+  public static void fill(ChannelReader reader, double[][][] dest) throws IOException {
+    final int length = dest.length;
+    for (int i = 0; i < length; i++) {
+      fill(reader, dest[i]);
+    }
+  }
+
+  public static void fill(ChannelReader reader, double[][][][] dest) throws IOException {
+    final int length = dest.length;
+    for (int i = 0; i < length; i++) {
+      fill(reader, dest[i]);
+    }
+  }
+
+  public static void fill(ChannelReader reader, double[][][][][] dest) throws IOException {
+    final int length = dest.length;
+    for (int i = 0; i < length; i++) {
+      fill(reader, dest[i]);
+    }
+  }
+
+  public static void fill(ChannelReader reader, int[] dest) throws IOException {
+    reader.readInts(dest);
+  }
+
+  public static void fill(ChannelReader reader, int[][] dest) throws IOException {
+    final int length = dest.length;
+    for (int i = 0; i < length; i++) {
+      reader.readInts(dest[i]);
+    }
+  }
+
+  public static void fill(ChannelReader reader, int[][][] dest) throws IOException {
+    final int length = dest.length;
+    for (int i = 0; i < length; i++) {
+      fill(reader, dest[i]);
+    }
+  }
+
+  /**
+   * Fill a {@link Fillable} from a reader, in bulk when it's a {@link BulkFillable}
+   * 
+   * @param reader the reader
+   * @param dest the fillable
+   * @throws IOException
+   */
+  public static void fill(ChannelReader reader, Fillable dest) throws IOException {
+    if (dest instanceof BulkFillable) {
+      ((BulkFillable) dest).fill(reader);
+    } else {
+      dest.fill(reader.getDataInputStream());
+    }
+  }
+
+  public static void fill(ChannelReader reader, Fillable[] dest) throws IOException {
+    final int length = dest.length;
+    for (int i = 0; i < length; i++) {
+      fill(reader, dest[i]);
+    }
+  }
+
+  public static void fill(ChannelReader reader, Fillable[][] dest) throws IOException {
+    final int length = dest.length;
+    for (int i = 0; i < length; i++) {
+      fill(reader, dest[i]);
+    }
+  }
+
+  public static void fill(ChannelReader reader, Fillable[][][] dest) throws IOException {
+    final int length = dest.length;
+    for (int i = 0; i < length; i++) {
+      fill(reader, dest[i]);
+    }
+  }
+
+  public static void fill(ChannelReader reader, Fillable[][][][] dest) throws IOException {
+    final int length = dest.length;
+    for (int i = 0; i < length; i++) {
+      fill(reader, dest[i]);
+    }
+  }
+
+  public static void write(ChannelWriter writer, double[] src) throws IOException {
+    writer.writeDoubles(src);
+  }
+
+  public static void write(ChannelWriter writer, double[][] src) throws IOException {
+    final int length = src.length;
+    for (int i = 0; i < length; i++) {
+      writer.writeDoubles(src[i]);
+    }
+  }
+
+  public static void write(ChannelWriter writer, double[][][] src) throws IOException {
+    final int length = src.length;
+    for (int i = 0; i < length; i++) {
+      write(writer, src[i]);
+    }
+  }
+
+  public static void write(ChannelWriter writer, double[][][][] src) throws IOException {
+    final int length = src.length;
+    for (int i = 0; i < length; i++) {
+      write(writer, src[i]);
+    }
+  }
+
+  public static void write(ChannelWriter writer, double[][][][][] src) throws IOException {
+    final int length = src.length;
+    for (int i = 0; i < length; i++) {
+      write(writer, src[i]);
+    }
+  }
+
+  public static void write(ChannelWriter writer, int[] src) throws IOException {
+    writer.writeInts(src);
+  }
+
+  public static void write(ChannelWriter writer, int[][] src) throws IOException {
+    final int length = src.length;
+    for (int i = 0; i < length; i++) {
+      writer.writeInts(src[i]);
+    }
+  }
+
+  public static void write(ChannelWriter writer, int[][][] src) throws IOException {
+    final int length = src.length;
+    for (int i = 0; i < length; i++) {
+      write(writer, src[i]);
+    }
+  }
+
+  /**
+   * Write a {@link Fillable} to a writer, in bulk when it's a {@link BulkFillable}
+   * 
+   * @param writer the writer
+   * @param src the fillable
+   * @throws IOException
+   */
+  public static void write(ChannelWriter writer, Fillable src) throws IOException {
+    if (src instanceof BulkFillable) {
+      ((BulkFillable) src).write(writer);
+    } else {
+      src.write(writer.getDataOutputStream());
+    }
+  }
+
+  public static void write(ChannelWriter writer, Fillable[] src) throws IOException {
+    final int length = src.length;
+    for (int i = 0; i < length; i++) {
+      write(writer, src[i]);
+    }
+  }
+
+  public static void write(ChannelWriter writer, Fillable[][] src) throws IOException {
+    final int length = src.length;
+    for (int i = 0; i < length; i++) {
+      write(writer, src[i]);
+    }
+  }
+
+  public static void write(ChannelWriter writer, Fillable[][][] src) throws IOException {
+    final int length = src.length;
+    for (int i = 0; i < length; i++) {
+      write(writer, src[i]);
+    }
+  }
+
+  public static void write(ChannelWriter writer, Fillable[][][][] src) throws IOException {
+    final int length = src.length;
+    for (int i = 0; i < length; i++) {
+      write(writer, src[i]);
+    }
+  }
 }
@@ -0,0 +1,215 @@
+package net.funkyjava.gametheory.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Writes the same {@link BulkFillable} through the stream path and the channel path, checks that
+ * the bytes are equal and reads each one back through the other path. Channels use the smallest
+ * buffer so that arrays span many buffer refills and drains.
+ *
+ * @author Pierre Mardon
+ *
+ */
+public class ChannelReaderWriterTest {
+
+  private static final int bufferSize = 128;
+
+  /**
+   * Arrays shorter and longer than the buffer views threshold and the buffer, with a string that
+   * only has a stream path in between
+   */
+  private static final class TestArrays implements BulkFillable {
+
+    private String name = "";
+    private final int[] ints;
+    private final long[] longs;
+    private final float[] floats;
+    private final double[] shortDoubles;
+    private final double[] doubles;
+
+    private TestArrays(final int nbInts, final int nbLongs, final int nbFloats,
+        final int nbShortDoubles, final int nbDoubles) {
+      ints = new int[nbInts];
+      longs = new long[nbLongs];
+      floats = new float[nbFloats];
+      shortDoubles = new double[nbShortDoubles];
+      doubles = new double[nbDoubles];
+    }
+
+    private static TestArrays random(final Random random) {
+      final TestArrays arrays = new TestArrays(5, 40, 300, 7, 500);
+      arrays.name = "arrays " + random.nextInt();
+      for (int i = 0; i < arrays.ints.length; i++) {
+        arrays.ints[i] = random.nextInt();
+      }
+      for (int i = 0; i < arrays.longs.length; i++) {
+        arrays.longs[i] = random.nextLong();
+      }
+      for (int i = 0; i < arrays.floats.length; i++) {
+        arrays.floats[i] = random.nextFloat() - 0.5f;
+      }
+      for (int i = 0; i < arrays.shortDoubles.length; i++) {
+        arrays.shortDoubles[i] = random.nextGaussian();
+      }
+      for (int i = 0; i < arrays.doubles.length; i++) {
+        arrays.doubles[i] = random.nextGaussian();
+      }
+      arrays.doubles[0] = Double.NaN;
+      arrays.doubles[1] = Double.NEGATIVE_INFINITY;
+      arrays.floats[0] = -0f;
+      return arrays;
+    }
+
+    private TestArrays empty() {
+      return new TestArrays(ints.length, longs.length, floats.length, shortDoubles.length,
+          doubles.length);
+    }
+
+    @Override
+    public void fill(final InputStream is) throws IOException {
+      final DataInputStream dis = new DataInputStream(is);
+      for (int i = 0; i < ints.length; i++) {
+        ints[i] = dis.readInt();
+      }
+      for (int i = 0; i < longs.length; i++) {
+        longs[i] = dis.readLong();
+      }
+      name = dis.readUTF();
+      for (int i = 0; i < floats.length; i++) {
+        floats[i] = dis.readFloat();
+      }
+      for (int i = 0; i < shortDoubles.length; i++) {
+        shortDoubles[i] = dis.readDouble();
+      }
+      for (int i = 0; i < doubles.length; i++) {
+        doubles[i] = dis.readDouble();
+      }
+    }
+
+    @Override
+    public void write(final OutputStream os) throws IOException {
+      final DataOutputStream dos = new DataOutputStream(os);
+      for (int value : ints) {
+        dos.writeInt(value);
+      }
+      for (long value : longs) {
+        dos.writeLong(value);
+      }
+      dos.writeUTF(name);
+      for (float value : floats) {
+        dos.writeFloat(value);
+      }
+      for (double value : shortDoubles) {
+        dos.writeDouble(value);
+      }
+      for (double value : doubles) {
+        dos.writeDouble(value);
+      }
+      dos.flush();
+    }
+
+    @Override
+    public void fill(final ChannelReader reader) throws IOException {
+      reader.readInts(ints);
+      reader.readLongs(longs);
+      name = reader.getDataInputStream().readUTF();
+      reader.readFloats(floats);
+      reader.readDoubles(shortDoubles);
+      reader.readDoubles(doubles, 0, 3);
+      reader.readDoubles(doubles, 3, doubles.length - 3);
+    }
+
+    @Override
+    public void write(final ChannelWriter writer) throws IOException {
+      writer.writeInts(ints);
+      writer.writeLongs(longs);
+      final DataOutputStream dos = writer.getDataOutputStream();
+      dos.writeUTF(name);
+      dos.flush();
+      writer.writeFloats(floats);
+      writer.writeDoubles(shortDoubles);
+      writer.writeDoubles(doubles, 0, 3);
+      writer.writeDoubles(doubles, 3, doubles.length - 3);
+    }
+
+    private void assertSame(final TestArrays other) {
+      assertEquals(name, other.name);
+      assertArrayEquals(ints, other.ints);
+      assertArrayEquals(longs, other.longs);
+      assertArrayEquals(floats, other.floats, 0);
+      assertArrayEquals(shortDoubles, other.shortDoubles, 0);
+      assertArrayEquals(doubles, other.doubles, 0);
+    }
+  }
+
+  /**
+   * Both paths write the same bytes, and each path reads the bytes of the other
+   */
+  @Test
+  public void testSameBytes() throws IOException {
+    final TestArrays arrays = TestArrays.random(new Random(0));
+    final ByteArrayOutputStream streamBytes = new ByteArrayOutputStream();
+    arrays.write(streamBytes);
+    final ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+    try (final ChannelWriter writer =
+        new ChannelWriter(Channels.newChannel(channelBytes), bufferSize)) {
+      arrays.write(writer);
+    }
+    assertArrayEquals(streamBytes.toByteArray(), channelBytes.toByteArray());
+
+    final TestArrays fromStreamBytes = arrays.empty();
+    try (final ChannelReader reader = new ChannelReader(
+        Channels.newChannel(new ByteArrayInputStream(streamBytes.toByteArray())), bufferSize)) {
+      fromStreamBytes.fill(reader);
+    }
+    arrays.assertSame(fromStreamBytes);
+    final TestArrays fromChannelBytes = arrays.empty();
+    fromChannelBytes.fill(new ByteArrayInputStream(channelBytes.toByteArray()));
+    arrays.assertSame(fromChannelBytes);
+  }
+
+  /**
+   * Files written by {@link Fillable#write(OutputStream)} load with the channel default of
+   * {@link BulkFillable#fill(String)}, and the other way round
+   */
+  @Test
+  public void testFiles() throws IOException {
+    final TestArrays arrays = TestArrays.random(new Random(1));
+    final Path streamFile = Files.createTempFile("stream", ".bin");
+    final Path channelFile = Files.createTempFile("channel", ".bin");
+    try {
+      try (final FileOutputStream fos = new FileOutputStream(streamFile.toFile())) {
+        arrays.write(fos);
+      }
+      arrays.write(channelFile.toString());
+      assertArrayEquals(Files.readAllBytes(streamFile), Files.readAllBytes(channelFile));
+      final TestArrays fromStreamFile = arrays.empty();
+      fromStreamFile.fill(streamFile.toString());
+      arrays.assertSame(fromStreamFile);
+      final TestArrays fromChannelFile = arrays.empty();
+      try (final InputStream is = Files.newInputStream(channelFile)) {
+        fromChannelFile.fill(is);
+      }
+      arrays.assertSame(fromChannelFile);
+    } finally {
+      Files.delete(streamFile);
+      Files.delete(channelFile);
+    }
+  }
+}